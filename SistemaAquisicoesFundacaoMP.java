@@ -1,26 +1,159 @@
 import java.util.*;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.text.NumberFormat;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.util.Locale;
 import java.io.Serializable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.DateTimeException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
 
 /**
  * Sistema de Aquisições para Fundação vinculada ao Ministério Público
  * 
  * Este sistema gerencia todo o processo de aquisições públicas conforme
  * a legislação brasileira (Lei 8.666/93, Lei 14.133/21, etc.)
+ * 
+ * Uso: sem argumentos executa a demonstração; com "servidor [porta] [diretorio]" inicia a
+ * API HTTP (ServidorHttpAquisicoes) sobre os dados persistidos no diretório informado.
  */
 public class SistemaAquisicoesFundacaoMP {
     public static void main(String[] args) {
+        if (args != null && args.length > 0 && args[0].equals("servidor")) {
+            executarServidor(args);
+            return;
+        }
+        
         System.out.println("=== SISTEMA DE AQUISIÇÕES - FUNDAÇÃO VINCULADA AO MINISTÉRIO PÚBLICO ===\n");
         
-        // Inicializar o sistema
-        SistemaAquisicoes sistema = new SistemaAquisicoes();
+        // Inicializar o sistema em um diretório descartado ao final da demonstração
+        Path diretorio = SistemaAquisicoes.criarDiretorioTemporario();
+        try (SistemaAquisicoes sistema = new SistemaAquisicoes(diretorio)) {
+            // Demonstrar funcionalidades do sistema
+            demonstrarFuncionalidades(sistema);
+        } finally {
+            SistemaAquisicoes.apagarDiretorio(diretorio);
+        }
+    }
+    
+    private static void executarServidor(String[] args) {
+        int porta = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+        Path diretorio = Path.of(args.length > 2 ? args[2] : "dados");
+        TipoArmazenamento armazenamento = args.length > 3 ? TipoArmazenamento.valueOf(args[3].toUpperCase(Locale.ROOT)) 
+                                                          : TipoArmazenamento.MEMORIA;
+        
+        CountDownLatch encerramento = new CountDownLatch(1);
+        CountDownLatch fechado = new CountDownLatch(1);
+        // A JVM termina assim que os ganchos de desligamento retornam: o gancho só retorna depois que
+        // o servidor e o sistema foram fechados, com os eventos entregues e os logs sincronizados
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            encerramento.countDown();
+            try {
+                fechado.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "encerramento-servidor"));
         
-        // Demonstrar funcionalidades do sistema
-        demonstrarFuncionalidades(sistema);
+        try (SistemaAquisicoes sistema = new SistemaAquisicoes(diretorio, PoliticaSincronizacao.A_CADA_OPERACAO, armazenamento);
+             ServidorHttpAquisicoes servidor = new ServidorHttpAquisicoes(sistema, new InetSocketAddress(porta))) {
+            for (String registro : sistema.getRegistrosIgnoradosNaRecuperacao()) {
+                System.out.println("Registro de persistência ignorado na recuperação: " + registro);
+            }
+            sistema.registrarObservadorFalhasPrazos(falha -> 
+                System.out.println(falha.getMessage() + ": " + falha.getCause()));
+            
+            servidor.iniciar();
+            System.out.println("API HTTP disponível na porta " + servidor.getEndereco().getPort() + 
+                               " (dados em " + diretorio.toAbsolutePath() + ")");
+            encerramento.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            fechado.countDown();
+        }
     }
     
     private static void demonstrarFuncionalidades(SistemaAquisicoes sistema) {
@@ -55,18 +188,18 @@ public class SistemaAquisicoesFundacaoMP {
             gestor,
             ModalidadeLicitacao.PREGAO_ELETRONICO,
             LocalDate.now(),
-            2500000.0
+            Dinheiro.reais(2_500_000)
         );
         
         // Adicionar itens ao processo
         Item item1 = new Item("Computador Desktop", "Computador com processador i7, 16GB RAM, 512GB SSD", 
-                             5000.0, 100, UnidadeMedida.UNIDADE);
+                             Dinheiro.reais(5_000), 100, UnidadeMedida.UNIDADE);
         
         Item item2 = new Item("Monitor LED 24\"", "Monitor LED Full HD 24 polegadas", 
-                             1200.0, 100, UnidadeMedida.UNIDADE);
+                             Dinheiro.reais(1_200), 100, UnidadeMedida.UNIDADE);
         
         Item item3 = new Item("Notebook", "Notebook com processador i7, 16GB RAM, 512GB SSD", 
-                             6500.0, 50, UnidadeMedida.UNIDADE);
+                             Dinheiro.reais(6_500), 50, UnidadeMedida.UNIDADE);
         
         sistema.adicionarItemAoProcesso(processo, item1);
         sistema.adicionarItemAoProcesso(processo, item2);
@@ -75,14 +208,14 @@ public class SistemaAquisicoesFundacaoMP {
         // Adicionar documentos ao processo
         Documento termoReferencia = new Documento(
             "Termo de Referência",
-            "Especificações técnicas detalhadas dos equipamentos",
+            sistema.armazenarConteudo("Especificações técnicas detalhadas dos equipamentos"),
             gestor,
             LocalDateTime.now()
         );
         
         Documento parecerJuridico = new Documento(
             "Parecer Jurídico",
-            "Análise jurídica do processo de aquisição",
+            sistema.armazenarConteudo("Análise jurídica do processo de aquisição"),
             fiscal,
             LocalDateTime.now()
         );
@@ -99,7 +232,7 @@ public class SistemaAquisicoesFundacaoMP {
             fornecedor1,
             processo,
             LocalDateTime.now(),
-            1150000.0,
+            Dinheiro.reais(1_150_000),
             "Proposta para fornecimento de equipamentos de informática"
         );
         
@@ -107,7 +240,7 @@ public class SistemaAquisicoesFundacaoMP {
             fornecedor2,
             processo,
             LocalDateTime.now(),
-            1250000.0,
+            Dinheiro.reais(1_250_000),
             "Proposta alternativa para fornecimento de equipamentos"
         );
         
@@ -153,12 +286,21 @@ public class SistemaAquisicoesFundacaoMP {
         
         sistema.registrarEntrega(contrato, entrega1);
         
+        // Liquidar a despesa da entrega atestada
+        sistema.registrarLiquidacao(
+            contrato,
+            "NL-2023-001",
+            LocalDate.now().plusDays(35),
+            Dinheiro.reais(575_000),
+            ordenador
+        );
+        
         // Registrar pagamento parcial
         Pagamento pagamento1 = sistema.registrarPagamento(
             contrato,
             "PG-2023-001",
             LocalDate.now().plusDays(45),
-            575000.0,
+            Dinheiro.reais(575_000),
             "Pagamento referente à primeira entrega",
             ordenador
         );
@@ -179,58 +321,243 @@ public class SistemaAquisicoesFundacaoMP {
 
 /**
  * Classe principal que gerencia o sistema de aquisições
+ * 
+ * As operações são seguras para uso concorrente: operações sobre processos ou contratos
+ * distintos são executadas em paralelo, protegidas por bloqueios em listras (lock striping)
+ * indexados pelo número do processo/contrato. Consultas não bloqueiam.
+ * 
+ * Uma operação só retorna ao chamador depois que seu registro no log de persistência está
+ * em disco; a espera pelo fsync ocorre após a liberação dos bloqueios.
  */
-class SistemaAquisicoes {
-    private List<Usuario> usuarios;
-    private List<Fornecedor> fornecedores;
-    private List<ProcessoAquisicao> processos;
-    private List<Contrato> contratos;
-    private List<NotaEmpenho> empenhos;
-    private List<Pagamento> pagamentos;
-    private List<LogAuditoria> logsAuditoria;
-    private NumberFormat formatoMoeda;
+class SistemaAquisicoes implements AutoCloseable {
+    private static final int QUANTIDADE_LISTRAS = 256;
+    private static final int TAMANHO_BUFFER_RELATORIO = 8192;
+    private static final int TAMANHO_LOTE_IMPORTACAO = 1000;
+    // Valores em reais no formato brasileiro: "1500", "1500,5", "1.500" ou "1.234.567,89"
+    private static final Pattern VALOR_IMPORTADO = Pattern.compile("(\\d{1,3}(\\.\\d{3})+|\\d+)(,\\d{1,2})?");
+    private static final int[] ANTECEDENCIAS_VENCIMENTO = {90, 60, 30};
+    private static final Map<EtapaProcesso, Integer> PRAZOS_ETAPA = prazosEtapaPadrao();
+    private static final MaquinaEtapas MAQUINA_ETAPAS = MaquinaEtapas.padrao();
+    
+    private Queue<Usuario> usuarios;
+    private Queue<Fornecedor> fornecedores;
+    private Queue<ProcessoAquisicao> processos;
+    private Queue<Contrato> contratos;
+    private RepositorioRegistros<NotaEmpenho> empenhos;
+    private RepositorioRegistros<Liquidacao> liquidacoes;
+    private RepositorioRegistros<Pagamento> pagamentos;
+    private ArmazenamentoLsm armazenamentoRegistros;
+    private ArquivoProcessos arquivoProcessos;
+    private Path diretorioDados;
+    private boolean diretorioTemporario;
+    private ArmazemDocumentos armazemDocumentos;
+    private IndiceTextual indiceTextual;
+    private IndicePrecos indicePrecos;
+    private AgendaPrazos agendaPrazos;
+    private List<DestinoAlertas> destinosAlertas;
+    private List<Consumer<RuntimeException>> observadoresFalhasPrazos;
+    private AtomicLong falhasVerificacaoPrazos;
+    private AtomicLong falhasDestinosAlertas;
+    private volatile RuntimeException ultimaFalhaPrazos;
+    private ScheduledExecutorService verificadorPrazos;
+    private JournalAuditoria journalAuditoria;
+    private BarramentoEventos barramentoEventos;
+    private AssinaturaEventos assinaturaAuditoria;
+    private AssinaturaEventos assinaturaVistas;
+    private Map<String, Usuario> usuariosPorCpf;
+    private Map<String, Fornecedor> fornecedoresPorCnpj;
+    private Map<String, ProcessoAquisicao> processosPorNumero;
+    private Map<String, Contrato> contratosPorNumero;
+    private Map<String, ListaPosicoes> logsPorProcesso;
+    private Map<String, ListaPosicoes> logsPorContrato;
+    private Map<String, ListaPosicoes> logsPorUsuario;
+    private MotorPersistencia persistencia;
+    private CodecAquisicoes codec;
+    private AtomicInteger sequenciaProcessos;
+    private VistasTransparencia vistasTransparencia;
+    private IndiceTemporal<ProcessoAquisicao> processosPorAbertura;
+    private IndiceIntervalos<Contrato> contratosPorVigencia;
+    private ReentrantReadWriteLock bloqueioEstado;
+    private ListrasBloqueio bloqueiosCadastro;
+    private ListrasBloqueio bloqueiosProcesso;
+    private ListrasBloqueio bloqueiosContrato;
+    private ThreadLocal<NumberFormat> formatoMoeda;
+    private MotorLances motorLances;
+    private volatile SnapshotAnalitico snapshotAnalitico;
+    private final ThreadLocal<long[]> posicaoLogPendente = ThreadLocal.withInitial(() -> new long[1]);
+    private final ThreadLocal<long[]> sequenciaEventoPendente = ThreadLocal.withInitial(() -> new long[] {-1});
+    private PoliticaSincronizacao politicaSincronizacao;
+    private final Object verificacaoPrazos = new Object();
     
+    /**
+     * Cria o sistema em um diretório temporário próprio, apagado com todos os dados em close()
+     */
     public SistemaAquisicoes() {
-        this.usuarios = new ArrayList<>();
-        this.fornecedores = new ArrayList<>();
-        this.processos = new ArrayList<>();
-        this.contratos = new ArrayList<>();
-        this.empenhos = new ArrayList<>();
-        this.pagamentos = new ArrayList<>();
-        this.logsAuditoria = new ArrayList<>();
-        this.formatoMoeda = NumberFormat.getCurrencyInstance(new Locale("pt", "BR"));
+        this(criarDiretorioTemporario());
+        this.diretorioTemporario = true;
+    }
+    
+    public SistemaAquisicoes(Path diretorioDados) {
+        this(diretorioDados, PoliticaSincronizacao.A_CADA_OPERACAO);
+    }
+    
+    /**
+     * Cria o sistema persistindo seus dados no diretório informado.
+     * Se o diretório já contiver dados, o estado é restaurado a partir do último snapshot
+     * mais o log de operações posterior, e os índices de auditoria são reconstruídos a partir do journal.
+     */
+    public SistemaAquisicoes(Path diretorioDados, PoliticaSincronizacao politicaSincronizacao) {
+        this(diretorioDados, politicaSincronizacao, TipoArmazenamento.MEMORIA);
+    }
+    
+    /**
+     * Cria o sistema mantendo os registros financeiros dos contratos no armazenamento informado.
+     * Com TipoArmazenamento.DISCO eles deixam de ocupar o heap, exceto pelas páginas em cache:
+     * a recuperação reabre as tabelas referenciadas pelo snapshot e regrava apenas os registros
+     * do log posterior. Usuários, fornecedores, processos e contratos continuam no heap.
+     */
+    public SistemaAquisicoes(Path diretorioDados, PoliticaSincronizacao politicaSincronizacao, 
+                             TipoArmazenamento tipoArmazenamento) {
+        this.diretorioDados = diretorioDados;
+        this.politicaSincronizacao = politicaSincronizacao;
+        this.usuarios = new ConcurrentLinkedQueue<>();
+        this.fornecedores = new ConcurrentLinkedQueue<>();
+        this.processos = new ConcurrentLinkedQueue<>();
+        this.contratos = new ConcurrentLinkedQueue<>();
+        this.usuariosPorCpf = new ConcurrentHashMap<>();
+        this.fornecedoresPorCnpj = new ConcurrentHashMap<>();
+        this.processosPorNumero = new ConcurrentHashMap<>();
+        this.contratosPorNumero = new ConcurrentHashMap<>();
+        this.logsPorProcesso = new ConcurrentHashMap<>();
+        this.logsPorContrato = new ConcurrentHashMap<>();
+        this.logsPorUsuario = new ConcurrentHashMap<>();
+        this.sequenciaProcessos = new AtomicInteger();
+        this.vistasTransparencia = new VistasTransparencia();
+        this.processosPorAbertura = new IndiceTemporal<>();
+        this.contratosPorVigencia = new IndiceIntervalos<>();
+        this.bloqueioEstado = new ReentrantReadWriteLock();
+        this.bloqueiosCadastro = new ListrasBloqueio(bloqueioEstado, QUANTIDADE_LISTRAS);
+        this.bloqueiosProcesso = new ListrasBloqueio(bloqueioEstado, QUANTIDADE_LISTRAS);
+        this.bloqueiosContrato = new ListrasBloqueio(bloqueioEstado, QUANTIDADE_LISTRAS);
+        // NumberFormat não é thread-safe; cada thread de relatório usa sua própria instância
+        this.formatoMoeda = ThreadLocal.withInitial(() -> NumberFormat.getCurrencyInstance(Locale.forLanguageTag("pt-BR")));
+        this.codec = new CodecAquisicoes(usuariosPorCpf, fornecedoresPorCnpj, processosPorNumero, contratosPorNumero);
+        this.motorLances = new MotorLances();
+        this.indiceTextual = new IndiceTextual();
+        this.indicePrecos = new IndicePrecos();
+        this.agendaPrazos = new AgendaPrazos(LocalDate.now().minusDays(1), AgendaPrazos.CAPACIDADE_MAXIMA_PADRAO);
+        this.destinosAlertas = new CopyOnWriteArrayList<>();
+        this.observadoresFalhasPrazos = new CopyOnWriteArrayList<>();
+        this.falhasVerificacaoPrazos = new AtomicLong();
+        this.falhasDestinosAlertas = new AtomicLong();
+        
+        try {
+            if (tipoArmazenamento == TipoArmazenamento.DISCO) {
+                this.armazenamentoRegistros = new ArmazenamentoLsm(diretorioDados.resolve("registros"), 
+                                                                   ArmazenamentoLsm.LIMITE_MEMTABLE_PADRAO, 
+                                                                   ArmazenamentoLsm.TAMANHO_CACHE_PADRAO);
+                this.empenhos = new RepositorioDisco<>(armazenamentoRegistros, (byte) 1, codec::escreverEmpenho, codec::lerEmpenho);
+                this.liquidacoes = new RepositorioDisco<>(armazenamentoRegistros, (byte) 2, codec::escreverLiquidacao, codec::lerLiquidacao);
+                this.pagamentos = new RepositorioDisco<>(armazenamentoRegistros, (byte) 3, codec::escreverPagamento, codec::lerPagamento);
+            } else {
+                this.empenhos = new RepositorioMemoria<>();
+                this.liquidacoes = new RepositorioMemoria<>();
+                this.pagamentos = new RepositorioMemoria<>();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Não foi possível abrir o armazenamento de registros", e);
+        }
+        
+        try {
+            this.arquivoProcessos = new ArquivoProcessos(diretorioDados.resolve("arquivo"), usuariosPorCpf, fornecedoresPorCnpj);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Não foi possível abrir o arquivo de processos", e);
+        }
+        
+        try {
+            this.armazemDocumentos = new ArmazemDocumentos(diretorioDados.resolve("documentos"), politicaSincronizacao);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Não foi possível abrir o armazém de documentos", e);
+        }
+        
+        try {
+            this.persistencia = new MotorPersistencia(diretorioDados.resolve("persistencia"), politicaSincronizacao, 
+                                                      MotorPersistencia.LIMITE_REGISTROS_WAL_PADRAO);
+            persistencia.recuperar(this::lerEstado, this::reaplicarOperacao);
+            if (armazenamentoRegistros != null) {
+                armazenamentoRegistros.removerTabelasNaoRestauradas();
+            }
+            removerProcessosJaArquivados();
+            reconstruirIndiceTextual();
+            reconstruirIndicePrecos();
+            reconstruirAgendaPrazos();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Não foi possível recuperar o estado persistido", e);
+        }
+        
+        try {
+            this.journalAuditoria = new JournalAuditoria(diretorioDados.resolve("auditoria"), 
+                                                         JournalAuditoria.TAMANHO_SEGMENTO_PADRAO, 
+                                                         this::indexarLog);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Não foi possível abrir o journal de auditoria", e);
+        }
+        
+        // A auditoria e as visões derivadas são atualizadas por assinantes do barramento, fora das requisições
+        this.barramentoEventos = new BarramentoEventos(BarramentoEventos.CAPACIDADE_PADRAO);
+        this.assinaturaAuditoria = barramentoEventos.assinar("auditoria", this::registrarAuditoria);
+        this.assinaturaVistas = barramentoEventos.assinar("vistas", this::atualizarVistas);
+        
+        // Os alertas são verificados de hora em hora: a virada do dia é percebida com até uma hora de atraso
+        this.verificadorPrazos = Executors.newSingleThreadScheduledExecutor(tarefa -> {
+            Thread thread = new Thread(tarefa, "verificacao-prazos");
+            thread.setDaemon(true);
+            return thread;
+        });
+        verificadorPrazos.scheduleWithFixedDelay(this::verificarPrazosHoje, 0, 1, TimeUnit.HOURS);
     }
     
     // Métodos de gerenciamento de usuários
     public void cadastrarUsuario(Usuario usuario) {
-        usuarios.add(usuario);
-        registrarLog("Cadastro de Usuário", "Usuário cadastrado: " + usuario.getNome(), usuario);
+        bloqueiosCadastro.executar(usuario.getCpf(), () -> {
+            if (usuariosPorCpf.containsKey(usuario.getCpf())) {
+                throw new IllegalArgumentException("Já existe usuário cadastrado com o CPF " + usuario.getCpf());
+            }
+            JournalAuditoria.verificarCampo(usuario.getCpf(), "cpf");
+            
+            persistir(OperacaoPersistida.CADASTRO_USUARIO, saida -> codec.escreverUsuario(saida, usuario));
+            aplicarCadastroUsuario(usuario);
+            publicar(new UsuarioCadastrado(usuario));
+        });
+        concluirOperacao();
     }
     
     public Usuario buscarUsuarioPorCPF(String cpf) {
-        return usuarios.stream()
-            .filter(u -> u.getCpf().equals(cpf))
-            .findFirst()
-            .orElse(null);
+        return usuariosPorCpf.get(cpf);
     }
     
     // Métodos de gerenciamento de fornecedores
     public void cadastrarFornecedor(Fornecedor fornecedor) {
-        fornecedores.add(fornecedor);
-        registrarLog("Cadastro de Fornecedor", "Fornecedor cadastrado: " + fornecedor.getRazaoSocial(), null);
+        bloqueiosCadastro.executar(fornecedor.getCnpj(), () -> {
+            if (fornecedoresPorCnpj.containsKey(fornecedor.getCnpj())) {
+                throw new IllegalArgumentException("Já existe fornecedor cadastrado com o CNPJ " + fornecedor.getCnpj());
+            }
+            
+            persistir(OperacaoPersistida.CADASTRO_FORNECEDOR, saida -> codec.escreverFornecedor(saida, fornecedor));
+            aplicarCadastroFornecedor(fornecedor);
+            publicar(new FornecedorCadastrado(fornecedor));
+        });
+        concluirOperacao();
     }
     
     public Fornecedor buscarFornecedorPorCNPJ(String cnpj) {
-        return fornecedores.stream()
-            .filter(f -> f.getCnpj().equals(cnpj))
-            .findFirst()
-            .orElse(null);
+        return fornecedoresPorCnpj.get(cnpj);
     }
     
     // Métodos de gerenciamento de processos de aquisição
     public ProcessoAquisicao iniciarProcessoAquisicao(String titulo, String descricao, 
                                                     Usuario responsavel, ModalidadeLicitacao modalidade,
-                                                    LocalDate dataAbertura, double valorEstimado) {
+                                                    LocalDate dataAbertura, long valorEstimado) {
         // Verificar permissão do usuário
         if (!responsavel.getTipo().equals(TipoUsuario.GESTOR) && 
             !responsavel.getTipo().equals(TipoUsuario.ORDENADOR_DESPESA)) {
@@ -238,46 +565,196 @@ class SistemaAquisicoes {
         }
         
         String numeroProcesso = gerarNumeroProcesso();
-        ProcessoAquisicao processo = new ProcessoAquisicao(
-            numeroProcesso, titulo, descricao, responsavel, 
-            modalidade, dataAbertura, valorEstimado
-        );
-        
-        processos.add(processo);
-        registrarLog("Início de Processo", "Processo iniciado: " + numeroProcesso, responsavel);
+        ProcessoAquisicao iniciado = bloqueiosProcesso.executar(numeroProcesso, () -> {
+            if (processosPorNumero.containsKey(numeroProcesso)) {
+                throw new IllegalStateException("Número de processo já utilizado: " + numeroProcesso);
+            }
+            
+            ProcessoAquisicao processo = new ProcessoAquisicao(
+                numeroProcesso, titulo, descricao, responsavel, 
+                modalidade, dataAbertura, valorEstimado
+            );
+            
+            persistir(OperacaoPersistida.INICIO_PROCESSO, saida -> codec.escreverProcesso(saida, processo));
+            aplicarInicioProcesso(processo);
+            publicar(new ProcessoIniciado(processo, responsavel));
+            return processo;
+        });
+        concluirOperacao();
         
-        return processo;
+        return iniciado;
+    }
+    
+    public ProcessoAquisicao buscarProcessoPorNumero(String numero) {
+        return processosPorNumero.get(numero);
+    }
+    
+    /**
+     * Processo arquivado, recriado a partir do arquivo de processos, ou null.
+     * O processo retornado não pertence mais ao sistema e não pode ser alterado por ele.
+     */
+    public ProcessoAquisicao buscarProcessoArquivado(String numero) {
+        return arquivoProcessos.buscarProcesso(numero);
+    }
+    
+    /**
+     * Processos abertos entre as datas informadas (inclusive), em ordem de abertura
+     */
+    public Collection<ProcessoAquisicao> buscarProcessosAbertosNoPeriodo(LocalDate inicio, LocalDate fim) {
+        return processosPorAbertura.buscarEntre(inicio, fim);
+    }
+    
+    /**
+     * Busca textual em processos, itens, documentos e fornecedores. Retorna os registros que
+     * contêm todos os termos da consulta, ignorando acentos, maiúsculas e flexões de número e
+     * gênero, do mais relevante para o menos relevante. Processos arquivados não são buscados.
+     */
+    public List<ResultadoBusca> buscarTexto(String consulta, int limite) {
+        assinaturaVistas.aguardar();
+        return indiceTextual.buscar(consulta, limite);
     }
     
     public void adicionarItemAoProcesso(ProcessoAquisicao processo, Item item) {
-        processo.adicionarItem(item);
-        registrarLog("Adição de Item", "Item adicionado ao processo " + processo.getNumero() + ": " + item.getDescricao(), null);
+        bloqueiosProcesso.executar(processo.getNumero(), () -> {
+            verificarProcessoCadastrado(processo);
+            persistir(OperacaoPersistida.ADICAO_ITEM, saida -> {
+                CodecAquisicoes.escreverTexto(saida, processo.getNumero());
+                codec.escreverItem(saida, item);
+            });
+            processo.adicionarItem(item);
+            publicar(new ItemAdicionado(processo, processo.getItens().size() - 1, item));
+        });
+        concluirOperacao();
     }
     
     public void adicionarDocumentoAoProcesso(ProcessoAquisicao processo, Documento documento) {
-        processo.adicionarDocumento(documento);
-        registrarLog("Adição de Documento", "Documento adicionado ao processo " + processo.getNumero() + ": " + documento.getTitulo(), documento.getResponsavel());
+        if (documento.getConteudo() == null || !armazemDocumentos.contem(documento.getConteudo())) {
+            throw new IllegalArgumentException("Conteúdo do documento não está no armazém; use armazenarConteudo");
+        }
+        bloqueiosProcesso.executar(processo.getNumero(), () -> {
+            verificarProcessoCadastrado(processo);
+            persistir(OperacaoPersistida.ADICAO_DOCUMENTO, saida -> {
+                CodecAquisicoes.escreverTexto(saida, processo.getNumero());
+                codec.escreverDocumento(saida, documento);
+            });
+            processo.adicionarDocumento(documento);
+            // O conteúdo é analisado e indexado pelo assinante das visões
+            publicar(new DocumentoAdicionado(processo, processo.getDocumentos().size() - 1, documento));
+        });
+        concluirOperacao();
+    }
+    
+    /**
+     * Grava o conteúdo de um documento no armazém de documentos e retorna a referência a ser
+     * informada no Documento. Conteúdos idênticos são gravados uma única vez.
+     */
+    public ConteudoDocumento armazenarConteudo(InputStream entrada, long tamanhoMaximo) {
+        try {
+            return armazemDocumentos.armazenar(entrada, tamanhoMaximo);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao gravar o conteúdo do documento", e);
+        }
+    }
+    
+    public ConteudoDocumento armazenarConteudo(InputStream entrada) {
+        return armazenarConteudo(entrada, Long.MAX_VALUE);
+    }
+    
+    public ConteudoDocumento armazenarConteudo(String texto) {
+        return armazenarConteudo(new ByteArrayInputStream(texto.getBytes(StandardCharsets.UTF_8)));
+    }
+    
+    /**
+     * Conteúdo do documento mapeado em memória, somente leitura e sem cópia para o heap
+     */
+    public ByteBuffer lerConteudo(Documento documento) {
+        try {
+            return armazemDocumentos.mapear(documento.getConteudo());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao ler o conteúdo do documento " + documento.getTitulo(), e);
+        }
+    }
+    
+    /**
+     * Envia o conteúdo do documento ao canal de destino com FileChannel.transferTo
+     */
+    public long transferirConteudo(Documento documento, WritableByteChannel destino) throws IOException {
+        return armazemDocumentos.transferir(documento.getConteudo(), destino);
     }
     
     public void avancarEtapaProcesso(ProcessoAquisicao processo, EtapaProcesso novaEtapa, Usuario responsavel) {
-        // Verificar permissão do usuário conforme a etapa
-        boolean temPermissao = verificarPermissaoEtapa(responsavel, novaEtapa);
+        verificarPermissaoEtapa(responsavel, novaEtapa);
         
-        if (!temPermissao) {
-            throw new IllegalArgumentException("Usuário não tem permissão para avançar o processo para esta etapa");
+        bloqueiosProcesso.executar(processo.getNumero(), () -> {
+            verificarProcessoCadastrado(processo);
+            verificarAvancoEtapa(processo, novaEtapa);
+            
+            EtapaProcesso etapaAnterior = processo.getEtapaAtual();
+            LocalDate hoje = LocalDate.now();
+            persistir(OperacaoPersistida.AVANCO_ETAPA, saida -> {
+                CodecAquisicoes.escreverTexto(saida, processo.getNumero());
+                saida.writeByte(novaEtapa.ordinal());
+                CodecAquisicoes.escreverData(saida, hoje);
+            });
+            aplicarAvancoEtapa(processo, novaEtapa, hoje);
+            publicar(new EtapaAvancada(processo, etapaAnterior, novaEtapa, hoje, responsavel, false));
+        });
+        concluirOperacao();
+    }
+    
+    /**
+     * Avança um lote de processos para a mesma etapa. O lote é atômico: todos os processos são
+     * bloqueados e verificados antes que qualquer um avance, e o avanço é gravado em um único
+     * registro no log de persistência; se algum processo não puder avançar, nenhum avança.
+     */
+    public void avancarEtapaProcessos(Collection<ProcessoAquisicao> lote, EtapaProcesso novaEtapa, Usuario responsavel) {
+        verificarPermissaoEtapa(responsavel, novaEtapa);
+        Map<String, ProcessoAquisicao> processosLote = new LinkedHashMap<>();
+        for (ProcessoAquisicao processo : lote) {
+            processosLote.put(processo.getNumero(), processo);
+        }
+        if (processosLote.isEmpty()) {
+            return;
         }
         
-        EtapaProcesso etapaAnterior = processo.getEtapaAtual();
-        processo.setEtapaAtual(novaEtapa);
-        
-        registrarLog("Avanço de Etapa", "Processo " + processo.getNumero() + 
-                   " avançou de " + etapaAnterior + " para " + novaEtapa, responsavel);
+        bloqueiosProcesso.executar(processosLote.keySet(), () -> {
+            EtapaProcesso[] etapasAnteriores = new EtapaProcesso[processosLote.size()];
+            int indice = 0;
+            for (ProcessoAquisicao processo : processosLote.values()) {
+                verificarProcessoCadastrado(processo);
+                verificarAvancoEtapa(processo, novaEtapa);
+                etapasAnteriores[indice++] = processo.getEtapaAtual();
+            }
+            
+            LocalDate hoje = LocalDate.now();
+            persistir(OperacaoPersistida.AVANCO_ETAPAS_LOTE, saida -> {
+                saida.writeInt(processosLote.size());
+                saida.writeByte(novaEtapa.ordinal());
+                CodecAquisicoes.escreverData(saida, hoje);
+                for (String numero : processosLote.keySet()) {
+                    CodecAquisicoes.escreverTexto(saida, numero);
+                }
+            });
+            indice = 0;
+            for (ProcessoAquisicao processo : processosLote.values()) {
+                aplicarAvancoEtapa(processo, novaEtapa, hoje);
+                publicar(new EtapaAvancada(processo, etapasAnteriores[indice++], novaEtapa, hoje, responsavel, true));
+            }
+        });
+        concluirOperacao();
     }
     
     public void registrarProposta(ProcessoAquisicao processo, Proposta proposta) {
-        processo.adicionarProposta(proposta);
-        registrarLog("Registro de Proposta", "Proposta registrada para o processo " + 
-                   processo.getNumero() + " do fornecedor " + proposta.getFornecedor().getRazaoSocial(), null);
+        bloqueiosProcesso.executar(processo.getNumero(), () -> {
+            verificarProcessoCadastrado(processo);
+            persistir(OperacaoPersistida.REGISTRO_PROPOSTA, saida -> {
+                CodecAquisicoes.escreverTexto(saida, processo.getNumero());
+                codec.escreverProposta(saida, proposta);
+            });
+            processo.adicionarProposta(proposta);
+            publicar(new PropostaRegistrada(proposta));
+        });
+        concluirOperacao();
     }
     
     public void selecionarPropostaVencedora(ProcessoAquisicao processo, Proposta proposta, Usuario responsavel) {
@@ -287,83 +764,670 @@ class SistemaAquisicoes {
             throw new IllegalArgumentException("Usuário não tem permissão para selecionar proposta vencedora");
         }
         
-        processo.setPropostaVencedora(proposta);
-        registrarLog("Seleção de Proposta", "Proposta do fornecedor " + 
-                   proposta.getFornecedor().getRazaoSocial() + " selecionada como vencedora", responsavel);
+        bloqueiosProcesso.executar(processo.getNumero(), () -> {
+            verificarProcessoCadastrado(processo);
+            // A proposta vencedora precisa ter sido registrada no processo
+            int indiceProposta = CodecAquisicoes.indicePorIdentidade(processo.getPropostas(), proposta);
+            if (indiceProposta < 0) {
+                throw new IllegalArgumentException("Proposta não foi registrada no processo " + processo.getNumero());
+            }
+            
+            persistir(OperacaoPersistida.SELECAO_PROPOSTA, saida -> {
+                CodecAquisicoes.escreverTexto(saida, processo.getNumero());
+                saida.writeInt(indiceProposta);
+            });
+            processo.setPropostaVencedora(proposta);
+            publicar(new PropostaSelecionada(proposta, responsavel));
+        });
+        concluirOperacao();
     }
     
-    public Contrato gerarContrato(ProcessoAquisicao processo, String numero, 
-                                LocalDate dataInicio, LocalDate dataFim, 
-                                double valor, Usuario fiscal) {
-        // Verificar se o processo está na etapa adequada
-        if (processo.getEtapaAtual() != EtapaProcesso.CONTRATACAO) {
-            throw new IllegalStateException("Processo não está na etapa de contratação");
+    /**
+     * Seleciona como vencedora a proposta de menor valor do processo
+     */
+    public Proposta selecionarMelhorProposta(ProcessoAquisicao processo, Usuario responsavel) {
+        Proposta melhor = processo.getLivroPropostas().menorProposta();
+        if (melhor == null) {
+            throw new IllegalStateException("Nenhuma proposta registrada no processo " + processo.getNumero());
+        }
+        
+        selecionarPropostaVencedora(processo, melhor, responsavel);
+        return melhor;
+    }
+    
+    /**
+     * Proposta de menor valor do processo, ou null se nenhuma foi recebida.
+     * As propostas são sigilosas: a classificação só é divulgada a partir da análise das propostas.
+     */
+    public Proposta buscarMenorProposta(ProcessoAquisicao processo) {
+        verificarAberturaPropostas(processo);
+        return processo.getLivroPropostas().menorProposta();
+    }
+    
+    /**
+     * As propostas melhor classificadas do processo, da menor para a maior
+     */
+    public List<Proposta> buscarMelhoresPropostas(ProcessoAquisicao processo, int quantidade) {
+        verificarAberturaPropostas(processo);
+        return processo.getLivroPropostas().melhoresPropostas(quantidade);
+    }
+    
+    /**
+     * Abre a disputa de lances de um pregão eletrônico em recebimento de propostas.
+     * Participam os fornecedores com proposta registrada, tendo a melhor proposta como lance inicial.
+     * Os lances ficam em memória até o encerramento da disputa, quando o último lance de cada
+     * fornecedor é registrado como proposta.
+     */
+    public void abrirDisputaLances(ProcessoAquisicao processo, long decrementoMinimo, Usuario responsavel) {
+        if (!responsavel.getTipo().equals(TipoUsuario.GESTOR)) {
+            throw new IllegalArgumentException("Usuário não tem permissão para conduzir a disputa de lances");
+        }
+        if (processo.getModalidade() != ModalidadeLicitacao.PREGAO_ELETRONICO) {
+            throw new IllegalArgumentException("Disputa de lances disponível apenas para pregão eletrônico");
         }
         
+        bloqueiosProcesso.executar(processo.getNumero(), () -> {
+            verificarProcessoCadastrado(processo);
+            if (processo.getEtapaAtual() != EtapaProcesso.RECEBIMENTO_PROPOSTAS) {
+                throw new IllegalStateException("Disputa de lances exige o processo na etapa " + EtapaProcesso.RECEBIMENTO_PROPOSTAS);
+            }
+            
+            SessaoDisputa sessao = motorLances.abrir(processo.getNumero(), 
+                                                     processo.getLivroPropostas().melhoresPropostas(Integer.MAX_VALUE), 
+                                                     decrementoMinimo);
+            publicar(new DisputaAberta(processo, sessao.classificacao().size(), decrementoMinimo, responsavel));
+        });
+        concluirOperacao();
+    }
+    
+    public Lance registrarLance(ProcessoAquisicao processo, Fornecedor fornecedor, long valor) {
+        return disputa(processo).ofertar(fornecedor, valor);
+    }
+    
+    /**
+     * Passa a notificar o observador a cada novo melhor lance da disputa do processo
+     */
+    public AssinaturaLances acompanharDisputa(ProcessoAquisicao processo, ObservadorLances observador) {
+        return disputa(processo).assinar(observador);
+    }
+    
+    public SessaoDisputa buscarDisputa(ProcessoAquisicao processo) {
+        return motorLances.buscar(processo.getNumero());
+    }
+    
+    /**
+     * Inicia o encerramento aleatório da disputa: os lances são aceitos até um instante
+     * sorteado dentro do tempo máximo, não divulgado aos licitantes
+     */
+    public void iniciarEncerramentoDisputa(ProcessoAquisicao processo, Duration tempoMaximo, Usuario responsavel) {
+        if (!responsavel.getTipo().equals(TipoUsuario.GESTOR)) {
+            throw new IllegalArgumentException("Usuário não tem permissão para conduzir a disputa de lances");
+        }
+        
+        motorLances.iniciarEncerramento(disputa(processo), tempoMaximo);
+        publicar(new EncerramentoDisputaIniciado(processo, responsavel));
+        concluirOperacao();
+    }
+    
+    /**
+     * Conclui uma disputa já encerrada, registrando como proposta o último lance de cada fornecedor
+     * que ofertou lances. Retorna a classificação final.
+     */
+    public List<Lance> concluirDisputaLances(ProcessoAquisicao processo, Usuario responsavel) {
+        if (!responsavel.getTipo().equals(TipoUsuario.GESTOR)) {
+            throw new IllegalArgumentException("Usuário não tem permissão para conduzir a disputa de lances");
+        }
+        
+        List<Lance> resultado = bloqueiosProcesso.executar(processo.getNumero(), () -> {
+            verificarProcessoCadastrado(processo);
+            SessaoDisputa sessao = disputa(processo);
+            if (sessao.getSituacao() != SituacaoDisputa.ENCERRADA) {
+                throw new IllegalStateException("Disputa de lances do processo " + processo.getNumero() + " ainda recebe lances");
+            }
+            
+            List<Lance> classificacao = sessao.classificacao();
+            List<Proposta> finais = new ArrayList<>();
+            for (Lance lance : classificacao) {
+                if (sessao.ofertadoNaDisputa(lance)) {
+                    finais.add(new Proposta(lance.getFornecedor(), processo, lance.getDataEnvio(), lance.getValor(), 
+                                            "Último lance na disputa do pregão eletrônico"));
+                }
+            }
+            
+            if (!finais.isEmpty()) {
+                persistir(OperacaoPersistida.REGISTRO_PROPOSTAS_LOTE, saida -> {
+                    saida.writeInt(finais.size());
+                    for (Proposta proposta : finais) {
+                        CodecAquisicoes.escreverTexto(saida, processo.getNumero());
+                        codec.escreverProposta(saida, proposta);
+                    }
+                });
+                for (Proposta proposta : finais) {
+                    processo.adicionarProposta(proposta);
+                }
+            }
+            motorLances.remover(processo.getNumero());
+            
+            publicar(new DisputaConcluida(processo, finais, sessao.lancesOfertados().size(), classificacao.get(0), responsavel));
+            return classificacao;
+        });
+        concluirOperacao();
+        return resultado;
+    }
+    
+    public Contrato gerarContrato(ProcessoAquisicao processo, String numero, 
+                                LocalDate dataInicio, LocalDate dataFim, 
+                                long valor, Usuario fiscal) {
         // Verificar se o fiscal tem o papel adequado
         if (!fiscal.getTipo().equals(TipoUsuario.FISCAL_CONTRATO)) {
             throw new IllegalArgumentException("Usuário não tem permissão para ser fiscal de contrato");
         }
         
-        Contrato contrato = new Contrato(
-            numero, processo, processo.getPropostaVencedora().getFornecedor(),
-            dataInicio, dataFim, valor, fiscal
-        );
-        
-        contratos.add(contrato);
-        processo.setContrato(contrato);
-        
-        registrarLog("Geração de Contrato", "Contrato " + numero + " gerado para o processo " + 
-                   processo.getNumero(), fiscal);
+        Contrato gerado = bloqueiosProcesso.executar(processo.getNumero(), () -> bloqueiosContrato.executar(numero, () -> {
+            verificarProcessoCadastrado(processo);
+            // Verificar se o processo está na etapa adequada
+            if (processo.getEtapaAtual() != EtapaProcesso.CONTRATACAO) {
+                throw new IllegalStateException("Processo não está na etapa de contratação");
+            }
+            
+            // Verificar se o número do contrato já foi utilizado, inclusive por contrato arquivado
+            if (contratosPorNumero.containsKey(numero) || arquivoProcessos.contemContrato(numero)) {
+                throw new IllegalArgumentException("Já existe contrato cadastrado com o número " + numero);
+            }
+            JournalAuditoria.verificarCampo(numero, "contrato");
+            
+            Contrato contrato = new Contrato(
+                numero, processo, processo.getPropostaVencedora().getFornecedor(),
+                dataInicio, dataFim, valor, fiscal
+            );
+            
+            persistir(OperacaoPersistida.GERACAO_CONTRATO, saida -> codec.escreverContrato(saida, contrato));
+            aplicarGeracaoContrato(contrato);
+            publicar(new ContratoGerado(contrato));
+            return contrato;
+        }));
+        concluirOperacao();
         
-        return contrato;
+        return gerado;
+    }
+    
+    public Contrato buscarContratoPorNumero(String numero) {
+        return contratosPorNumero.get(numero);
+    }
+    
+    /**
+     * Contratos vigentes na data informada, em ordem de início de vigência
+     */
+    public List<Contrato> buscarContratosVigentesEm(LocalDate data) {
+        return contratosPorVigencia.buscarSobrepostos(data, data);
+    }
+    
+    /**
+     * Contratos com vigência em algum dia do período informado (inclusive), em ordem de início de vigência
+     */
+    public List<Contrato> buscarContratosVigentesNoPeriodo(LocalDate inicio, LocalDate fim) {
+        return contratosPorVigencia.buscarSobrepostos(inicio, fim);
     }
     
     public NotaEmpenho registrarEmpenho(Contrato contrato, String numero, 
-                                      LocalDate data, double valor, Usuario ordenador) {
+                                      LocalDate data, long valor, Usuario ordenador) {
         // Verificar se o ordenador tem o papel adequado
         if (!ordenador.getTipo().equals(TipoUsuario.ORDENADOR_DESPESA)) {
             throw new IllegalArgumentException("Usuário não tem permissão para ser ordenador de despesa");
         }
         
+        verificarContratoCadastrado(contrato);
         NotaEmpenho empenho = new NotaEmpenho(numero, contrato, data, valor, ordenador);
-        empenhos.add(empenho);
-        contrato.adicionarEmpenho(empenho);
-        
-        registrarLog("Registro de Empenho", "Nota de Empenho " + numero + 
-                   " registrada para o contrato " + contrato.getNumero(), ordenador);
+        bloqueiosContrato.executar(contrato.getNumero(), () -> {
+            // O valor é reservado no razão antes da gravação e estornado se ela falhar
+            contrato.getRazao().empenhar(valor);
+            try {
+                persistir(OperacaoPersistida.REGISTRO_EMPENHO, saida -> codec.escreverEmpenho(saida, empenho));
+            } catch (RuntimeException e) {
+                contrato.getRazao().estornar(valor, 0, 0);
+                throw e;
+            }
+            aplicarRegistroEmpenho(empenho);
+            publicar(new EmpenhoRegistrado(empenho));
+        });
+        concluirOperacao();
         
         return empenho;
     }
     
     public void registrarEntrega(Contrato contrato, EntregaItem entrega) {
-        contrato.adicionarEntrega(entrega);
+        verificarContratoCadastrado(contrato);
+        
+        // Os itens entregues precisam pertencer ao processo do contrato
+        List<Item> itensProcesso = contrato.getProcesso().getItens();
+        for (ItemEntregue itemEntregue : entrega.getItensEntregues()) {
+            if (CodecAquisicoes.indicePorIdentidade(itensProcesso, itemEntregue.getItem()) < 0) {
+                throw new IllegalArgumentException("Item " + itemEntregue.getItem().getNome() + 
+                                                   " não pertence ao processo do contrato " + contrato.getNumero());
+            }
+            if (itemEntregue.getQuantidade() <= 0) {
+                throw new IllegalArgumentException("Quantidade entregue do item " + itemEntregue.getItem().getNome() + 
+                                                   " deve ser positiva");
+            }
+        }
+        
+        bloqueiosContrato.executar(contrato.getNumero(), () -> {
+            persistir(OperacaoPersistida.REGISTRO_ENTREGA, saida -> {
+                CodecAquisicoes.escreverTexto(saida, contrato.getNumero());
+                codec.escreverEntrega(saida, entrega, itensProcesso);
+            });
+            contrato.adicionarEntrega(entrega);
+            publicar(new EntregaRegistrada(contrato, entrega));
+            
+            // A entrega acima do contratado é aceita, mas sinalizada na trilha de auditoria
+            IndiceEntregas indice = contrato.getIndiceEntregas();
+            Set<Item> sinalizados = new HashSet<>();
+            for (ItemEntregue itemEntregue : entrega.getItensEntregues()) {
+                Item item = itemEntregue.getItem();
+                if (indice.isExcedido(item) && sinalizados.add(item)) {
+                    publicar(new EntregaAcimaContratado(contrato, entrega, item, indice.getQuantidadeEntregue(item)));
+                }
+            }
+        });
+        concluirOperacao();
+    }
+    
+    /**
+     * Registra a liquidação de parte do valor empenhado, que passa a poder ser paga
+     */
+    public Liquidacao registrarLiquidacao(Contrato contrato, String numero, 
+                                          LocalDate data, long valor, Usuario ordenador) {
+        // Verificar se o ordenador tem o papel adequado
+        if (!ordenador.getTipo().equals(TipoUsuario.ORDENADOR_DESPESA)) {
+            throw new IllegalArgumentException("Usuário não tem permissão para liquidar despesa");
+        }
+        
+        verificarContratoCadastrado(contrato);
+        Liquidacao liquidacao = new Liquidacao(numero, contrato, data, valor, ordenador);
+        bloqueiosContrato.executar(contrato.getNumero(), () -> {
+            contrato.getRazao().liquidar(valor);
+            try {
+                persistir(OperacaoPersistida.REGISTRO_LIQUIDACAO, saida -> codec.escreverLiquidacao(saida, liquidacao));
+            } catch (RuntimeException e) {
+                contrato.getRazao().estornar(0, valor, 0);
+                throw e;
+            }
+            aplicarRegistroLiquidacao(liquidacao);
+            publicar(new LiquidacaoRegistrada(liquidacao));
+        });
+        concluirOperacao();
         
-        registrarLog("Registro de Entrega", "Entrega registrada para o contrato " + 
-                   contrato.getNumero() + ": " + entrega.getDescricao(), entrega.getResponsavel());
+        return liquidacao;
     }
     
     public Pagamento registrarPagamento(Contrato contrato, String numero, 
-                                      LocalDate data, double valor, String descricao, 
+                                      LocalDate data, long valor, String descricao, 
                                       Usuario ordenador) {
         // Verificar se o ordenador tem o papel adequado
         if (!ordenador.getTipo().equals(TipoUsuario.ORDENADOR_DESPESA)) {
             throw new IllegalArgumentException("Usuário não tem permissão para autorizar pagamento");
         }
         
+        verificarContratoCadastrado(contrato);
         Pagamento pagamento = new Pagamento(numero, contrato, data, valor, descricao, ordenador);
-        pagamentos.add(pagamento);
-        contrato.adicionarPagamento(pagamento);
-        
-        registrarLog("Registro de Pagamento", "Pagamento " + numero + 
-                   " registrado para o contrato " + contrato.getNumero(), ordenador);
+        bloqueiosContrato.executar(contrato.getNumero(), () -> {
+            contrato.getRazao().pagar(valor);
+            try {
+                persistir(OperacaoPersistida.REGISTRO_PAGAMENTO, saida -> codec.escreverPagamento(saida, pagamento));
+            } catch (RuntimeException e) {
+                contrato.getRazao().estornar(0, 0, valor);
+                throw e;
+            }
+            aplicarRegistroPagamento(pagamento);
+            publicar(new PagamentoRegistrado(pagamento));
+        });
+        concluirOperacao();
         
         return pagamento;
     }
     
+    /**
+     * Pagamentos com data entre as datas informadas (inclusive), em ordem de data
+     */
+    public Collection<Pagamento> buscarPagamentosPorPeriodo(LocalDate inicio, LocalDate fim) {
+        return pagamentos.listarEntre(inicio, fim);
+    }
+    
+    // Métodos de eventos de domínio
+    
+    /**
+     * Passa a entregar ao assinante, em lotes e em uma thread própria, os eventos de domínio das
+     * operações concluídas a partir de agora, na ordem em que foram aplicadas (ver BarramentoEventos).
+     * O barramento tem capacidade limitada: um assinante lento atrasa as operações de escrita, que
+     * aguardam espaço no anel, em vez de acumular eventos sem limite.
+     */
+    public AssinaturaEventos assinarEventos(String nome, AssinanteEventos assinante) {
+        return barramentoEventos.assinar(nome, assinante);
+    }
+    
+    // Métodos de alertas de prazo
+    
+    /**
+     * Passa a entregar ao destino os alertas de vencimento de contratos (90, 60 e 30 dias antes
+     * do fim da vigência) e de prazo das etapas dos processos. Todo alerta também é registrado
+     * no log de auditoria.
+     */
+    public void registrarDestinoAlertas(DestinoAlertas destino) {
+        destinosAlertas.add(Objects.requireNonNull(destino, "destino"));
+    }
+    
+    public void removerDestinoAlertas(DestinoAlertas destino) {
+        destinosAlertas.remove(destino);
+    }
+    
+    /**
+     * Passa a notificar o observador das falhas da verificação agendada de prazos e dos destinos
+     * de alertas, na thread em que ocorrem. A verificação e a entrega aos demais destinos continuam.
+     */
+    public void registrarObservadorFalhasPrazos(Consumer<RuntimeException> observador) {
+        observadoresFalhasPrazos.add(Objects.requireNonNull(observador, "observador"));
+    }
+    
+    /**
+     * Verificações agendadas de prazo interrompidas por exceção
+     */
+    public long getFalhasVerificacaoPrazos() {
+        return falhasVerificacaoPrazos.get();
+    }
+    
+    /**
+     * Entregas de alerta em que o destino lançou exceção
+     */
+    public long getFalhasDestinosAlertas() {
+        return falhasDestinosAlertas.get();
+    }
+    
+    /**
+     * Falha mais recente da verificação de prazos ou de um destino de alertas, ou null
+     */
+    public RuntimeException getUltimaFalhaPrazos() {
+        return ultimaFalhaPrazos;
+    }
+    
+    /**
+     * Entrega os alertas agendados até o dia informado, inclusive, que ainda valem: contratos
+     * não arquivados de processos em andamento e processos que permanecem na etapa do prazo.
+     * A verificação é feita de hora em hora com a data corrente; este método permite antecipá-la.
+     * 
+     * Os alertas já entregues não são persistidos: ao reiniciar, os alertas do dia e os de prazos
+     * já vencidos são entregues novamente.
+     * 
+     * @return a quantidade de alertas entregues
+     */
+    public int verificarPrazos(LocalDate hoje) {
+        // Os prazos das operações já concluídas são agendados pelo assinante das visões
+        assinaturaVistas.aguardar();
+        int entregues = 0;
+        // Uma verificação por vez, para que os destinos recebam os alertas em ordem de data. O monitor não é
+        // o da agenda, pois a publicação de um alerta pode aguardar o assinante, que agenda prazos nela
+        synchronized (verificacaoPrazos) {
+            for (AlertaPrazo alerta : agendaPrazos.avancar(hoje)) {
+                String numeroProcesso = processoDoAlerta(alerta);
+                if (numeroProcesso == null) {
+                    continue;
+                }
+                publicar(new AlertaPrazoEmitido(alerta, numeroProcesso));
+                for (DestinoAlertas destino : destinosAlertas) {
+                    try {
+                        destino.alertar(alerta);
+                    } catch (RuntimeException e) {
+                        // Um destino com falha não impede a entrega aos demais
+                        registrarFalhaPrazos(falhasDestinosAlertas, 
+                            new IllegalStateException("Destino de alertas falhou: " + alerta.getDescricao(), e));
+                    }
+                }
+                entregues++;
+            }
+        }
+        aguardarAuditoria();
+        return entregues;
+    }
+    
+    public int getQuantidadeAlertasAgendados() {
+        assinaturaVistas.aguardar();
+        return agendaPrazos.getQuantidade();
+    }
+    
+    // Métodos de pesquisa de preços
+    
+    /**
+     * Estatísticas dos preços unitários já praticados para o item de descrição e unidade
+     * informadas, em propostas ou contratos com data de envio ou início de vigência de
+     * anoInicial a anoFinal, inclusive processos arquivados; null se não houver preços.
+     * A descrição é comparada pelos termos (ver IndicePrecos).
+     */
+    public ReferenciaPrecos pesquisarPrecos(String descricao, UnidadeMedida unidade, OrigemPreco origem, 
+                                            int anoInicial, int anoFinal) {
+        assinaturaVistas.aguardar();
+        return indicePrecos.consultar(descricao, unidade, origem, anoInicial, anoFinal);
+    }
+    
+    /**
+     * Estatísticas de todo o histórico de preços do item
+     */
+    public ReferenciaPrecos pesquisarPrecos(String descricao, UnidadeMedida unidade, OrigemPreco origem) {
+        return pesquisarPrecos(descricao, unidade, origem, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+    
+    // Métodos de análise de gastos
+    /**
+     * Gera uma cópia colunar dos pagamentos dos contratos não arquivados para análises de gasto
+     * (ver SnapshotAnalitico). A cópia não bloqueia as operações de escrita; pagamentos
+     * registrados durante a geração podem ou não ser incluídos.
+     */
+    public SnapshotAnalitico gerarSnapshotAnalitico() {
+        int capacidade = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(16, pagamentos.tamanho() + 1024));
+        long[] valores = new long[capacidade];
+        int[] meses = new int[capacidade];
+        byte[] modalidades = new byte[capacidade];
+        int[] categorias = new int[capacidade];
+        int[] departamentos = new int[capacidade];
+        Map<String, Integer> codigosCategorias = new HashMap<>();
+        Map<String, Integer> codigosDepartamentos = new HashMap<>();
+        
+        int linhas = 0;
+        for (Pagamento pagamento : pagamentos) {
+            if (linhas == valores.length) {
+                capacidade = valores.length + (valores.length >> 1);
+                valores = Arrays.copyOf(valores, capacidade);
+                meses = Arrays.copyOf(meses, capacidade);
+                modalidades = Arrays.copyOf(modalidades, capacidade);
+                categorias = Arrays.copyOf(categorias, capacidade);
+                departamentos = Arrays.copyOf(departamentos, capacidade);
+            }
+            Contrato contrato = pagamento.getContrato();
+            ProcessoAquisicao processo = contrato.getProcesso();
+            valores[linhas] = pagamento.getValor();
+            meses[linhas] = SnapshotAnalitico.mes(pagamento.getData());
+            modalidades[linhas] = (byte) processo.getModalidade().ordinal();
+            categorias[linhas] = codigo(codigosCategorias, contrato.getFornecedor().getCategoria());
+            departamentos[linhas] = codigo(codigosDepartamentos, processo.getResponsavel().getDepartamento());
+            linhas++;
+        }
+        
+        return new SnapshotAnalitico(linhas, valores, meses, modalidades, categorias, nomes(codigosCategorias), 
+                                     departamentos, nomes(codigosDepartamentos));
+    }
+    
+    /**
+     * Último snapshot analítico gerado, ou um novo se não houver um mais recente que a idade máxima
+     */
+    public SnapshotAnalitico buscarSnapshotAnalitico(Duration idadeMaxima) {
+        SnapshotAnalitico atual = snapshotAnalitico;
+        if (atual != null && atual.getDataGeracao().plus(idadeMaxima).isAfter(Instant.now())) {
+            return atual;
+        }
+        synchronized (this) {
+            atual = snapshotAnalitico;
+            if (atual == null || !atual.getDataGeracao().plus(idadeMaxima).isAfter(Instant.now())) {
+                atual = gerarSnapshotAnalitico();
+                snapshotAnalitico = atual;
+            }
+            return atual;
+        }
+    }
+    
+    private static int codigo(Map<String, Integer> codigos, String nome) {
+        return codigos.computeIfAbsent(nome != null ? nome : "Não informado", chave -> codigos.size());
+    }
+    
+    private static String[] nomes(Map<String, Integer> codigos) {
+        String[] nomes = new String[codigos.size()];
+        for (Map.Entry<String, Integer> entrada : codigos.entrySet()) {
+            nomes[entrada.getValue()] = entrada.getKey();
+        }
+        return nomes;
+    }
+    
+    // Métodos de arquivamento
+    
+    /**
+     * Move os processos concluídos ou cancelados, com seus contratos, entregas e registros
+     * financeiros, para o arquivo de processos, liberando seus objetos do heap. Os processos
+     * arquivados deixam de ser retornados pelas buscas e relatórios do sistema; seus totais
+     * ficam disponíveis nas consultas do arquivo e cada processo pode ser recuperado por
+     * buscarProcessoArquivado. Referências já obtidas a um processo arquivado, ou aos seus
+     * contratos, continuam legíveis, mas as operações de alteração lançam IllegalStateException.
+     * 
+     * @return a quantidade de processos arquivados
+     */
+    public int arquivarProcessosConcluidos(Usuario responsavel) {
+        // Verificar permissão do usuário
+        if (!responsavel.getTipo().equals(TipoUsuario.GESTOR) && 
+            !responsavel.getTipo().equals(TipoUsuario.ORDENADOR_DESPESA)) {
+            throw new IllegalArgumentException("Usuário não tem permissão para arquivar processos");
+        }
+        
+        List<ProcessoAquisicao> concluidos = new ArrayList<>();
+        // O bloqueio exclusivo aguarda as operações em andamento: nenhum processo muda enquanto é arquivado
+        bloqueioEstado.writeLock().lock();
+        try {
+            for (ProcessoAquisicao processo : processos) {
+                EtapaProcesso etapa = processo.getEtapaAtual();
+                if (etapa == EtapaProcesso.CONCLUIDO || etapa == EtapaProcesso.CANCELADO) {
+                    concluidos.add(processo);
+                }
+            }
+            if (concluidos.isEmpty()) {
+                return 0;
+            }
+            
+            // Publicado o segmento, o arquivo prevalece: não há registro no log de persistência
+            String segmento;
+            try {
+                segmento = arquivoProcessos.arquivar(concluidos);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Falha ao gravar o arquivo de processos", e);
+            }
+            // O índice textual só perde os processos depois de receber as inclusões já publicadas
+            assinaturaVistas.aguardar();
+            removerArquivados(concluidos);
+            publicar(new ProcessosArquivados(concluidos.size(), segmento, responsavel));
+        } finally {
+            bloqueioEstado.writeLock().unlock();
+        }
+        aguardarAuditoria();
+        
+        return concluidos.size();
+    }
+    
+    public long getQuantidadeProcessosArquivados() {
+        return arquivoProcessos.getQuantidadeProcessos();
+    }
+    
+    /**
+     * Totais dos processos arquivados por modalidade, calculados sobre as colunas do arquivo
+     */
+    public Map<ModalidadeLicitacao, TotaisArquivo> buscarTotaisArquivadosPorModalidade() {
+        return arquivoProcessos.totaisPorModalidade();
+    }
+    
+    /**
+     * Totais dos processos arquivados por CNPJ do fornecedor contratado
+     */
+    public Map<String, TotaisArquivo> buscarTotaisArquivadosPorFornecedor() {
+        return arquivoProcessos.totaisPorFornecedor();
+    }
+    
+    /**
+     * Totais dos processos arquivados por ano de abertura
+     */
+    public Map<Integer, TotaisArquivo> buscarTotaisArquivadosPorAno() {
+        return arquivoProcessos.totaisPorAno();
+    }
+    
+    // Métodos de importação em lote
+    // Os arquivos CSV (separados por ';', com cabeçalho) são lidos em blocos; cada bloco é
+    // validado em paralelo enquanto o anterior é gravado. Cada lote aceito é persistido em um
+    // único registro do log e gera uma única entrada resumida de auditoria.
+    // Os valores monetários seguem estritamente o formato brasileiro: vírgula decimal com até
+    // duas casas e ponto apenas como separador de milhar ("1.234,56", "1500"). Valores em
+    // outro formato ("1234.56", "1,234.56") ou com mais casas ("10,005") rejeitam a linha.
+    
+    /**
+     * Importa fornecedores com as colunas cnpj;razaoSocial;email;categoria.
+     * O documento pode ser um CNPJ ou, para pessoa física, um CPF, com ou sem pontuação.
+     */
+    public ResultadoImportacao importarFornecedores(Path arquivo, Usuario responsavel) throws IOException {
+        validarResponsavelImportacao(responsavel);
+        
+        Set<String> documentosArquivo = new HashSet<>();
+        ImportadorCsv<Fornecedor> importador = new ImportadorCsv<>(
+            new String[] {"cnpj", "razaoSocial", "email", "categoria"}, TAMANHO_LOTE_IMPORTACAO, this::converterFornecedor);
+        return importador.importar(arquivo, lote -> gravarLoteFornecedores(lote, documentosArquivo, responsavel));
+    }
+    
+    /**
+     * Importa itens com as colunas numeroProcesso;nome;descricao;valorUnitario;quantidade;unidade.
+     * Itens com mesmo nome e descrição de outro item do processo são rejeitados como duplicados.
+     * O valor unitário segue o formato brasileiro ("1.234,56"); "1.500" é lido como mil e quinhentos reais.
+     */
+    public ResultadoImportacao importarItens(Path arquivo, Usuario responsavel) throws IOException {
+        validarResponsavelImportacao(responsavel);
+        
+        Set<String> itensArquivo = new HashSet<>();
+        ImportadorCsv<ItemImportado> importador = new ImportadorCsv<>(
+            new String[] {"numeroProcesso", "nome", "descricao", "valorUnitario", "quantidade", "unidade"}, 
+            TAMANHO_LOTE_IMPORTACAO, this::converterItem);
+        return importador.importar(arquivo, lote -> gravarLoteItens(lote, itensArquivo, responsavel));
+    }
+    
+    /**
+     * Importa propostas com as colunas numeroProcesso;cnpj;dataEnvio;valorTotal;descricao.
+     * Cada fornecedor pode ter uma única proposta por processo; a data de envio segue o formato ISO (2024-03-15T14:30).
+     * O valor total segue o formato brasileiro ("1.234,56"); "1.500" é lido como mil e quinhentos reais.
+     */
+    public ResultadoImportacao importarPropostas(Path arquivo, Usuario responsavel) throws IOException {
+        validarResponsavelImportacao(responsavel);
+        
+        Set<String> propostasArquivo = new HashSet<>();
+        ImportadorCsv<Proposta> importador = new ImportadorCsv<>(
+            new String[] {"numeroProcesso", "cnpj", "dataEnvio", "valorTotal", "descricao"}, 
+            TAMANHO_LOTE_IMPORTACAO, this::converterProposta);
+        return importador.importar(arquivo, lote -> gravarLotePropostas(lote, propostasArquivo, responsavel));
+    }
+    
     // Métodos de geração de relatórios
+    // Cada relatório pode ser escrito incrementalmente em um Appendable (Writer, StringBuilder...)
+    // ou em um OutputStream, sem montar o texto completo em memória. As versões que retornam
+    // String apenas acumulam a saída em um StringBuilder.
     public String gerarRelatorioProcesso(ProcessoAquisicao processo) {
-        StringBuilder relatorio = new StringBuilder();
+        return gerarTexto(relatorio -> gerarRelatorioProcesso(processo, relatorio));
+    }
+    
+    public void gerarRelatorioProcesso(ProcessoAquisicao processo, OutputStream destino) throws IOException {
+        Writer escritor = criarEscritorRelatorio(destino);
+        gerarRelatorioProcesso(processo, escritor);
+        escritor.flush();
+    }
+    
+    public void gerarRelatorioProcesso(ProcessoAquisicao processo, Appendable relatorio) throws IOException {
+        NumberFormat formatoMoeda = this.formatoMoeda.get();
         DateTimeFormatter formatoData = DateTimeFormatter.ofPattern("dd/MM/yyyy");
         
         relatorio.append("RELATÓRIO DE PROCESSO DE AQUISIÇÃO\n");
@@ -373,19 +1437,19 @@ class SistemaAquisicoes {
         relatorio.append("Título: ").append(processo.getTitulo()).append("\n");
         relatorio.append("Descrição: ").append(processo.getDescricao()).append("\n");
         relatorio.append("Responsável: ").append(processo.getResponsavel().getNome()).append("\n");
-        relatorio.append("Modalidade: ").append(processo.getModalidade()).append("\n");
+        relatorio.append("Modalidade: ").append(processo.getModalidade().name()).append("\n");
         relatorio.append("Data de Abertura: ").append(processo.getDataAbertura().format(formatoData)).append("\n");
-        relatorio.append("Valor Estimado: ").append(formatoMoeda.format(processo.getValorEstimado())).append("\n");
-        relatorio.append("Etapa Atual: ").append(processo.getEtapaAtual()).append("\n\n");
+        relatorio.append("Valor Estimado: ").append(Dinheiro.formatar(formatoMoeda, processo.getValorEstimado())).append("\n");
+        relatorio.append("Etapa Atual: ").append(processo.getEtapaAtual().name()).append("\n\n");
         
         relatorio.append("ITENS DO PROCESSO\n");
         relatorio.append("-----------------\n");
         for (Item item : processo.getItens()) {
             relatorio.append("- ").append(item.getNome()).append(": ")
-                    .append(item.getQuantidade()).append(" ")
-                    .append(item.getUnidade()).append(" x ")
-                    .append(formatoMoeda.format(item.getValorUnitario()))
-                    .append(" = ").append(formatoMoeda.format(item.getValorTotal()))
+                    .append(String.valueOf(item.getQuantidade())).append(" ")
+                    .append(item.getUnidade().name()).append(" x ")
+                    .append(Dinheiro.formatar(formatoMoeda, item.getValorUnitario()))
+                    .append(" = ").append(Dinheiro.formatar(formatoMoeda, item.getValorTotal()))
                     .append("\n");
         }
         relatorio.append("\n");
@@ -404,7 +1468,7 @@ class SistemaAquisicoes {
         relatorio.append("------------------\n");
         for (Proposta proposta : processo.getPropostas()) {
             relatorio.append("- Fornecedor: ").append(proposta.getFornecedor().getRazaoSocial())
-                    .append(" - Valor: ").append(formatoMoeda.format(proposta.getValorTotal()))
+                    .append(" - Valor: ").append(Dinheiro.formatar(formatoMoeda, proposta.getValorTotal()))
                     .append(" - Data: ").append(proposta.getDataEnvio().format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm")))
                     .append("\n");
         }
@@ -414,9 +1478,9 @@ class SistemaAquisicoes {
             relatorio.append("PROPOSTA VENCEDORA\n");
             relatorio.append("-----------------\n");
             relatorio.append("Fornecedor: ").append(processo.getPropostaVencedora().getFornecedor().getRazaoSocial()).append("\n");
-            relatorio.append("Valor: ").append(formatoMoeda.format(processo.getPropostaVencedora().getValorTotal())).append("\n");
-            relatorio.append("Economia: ").append(formatoMoeda.format(processo.getValorEstimado() - processo.getPropostaVencedora().getValorTotal()))
-                    .append(" (").append(String.format("%.2f", (1 - processo.getPropostaVencedora().getValorTotal() / processo.getValorEstimado()) * 100))
+            relatorio.append("Valor: ").append(Dinheiro.formatar(formatoMoeda, processo.getPropostaVencedora().getValorTotal())).append("\n");
+            relatorio.append("Economia: ").append(Dinheiro.formatar(formatoMoeda, Dinheiro.subtrair(processo.getValorEstimado(), processo.getPropostaVencedora().getValorTotal())))
+                    .append(" (").append(String.format("%.2f", Dinheiro.percentual(Dinheiro.subtrair(processo.getValorEstimado(), processo.getPropostaVencedora().getValorTotal()), processo.getValorEstimado())))
                     .append("%)\n\n");
         }
         
@@ -429,7 +1493,7 @@ class SistemaAquisicoes {
             relatorio.append("Fornecedor: ").append(contrato.getFornecedor().getRazaoSocial()).append("\n");
             relatorio.append("Vigência: ").append(contrato.getDataInicio().format(formatoData))
                     .append(" a ").append(contrato.getDataFim().format(formatoData)).append("\n");
-            relatorio.append("Valor: ").append(formatoMoeda.format(contrato.getValor())).append("\n");
+            relatorio.append("Valor: ").append(Dinheiro.formatar(formatoMoeda, contrato.getValor())).append("\n");
             relatorio.append("Fiscal: ").append(contrato.getFiscal().getNome()).append("\n\n");
             
             relatorio.append("EMPENHOS\n");
@@ -437,7 +1501,7 @@ class SistemaAquisicoes {
             for (NotaEmpenho empenho : contrato.getEmpenhos()) {
                 relatorio.append("- ").append(empenho.getNumero())
                         .append(" - Data: ").append(empenho.getData().format(formatoData))
-                        .append(" - Valor: ").append(formatoMoeda.format(empenho.getValor()))
+                        .append(" - Valor: ").append(Dinheiro.formatar(formatoMoeda, empenho.getValor()))
                         .append(" - Ordenador: ").append(empenho.getOrdenador().getNome())
                         .append("\n");
             }
@@ -453,40 +1517,73 @@ class SistemaAquisicoes {
                 
                 for (ItemEntregue itemEntregue : entrega.getItensEntregues()) {
                     relatorio.append("  * ").append(itemEntregue.getItem().getNome())
-                            .append(": ").append(itemEntregue.getQuantidade())
-                            .append(" ").append(itemEntregue.getItem().getUnidade())
+                            .append(": ").append(String.valueOf(itemEntregue.getQuantidade()))
+                            .append(" ").append(itemEntregue.getItem().getUnidade().name())
                             .append("\n");
                 }
             }
             relatorio.append("\n");
             
+            relatorio.append("SALDO DE ENTREGA POR ITEM\n");
+            relatorio.append("-------------------------\n");
+            IndiceEntregas indiceEntregas = contrato.getIndiceEntregas();
+            for (Item item : processo.getItens()) {
+                relatorio.append("- ").append(item.getNome())
+                        .append(": entregue ").append(String.valueOf(indiceEntregas.getQuantidadeEntregue(item)))
+                        .append(" de ").append(String.valueOf(item.getQuantidade()))
+                        .append(" ").append(item.getUnidade().name())
+                        .append(" (").append(Dinheiro.formatar(formatoMoeda, indiceEntregas.getValorEntregue(item)))
+                        .append(") - Pendente: ").append(String.valueOf(indiceEntregas.getQuantidadePendente(item)));
+                if (indiceEntregas.isExcedido(item)) {
+                    relatorio.append(" - EXCESSO: ").append(String.valueOf(indiceEntregas.getQuantidadeExcedente(item)));
+                }
+                relatorio.append("\n");
+            }
+            relatorio.append("\n");
+            
+            relatorio.append("LIQUIDAÇÕES\n");
+            relatorio.append("-----------\n");
+            for (Liquidacao liquidacao : contrato.getLiquidacoes()) {
+                relatorio.append("- ").append(liquidacao.getNumero())
+                        .append(" - Data: ").append(liquidacao.getData().format(formatoData))
+                        .append(" - Valor: ").append(Dinheiro.formatar(formatoMoeda, liquidacao.getValor()))
+                        .append("\n");
+            }
+            relatorio.append("\n");
+            
             relatorio.append("PAGAMENTOS\n");
             relatorio.append("----------\n");
             for (Pagamento pagamento : contrato.getPagamentos()) {
                 relatorio.append("- ").append(pagamento.getNumero())
                         .append(" - Data: ").append(pagamento.getData().format(formatoData))
-                        .append(" - Valor: ").append(formatoMoeda.format(pagamento.getValor()))
+                        .append(" - Valor: ").append(Dinheiro.formatar(formatoMoeda, pagamento.getValor()))
                         .append(" - ").append(pagamento.getDescricao())
                         .append("\n");
             }
             
-            // Calcular saldo do contrato
-            double totalPago = contrato.getPagamentos().stream()
-                .mapToDouble(Pagamento::getValor)
-                .sum();
-            
-            relatorio.append("\nTotal Pago: ").append(formatoMoeda.format(totalPago))
-                    .append(" (").append(String.format("%.2f", (totalPago / contrato.getValor()) * 100))
+            // Saldos mantidos pelo razão do contrato
+            SaldoContrato saldo = contrato.getRazao().getSaldo();
+            relatorio.append("\nTotal Empenhado: ").append(Dinheiro.formatar(formatoMoeda, saldo.getEmpenhado())).append("\n");
+            relatorio.append("Total Liquidado: ").append(Dinheiro.formatar(formatoMoeda, saldo.getLiquidado())).append("\n");
+            relatorio.append("Total Pago: ").append(Dinheiro.formatar(formatoMoeda, saldo.getPago()))
+                    .append(" (").append(String.format("%.2f", Dinheiro.percentual(saldo.getPago(), contrato.getValor())))
                     .append("%)\n");
-            relatorio.append("Saldo: ").append(formatoMoeda.format(contrato.getValor() - totalPago))
+            relatorio.append("Saldo: ").append(Dinheiro.formatar(formatoMoeda, saldo.getSaldoContrato()))
                     .append("\n");
         }
-        
-        return relatorio.toString();
     }
     
     public String gerarRelatorioAuditoria(ProcessoAquisicao processo) {
-        StringBuilder relatorio = new StringBuilder();
+        return gerarTexto(relatorio -> gerarRelatorioAuditoria(processo, relatorio));
+    }
+    
+    public void gerarRelatorioAuditoria(ProcessoAquisicao processo, OutputStream destino) throws IOException {
+        Writer escritor = criarEscritorRelatorio(destino);
+        gerarRelatorioAuditoria(processo, escritor);
+        escritor.flush();
+    }
+    
+    public void gerarRelatorioAuditoria(ProcessoAquisicao processo, Appendable relatorio) throws IOException {
         DateTimeFormatter formatoDataHora = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
         
         relatorio.append("RELATÓRIO DE AUDITORIA DO PROCESSO\n");
@@ -497,12 +1594,13 @@ class SistemaAquisicoes {
         relatorio.append("LOGS DE AUDITORIA\n");
         relatorio.append("----------------\n");
         
-        List<LogAuditoria> logsDoProcesso = logsAuditoria.stream()
-            .filter(log -> log.getDescricao().contains(processo.getNumero()))
-            .sorted(Comparator.comparing(LogAuditoria::getDataHora))
-            .toList();
+        // Os logs já são indexados por processo em ordem cronológica de registro e
+        // são lidos diretamente dos segmentos mapeados do journal
+        assinaturaAuditoria.aguardar();
+        ListaPosicoes logsDoProcesso = logsPorProcesso.getOrDefault(processo.getNumero(), ListaPosicoes.VAZIA);
         
-        for (LogAuditoria log : logsDoProcesso) {
+        for (int i = 0; i < logsDoProcesso.tamanho(); i++) {
+            LogAuditoria log = journalAuditoria.ler(logsDoProcesso.get(i), usuariosPorCpf::get);
             relatorio.append("- ").append(log.getDataHora().format(formatoDataHora))
                     .append(" - ").append(log.getTipo())
                     .append(" - ").append(log.getDescricao());
@@ -513,12 +1611,20 @@ class SistemaAquisicoes {
             
             relatorio.append("\n");
         }
-        
-        return relatorio.toString();
     }
     
     public String gerarRelatorioTransparencia() {
-        StringBuilder relatorio = new StringBuilder();
+        return gerarTexto(relatorio -> gerarRelatorioTransparencia(relatorio));
+    }
+    
+    public void gerarRelatorioTransparencia(OutputStream destino) throws IOException {
+        Writer escritor = criarEscritorRelatorio(destino);
+        gerarRelatorioTransparencia(escritor);
+        escritor.flush();
+    }
+    
+    public void gerarRelatorioTransparencia(Appendable relatorio) throws IOException {
+        NumberFormat formatoMoeda = this.formatoMoeda.get();
         DateTimeFormatter formatoData = DateTimeFormatter.ofPattern("dd/MM/yyyy");
         
         relatorio.append("RELATÓRIO DE TRANSPARÊNCIA - AQUISIÇÕES\n");
@@ -527,17 +1633,13 @@ class SistemaAquisicoes {
         relatorio.append("PROCESSOS DE AQUISIÇÃO EM ANDAMENTO\n");
         relatorio.append("---------------------------------\n");
         
-        List<ProcessoAquisicao> processosEmAndamento = processos.stream()
-            .filter(p -> p.getEtapaAtual() != EtapaProcesso.CONCLUIDO && p.getEtapaAtual() != EtapaProcesso.CANCELADO)
-            .sorted(Comparator.comparing(ProcessoAquisicao::getDataAbertura).reversed())
-            .toList();
-        
-        for (ProcessoAquisicao processo : processosEmAndamento) {
+        // As visões já estão filtradas e ordenadas; o custo do relatório é proporcional à saída
+        for (ProcessoAquisicao processo : vistasTransparencia.processosEmAndamento()) {
             relatorio.append("- Processo: ").append(processo.getNumero())
                     .append(" - ").append(processo.getTitulo())
-                    .append(" - Modalidade: ").append(processo.getModalidade())
-                    .append(" - Valor Estimado: ").append(formatoMoeda.format(processo.getValorEstimado()))
-                    .append(" - Etapa: ").append(processo.getEtapaAtual())
+                    .append(" - Modalidade: ").append(processo.getModalidade().name())
+                    .append(" - Valor Estimado: ").append(Dinheiro.formatar(formatoMoeda, processo.getValorEstimado()))
+                    .append(" - Etapa: ").append(processo.getEtapaAtual().name())
                     .append("\n");
         }
         relatorio.append("\n");
@@ -546,16 +1648,11 @@ class SistemaAquisicoes {
         relatorio.append("-----------------\n");
         
         LocalDate hoje = LocalDate.now();
-        List<Contrato> contratosVigentes = contratos.stream()
-            .filter(c -> !c.getDataFim().isBefore(hoje))
-            .sorted(Comparator.comparing(Contrato::getDataInicio).reversed())
-            .toList();
-        
-        for (Contrato contrato : contratosVigentes) {
+        for (Contrato contrato : vistasTransparencia.contratosVigentes(hoje)) {
             relatorio.append("- Contrato: ").append(contrato.getNumero())
                     .append(" - Processo: ").append(contrato.getProcesso().getNumero())
                     .append(" - Fornecedor: ").append(contrato.getFornecedor().getRazaoSocial())
-                    .append(" - Valor: ").append(formatoMoeda.format(contrato.getValor()))
+                    .append(" - Valor: ").append(Dinheiro.formatar(formatoMoeda, contrato.getValor()))
                     .append(" - Vigência: ").append(contrato.getDataInicio().format(formatoData))
                     .append(" a ").append(contrato.getDataFim().format(formatoData))
                     .append("\n");
@@ -565,508 +1662,10148 @@ class SistemaAquisicoes {
         relatorio.append("PAGAMENTOS REALIZADOS (ÚLTIMOS 30 DIAS)\n");
         relatorio.append("-------------------------------------\n");
         
-        LocalDate trintaDiasAtras = hoje.minusDays(30);
-        List<Pagamento> pagamentosRecentes = pagamentos.stream()
-            .filter(p -> !p.getData().isBefore(trintaDiasAtras))
-            .sorted(Comparator.comparing(Pagamento::getData).reversed())
-            .toList();
-        
-        for (Pagamento pagamento : pagamentosRecentes) {
+        VistasTransparencia.PagamentosRecentes pagamentosRecentes = vistasTransparencia.pagamentosRecentes(hoje);
+        for (Pagamento pagamento : pagamentosRecentes.getPagamentos()) {
             relatorio.append("- Pagamento: ").append(pagamento.getNumero())
                     .append(" - Contrato: ").append(pagamento.getContrato().getNumero())
                     .append(" - Fornecedor: ").append(pagamento.getContrato().getFornecedor().getRazaoSocial())
                     .append(" - Data: ").append(pagamento.getData().format(formatoData))
-                    .append(" - Valor: ").append(formatoMoeda.format(pagamento.getValor()))
+                    .append(" - Valor: ").append(Dinheiro.formatar(formatoMoeda, pagamento.getValor()))
                     .append("\n");
         }
         
-        // Calcular total de pagamentos no período
-        double totalPagamentosRecentes = pagamentosRecentes.stream()
-            .mapToDouble(Pagamento::getValor)
-            .sum();
-        
+        // O total da janela é mantido incrementalmente pela visão
         relatorio.append("\nTotal de Pagamentos (últimos 30 dias): ")
-                .append(formatoMoeda.format(totalPagamentosRecentes))
+                .append(Dinheiro.formatar(formatoMoeda, pagamentosRecentes.getTotal()))
                 .append("\n");
-        
+    }
+    
+    private static String gerarTexto(GeradorRelatorio gerador) {
+        StringBuilder relatorio = new StringBuilder();
+        try {
+            gerador.gerar(relatorio);
+        } catch (IOException e) {
+            // StringBuilder não lança IOException
+            throw new UncheckedIOException(e);
+        }
         return relatorio.toString();
     }
     
-    // Métodos auxiliares
-    private String gerarNumeroProcesso() {
-        // Formato: PA-ANO-SEQUENCIAL
-        int ano = LocalDate.now().getYear();
-        int sequencial = processos.size() + 1;
-        return String.format("PA-%d-%04d", ano, sequencial);
+    // Buffer limitado: o relatório é entregue ao destino em blocos à medida que é gerado
+    private static Writer criarEscritorRelatorio(OutputStream destino) {
+        return new BufferedWriter(new OutputStreamWriter(destino, StandardCharsets.UTF_8), TAMANHO_BUFFER_RELATORIO);
     }
     
-    private boolean verificarPermissaoEtapa(Usuario usuario, EtapaProcesso etapa) {
-        TipoUsuario tipoUsuario = usuario.getTipo();
-        
-        switch (etapa) {
-            case ELABORACAO_TERMO_REFERENCIA:
-            case PESQUISA_PRECOS:
-            case ELABORACAO_EDITAL:
-            case PUBLICACAO_EDITAL:
-            case RECEBIMENTO_PROPOSTAS:
-            case ANALISE_PROPOSTAS:
-                return tipoUsuario == TipoUsuario.GESTOR;
-                
-            case HOMOLOGACAO:
-            case CONTRATACAO:
-                return tipoUsuario == TipoUsuario.ORDENADOR_DESPESA;
-                
-            case EXECUCAO_CONTRATO:
-                return tipoUsuario == TipoUsuario.FISCAL_CONTRATO;
-                
-            case CONCLUIDO:
-                return tipoUsuario == TipoUsuario.ORDENADOR_DESPESA || 
-                       tipoUsuario == TipoUsuario.GESTOR;
-                
-            default:
-                return false;
-        }
+    /**
+     * Escreve um relatório no destino informado
+     */
+    private interface GeradorRelatorio {
+        void gerar(Appendable destino) throws IOException;
     }
     
-    private void registrarLog(String tipo, String descricao, Usuario usuario) {
-        LogAuditoria log = new LogAuditoria(LocalDateTime.now(), tipo, descricao, usuario);
-        logsAuditoria.add(log);
+    // Métodos de consulta aos logs de auditoria
+    public List<LogAuditoria> buscarLogsPorProcesso(String numeroProcesso) {
+        assinaturaAuditoria.aguardar();
+        return lerLogs(logsPorProcesso.getOrDefault(numeroProcesso, ListaPosicoes.VAZIA));
     }
-}
-
-/**
- * Enumeração dos tipos de usuários do sistema
- */
-enum TipoUsuario {
-    GESTOR,               // Responsável por gerenciar processos de aquisição
-    FISCAL_CONTRATO,      // Responsável por fiscalizar a execução de contratos
-    ORDENADOR_DESPESA,    // Responsável por autorizar despesas
-    ADMINISTRADOR         // Administrador do sistema
-}
-
-/**
- * Enumeração das modalidades de licitação conforme legislação brasileira
- */
-enum ModalidadeLicitacao {
-    DISPENSA,             // Dispensa de licitação
-    INEXIGIBILIDADE,      // Inexigibilidade de licitação
-    CONVITE,              // Modalidade Convite
-    TOMADA_PRECOS,        // Tomada de Preços
-    CONCORRENCIA,         // Concorrência
-    PREGAO_PRESENCIAL,    // Pregão Presencial
-    PREGAO_ELETRONICO     // Pregão Eletrônico
-}
-
-/**
- * Enumeração das etapas de um processo de aquisição
- */
-enum EtapaProcesso {
-    ELABORACAO_TERMO_REFERENCIA,  // Elaboração do Termo de Referência
-    PESQUISA_PRECOS,              // Pesquisa de Preços
-    ELABORACAO_EDITAL,            // Elaboração do Edital
-    PUBLICACAO_EDITAL,            // Publicação do Edital
-    RECEBIMENTO_PROPOSTAS,        // Recebimento de Propostas
-    ANALISE_PROPOSTAS,            // Análise de Propostas
-    HOMOLOGACAO,                  // Homologação
-    CONTRATACAO,                  // Contratação
-    EXECUCAO_CONTRATO,            // Execução do Contrato
-    CONCLUIDO,                    // Processo Concluído
-    CANCELADO                     // Processo Cancelado
-}
-
-/**
- * Enumeração das unidades de medida para itens
- */
-enum UnidadeMedida {
-    UNIDADE,
-    CAIXA,
-    PACOTE,
-    METRO,
-    METRO_QUADRADO,
-    LITRO,
-    QUILO,
-    HORA,
-    MES
-}
-
-/**
- * Classe que representa um usuário do sistema
- */
-class Usuario implements Serializable {
-    private String cpf;
-    private String nome;
-    private String email;
-    private TipoUsuario tipo;
-    private String departamento;
     
-    public Usuario(String cpf, String nome, String email, TipoUsuario tipo, String departamento) {
-        this.cpf = cpf;
-        this.nome = nome;
-        this.email = email;
-        this.tipo = tipo;
-        this.departamento = departamento;
+    public List<LogAuditoria> buscarLogsPorContrato(String numeroContrato) {
+        assinaturaAuditoria.aguardar();
+        return lerLogs(logsPorContrato.getOrDefault(numeroContrato, ListaPosicoes.VAZIA));
     }
     
-    // Getters
-    public String getCpf() { return cpf; }
-    public String getNome() { return nome; }
-    public String getEmail() { return email; }
-    public TipoUsuario getTipo() { return tipo; }
-    public String getDepartamento() { return departamento; }
-}
-
-/**
- * Classe que representa um fornecedor
- */
-class Fornecedor implements Serializable {
-    private String cnpj;
-    private String razaoSocial;
-    private String email;
-    private String categoria;
+    public List<LogAuditoria> buscarLogsPorUsuario(String cpf) {
+        assinaturaAuditoria.aguardar();
+        return lerLogs(logsPorUsuario.getOrDefault(cpf, ListaPosicoes.VAZIA));
+    }
     
-    public Fornecedor(String cnpj, String razaoSocial, String email, String categoria) {
-        this.cnpj = cnpj;
-        this.razaoSocial = razaoSocial;
-        this.email = email;
-        this.categoria = categoria;
+    private List<LogAuditoria> lerLogs(ListaPosicoes posicoes) {
+        List<LogAuditoria> logs = new ArrayList<>(posicoes.tamanho());
+        for (int i = 0; i < posicoes.tamanho(); i++) {
+            logs.add(journalAuditoria.ler(posicoes.get(i), usuariosPorCpf::get));
+        }
+        return logs;
     }
     
-    // Getters
-    public String getCnpj() { return cnpj; }
-    public String getRazaoSocial() { return razaoSocial; }
-    public String getEmail() { return email; }
-    public String getCategoria() { return categoria; }
-}
-
-/**
- * Classe que representa um item a ser adquirido
- */
-class Item implements Serializable {
-    private String nome;
-    private String descricao;
-    private double valorUnitario;
-    private int quantidade;
-    private UnidadeMedida unidade;
+    // Métodos de persistência
     
-    public Item(String nome, String descricao, double valorUnitario, int quantidade, UnidadeMedida unidade) {
-        this.nome = nome;
-        this.descricao = descricao;
-        this.valorUnitario = valorUnitario;
-        this.quantidade = quantidade;
-        this.unidade = unidade;
+    /**
+     * Grava um snapshot compacto do estado atual e inicia um novo log de operações.
+     * Snapshots também são gerados automaticamente quando o log atinge o limite de registros.
+     */
+    public void gerarSnapshot() {
+        // O bloqueio exclusivo aguarda as operações em andamento, garantindo um estado consistente
+        bloqueioEstado.writeLock().lock();
+        try {
+            gravarSnapshot();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao gravar snapshot do sistema", e);
+        } finally {
+            bloqueioEstado.writeLock().unlock();
+        }
     }
     
-    // Getters
-    public String getNome() { return nome; }
-    public String getDescricao() { return descricao; }
-    public double getValorUnitario() { return valorUnitario; }
-    public int getQuantidade() { return quantidade; }
-    public UnidadeMedida getUnidade() { return unidade; }
-    
-    // Métodos auxiliares
-    public double getValorTotal() {
-        return valorUnitario * quantidade;
+    // Chamado com o bloqueio exclusivo. Publicado o snapshot, as tabelas que só os anteriores referenciavam podem ser apagadas.
+    private void gravarSnapshot() throws IOException {
+        persistencia.gravarSnapshot(this::escreverEstado);
+        if (armazenamentoRegistros != null) {
+            armazenamentoRegistros.confirmarPontoControle();
+        }
     }
-}
-
-/**
- * Classe que representa um documento do processo
- */
-class Documento implements Serializable {
-    private String titulo;
-    private String conteudo;
-    private Usuario responsavel;
-    private LocalDateTime dataCriacao;
     
-    public Documento(String titulo, String conteudo, Usuario responsavel, LocalDateTime dataCriacao) {
-        this.titulo = titulo;
-        this.conteudo = conteudo;
-        this.responsavel = responsavel;
-        this.dataCriacao = dataCriacao;
+    public Duration getTempoRecuperacao() {
+        return persistencia.getTempoRecuperacao();
     }
     
-    // Getters
-    public String getTitulo() { return titulo; }
-    public String getConteudo() { return conteudo; }
-    public Usuario getResponsavel() { return responsavel; }
-    public LocalDateTime getDataCriacao() { return dataCriacao; }
-}
-
-/**
- * Classe que representa um processo de aquisição
- */
-class ProcessoAquisicao implements Serializable {
-    private String numero;
-    private String titulo;
-    private String descricao;
-    private Usuario responsavel;
-    private ModalidadeLicitacao modalidade;
-    private LocalDate dataAbertura;
-    private double valorEstimado;
-    private EtapaProcesso etapaAtual;
-    private List<Item> itens;
-    private List<Documento> documentos;
-    private List<Proposta> propostas;
-    private Proposta propostaVencedora;
-    private Contrato contrato;
+    public long getOperacoesReaplicadas() {
+        return persistencia.getRegistrosReaplicados();
+    }
     
-    public ProcessoAquisicao(String numero, String titulo, String descricao, 
-                           Usuario responsavel, ModalidadeLicitacao modalidade, 
-                           LocalDate dataAbertura, double valorEstimado) {
-        this.numero = numero;
-        this.titulo = titulo;
-        this.descricao = descricao;
-        this.responsavel = responsavel;
-        this.modalidade = modalidade;
-        this.dataAbertura = dataAbertura;
-        this.valorEstimado = valorEstimado;
-        this.etapaAtual = EtapaProcesso.ELABORACAO_TERMO_REFERENCIA;
-        this.itens = new ArrayList<>();
-        this.documentos = new ArrayList<>();
-        this.propostas = new ArrayList<>();
+    /**
+     * Registros do log de persistência ignorados na última recuperação por referenciarem
+     * entidades inexistentes, com a operação, a posição no log e a referência ausente
+     */
+    public List<String> getRegistrosIgnoradosNaRecuperacao() {
+        return persistencia.getRegistrosIgnorados();
     }
     
-    // Getters
-    public String getNumero() { return numero; }
-    public String getTitulo() { return titulo; }
-    public String getDescricao() { return descricao; }
-    public Usuario getResponsavel() { return responsavel; }
-    public ModalidadeLicitacao getModalidade() { return modalidade; }
-    public LocalDate getDataAbertura() { return dataAbertura; }
-    public double getValorEstimado() { return valorEstimado; }
-    public EtapaProcesso getEtapaAtual() { return etapaAtual; }
-    public List<Item> getItens() { return itens; }
-    public List<Documento> getDocumentos() { return documentos; }
-    public List<Proposta> getPropostas() { return propostas; }
-    public Proposta getPropostaVencedora() { return propostaVencedora; }
-    public Contrato getContrato() { return contrato; }
+    // Métodos de ciclo de vida
+    @Override
+    public void close() {
+        verificadorPrazos.shutdownNow();
+        motorLances.close();
+        // Os assinantes gravam a auditoria dos eventos já publicados antes do fechamento do journal
+        barramentoEventos.close();
+        try {
+            persistencia.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao fechar o log de persistência", e);
+        } finally {
+            try {
+                journalAuditoria.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Falha ao fechar o journal de auditoria", e);
+            } finally {
+                try {
+                    fecharArmazenamentoRegistros();
+                } finally {
+                    if (diretorioTemporario) {
+                        apagarDiretorio(diretorioDados);
+                    }
+                }
+            }
+        }
+    }
     
-    // Setters
-    public void setEtapaAtual(EtapaProcesso etapaAtual) { this.etapaAtual = etapaAtual; }
-    public void setPropostaVencedora(Proposta propostaVencedora) { this.propostaVencedora = propostaVencedora; }
-    public void setContrato(Contrato contrato) { this.contrato = contrato; }
+    private void fecharArmazenamentoRegistros() {
+        if (armazenamentoRegistros != null) {
+            try {
+                armazenamentoRegistros.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Falha ao fechar o armazenamento de registros", e);
+            }
+        }
+    }
     
     // Métodos auxiliares
-    public void adicionarItem(Item item) {
-        itens.add(item);
+    // Registros de um processo que não pertence a este sistema não poderiam ser reaplicados na recuperação.
+    // Um processo arquivado continua acessível a quem guardou a referência, mas não aceita alterações
+    private void verificarProcessoCadastrado(ProcessoAquisicao processo) {
+        if (!processoCadastrado(processo)) {
+            if (arquivoProcessos.contemProcesso(processo.getNumero())) {
+                throw new IllegalStateException("Processo arquivado não pode ser alterado: " + processo.getNumero());
+            }
+            throw new IllegalArgumentException("Processo não cadastrado: " + processo.getNumero());
+        }
     }
     
-    public void adicionarDocumento(Documento documento) {
-        documentos.add(documento);
+    private boolean processoCadastrado(ProcessoAquisicao processo) {
+        return processosPorNumero.get(processo.getNumero()) == processo;
     }
     
-    public void adicionarProposta(Proposta proposta) {
-        propostas.add(proposta);
+    // Registros de um contrato que não pertence a este sistema não poderiam ser reaplicados na recuperação
+    private void verificarContratoCadastrado(Contrato contrato) {
+        if (contratosPorNumero.get(contrato.getNumero()) != contrato) {
+            if (arquivoProcessos.contemContrato(contrato.getNumero())) {
+                throw new IllegalStateException("Contrato arquivado não pode ser alterado: " + contrato.getNumero());
+            }
+            throw new IllegalArgumentException("Contrato não cadastrado: " + contrato.getNumero());
+        }
     }
-}
-
-/**
- * Classe que representa uma proposta de fornecedor
- */
-class Proposta implements Serializable {
-    private Fornecedor fornecedor;
-    private ProcessoAquisicao processo;
-    private LocalDateTime dataEnvio;
-    private double valorTotal;
-    private String descricao;
     
-    public Proposta(Fornecedor fornecedor, ProcessoAquisicao processo, 
-                  LocalDateTime dataEnvio, double valorTotal, String descricao) {
-        this.fornecedor = fornecedor;
-        this.processo = processo;
-        this.dataEnvio = dataEnvio;
-        this.valorTotal = valorTotal;
-        this.descricao = descricao;
+    private String gerarNumeroProcesso() {
+        // Formato: PA-ANO-SEQUENCIAL
+        int ano = LocalDate.now().getYear();
+        int sequencial = sequenciaProcessos.incrementAndGet();
+        return String.format("PA-%d-%04d", ano, sequencial);
     }
     
-    // Getters
+    static int sequencialDoNumero(String numeroProcesso) {
+        // Lê os dígitos após o último '-' sem criar substrings
+        int sequencial = 0;
+        for (int i = numeroProcesso.lastIndexOf('-') + 1; i < numeroProcesso.length(); i++) {
+            char c = numeroProcesso.charAt(i);
+            if (c < '0' || c > '9' || sequencial > (Integer.MAX_VALUE - 9) / 10) {
+                return 0;
+            }
+            sequencial = sequencial * 10 + (c - '0');
+        }
+        return sequencial;
+    }
+    
+    private SessaoDisputa disputa(ProcessoAquisicao processo) {
+        SessaoDisputa sessao = motorLances.buscar(processo.getNumero());
+        if (sessao == null) {
+            throw new IllegalStateException("Processo " + processo.getNumero() + " não possui disputa de lances aberta");
+        }
+        return sessao;
+    }
+    
+    private void verificarAberturaPropostas(ProcessoAquisicao processo) {
+        if (processo.getEtapaAtual().compareTo(EtapaProcesso.ANALISE_PROPOSTAS) < 0) {
+            throw new IllegalStateException("As propostas do processo " + processo.getNumero() + 
+                                            " são sigilosas até a etapa " + EtapaProcesso.ANALISE_PROPOSTAS);
+        }
+    }
+    
+    // Permissão do usuário conforme a etapa, na tabela da máquina de etapas
+    private static void verificarPermissaoEtapa(Usuario usuario, EtapaProcesso etapa) {
+        if (!MAQUINA_ETAPAS.permiteUsuario(usuario.getTipo(), etapa)) {
+            throw new IllegalArgumentException("Usuário não tem permissão para avançar o processo para esta etapa");
+        }
+    }
+    
+    // Executar com o bloqueio do processo
+    private void verificarAvancoEtapa(ProcessoAquisicao processo, EtapaProcesso novaEtapa) {
+        if (motorLances.buscar(processo.getNumero()) != null) {
+            throw new IllegalStateException("Processo " + processo.getNumero() + " possui disputa de lances em andamento");
+        }
+        if (!MAQUINA_ETAPAS.permiteTransicao(processo.getEtapaAtual(), novaEtapa)) {
+            throw new IllegalStateException("Processo " + processo.getNumero() + " não pode passar de " + 
+                                            processo.getEtapaAtual() + " para " + novaEtapa);
+        }
+    }
+    
+    // Executar com o bloqueio das entidades alteradas, para que os eventos de cada entidade sigam a ordem das operações
+    private void publicar(EventoDominio evento) {
+        sequenciaEventoPendente.get()[0] = barramentoEventos.publicar(evento);
+    }
+    
+    // Chamado sem bloqueios, antes de confirmar a operação: a entrada de auditoria é gravada pelo
+    // assinante, em lote com as de outras operações, mas nenhuma operação confirmada fica sem ela.
+    // Se a gravação do lote falhou, a operação (já persistida) é reportada ao chamador como falha.
+    private void aguardarAuditoria() {
+        long[] pendente = sequenciaEventoPendente.get();
+        if (pendente[0] >= 0) {
+            long sequencia = pendente[0];
+            pendente[0] = -1;
+            try {
+                assinaturaAuditoria.confirmar(sequencia);
+            } catch (IllegalStateException e) {
+                throw new IllegalStateException("Operação gravada sem a entrada de auditoria correspondente", e);
+            }
+        }
+    }
+    
+    // Assinante de auditoria: grava o lote no journal na ordem de publicação. O texto dos registros é
+    // montado aqui, fora da thread da requisição; as operações aguardam a gravação em aguardarAuditoria
+    private void registrarAuditoria(List<EventoDominio> lote) {
+        RuntimeException falha = null;
+        // Indexar sob o bloqueio do journal para que os índices sigam a ordem das posições
+        synchronized (journalAuditoria) {
+            for (EventoDominio evento : lote) {
+                String cpfUsuario = evento.getUsuario() != null ? evento.getUsuario().getCpf() : null;
+                try {
+                    long posicao = journalAuditoria.registrar(evento.getInstante(), evento.getTipo(), evento.getDescricao(), 
+                                                              cpfUsuario, evento.getNumeroProcesso(), evento.getNumeroContrato());
+                    indexarLog(posicao, evento.getNumeroProcesso(), evento.getNumeroContrato(), cpfUsuario);
+                } catch (RuntimeException e) {
+                    // Os demais registros do lote são gravados; a assinatura registra a falha do lote
+                    if (falha == null) {
+                        falha = e;
+                    }
+                }
+            }
+            // Com sincronização a cada operação, um único force atende às operações do lote
+            if (politicaSincronizacao == PoliticaSincronizacao.A_CADA_OPERACAO) {
+                journalAuditoria.sincronizar();
+            }
+        }
+        if (falha != null) {
+            throw falha;
+        }
+    }
+    
+    // Assinante das visões derivadas: índice textual, índice de preços e agenda de prazos
+    private void atualizarVistas(List<EventoDominio> lote) {
+        for (EventoDominio evento : lote) {
+            if (evento instanceof FornecedorCadastrado cadastrado) {
+                indexarFornecedor(cadastrado.getFornecedor());
+            } else if (evento instanceof FornecedoresImportados importados) {
+                importados.getFornecedores().forEach(this::indexarFornecedor);
+            } else if (evento instanceof ProcessoIniciado iniciado) {
+                indexarProcesso(iniciado.getProcesso());
+                agendarPrazoEtapa(iniciado.getNumeroProcesso(), iniciado.getEtapa(), iniciado.getDataEtapa());
+            } else if (evento instanceof ItemAdicionado adicionado) {
+                indexarItem(adicionado.getProcesso(), adicionado.getPosicao(), adicionado.getItem());
+            } else if (evento instanceof ItensImportados importados) {
+                for (ItemAdicionado adicionado : importados.getItens()) {
+                    indexarItem(adicionado.getProcesso(), adicionado.getPosicao(), adicionado.getItem());
+                }
+            } else if (evento instanceof DocumentoAdicionado adicionado) {
+                indexarDocumento(adicionado.getProcesso(), adicionado.getPosicao(), adicionado.getDocumento());
+            } else if (evento instanceof EtapaAvancada avancada) {
+                agendarPrazoEtapa(avancada.getNumeroProcesso(), avancada.getEtapa(), avancada.getData());
+            } else if (evento instanceof PropostaRegistrada registrada) {
+                registrarPrecoProposta(registrada.getProposta());
+            } else if (evento instanceof PropostasImportadas importadas) {
+                importadas.getPropostas().forEach(this::registrarPrecoProposta);
+            } else if (evento instanceof DisputaConcluida concluida) {
+                concluida.getPropostas().forEach(this::registrarPrecoProposta);
+            } else if (evento instanceof ContratoGerado gerado) {
+                registrarPrecoContrato(gerado.getContrato());
+                agendarVencimentos(gerado.getContrato());
+            }
+        }
+    }
+    
+    // Indexa o log pelas entidades referenciadas, preservando a ordem cronológica
+    private void indexarLog(long posicao, String numeroProcesso, String numeroContrato, String cpfUsuario) {
+        if (numeroProcesso != null) {
+            logsPorProcesso.computeIfAbsent(numeroProcesso, k -> new ListaPosicoes()).adicionar(posicao);
+        }
+        if (numeroContrato != null) {
+            logsPorContrato.computeIfAbsent(numeroContrato, k -> new ListaPosicoes()).adicionar(posicao);
+        }
+        if (cpfUsuario != null) {
+            logsPorUsuario.computeIfAbsent(cpfUsuario, k -> new ListaPosicoes()).adicionar(posicao);
+        }
+    }
+    
+    private static void validarResponsavelImportacao(Usuario responsavel) {
+        if (responsavel == null) {
+            throw new IllegalArgumentException("Importação em lote exige um usuário responsável");
+        }
+    }
+    
+    // Conversores executados em paralelo: apenas validam e consultam índices concorrentes
+    private Fornecedor converterFornecedor(String[] campos) {
+        String documento = ValidadorDocumentos.somenteDigitos(campos[0]);
+        if (documento.length() == 14) {
+            if (!ValidadorDocumentos.cnpjValido(documento)) {
+                throw new IllegalArgumentException("CNPJ inválido: " + campos[0]);
+            }
+        } else if (documento.length() == 11) {
+            if (!ValidadorDocumentos.cpfValido(documento)) {
+                throw new IllegalArgumentException("CPF inválido: " + campos[0]);
+            }
+        } else {
+            throw new IllegalArgumentException("Documento deve ser CNPJ ou CPF: " + campos[0]);
+        }
+        
+        return new Fornecedor(documento, campoObrigatorio(campos[1], "razão social"), campos[2], campos[3]);
+    }
+    
+    private ItemImportado converterItem(String[] campos) {
+        ProcessoAquisicao processo = processoExistente(campos[0]);
+        int quantidade;
+        try {
+            quantidade = Integer.parseInt(campos[4]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Quantidade inválida: " + campos[4]);
+        }
+        if (quantidade <= 0) {
+            throw new IllegalArgumentException("Quantidade deve ser positiva: " + campos[4]);
+        }
+        
+        UnidadeMedida unidade;
+        try {
+            unidade = UnidadeMedida.valueOf(campos[5].toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unidade de medida inválida: " + campos[5]);
+        }
+        
+        Item item = new Item(campoObrigatorio(campos[1], "nome"), campos[2], valorImportado(campos[3]), quantidade, unidade);
+        return new ItemImportado(processo, item);
+    }
+    
+    private Proposta converterProposta(String[] campos) {
+        ProcessoAquisicao processo = processoExistente(campos[0]);
+        String cnpj = ValidadorDocumentos.somenteDigitos(campos[1]);
+        Fornecedor fornecedor = fornecedoresPorCnpj.get(cnpj);
+        if (fornecedor == null) {
+            throw new IllegalArgumentException("Fornecedor não cadastrado: " + campos[1]);
+        }
+        
+        LocalDateTime dataEnvio;
+        try {
+            dataEnvio = LocalDateTime.parse(campos[2]);
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException("Data de envio inválida: " + campos[2]);
+        }
+        
+        return new Proposta(fornecedor, processo, dataEnvio, valorImportado(campos[3]), campos[4]);
+    }
+    
+    private ProcessoAquisicao processoExistente(String numero) {
+        ProcessoAquisicao processo = processosPorNumero.get(numero);
+        if (processo == null) {
+            throw new IllegalArgumentException("Processo não encontrado: " + numero);
+        }
+        return processo;
+    }
+    
+    private static String campoObrigatorio(String valor, String nomeCampo) {
+        if (valor.isEmpty()) {
+            throw new IllegalArgumentException("Campo obrigatório vazio: " + nomeCampo);
+        }
+        return valor;
+    }
+    
+    // Aceita apenas o formato brasileiro (ver VALOR_IMPORTADO), sem arredondamento
+    private static long valorImportado(String texto) {
+        if (!VALOR_IMPORTADO.matcher(texto).matches()) {
+            throw new IllegalArgumentException("Valor monetário fora do formato brasileiro (1.234,56): " + texto);
+        }
+        long centavos = Dinheiro.deTexto(texto.replace(".", "").replace(',', '.'));
+        if (centavos <= 0) {
+            throw new IllegalArgumentException("Valor deve ser positivo: " + texto);
+        }
+        return centavos;
+    }
+    
+    // A gravação dos lotes é sequencial, na ordem do arquivo: a primeira ocorrência de um registro prevalece
+    private void gravarLoteFornecedores(LoteImportacao<Fornecedor> lote, Set<String> documentosArquivo, 
+                                        Usuario responsavel) {
+        List<String> documentos = new ArrayList<>(lote.getLinhas().size());
+        for (LinhaImportacao<Fornecedor> linha : lote.getLinhas()) {
+            documentos.add(linha.getRegistro().getCnpj());
+        }
+        
+        bloqueiosCadastro.executar(documentos, () -> {
+            List<Fornecedor> aceitos = new ArrayList<>();
+            for (LinhaImportacao<Fornecedor> linha : lote.getLinhas()) {
+                Fornecedor fornecedor = linha.getRegistro();
+                if (!documentosArquivo.add(fornecedor.getCnpj())) {
+                    lote.rejeitar(linha, "Documento repetido no arquivo: " + fornecedor.getCnpj());
+                } else if (fornecedoresPorCnpj.containsKey(fornecedor.getCnpj())) {
+                    lote.rejeitar(linha, "Já existe fornecedor cadastrado com o documento " + fornecedor.getCnpj());
+                } else {
+                    aceitos.add(fornecedor);
+                }
+            }
+            
+            if (!aceitos.isEmpty()) {
+                persistir(OperacaoPersistida.CADASTRO_FORNECEDORES_LOTE, saida -> {
+                    saida.writeInt(aceitos.size());
+                    for (Fornecedor fornecedor : aceitos) {
+                        codec.escreverFornecedor(saida, fornecedor);
+                    }
+                });
+                for (Fornecedor fornecedor : aceitos) {
+                    aplicarCadastroFornecedor(fornecedor);
+                }
+            }
+            
+            lote.confirmar(aceitos.size());
+            publicar(new FornecedoresImportados(aceitos, lote.resumo("fornecedores cadastrados"), responsavel));
+        });
+        concluirOperacao();
+    }
+    
+    private void gravarLoteItens(LoteImportacao<ItemImportado> lote, Set<String> itensArquivo, Usuario responsavel) {
+        Set<String> numerosProcessos = new LinkedHashSet<>();
+        for (LinhaImportacao<ItemImportado> linha : lote.getLinhas()) {
+            numerosProcessos.add(linha.getRegistro().processo.getNumero());
+        }
+        
+        bloqueiosProcesso.executar(numerosProcessos, () -> {
+            // Itens já existentes nos processos do lote, lidos sob o bloqueio
+            Set<String> itensExistentes = new HashSet<>();
+            for (String numero : numerosProcessos) {
+                ProcessoAquisicao processo = processosPorNumero.get(numero);
+                if (processo == null) {
+                    continue;
+                }
+                for (Item item : processo.getItens()) {
+                    itensExistentes.add(chaveItem(numero, item));
+                }
+            }
+            
+            List<ItemImportado> aceitos = new ArrayList<>();
+            for (LinhaImportacao<ItemImportado> linha : lote.getLinhas()) {
+                ItemImportado importado = linha.getRegistro();
+                String chave = chaveItem(importado.processo.getNumero(), importado.item);
+                if (!processoCadastrado(importado.processo)) {
+                    // O processo foi arquivado depois da leitura do arquivo
+                    lote.rejeitar(linha, "Processo arquivado: " + importado.processo.getNumero());
+                } else if (!itensArquivo.add(chave)) {
+                    lote.rejeitar(linha, "Item repetido no arquivo: " + importado.item.getNome());
+                } else if (itensExistentes.contains(chave)) {
+                    lote.rejeitar(linha, "Item já existe no processo " + importado.processo.getNumero() + ": " + importado.item.getNome());
+                } else {
+                    aceitos.add(importado);
+                }
+            }
+            
+            List<ItemAdicionado> adicionados = new ArrayList<>(aceitos.size());
+            if (!aceitos.isEmpty()) {
+                persistir(OperacaoPersistida.ADICAO_ITENS_LOTE, saida -> {
+                    saida.writeInt(aceitos.size());
+                    for (ItemImportado importado : aceitos) {
+                        CodecAquisicoes.escreverTexto(saida, importado.processo.getNumero());
+                        codec.escreverItem(saida, importado.item);
+                    }
+                });
+                for (ItemImportado importado : aceitos) {
+                    importado.processo.adicionarItem(importado.item);
+                    adicionados.add(new ItemAdicionado(importado.processo, importado.processo.getItens().size() - 1, importado.item));
+                }
+            }
+            
+            lote.confirmar(aceitos.size());
+            publicar(new ItensImportados(adicionados, lote.resumo("itens adicionados"), responsavel, 
+                                         processoUnico(numerosProcessos)));
+        });
+        concluirOperacao();
+    }
+    
+    private void gravarLotePropostas(LoteImportacao<Proposta> lote, Set<String> propostasArquivo, Usuario responsavel) {
+        Set<String> numerosProcessos = new LinkedHashSet<>();
+        for (LinhaImportacao<Proposta> linha : lote.getLinhas()) {
+            numerosProcessos.add(linha.getRegistro().getProcesso().getNumero());
+        }
+        
+        bloqueiosProcesso.executar(numerosProcessos, () -> {
+            Set<String> propostasExistentes = new HashSet<>();
+            for (String numero : numerosProcessos) {
+                ProcessoAquisicao processo = processosPorNumero.get(numero);
+                if (processo == null) {
+                    continue;
+                }
+                for (Proposta proposta : processo.getPropostas()) {
+                    propostasExistentes.add(chaveProposta(proposta));
+                }
+            }
+            
+            List<Proposta> aceitas = new ArrayList<>();
+            for (LinhaImportacao<Proposta> linha : lote.getLinhas()) {
+                Proposta proposta = linha.getRegistro();
+                String chave = chaveProposta(proposta);
+                if (!processoCadastrado(proposta.getProcesso())) {
+                    // O processo foi arquivado depois da leitura do arquivo
+                    lote.rejeitar(linha, "Processo arquivado: " + proposta.getProcesso().getNumero());
+                } else if (!propostasArquivo.add(chave)) {
+                    lote.rejeitar(linha, "Proposta repetida no arquivo para o fornecedor " + proposta.getFornecedor().getCnpj());
+                } else if (propostasExistentes.contains(chave)) {
+                    lote.rejeitar(linha, "Fornecedor " + proposta.getFornecedor().getCnpj() + 
+                                  " já possui proposta no processo " + proposta.getProcesso().getNumero());
+                } else {
+                    aceitas.add(proposta);
+                }
+            }
+            
+            if (!aceitas.isEmpty()) {
+                persistir(OperacaoPersistida.REGISTRO_PROPOSTAS_LOTE, saida -> {
+                    saida.writeInt(aceitas.size());
+                    for (Proposta proposta : aceitas) {
+                        CodecAquisicoes.escreverTexto(saida, proposta.getProcesso().getNumero());
+                        codec.escreverProposta(saida, proposta);
+                    }
+                });
+                for (Proposta proposta : aceitas) {
+                    proposta.getProcesso().adicionarProposta(proposta);
+                }
+            }
+            
+            lote.confirmar(aceitas.size());
+            publicar(new PropostasImportadas(aceitas, lote.resumo("propostas registradas"), responsavel, 
+                                             processoUnico(numerosProcessos)));
+        });
+        concluirOperacao();
+    }
+    
+    private static String chaveItem(String numeroProcesso, Item item) {
+        return numeroProcesso + '\u0000' + item.getNome() + '\u0000' + item.getDescricao();
+    }
+    
+    private static String chaveProposta(Proposta proposta) {
+        return proposta.getProcesso().getNumero() + '\u0000' + proposta.getFornecedor().getCnpj();
+    }
+    
+    // A entrada de auditoria de um lote é vinculada ao processo somente quando o lote trata de um único processo
+    private static String processoUnico(Set<String> numerosProcessos) {
+        return numerosProcessos.size() == 1 ? numerosProcessos.iterator().next() : null;
+    }
+    
+    /**
+     * Item lido de um arquivo de importação, com o processo ao qual pertence
+     */
+    private static final class ItemImportado {
+        final ProcessoAquisicao processo;
+        final Item item;
+        
+        ItemImportado(ProcessoAquisicao processo, Item item) {
+            this.processo = processo;
+            this.item = item;
+        }
+    }
+    
+    // Grava a operação no log antes de aplicá-la ao estado em memória
+    private void persistir(OperacaoPersistida operacao, EscritorDados escritor) {
+        try {
+            posicaoLogPendente.get()[0] = persistencia.registrar(operacao, escritor);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao gravar a operação " + operacao + " no log de persistência", e);
+        }
+    }
+    
+    // Chamado após liberar os bloqueios da operação, quando ela já foi aplicada ao estado.
+    // Aguarda a sincronização do registro no log fora dos bloqueios, de modo que operações
+    // concorrentes sobre o mesmo processo compartilhem o mesmo fsync (group commit), aguarda a
+    // gravação da entrada de auditoria e grava o snapshot quando o log atinge o limite de registros.
+    private void concluirOperacao() {
+        long[] pendente = posicaoLogPendente.get();
+        if (pendente[0] > 0) {
+            long posicao = pendente[0];
+            pendente[0] = 0;
+            try {
+                persistencia.aguardarDurabilidade(posicao);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Falha ao sincronizar o log de persistência", e);
+            }
+        }
+        aguardarAuditoria();
+        
+        if (persistencia.snapshotPendente()) {
+            bloqueioEstado.writeLock().lock();
+            try {
+                if (persistencia.snapshotPendente()) {
+                    gravarSnapshot();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Falha ao gravar snapshot do sistema", e);
+            } finally {
+                bloqueioEstado.writeLock().unlock();
+            }
+        }
+    }
+    
+    // Métodos de aplicação de operações ao estado em memória, compartilhados com a recuperação
+    private void aplicarCadastroUsuario(Usuario usuario) {
+        usuariosPorCpf.put(usuario.getCpf(), usuario);
+        usuarios.add(usuario);
+    }
+    
+    private void aplicarCadastroFornecedor(Fornecedor fornecedor) {
+        fornecedoresPorCnpj.put(fornecedor.getCnpj(), fornecedor);
+        fornecedores.add(fornecedor);
+    }
+    
+    private void aplicarInicioProcesso(ProcessoAquisicao processo) {
+        processosPorNumero.put(processo.getNumero(), processo);
+        processos.add(processo);
+        sequenciaProcessos.accumulateAndGet(sequencialDoNumero(processo.getNumero()), Math::max);
+        processosPorAbertura.adicionar(processo.getDataAbertura(), processo);
+        vistasTransparencia.processoAtualizado(processo);
+    }
+    
+    private void aplicarAvancoEtapa(ProcessoAquisicao processo, EtapaProcesso novaEtapa, LocalDate data) {
+        processo.setEtapaAtual(novaEtapa);
+        processo.setDataEtapa(data);
+        vistasTransparencia.processoAtualizado(processo);
+    }
+    
+    private void aplicarGeracaoContrato(Contrato contrato) {
+        contrato.vincularRepositorios(empenhos, liquidacoes, pagamentos);
+        contratosPorNumero.put(contrato.getNumero(), contrato);
+        contratos.add(contrato);
+        contrato.getProcesso().setContrato(contrato);
+        contratosPorVigencia.adicionar(contrato.getDataInicio(), contrato.getDataFim(), contrato);
+        vistasTransparencia.contratoGerado(contrato);
+    }
+    
+    private void aplicarRegistroEmpenho(NotaEmpenho empenho) {
+        empenho.getContrato().adicionarEmpenho(empenho);
+    }
+    
+    private void aplicarRegistroLiquidacao(Liquidacao liquidacao) {
+        liquidacao.getContrato().adicionarLiquidacao(liquidacao);
+    }
+    
+    // Retira do estado em memória os processos arquivados, com seus contratos e registros financeiros.
+    // Os logs de auditoria continuam indexados pelos números do processo e do contrato.
+    private void removerArquivados(List<ProcessoAquisicao> arquivados) {
+        Set<ProcessoAquisicao> processosArquivados = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<Contrato> contratosArquivados = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<String> numerosProcessos = new HashSet<>();
+        Set<String> numerosContratos = new HashSet<>();
+        for (ProcessoAquisicao processo : arquivados) {
+            processosArquivados.add(processo);
+            numerosProcessos.add(processo.getNumero());
+            processosPorNumero.remove(processo.getNumero());
+            Contrato contrato = processo.getContrato();
+            if (contrato != null) {
+                contratosArquivados.add(contrato);
+                numerosContratos.add(contrato.getNumero());
+                contratosPorNumero.remove(contrato.getNumero());
+            }
+        }
+        
+        processos.removeIf(processosArquivados::contains);
+        contratos.removeIf(contratosArquivados::contains);
+        processosPorAbertura.removerSe(processosArquivados::contains);
+        contratosPorVigencia.removerSe(contratosArquivados::contains);
+        empenhos.remover(numerosContratos);
+        liquidacoes.remover(numerosContratos);
+        pagamentos.remover(numerosContratos);
+        vistasTransparencia.removerContratos(contratosArquivados);
+        indiceTextual.removerProcessos(numerosProcessos);
+    }
+    
+    // Um segmento publicado prevalece sobre o snapshot e o log, que ainda contêm os processos
+    // arquivados depois do último snapshot; o sequencial também considera os números arquivados
+    private void removerProcessosJaArquivados() {
+        List<ProcessoAquisicao> arquivados = new ArrayList<>();
+        arquivoProcessos.percorrerNumeros(numero -> {
+            ProcessoAquisicao processo = processosPorNumero.get(numero);
+            if (processo != null) {
+                arquivados.add(processo);
+            }
+        });
+        if (!arquivados.isEmpty()) {
+            removerArquivados(arquivados);
+        }
+        sequenciaProcessos.accumulateAndGet(arquivoProcessos.getMaiorSequencial(), Math::max);
+    }
+    
+    // O índice textual não é atualizado na reaplicação: é montado uma única vez ao fim da recuperação
+    private void reconstruirIndiceTextual() {
+        for (Fornecedor fornecedor : fornecedores) {
+            indexarFornecedor(fornecedor);
+        }
+        for (ProcessoAquisicao processo : processos) {
+            indexarProcesso(processo);
+            List<Item> itens = processo.getItens();
+            for (int i = 0; i < itens.size(); i++) {
+                indexarItem(processo, i, itens.get(i));
+            }
+            List<Documento> documentos = processo.getDocumentos();
+            for (int i = 0; i < documentos.size(); i++) {
+                indexarDocumento(processo, i, documentos.get(i));
+            }
+        }
+    }
+    
+    private void indexarFornecedor(Fornecedor fornecedor) {
+        AnalisadorTextual analise = new AnalisadorTextual();
+        analise.adicionar(fornecedor.getRazaoSocial());
+        indiceTextual.indexar(TipoResultadoBusca.FORNECEDOR, fornecedor.getCnpj(), -1, fornecedor.getRazaoSocial(), analise);
+    }
+    
+    private void indexarProcesso(ProcessoAquisicao processo) {
+        AnalisadorTextual analise = new AnalisadorTextual();
+        analise.adicionar(processo.getTitulo());
+        analise.encerrarCampo();
+        analise.adicionar(processo.getDescricao());
+        indiceTextual.indexar(TipoResultadoBusca.PROCESSO, processo.getNumero(), -1, processo.getTitulo(), analise);
+    }
+    
+    private void indexarItem(ProcessoAquisicao processo, int posicao, Item item) {
+        AnalisadorTextual analise = new AnalisadorTextual();
+        analise.adicionar(item.getNome());
+        analise.encerrarCampo();
+        analise.adicionar(item.getDescricao());
+        indiceTextual.indexar(TipoResultadoBusca.ITEM, processo.getNumero(), posicao, item.getDescricao(), analise);
+    }
+    
+    private void indexarDocumento(ProcessoAquisicao processo, int posicao, Documento documento) {
+        indiceTextual.indexar(TipoResultadoBusca.DOCUMENTO, processo.getNumero(), posicao, documento.getTitulo(), 
+                              analisarDocumento(documento));
+    }
+    
+    // O índice de preços também não é atualizado na reaplicação. Ao contrário do índice textual,
+    // inclui os processos arquivados: o histórico de preços não se perde com o arquivamento
+    private void reconstruirIndicePrecos() {
+        Consumer<ProcessoAquisicao> registrar = processo -> {
+            for (Proposta proposta : processo.getPropostas()) {
+                registrarPrecoProposta(proposta);
+            }
+            if (processo.getContrato() != null) {
+                registrarPrecoContrato(processo.getContrato());
+            }
+        };
+        processos.forEach(registrar);
+        arquivoProcessos.percorrerProcessos(registrar);
+    }
+    
+    private void registrarPrecoProposta(Proposta proposta) {
+        indicePrecos.registrar(proposta.getProcesso(), OrigemPreco.PROPOSTA, proposta.getDataEnvio().getYear(), 
+                               proposta.getValorTotal());
+    }
+    
+    private void registrarPrecoContrato(Contrato contrato) {
+        indicePrecos.registrar(contrato.getProcesso(), OrigemPreco.CONTRATO, contrato.getDataInicio().getYear(), 
+                               contrato.getValor());
+    }
+    
+    // A agenda também é montada ao fim da recuperação; os alertas dos processos arquivados não são agendados
+    private void reconstruirAgendaPrazos() {
+        for (ProcessoAquisicao processo : processos) {
+            agendarPrazoEtapa(processo.getNumero(), processo.getEtapaAtual(), processo.getDataEtapa());
+        }
+        for (Contrato contrato : contratos) {
+            agendarVencimentos(contrato);
+        }
+    }
+    
+    private void verificarPrazosHoje() {
+        LocalDate hoje = LocalDate.now();
+        try {
+            verificarPrazos(hoje);
+        } catch (RuntimeException e) {
+            // Uma falha não deve cancelar as próximas verificações agendadas: é contada e notificada
+            registrarFalhaPrazos(falhasVerificacaoPrazos, 
+                new IllegalStateException("Falha na verificação de prazos de " + hoje, e));
+        }
+    }
+    
+    private void registrarFalhaPrazos(AtomicLong contador, RuntimeException falha) {
+        contador.incrementAndGet();
+        ultimaFalhaPrazos = falha;
+        for (Consumer<RuntimeException> observador : observadoresFalhasPrazos) {
+            try {
+                observador.accept(falha);
+            } catch (RuntimeException e) {
+                // Um observador com falha não impede a notificação dos demais
+            }
+        }
+    }
+    
+    // Um aviso cuja data já foi verificada (contrato gerado a menos de 90 dias do fim, por exemplo)
+    // é agendado para o último dia verificado, o que o entrega na verificação seguinte
+    private void agendarVencimentos(Contrato contrato) {
+        LocalDate verificado = agendaPrazos.getDiaAtual();
+        LocalDate dataFim = contrato.getDataFim();
+        boolean avisoPassado = false;
+        for (int antecedencia : ANTECEDENCIAS_VENCIMENTO) {
+            LocalDate data = dataFim.minusDays(antecedencia);
+            if (data.isAfter(verificado)) {
+                agendaPrazos.agendar(data, TipoAlertaPrazo.VENCIMENTO_CONTRATO, contrato.getNumero(), dataFim, null);
+            } else {
+                avisoPassado = true;
+            }
+        }
+        if (avisoPassado && !dataFim.isBefore(verificado)) {
+            agendaPrazos.agendar(verificado, TipoAlertaPrazo.VENCIMENTO_CONTRATO, contrato.getNumero(), dataFim, null);
+        }
+    }
+    
+    // A etapa e a data de entrada nela vêm do evento: o processo pode já ter avançado de novo
+    private void agendarPrazoEtapa(String numeroProcesso, EtapaProcesso etapa, LocalDate dataEtapa) {
+        LocalDate limite = prazoEtapa(etapa, dataEtapa);
+        if (limite != null) {
+            LocalDate verificado = agendaPrazos.getDiaAtual();
+            agendaPrazos.agendar(limite.isAfter(verificado) ? limite : verificado, TipoAlertaPrazo.PRAZO_ETAPA, 
+                                 numeroProcesso, limite, etapa);
+        }
+    }
+    
+    private static LocalDate prazoEtapa(EtapaProcesso etapa, LocalDate dataEtapa) {
+        Integer dias = PRAZOS_ETAPA.get(etapa);
+        return dias != null ? dataEtapa.plusDays(dias) : null;
+    }
+    
+    // Número do processo a que o alerta se refere, ou null se o alerta deixou de valer. A agenda não
+    // tem cancelamento: alertas de contratos arquivados ou de etapas já concluídas são descartados aqui
+    private String processoDoAlerta(AlertaPrazo alerta) {
+        if (alerta.getTipo() == TipoAlertaPrazo.VENCIMENTO_CONTRATO) {
+            Contrato contrato = contratosPorNumero.get(alerta.getNumero());
+            if (contrato == null || !contrato.getDataFim().equals(alerta.getDataLimite())) {
+                return null;
+            }
+            EtapaProcesso etapa = contrato.getProcesso().getEtapaAtual();
+            boolean emAndamento = etapa != EtapaProcesso.CONCLUIDO && etapa != EtapaProcesso.CANCELADO;
+            return emAndamento ? contrato.getProcesso().getNumero() : null;
+        }
+        ProcessoAquisicao processo = processosPorNumero.get(alerta.getNumero());
+        boolean mesmaEtapa = processo != null && processo.getEtapaAtual() == alerta.getEtapa() && 
+                             alerta.getDataLimite().equals(prazoEtapa(processo.getEtapaAtual(), processo.getDataEtapa()));
+        return mesmaEtapa ? processo.getNumero() : null;
+    }
+    
+    // Prazos internos, em dias corridos a partir da entrada na etapa. A execução do contrato é
+    // acompanhada pela vigência, e as etapas finais não têm prazo.
+    private static Map<EtapaProcesso, Integer> prazosEtapaPadrao() {
+        Map<EtapaProcesso, Integer> prazos = new EnumMap<>(EtapaProcesso.class);
+        prazos.put(EtapaProcesso.ELABORACAO_TERMO_REFERENCIA, 30);
+        prazos.put(EtapaProcesso.PESQUISA_PRECOS, 30);
+        prazos.put(EtapaProcesso.ELABORACAO_EDITAL, 20);
+        prazos.put(EtapaProcesso.PUBLICACAO_EDITAL, 10);
+        prazos.put(EtapaProcesso.RECEBIMENTO_PROPOSTAS, 15);
+        prazos.put(EtapaProcesso.ANALISE_PROPOSTAS, 15);
+        prazos.put(EtapaProcesso.HOMOLOGACAO, 10);
+        prazos.put(EtapaProcesso.CONTRATACAO, 30);
+        return prazos;
+    }
+    
+    // Conteúdo que não é texto UTF-8 (PDF, imagens) ou que não está no armazém não é indexado; o título sempre é
+    private AnalisadorTextual analisarDocumento(Documento documento) {
+        AnalisadorTextual analise = new AnalisadorTextual();
+        analise.adicionar(documento.getTitulo());
+        analise.encerrarCampo();
+        try {
+            analise.adicionarUtf8(armazemDocumentos.mapear(documento.getConteudo()));
+        } catch (IOException e) {
+            // Indexado apenas pelo título
+        }
+        return analise;
+    }
+    
+    private void aplicarRegistroPagamento(Pagamento pagamento) {
+        pagamento.getContrato().adicionarPagamento(pagamento);
+        vistasTransparencia.pagamentoRegistrado(pagamento);
+    }
+    
+    // Na recuperação os registros são somados aos razões sem validação, já que foram aceitos quando gravados
+    private void recuperarRegistroEmpenho(NotaEmpenho empenho) {
+        aplicarRegistroEmpenho(empenho);
+        empenho.getContrato().getRazao().acumular(empenho.getValor(), 0, 0);
+    }
+    
+    private void recuperarRegistroLiquidacao(Liquidacao liquidacao) {
+        aplicarRegistroLiquidacao(liquidacao);
+        liquidacao.getContrato().getRazao().acumular(0, liquidacao.getValor(), 0);
+    }
+    
+    private void recuperarRegistroPagamento(Pagamento pagamento) {
+        aplicarRegistroPagamento(pagamento);
+        pagamento.getContrato().getRazao().acumular(0, 0, pagamento.getValor());
+    }
+    
+    private void reaplicarOperacao(OperacaoPersistida operacao, DataInputStream entrada) throws IOException {
+        ProcessoAquisicao processo;
+        Contrato contrato;
+        EtapaProcesso etapa;
+        LocalDate data;
+        int quantidade;
+        
+        switch (operacao) {
+            case CADASTRO_USUARIO:
+                aplicarCadastroUsuario(codec.lerUsuario(entrada));
+                break;
+            case CADASTRO_FORNECEDOR:
+                aplicarCadastroFornecedor(codec.lerFornecedor(entrada));
+                break;
+            case INICIO_PROCESSO:
+                aplicarInicioProcesso(codec.lerProcesso(entrada));
+                break;
+            case ADICAO_ITEM:
+                processo = codec.lerReferenciaProcesso(entrada);
+                processo.adicionarItem(codec.lerItem(entrada));
+                break;
+            case ADICAO_DOCUMENTO:
+                processo = codec.lerReferenciaProcesso(entrada);
+                processo.adicionarDocumento(codec.lerDocumento(entrada));
+                break;
+            case AVANCO_ETAPA:
+                processo = codec.lerReferenciaProcesso(entrada);
+                aplicarAvancoEtapa(processo, EtapaProcesso.values()[entrada.readUnsignedByte()], CodecAquisicoes.lerData(entrada));
+                break;
+            case REGISTRO_PROPOSTA:
+                processo = codec.lerReferenciaProcesso(entrada);
+                processo.adicionarProposta(codec.lerProposta(entrada, processo));
+                break;
+            case SELECAO_PROPOSTA:
+                processo = codec.lerReferenciaProcesso(entrada);
+                processo.setPropostaVencedora(processo.getPropostas().get(entrada.readInt()));
+                break;
+            case GERACAO_CONTRATO:
+                aplicarGeracaoContrato(codec.lerContrato(entrada));
+                break;
+            case REGISTRO_EMPENHO:
+                recuperarRegistroEmpenho(codec.lerEmpenho(entrada));
+                break;
+            case REGISTRO_ENTREGA:
+                contrato = codec.lerReferenciaContrato(entrada);
+                contrato.adicionarEntrega(codec.lerEntrega(entrada, contrato));
+                break;
+            case REGISTRO_PAGAMENTO:
+                recuperarRegistroPagamento(codec.lerPagamento(entrada));
+                break;
+            case REGISTRO_LIQUIDACAO:
+                recuperarRegistroLiquidacao(codec.lerLiquidacao(entrada));
+                break;
+            case CADASTRO_FORNECEDORES_LOTE:
+                for (int i = entrada.readInt(); i > 0; i--) {
+                    aplicarCadastroFornecedor(codec.lerFornecedor(entrada));
+                }
+                break;
+            // Os lotes são lidos por inteiro antes de aplicados, para que uma referência inexistente
+            // descarte o registro sem aplicá-lo pela metade
+            case ADICAO_ITENS_LOTE:
+                quantidade = entrada.readInt();
+                List<ProcessoAquisicao> processosItens = new ArrayList<>(quantidade);
+                List<Item> itens = new ArrayList<>(quantidade);
+                for (int i = 0; i < quantidade; i++) {
+                    processosItens.add(codec.lerReferenciaProcesso(entrada));
+                    itens.add(codec.lerItem(entrada));
+                }
+                for (int i = 0; i < quantidade; i++) {
+                    processosItens.get(i).adicionarItem(itens.get(i));
+                }
+                break;
+            case REGISTRO_PROPOSTAS_LOTE:
+                quantidade = entrada.readInt();
+                List<Proposta> propostas = new ArrayList<>(quantidade);
+                for (int i = 0; i < quantidade; i++) {
+                    processo = codec.lerReferenciaProcesso(entrada);
+                    propostas.add(codec.lerProposta(entrada, processo));
+                }
+                for (Proposta proposta : propostas) {
+                    proposta.getProcesso().adicionarProposta(proposta);
+                }
+                break;
+            case AVANCO_ETAPAS_LOTE:
+                quantidade = entrada.readInt();
+                etapa = EtapaProcesso.values()[entrada.readUnsignedByte()];
+                data = CodecAquisicoes.lerData(entrada);
+                List<ProcessoAquisicao> processosEtapa = new ArrayList<>(quantidade);
+                for (int i = 0; i < quantidade; i++) {
+                    processosEtapa.add(codec.lerReferenciaProcesso(entrada));
+                }
+                for (ProcessoAquisicao processoEtapa : processosEtapa) {
+                    aplicarAvancoEtapa(processoEtapa, etapa, data);
+                }
+                break;
+            default:
+                throw new IOException("Operação desconhecida no log de persistência: " + operacao);
+        }
+    }
+    
+    // O snapshot grava cada entidade uma única vez; as referências entre elas usam CPF, CNPJ e números.
+    // Com o armazenamento em disco, os registros financeiros ficam nas tabelas do ponto de controle
+    // e o snapshot guarda apenas a lista delas, os contadores dos repositórios e os totais dos razões.
+    private void escreverEstado(DataOutputStream saida) throws IOException {
+        saida.writeInt(usuarios.size());
+        for (Usuario usuario : usuarios) {
+            codec.escreverUsuario(saida, usuario);
+        }
+        
+        saida.writeInt(fornecedores.size());
+        for (Fornecedor fornecedor : fornecedores) {
+            codec.escreverFornecedor(saida, fornecedor);
+        }
+        
+        saida.writeInt(processos.size());
+        for (ProcessoAquisicao processo : processos) {
+            codec.escreverProcessoCompleto(saida, processo);
+        }
+        
+        saida.writeInt(contratos.size());
+        for (Contrato contrato : contratos) {
+            codec.escreverContrato(saida, contrato);
+            List<Item> itensProcesso = contrato.getProcesso().getItens();
+            saida.writeInt(contrato.getEntregas().size());
+            for (EntregaItem entrega : contrato.getEntregas()) {
+                codec.escreverEntrega(saida, entrega, itensProcesso);
+            }
+        }
+        
+        saida.writeBoolean(armazenamentoRegistros != null);
+        if (armazenamentoRegistros != null) {
+            armazenamentoRegistros.escreverPontoControle(saida);
+            ((RepositorioDisco<NotaEmpenho>) empenhos).escreverContadores(saida);
+            ((RepositorioDisco<Liquidacao>) liquidacoes).escreverContadores(saida);
+            ((RepositorioDisco<Pagamento>) pagamentos).escreverContadores(saida);
+            
+            saida.writeInt(contratos.size());
+            for (Contrato contrato : contratos) {
+                SaldoContrato saldo = contrato.getRazao().getSaldo();
+                saida.writeUTF(contrato.getNumero());
+                saida.writeLong(saldo.getEmpenhado());
+                saida.writeLong(saldo.getLiquidado());
+                saida.writeLong(saldo.getPago());
+            }
+            return;
+        }
+        
+        saida.writeInt(Math.toIntExact(empenhos.tamanho()));
+        for (NotaEmpenho empenho : empenhos) {
+            codec.escreverEmpenho(saida, empenho);
+        }
+        
+        saida.writeInt(Math.toIntExact(liquidacoes.tamanho()));
+        for (Liquidacao liquidacao : liquidacoes) {
+            codec.escreverLiquidacao(saida, liquidacao);
+        }
+        
+        saida.writeInt(Math.toIntExact(pagamentos.tamanho()));
+        for (Pagamento pagamento : pagamentos) {
+            codec.escreverPagamento(saida, pagamento);
+        }
+    }
+    
+    private void lerEstado(DataInputStream entrada) throws IOException {
+        int quantidade = entrada.readInt();
+        for (int i = 0; i < quantidade; i++) {
+            aplicarCadastroUsuario(codec.lerUsuario(entrada));
+        }
+        
+        quantidade = entrada.readInt();
+        for (int i = 0; i < quantidade; i++) {
+            aplicarCadastroFornecedor(codec.lerFornecedor(entrada));
+        }
+        
+        quantidade = entrada.readInt();
+        for (int i = 0; i < quantidade; i++) {
+            aplicarInicioProcesso(codec.lerProcessoCompleto(entrada));
+        }
+        
+        quantidade = entrada.readInt();
+        for (int i = 0; i < quantidade; i++) {
+            Contrato contrato = codec.lerContrato(entrada);
+            aplicarGeracaoContrato(contrato);
+            int entregas = entrada.readInt();
+            for (int j = 0; j < entregas; j++) {
+                contrato.adicionarEntrega(codec.lerEntrega(entrada, contrato));
+            }
+        }
+        
+        if (entrada.readBoolean()) {
+            lerPontoControleRegistros(entrada);
+            return;
+        }
+        
+        quantidade = entrada.readInt();
+        for (int i = 0; i < quantidade; i++) {
+            recuperarRegistroEmpenho(codec.lerEmpenho(entrada));
+        }
+        
+        quantidade = entrada.readInt();
+        for (int i = 0; i < quantidade; i++) {
+            recuperarRegistroLiquidacao(codec.lerLiquidacao(entrada));
+        }
+        
+        quantidade = entrada.readInt();
+        for (int i = 0; i < quantidade; i++) {
+            recuperarRegistroPagamento(codec.lerPagamento(entrada));
+        }
+    }
+    
+    // Com o armazenamento em disco as tabelas são reabertas sem ler os registros; só a janela de
+    // pagamentos das vistas é carregada. Em memória, os registros são copiados das tabelas.
+    private void lerPontoControleRegistros(DataInputStream entrada) throws IOException {
+        if (armazenamentoRegistros != null) {
+            armazenamentoRegistros.restaurar(entrada);
+            ((RepositorioDisco<NotaEmpenho>) empenhos).lerContadores(entrada);
+            ((RepositorioDisco<Liquidacao>) liquidacoes).lerContadores(entrada);
+            ((RepositorioDisco<Pagamento>) pagamentos).lerContadores(entrada);
+            lerTotaisRazoes(entrada);
+            
+            LocalDate inicioJanela = LocalDate.now().minusDays(VistasTransparencia.DIAS_JANELA_PAGAMENTOS);
+            for (Pagamento pagamento : pagamentos.listarEntre(inicioJanela, LocalDate.MAX)) {
+                vistasTransparencia.pagamentoRegistrado(pagamento);
+            }
+            return;
+        }
+        
+        try (ArmazenamentoLsm tabelas = new ArmazenamentoLsm(diretorioDados.resolve("registros"), 
+                                                             ArmazenamentoLsm.LIMITE_MEMTABLE_PADRAO, 
+                                                             ArmazenamentoLsm.TAMANHO_CACHE_PADRAO)) {
+            tabelas.restaurar(entrada);
+            RepositorioDisco<NotaEmpenho> empenhosDisco = new RepositorioDisco<>(tabelas, (byte) 1, codec::escreverEmpenho, codec::lerEmpenho);
+            RepositorioDisco<Liquidacao> liquidacoesDisco = new RepositorioDisco<>(tabelas, (byte) 2, codec::escreverLiquidacao, codec::lerLiquidacao);
+            RepositorioDisco<Pagamento> pagamentosDisco = new RepositorioDisco<>(tabelas, (byte) 3, codec::escreverPagamento, codec::lerPagamento);
+            empenhosDisco.lerContadores(entrada);
+            liquidacoesDisco.lerContadores(entrada);
+            pagamentosDisco.lerContadores(entrada);
+            lerTotaisRazoes(entrada);
+            
+            for (NotaEmpenho empenho : empenhosDisco) {
+                aplicarRegistroEmpenho(empenho);
+            }
+            for (Liquidacao liquidacao : liquidacoesDisco) {
+                aplicarRegistroLiquidacao(liquidacao);
+            }
+            for (Pagamento pagamento : pagamentosDisco) {
+                aplicarRegistroPagamento(pagamento);
+            }
+        }
+    }
+    
+    private void lerTotaisRazoes(DataInputStream entrada) throws IOException {
+        int quantidade = entrada.readInt();
+        for (int i = 0; i < quantidade; i++) {
+            String numero = entrada.readUTF();
+            Contrato contrato = contratosPorNumero.get(numero);
+            if (contrato == null) {
+                throw new IOException("Snapshot com totais do contrato inexistente " + numero);
+            }
+            contrato.getRazao().acumular(entrada.readLong(), entrada.readLong(), entrada.readLong());
+        }
+    }
+    
+    static Path criarDiretorioTemporario() {
+        try {
+            return Files.createTempDirectory("aquisicoes-");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Não foi possível criar o diretório de dados", e);
+        }
+    }
+    
+    /**
+     * Apaga o diretório de dados com todo o seu conteúdo; o sistema que o usa deve estar fechado
+     */
+    static void apagarDiretorio(Path diretorio) {
+        try (Stream<Path> arquivos = Files.walk(diretorio)) {
+            for (Path arquivo : (Iterable<Path>) arquivos.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(arquivo);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Não foi possível apagar o diretório de dados " + diretorio, e);
+        }
+    }
+}
+
+/**
+ * API HTTP embutida sobre o SistemaAquisicoes, baseada no servidor HTTP do JDK.
+ * 
+ * Cada requisição é tratada em uma thread virtual própria: milhares de envios simultâneos de
+ * propostas perto do prazo de um edital ficam bloqueados apenas nos bloqueios do sistema e na
+ * sincronização do log, sem esgotar um pool de threads. Os relatórios são enviados em
+ * streaming (transferência em partes), sem montar o texto em memória.
+ * 
+ * As requisições de escrita usam corpo application/x-www-form-urlencoded e identificam o
+ * usuário pelo CPF no cabeçalho X-Usuario; a autenticação fica a cargo do gateway à frente
+ * do servidor. As respostas de dados são JSON e os valores monetários são decimais em reais.
+ * O conteúdo dos documentos trafega sem codificação e não passa pelo heap: é gravado no
+ * armazém de documentos enquanto é recebido e enviado com FileChannel.transferTo.
+ * 
+ *   POST /processos                                titulo, descricao, modalidade, dataAbertura, valorEstimado
+ *   GET  /processos/{numero}                       também processos arquivados
+ *   POST /processos/{numero}/documentos?titulo=T   conteúdo do documento no corpo (qualquer tipo)
+ *   GET  /processos/{numero}/documentos/{indice}   conteúdo do documento
+ *   POST /processos/{numero}/etapa                 etapa
+ *   POST /processos/{numero}/propostas             cnpj, valorTotal, descricao
+ *   GET  /processos/{numero}/propostas?limite=N    classificação (após a abertura das propostas)
+ *   POST /processos/{numero}/vencedora             cnpj (ausente: a proposta de menor valor)
+ *   POST /processos/{numero}/disputa               decrementoMinimo (abre a disputa de lances do pregão)
+ *   POST /processos/{numero}/lances                cnpj, valor
+ *   GET  /processos/{numero}/lances                eventos (text/event-stream) com o melhor lance, sem o licitante
+ *   POST /processos/{numero}/encerramento          tempoMaximo (segundos, padrão 600)
+ *   POST /processos/{numero}/resultado             conclui a disputa encerrada
+ *   POST /processos/{numero}/contrato              numero, dataInicio, dataFim, valor (usuário = fiscal)
+ *   GET  /contratos/{numero}
+ *   POST /contratos/{numero}/empenhos              numero, data, valor (usuário = ordenador)
+ *   POST /contratos/{numero}/liquidacoes           numero, data, valor (usuário = ordenador)
+ *   POST /contratos/{numero}/pagamentos            numero, data, valor, descricao (usuário = ordenador)
+ *   GET  /relatorios/processo/{numero}
+ *   GET  /relatorios/auditoria/{numero}
+ *   GET  /relatorios/transparencia
+ *   GET  /busca?q=termos&limite=N                  processos, itens, documentos e fornecedores com todos os termos
+ *   GET  /analises/pagamentos/{agrupamento}        modalidade, categoria, departamento ou mes; inicio, fim (AAAA-MM),
+ *                                                  percentis (frações separadas por vírgula); dados de até 1 minuto
+ *   GET  /precos?descricao=...&unidade=UNIDADE      pesquisa de preços por origem; inicio, fim (anos),
+ *                                                  quantis (frações separadas por vírgula)
+ *   POST /arquivo                                  arquiva os processos concluídos ou cancelados
+ *   GET  /arquivo/totais/{agrupamento}             totais arquivados por modalidade, fornecedor ou ano
+ */
+class ServidorHttpAquisicoes implements AutoCloseable {
+    static final String CABECALHO_USUARIO = "X-Usuario";
+    private static final int TAMANHO_MAXIMO_CORPO = 64 * 1024;
+    private static final long TAMANHO_MAXIMO_DOCUMENTO = 512L * 1024 * 1024;
+    private static final Duration IDADE_MAXIMA_ANALISE = Duration.ofMinutes(1);
+    private static final int FILA_CONEXOES = 1024;
+    
+    private final SistemaAquisicoes sistema;
+    private final HttpServer servidor;
+    private final ExecutorService executor;
+    private final Set<CountDownLatch> acompanhamentos;
+    
+    public ServidorHttpAquisicoes(SistemaAquisicoes sistema, InetSocketAddress endereco) {
+        this.sistema = sistema;
+        try {
+            this.servidor = HttpServer.create(endereco, FILA_CONEXOES);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Não foi possível abrir a porta " + endereco.getPort(), e);
+        }
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.acompanhamentos = ConcurrentHashMap.newKeySet();
+        servidor.setExecutor(executor);
+        servidor.createContext("/", this::tratar);
+    }
+    
+    public void iniciar() {
+        servidor.start();
+    }
+    
+    public InetSocketAddress getEndereco() {
+        return servidor.getAddress();
+    }
+    
+    @Override
+    public void close() {
+        servidor.stop(0);
+        // Libera as conexões que acompanham disputas para que o executor possa terminar
+        for (CountDownLatch acompanhamento : acompanhamentos) {
+            acompanhamento.countDown();
+        }
+        executor.close();
+    }
+    
+    private void tratar(HttpExchange troca) throws IOException {
+        try (troca) {
+            try {
+                rotear(troca, troca.getRequestMethod(), caminho(troca));
+            } catch (RecursoNaoEncontrado e) {
+                responderErro(troca, 404, e.getMessage());
+            } catch (AcessoNegado e) {
+                responderErro(troca, 401, e.getMessage());
+            } catch (MetodoNaoPermitido e) {
+                responderErro(troca, 405, e.getMessage());
+            } catch (CorpoMuitoGrande e) {
+                responderErro(troca, 413, e.getMessage());
+            } catch (IllegalArgumentException | DateTimeException e) {
+                responderErro(troca, 400, e.getMessage());
+            } catch (IllegalStateException e) {
+                responderErro(troca, 409, e.getMessage());
+            } catch (RuntimeException e) {
+                responderErro(troca, 500, "Erro interno: " + e.getMessage());
+            }
+        }
+    }
+    
+    private void rotear(HttpExchange troca, String metodo, String[] caminho) throws IOException {
+        if (caminho.length == 0) {
+            throw new RecursoNaoEncontrado("Recurso não encontrado");
+        }
+        
+        switch (caminho[0]) {
+            case "processos":
+                if (caminho.length == 1) {
+                    exigirMetodo(metodo, "POST");
+                    iniciarProcesso(troca);
+                } else if (caminho.length == 2) {
+                    exigirMetodo(metodo, "GET");
+                    responderJson(troca, 200, jsonProcesso(processoInclusiveArquivado(caminho[1])));
+                } else if (caminho.length == 3 && metodo.equals("POST") && caminho[2].equals("documentos")) {
+                    adicionarDocumento(troca, processo(caminho[1]));
+                } else if (caminho.length == 4 && caminho[2].equals("documentos")) {
+                    exigirMetodo(metodo, "GET");
+                    enviarDocumento(troca, processoInclusiveArquivado(caminho[1]), caminho[3]);
+                } else if (caminho.length == 3 && metodo.equals("GET") && caminho[2].equals("propostas")) {
+                    listarPropostas(troca, processo(caminho[1]));
+                } else if (caminho.length == 3 && metodo.equals("GET") && caminho[2].equals("lances")) {
+                    acompanharLances(troca, processo(caminho[1]));
+                } else if (caminho.length == 3) {
+                    exigirMetodo(metodo, "POST");
+                    tratarAcaoProcesso(troca, processo(caminho[1]), caminho[2]);
+                } else {
+                    throw new RecursoNaoEncontrado("Recurso não encontrado");
+                }
+                break;
+            case "contratos":
+                if (caminho.length == 2) {
+                    exigirMetodo(metodo, "GET");
+                    responderJson(troca, 200, jsonContrato(contrato(caminho[1])));
+                } else if (caminho.length == 3) {
+                    exigirMetodo(metodo, "POST");
+                    tratarMovimentoContrato(troca, contrato(caminho[1]), caminho[2]);
+                } else {
+                    throw new RecursoNaoEncontrado("Recurso não encontrado");
+                }
+                break;
+            case "relatorios":
+                exigirMetodo(metodo, "GET");
+                enviarRelatorio(troca, caminho);
+                break;
+            case "busca":
+                exigirMetodo(metodo, "GET");
+                buscarTexto(troca);
+                break;
+            case "precos":
+                exigirMetodo(metodo, "GET");
+                if (caminho.length != 1) {
+                    throw new RecursoNaoEncontrado("Recurso não encontrado");
+                }
+                pesquisarPrecos(troca);
+                break;
+            case "analises":
+                exigirMetodo(metodo, "GET");
+                if (caminho.length != 3 || !caminho[1].equals("pagamentos")) {
+                    throw new RecursoNaoEncontrado("Recurso não encontrado");
+                }
+                analisarPagamentos(troca, caminho[2]);
+                break;
+            case "arquivo":
+                if (caminho.length == 1) {
+                    exigirMetodo(metodo, "POST");
+                    int arquivados = sistema.arquivarProcessosConcluidos(usuario(troca));
+                    responderJson(troca, 200, new Json()
+                        .numero("arquivados", arquivados)
+                        .numero("total", sistema.getQuantidadeProcessosArquivados())
+                        .toString());
+                } else if (caminho.length == 3 && caminho[1].equals("totais")) {
+                    exigirMetodo(metodo, "GET");
+                    responderJson(troca, 200, jsonTotaisArquivo(caminho[2]));
+                } else {
+                    throw new RecursoNaoEncontrado("Recurso não encontrado");
+                }
+                break;
+            default:
+                throw new RecursoNaoEncontrado("Recurso não encontrado");
+        }
+    }
+    
+    private void tratarAcaoProcesso(HttpExchange troca, ProcessoAquisicao processo, String acao) throws IOException {
+        Usuario usuario = usuario(troca);
+        Map<String, String> campos = lerFormulario(troca);
+        
+        switch (acao) {
+            case "etapa":
+                sistema.avancarEtapaProcesso(processo, enumeracao(EtapaProcesso.class, campos, "etapa"), usuario);
+                responderJson(troca, 200, jsonProcesso(processo));
+                break;
+            case "propostas":
+                Proposta proposta = new Proposta(fornecedor(campo(campos, "cnpj")), processo, LocalDateTime.now(), 
+                                                 Dinheiro.deTexto(campo(campos, "valorTotal")), campos.get("descricao"));
+                sistema.registrarProposta(processo, proposta);
+                responderJson(troca, 201, jsonProposta(proposta));
+                break;
+            case "vencedora":
+                String cnpj = campos.get("cnpj");
+                if (cnpj == null || cnpj.isEmpty()) {
+                    sistema.selecionarMelhorProposta(processo, usuario);
+                    responderJson(troca, 200, jsonProcesso(processo));
+                    break;
+                }
+                Proposta vencedora = null;
+                for (Proposta candidata : processo.getPropostas()) {
+                    if (candidata.getFornecedor().getCnpj().equals(cnpj)) {
+                        vencedora = candidata;
+                        break;
+                    }
+                }
+                if (vencedora == null) {
+                    throw new RecursoNaoEncontrado("Nenhuma proposta do fornecedor " + cnpj + " no processo " + processo.getNumero());
+                }
+                sistema.selecionarPropostaVencedora(processo, vencedora, usuario);
+                responderJson(troca, 200, jsonProcesso(processo));
+                break;
+            case "disputa":
+                sistema.abrirDisputaLances(processo, Dinheiro.deTexto(campo(campos, "decrementoMinimo")), usuario);
+                responderJson(troca, 201, jsonDisputa(processo, sistema.buscarDisputa(processo)));
+                break;
+            case "lances":
+                Lance lance = sistema.registrarLance(processo, fornecedor(campo(campos, "cnpj")), 
+                                                     Dinheiro.deTexto(campo(campos, "valor")));
+                responderJson(troca, 201, new Json()
+                    .texto("processo", processo.getNumero())
+                    .numero("sequencia", lance.getSequencia())
+                    .texto("fornecedor", lance.getFornecedor().getCnpj())
+                    .texto("dataEnvio", lance.getDataEnvio().toString())
+                    .valor("valor", lance.getValor())
+                    .toString());
+                break;
+            case "encerramento":
+                Duration tempoPadrao = MotorLances.TEMPO_MAXIMO_ENCERRAMENTO_PADRAO;
+                Duration tempoMaximo = Duration.ofSeconds(inteiro(campos, "tempoMaximo", tempoPadrao.getSeconds()));
+                sistema.iniciarEncerramentoDisputa(processo, tempoMaximo, usuario);
+                responderJson(troca, 200, jsonDisputa(processo, sistema.buscarDisputa(processo)));
+                break;
+            case "resultado":
+                List<Json> classificacao = new ArrayList<>();
+                for (Lance lanceFinal : sistema.concluirDisputaLances(processo, usuario)) {
+                    classificacao.add(new Json()
+                        .texto("fornecedor", lanceFinal.getFornecedor().getCnpj())
+                        .valor("valor", lanceFinal.getValor()));
+                }
+                responderJson(troca, 200, new Json()
+                    .texto("processo", processo.getNumero())
+                    .lista("classificacao", classificacao)
+                    .toString());
+                break;
+            case "contrato":
+                Contrato contrato = sistema.gerarContrato(processo, campo(campos, "numero"), 
+                                                          LocalDate.parse(campo(campos, "dataInicio")), 
+                                                          LocalDate.parse(campo(campos, "dataFim")), 
+                                                          Dinheiro.deTexto(campo(campos, "valor")), usuario);
+                responderJson(troca, 201, jsonContrato(contrato));
+                break;
+            default:
+                throw new RecursoNaoEncontrado("Recurso não encontrado");
+        }
+    }
+    
+    private void buscarTexto(HttpExchange troca) throws IOException {
+        Map<String, String> parametros = decodificarCampos(troca.getRequestURI().getRawQuery());
+        String consulta = campo(parametros, "q");
+        long limite = inteiro(parametros, "limite", 10);
+        List<Json> resultados = new ArrayList<>();
+        for (ResultadoBusca resultado : sistema.buscarTexto(consulta, (int) Math.min(limite, Integer.MAX_VALUE))) {
+            resultados.add(new Json()
+                .texto("tipo", resultado.getTipo().name())
+                .texto("chave", resultado.getChave())
+                .numero("posicao", resultado.getPosicao())
+                .texto("descricao", resultado.getDescricao())
+                .decimal("relevancia", resultado.getRelevancia(), 4));
+        }
+        
+        responderJson(troca, 200, new Json()
+            .texto("consulta", consulta)
+            .lista("resultados", resultados)
+            .toString());
+    }
+    
+    private void analisarPagamentos(HttpExchange troca, String agrupamento) throws IOException {
+        DimensaoAnalitica dimensao;
+        switch (agrupamento) {
+            case "modalidade": dimensao = DimensaoAnalitica.MODALIDADE; break;
+            case "categoria": dimensao = DimensaoAnalitica.CATEGORIA_FORNECEDOR; break;
+            case "departamento": dimensao = DimensaoAnalitica.DEPARTAMENTO; break;
+            case "mes": dimensao = DimensaoAnalitica.MES; break;
+            default: throw new RecursoNaoEncontrado("Agrupamento desconhecido: " + agrupamento);
+        }
+        Map<String, String> parametros = decodificarCampos(troca.getRequestURI().getRawQuery());
+        YearMonth inicio = parametros.containsKey("inicio") ? YearMonth.parse(parametros.get("inicio")) : null;
+        YearMonth fim = parametros.containsKey("fim") ? YearMonth.parse(parametros.get("fim")) : null;
+        double[] percentis = fracoes(parametros, "percentis");
+        
+        SnapshotAnalitico snapshot = sistema.buscarSnapshotAnalitico(IDADE_MAXIMA_ANALISE);
+        List<Json> grupos = new ArrayList<>();
+        for (GrupoAnalitico grupo : snapshot.agregar(ForkJoinPool.commonPool(), dimensao, inicio, fim, percentis)) {
+            Json objeto = new Json()
+                .texto("chave", grupo.getChave())
+                .numero("quantidade", grupo.getQuantidade())
+                .valor("soma", grupo.getSoma())
+                .valor("minimo", grupo.getMinimo())
+                .valor("maximo", grupo.getMaximo());
+            for (double fracao : percentis) {
+                objeto.valor(nomePercentil(fracao), grupo.getPercentil(fracao));
+            }
+            grupos.add(objeto);
+        }
+        
+        responderJson(troca, 200, new Json()
+            .texto("agrupamento", agrupamento)
+            .texto("geradoEm", snapshot.getDataGeracao().toString())
+            .numero("pagamentos", snapshot.getQuantidadeLinhas())
+            .lista("grupos", grupos)
+            .toString());
+    }
+    
+    private void pesquisarPrecos(HttpExchange troca) throws IOException {
+        Map<String, String> parametros = decodificarCampos(troca.getRequestURI().getRawQuery());
+        String descricao = campo(parametros, "descricao");
+        UnidadeMedida unidade = enumeracao(UnidadeMedida.class, parametros, "unidade");
+        int inicio = (int) inteiro(parametros, "inicio", Integer.MIN_VALUE);
+        int fim = (int) inteiro(parametros, "fim", Integer.MAX_VALUE);
+        double[] quantis = fracoes(parametros, "quantis");
+        
+        List<Json> origens = new ArrayList<>();
+        for (OrigemPreco origem : OrigemPreco.values()) {
+            ReferenciaPrecos referencia = sistema.pesquisarPrecos(descricao, unidade, origem, inicio, fim);
+            if (referencia == null) {
+                continue;
+            }
+            Json objeto = new Json()
+                .texto("origem", origem.name())
+                .numero("quantidade", referencia.getQuantidade())
+                .valor("minimo", referencia.getMinimo())
+                .valor("maximo", referencia.getMaximo())
+                .valor("media", referencia.getMedia())
+                .valor("mediana", referencia.getMediana());
+            for (double fracao : quantis) {
+                objeto.valor(nomePercentil(fracao), referencia.getQuantil(fracao));
+            }
+            origens.add(objeto);
+        }
+        
+        responderJson(troca, 200, new Json()
+            .texto("descricao", IndicePrecos.normalizar(descricao))
+            .texto("unidade", unidade.name())
+            .lista("origens", origens)
+            .toString());
+    }
+    
+    private void listarPropostas(HttpExchange troca, ProcessoAquisicao processo) throws IOException {
+        long limite = inteiro(decodificarCampos(troca.getRequestURI().getRawQuery()), "limite", 10);
+        List<Json> propostas = new ArrayList<>();
+        for (Proposta proposta : sistema.buscarMelhoresPropostas(processo, (int) Math.min(limite, Integer.MAX_VALUE))) {
+            propostas.add(objetoProposta(proposta));
+        }
+        
+        responderJson(troca, 200, new Json()
+            .texto("processo", processo.getNumero())
+            .numero("total", processo.getLivroPropostas().tamanho())
+            .lista("classificacao", propostas)
+            .toString());
+    }
+    
+    /**
+     * Envia o melhor lance a cada atualização da disputa até o seu encerramento.
+     * Os licitantes não são identificados durante a disputa.
+     */
+    private void acompanharLances(HttpExchange troca, ProcessoAquisicao processo) throws IOException {
+        if (sistema.buscarDisputa(processo) == null) {
+            throw new IllegalStateException("Processo " + processo.getNumero() + " não possui disputa de lances aberta");
+        }
+        
+        troca.getResponseHeaders().set("Content-Type", "text/event-stream; charset=UTF-8");
+        troca.getResponseHeaders().set("Cache-Control", "no-cache");
+        troca.sendResponseHeaders(200, 0);
+        OutputStream saida = troca.getResponseBody();
+        CountDownLatch encerramento = new CountDownLatch(1);
+        acompanhamentos.add(encerramento);
+        
+        ObservadorLances observador = (numeroProcesso, melhorLance, situacao) -> {
+            String evento = "data: " + new Json()
+                .texto("processo", numeroProcesso)
+                .numero("sequencia", melhorLance.getSequencia())
+                .valor("melhorLance", melhorLance.getValor())
+                .texto("situacao", situacao.name()) + "\n\n";
+            try {
+                saida.write(evento.getBytes(StandardCharsets.UTF_8));
+                saida.flush();
+            } catch (IOException e) {
+                encerramento.countDown();
+                throw new UncheckedIOException(e);
+            }
+            if (situacao == SituacaoDisputa.ENCERRADA) {
+                encerramento.countDown();
+            }
+        };
+        
+        AssinaturaLances assinatura = sistema.acompanharDisputa(processo, observador);
+        try {
+            encerramento.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            assinatura.close();
+            acompanhamentos.remove(encerramento);
+        }
+    }
+    
+    /**
+     * Grava o corpo da requisição, sem codificação de formulário, no armazém de documentos
+     * enquanto é recebido; o título vem na query string
+     */
+    private void adicionarDocumento(HttpExchange troca, ProcessoAquisicao processo) throws IOException {
+        Usuario responsavel = usuario(troca);
+        String titulo = campo(decodificarCampos(troca.getRequestURI().getRawQuery()), "titulo");
+        String tamanhoInformado = troca.getRequestHeaders().getFirst("Content-Length");
+        if (tamanhoInformado != null && Long.parseLong(tamanhoInformado) > TAMANHO_MAXIMO_DOCUMENTO) {
+            throw new CorpoMuitoGrande("Documento excede " + TAMANHO_MAXIMO_DOCUMENTO + " bytes");
+        }
+        
+        ConteudoDocumento conteudo = sistema.armazenarConteudo(troca.getRequestBody(), TAMANHO_MAXIMO_DOCUMENTO);
+        Documento documento = new Documento(titulo, conteudo, responsavel, LocalDateTime.now());
+        sistema.adicionarDocumentoAoProcesso(processo, documento);
+        responderJson(troca, 201, new Json()
+            .texto("processo", processo.getNumero())
+            .numero("indice", processo.getDocumentos().indexOf(documento))
+            .texto("titulo", titulo)
+            .texto("hash", conteudo.getHash())
+            .numero("tamanho", conteudo.getTamanho())
+            .toString());
+    }
+    
+    /**
+     * Envia o conteúdo do documento direto do arquivo do armazém para a conexão
+     */
+    private void enviarDocumento(HttpExchange troca, ProcessoAquisicao processo, String indice) throws IOException {
+        List<Documento> documentos = processo.getDocumentos();
+        int posicao;
+        try {
+            posicao = Integer.parseInt(indice);
+        } catch (NumberFormatException e) {
+            posicao = -1;
+        }
+        if (posicao < 0 || posicao >= documentos.size()) {
+            throw new RecursoNaoEncontrado("Documento não encontrado: " + indice);
+        }
+        
+        Documento documento = documentos.get(posicao);
+        long tamanho = documento.getConteudo().getTamanho();
+        troca.getResponseHeaders().set("Content-Type", "application/octet-stream");
+        troca.getResponseHeaders().set("ETag", "\"" + documento.getConteudo().getHash() + "\"");
+        // Tamanho -1 indica resposta sem corpo
+        troca.sendResponseHeaders(200, tamanho > 0 ? tamanho : -1);
+        sistema.transferirConteudo(documento, Channels.newChannel(troca.getResponseBody()));
+    }
+    
+    private void iniciarProcesso(HttpExchange troca) throws IOException {
+        Usuario responsavel = usuario(troca);
+        Map<String, String> campos = lerFormulario(troca);
+        ProcessoAquisicao processo = sistema.iniciarProcessoAquisicao(
+            campo(campos, "titulo"), campos.get("descricao"), responsavel,
+            enumeracao(ModalidadeLicitacao.class, campos, "modalidade"),
+            LocalDate.parse(campo(campos, "dataAbertura")),
+            Dinheiro.deTexto(campo(campos, "valorEstimado")));
+        responderJson(troca, 201, jsonProcesso(processo));
+    }
+    
+    private void tratarMovimentoContrato(HttpExchange troca, Contrato contrato, String movimento) throws IOException {
+        Usuario ordenador = usuario(troca);
+        Map<String, String> campos = lerFormulario(troca);
+        String numero = campo(campos, "numero");
+        LocalDate data = LocalDate.parse(campo(campos, "data"));
+        long valor = Dinheiro.deTexto(campo(campos, "valor"));
+        
+        switch (movimento) {
+            case "empenhos":
+                sistema.registrarEmpenho(contrato, numero, data, valor, ordenador);
+                break;
+            case "liquidacoes":
+                sistema.registrarLiquidacao(contrato, numero, data, valor, ordenador);
+                break;
+            case "pagamentos":
+                sistema.registrarPagamento(contrato, numero, data, valor, campos.get("descricao"), ordenador);
+                break;
+            default:
+                throw new RecursoNaoEncontrado("Recurso não encontrado");
+        }
+        
+        responderJson(troca, 201, new Json()
+            .texto("numero", numero)
+            .texto("contrato", contrato.getNumero())
+            .texto("data", data.toString())
+            .valor("valor", valor)
+            .toString());
+    }
+    
+    private void enviarRelatorio(HttpExchange troca, String[] caminho) throws IOException {
+        GeradorRelatorioHttp gerador;
+        if (caminho.length == 2 && caminho[1].equals("transparencia")) {
+            gerador = sistema::gerarRelatorioTransparencia;
+        } else if (caminho.length == 3 && caminho[1].equals("processo")) {
+            ProcessoAquisicao processo = processo(caminho[2]);
+            gerador = destino -> sistema.gerarRelatorioProcesso(processo, destino);
+        } else if (caminho.length == 3 && caminho[1].equals("auditoria")) {
+            ProcessoAquisicao processo = processo(caminho[2]);
+            gerador = destino -> sistema.gerarRelatorioAuditoria(processo, destino);
+        } else {
+            throw new RecursoNaoEncontrado("Relatório não encontrado");
+        }
+        
+        // Tamanho 0 indica transferência em partes: o relatório é enviado enquanto é gerado
+        troca.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        troca.sendResponseHeaders(200, 0);
+        gerador.gerar(troca.getResponseBody());
+    }
+    
+    /**
+     * Gera um relatório diretamente no corpo da resposta
+     */
+    private interface GeradorRelatorioHttp {
+        void gerar(OutputStream destino) throws IOException;
+    }
+    
+    // Resolução de recursos e parâmetros
+    private ProcessoAquisicao processo(String numero) {
+        ProcessoAquisicao processo = sistema.buscarProcessoPorNumero(numero);
+        if (processo == null) {
+            throw new RecursoNaoEncontrado("Processo não encontrado: " + numero);
+        }
+        return processo;
+    }
+    
+    private ProcessoAquisicao processoInclusiveArquivado(String numero) {
+        ProcessoAquisicao processo = sistema.buscarProcessoPorNumero(numero);
+        if (processo == null) {
+            processo = sistema.buscarProcessoArquivado(numero);
+        }
+        if (processo == null) {
+            throw new RecursoNaoEncontrado("Processo não encontrado: " + numero);
+        }
+        return processo;
+    }
+    
+    private Contrato contrato(String numero) {
+        Contrato contrato = sistema.buscarContratoPorNumero(numero);
+        if (contrato == null) {
+            throw new RecursoNaoEncontrado("Contrato não encontrado: " + numero);
+        }
+        return contrato;
+    }
+    
+    private Fornecedor fornecedor(String cnpj) {
+        Fornecedor fornecedor = sistema.buscarFornecedorPorCNPJ(cnpj);
+        if (fornecedor == null) {
+            throw new IllegalArgumentException("Fornecedor não cadastrado: " + cnpj);
+        }
+        return fornecedor;
+    }
+    
+    private Usuario usuario(HttpExchange troca) {
+        String cpf = troca.getRequestHeaders().getFirst(CABECALHO_USUARIO);
+        Usuario usuario = cpf != null ? sistema.buscarUsuarioPorCPF(cpf) : null;
+        if (usuario == null) {
+            throw new AcessoNegado("Usuário não identificado; informe o CPF no cabeçalho " + CABECALHO_USUARIO);
+        }
+        return usuario;
+    }
+    
+    private static String campo(Map<String, String> campos, String nome) {
+        String valor = campos.get(nome);
+        if (valor == null || valor.isEmpty()) {
+            throw new IllegalArgumentException("Campo obrigatório ausente: " + nome);
+        }
+        return valor;
+    }
+    
+    private static long inteiro(Map<String, String> campos, String nome, long padrao) {
+        String valor = campos.get(nome);
+        if (valor == null || valor.isEmpty()) {
+            return padrao;
+        }
+        try {
+            return Long.parseLong(valor);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Valor inválido para " + nome + ": " + valor);
+        }
+    }
+    
+    // Frações separadas por vírgula, como "0.5,0.9"; nenhuma se o campo estiver ausente
+    private static double[] fracoes(Map<String, String> campos, String nome) {
+        String valor = campos.get(nome);
+        if (valor == null || valor.isEmpty()) {
+            return new double[0];
+        }
+        String[] partes = valor.split(",");
+        double[] fracoes = new double[partes.length];
+        for (int i = 0; i < partes.length; i++) {
+            try {
+                fracoes[i] = Double.parseDouble(partes[i].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Valor inválido para " + nome + ": " + partes[i]);
+            }
+        }
+        return fracoes;
+    }
+    
+    private static String nomePercentil(double fracao) {
+        return "p" + BigDecimal.valueOf(fracao * 100).stripTrailingZeros().toPlainString();
+    }
+    
+    private static <E extends Enum<E>> E enumeracao(Class<E> tipo, Map<String, String> campos, String nome) {
+        String valor = campo(campos, nome);
+        try {
+            return Enum.valueOf(tipo, valor);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Valor inválido para " + nome + ": " + valor);
+        }
+    }
+    
+    private static String[] caminho(HttpExchange troca) {
+        String caminho = troca.getRequestURI().getPath();
+        List<String> partes = new ArrayList<>();
+        for (String parte : caminho.split("/")) {
+            if (!parte.isEmpty()) {
+                partes.add(parte);
+            }
+        }
+        return partes.toArray(new String[0]);
+    }
+    
+    private static void exigirMetodo(String metodo, String esperado) {
+        if (!metodo.equals(esperado)) {
+            throw new MetodoNaoPermitido("Método " + metodo + " não permitido; use " + esperado);
+        }
+    }
+    
+    private static Map<String, String> lerFormulario(HttpExchange troca) throws IOException {
+        byte[] corpo = troca.getRequestBody().readNBytes(TAMANHO_MAXIMO_CORPO + 1);
+        if (corpo.length > TAMANHO_MAXIMO_CORPO) {
+            throw new CorpoMuitoGrande("Corpo da requisição excede " + TAMANHO_MAXIMO_CORPO + " bytes");
+        }
+        
+        return decodificarCampos(new String(corpo, StandardCharsets.UTF_8));
+    }
+    
+    private static Map<String, String> decodificarCampos(String codificados) {
+        Map<String, String> campos = new HashMap<>();
+        if (codificados == null) {
+            return campos;
+        }
+        
+        for (String par : codificados.split("&")) {
+            if (par.isEmpty()) {
+                continue;
+            }
+            int separador = par.indexOf('=');
+            String nome = separador < 0 ? par : par.substring(0, separador);
+            String valor = separador < 0 ? "" : par.substring(separador + 1);
+            campos.put(URLDecoder.decode(nome, StandardCharsets.UTF_8), URLDecoder.decode(valor, StandardCharsets.UTF_8));
+        }
+        return campos;
+    }
+    
+    // Respostas
+    private static void responderJson(HttpExchange troca, int status, String json) throws IOException {
+        byte[] corpo = json.getBytes(StandardCharsets.UTF_8);
+        troca.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        troca.sendResponseHeaders(status, corpo.length);
+        troca.getResponseBody().write(corpo);
+    }
+    
+    private static void responderErro(HttpExchange troca, int status, String mensagem) throws IOException {
+        // Falhas durante o envio de um relatório em streaming não podem mais alterar o status
+        if (troca.getResponseCode() != -1) {
+            return;
+        }
+        responderJson(troca, status, new Json().texto("erro", mensagem).toString());
+    }
+    
+    private static String jsonProcesso(ProcessoAquisicao processo) {
+        Proposta vencedora = processo.getPropostaVencedora();
+        Contrato contrato = processo.getContrato();
+        return new Json()
+            .texto("numero", processo.getNumero())
+            .texto("titulo", processo.getTitulo())
+            .texto("modalidade", processo.getModalidade().name())
+            .texto("etapa", processo.getEtapaAtual().name())
+            .texto("dataAbertura", processo.getDataAbertura().toString())
+            .valor("valorEstimado", processo.getValorEstimado())
+            .numero("itens", processo.getItens().size())
+            .numero("documentos", processo.getDocumentos().size())
+            .numero("propostas", processo.getPropostas().size())
+            .texto("fornecedorVencedor", vencedora != null ? vencedora.getFornecedor().getCnpj() : null)
+            .texto("contrato", contrato != null ? contrato.getNumero() : null)
+            .toString();
+    }
+    
+    private static String jsonProposta(Proposta proposta) {
+        return objetoProposta(proposta).toString();
+    }
+    
+    private static Json objetoProposta(Proposta proposta) {
+        return new Json()
+            .texto("processo", proposta.getProcesso().getNumero())
+            .texto("fornecedor", proposta.getFornecedor().getCnpj())
+            .texto("dataEnvio", proposta.getDataEnvio().toString())
+            .valor("valorTotal", proposta.getValorTotal());
+    }
+    
+    private static String jsonDisputa(ProcessoAquisicao processo, SessaoDisputa sessao) {
+        return new Json()
+            .texto("processo", processo.getNumero())
+            .texto("situacao", sessao.getSituacao().name())
+            .valor("decrementoMinimo", sessao.getDecrementoMinimo())
+            .valor("melhorLance", sessao.getMelhorLance().getValor())
+            .toString();
+    }
+    
+    private static String jsonContrato(Contrato contrato) {
+        SaldoContrato saldo = contrato.getRazao().getSaldo();
+        IndiceEntregas indiceEntregas = contrato.getIndiceEntregas();
+        List<Json> itens = new ArrayList<>();
+        for (Item item : contrato.getProcesso().getItens()) {
+            itens.add(new Json()
+                .texto("nome", item.getNome())
+                .numero("contratado", item.getQuantidade())
+                .numero("entregue", indiceEntregas.getQuantidadeEntregue(item))
+                .numero("pendente", indiceEntregas.getQuantidadePendente(item))
+                .numero("excedente", indiceEntregas.getQuantidadeExcedente(item))
+                .valor("valorEntregue", indiceEntregas.getValorEntregue(item)));
+        }
+        return new Json()
+            .texto("numero", contrato.getNumero())
+            .texto("processo", contrato.getProcesso().getNumero())
+            .texto("fornecedor", contrato.getFornecedor().getCnpj())
+            .texto("dataInicio", contrato.getDataInicio().toString())
+            .texto("dataFim", contrato.getDataFim().toString())
+            .valor("valor", contrato.getValor())
+            .valor("empenhado", saldo.getEmpenhado())
+            .valor("liquidado", saldo.getLiquidado())
+            .valor("pago", saldo.getPago())
+            .numero("pagamentos", contrato.getPagamentos().size())
+            .lista("itens", itens)
+            .toString();
+    }
+    
+    private String jsonTotaisArquivo(String agrupamento) {
+        Map<?, TotaisArquivo> totais;
+        switch (agrupamento) {
+            case "modalidade":
+                totais = sistema.buscarTotaisArquivadosPorModalidade();
+                break;
+            case "fornecedor":
+                totais = sistema.buscarTotaisArquivadosPorFornecedor();
+                break;
+            case "ano":
+                totais = sistema.buscarTotaisArquivadosPorAno();
+                break;
+            default:
+                throw new RecursoNaoEncontrado("Agrupamento não encontrado: " + agrupamento);
+        }
+        
+        List<Json> grupos = new ArrayList<>();
+        for (Map.Entry<?, TotaisArquivo> grupo : totais.entrySet()) {
+            TotaisArquivo total = grupo.getValue();
+            grupos.add(new Json()
+                .texto(agrupamento, String.valueOf(grupo.getKey()))
+                .numero("processos", total.getProcessos())
+                .numero("cancelados", total.getCancelados())
+                .valor("valorEstimado", total.getValorEstimado())
+                .valor("valorContratado", total.getValorContratado())
+                .valor("valorPago", total.getValorPago()));
+        }
+        return new Json().lista("totais", grupos).toString();
+    }
+    
+    /**
+     * Montagem de objetos JSON planos, com listas de objetos
+     */
+    private static final class Json {
+        private final StringBuilder json = new StringBuilder("{");
+        
+        Json texto(String nome, String valor) {
+            nome(nome);
+            if (valor == null) {
+                json.append("null");
+                return this;
+            }
+            
+            json.append('"');
+            for (int i = 0; i < valor.length(); i++) {
+                char c = valor.charAt(i);
+                if (c == '"' || c == '\\') {
+                    json.append('\\').append(c);
+                } else if (c < 0x20) {
+                    json.append(String.format("\\u%04x", (int) c));
+                } else {
+                    json.append(c);
+                }
+            }
+            json.append('"');
+            return this;
+        }
+        
+        Json numero(String nome, long valor) {
+            nome(nome);
+            json.append(valor);
+            return this;
+        }
+        
+        Json valor(String nome, long centavos) {
+            nome(nome);
+            json.append(Dinheiro.emDecimal(centavos).toPlainString());
+            return this;
+        }
+        
+        Json decimal(String nome, double valor, int casas) {
+            nome(nome);
+            json.append(BigDecimal.valueOf(valor).setScale(casas, RoundingMode.HALF_EVEN).toPlainString());
+            return this;
+        }
+        
+        Json lista(String nome, List<Json> objetos) {
+            nome(nome);
+            json.append('[');
+            for (int i = 0; i < objetos.size(); i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append(objetos.get(i));
+            }
+            json.append(']');
+            return this;
+        }
+        
+        private void nome(String nome) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append('"').append(nome).append("\":");
+        }
+        
+        @Override
+        public String toString() {
+            return json + "}";
+        }
+    }
+    
+    // Erros mapeados para códigos HTTP específicos
+    private static final class RecursoNaoEncontrado extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        
+        RecursoNaoEncontrado(String mensagem) { super(mensagem); }
+    }
+    
+    private static final class AcessoNegado extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        
+        AcessoNegado(String mensagem) { super(mensagem); }
+    }
+    
+    private static final class MetodoNaoPermitido extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        
+        MetodoNaoPermitido(String mensagem) { super(mensagem); }
+    }
+    
+    private static final class CorpoMuitoGrande extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        
+        CorpoMuitoGrande(String mensagem) { super(mensagem); }
+    }
+}
+
+/**
+ * Enumeração dos tipos de usuários do sistema
+ */
+enum TipoUsuario {
+    GESTOR,               // Responsável por gerenciar processos de aquisição
+    FISCAL_CONTRATO,      // Responsável por fiscalizar a execução de contratos
+    ORDENADOR_DESPESA,    // Responsável por autorizar despesas
+    ADMINISTRADOR         // Administrador do sistema
+}
+
+/**
+ * Enumeração das modalidades de licitação conforme legislação brasileira
+ */
+enum ModalidadeLicitacao {
+    DISPENSA,             // Dispensa de licitação
+    INEXIGIBILIDADE,      // Inexigibilidade de licitação
+    CONVITE,              // Modalidade Convite
+    TOMADA_PRECOS,        // Tomada de Preços
+    CONCORRENCIA,         // Concorrência
+    PREGAO_PRESENCIAL,    // Pregão Presencial
+    PREGAO_ELETRONICO     // Pregão Eletrônico
+}
+
+/**
+ * Enumeração das etapas de um processo de aquisição
+ */
+enum EtapaProcesso {
+    ELABORACAO_TERMO_REFERENCIA,  // Elaboração do Termo de Referência
+    PESQUISA_PRECOS,              // Pesquisa de Preços
+    ELABORACAO_EDITAL,            // Elaboração do Edital
+    PUBLICACAO_EDITAL,            // Publicação do Edital
+    RECEBIMENTO_PROPOSTAS,        // Recebimento de Propostas
+    ANALISE_PROPOSTAS,            // Análise de Propostas
+    HOMOLOGACAO,                  // Homologação
+    CONTRATACAO,                  // Contratação
+    EXECUCAO_CONTRATO,            // Execução do Contrato
+    CONCLUIDO,                    // Processo Concluído
+    CANCELADO                     // Processo Cancelado
+}
+
+/**
+ * Enumeração das unidades de medida para itens
+ */
+enum UnidadeMedida {
+    UNIDADE,
+    CAIXA,
+    PACOTE,
+    METRO,
+    METRO_QUADRADO,
+    LITRO,
+    QUILO,
+    HORA,
+    MES
+}
+
+/**
+ * Operações sobre valores monetários em ponto fixo.
+ * 
+ * Os valores do domínio são mantidos como long em centavos: somas e comparações são exatas
+ * e não alocam objetos. A conversão para BigDecimal ocorre apenas na formatação dos
+ * relatórios. As operações aritméticas lançam ArithmeticException em caso de estouro.
+ */
+final class Dinheiro {
+    static final int CASAS_DECIMAIS = 2;
+    static final long CENTAVOS_POR_REAL = 100;
+    
+    private Dinheiro() {
+    }
+    
+    /**
+     * Valor em centavos correspondente a uma quantia inteira de reais
+     */
+    public static long reais(long reais) {
+        return Math.multiplyExact(reais, CENTAVOS_POR_REAL);
+    }
+    
+    /**
+     * Converte um valor decimal informado em reais para centavos; lança ArithmeticException se o
+     * valor tiver mais de duas casas decimais, em vez de arredondá-lo
+     */
+    public static long deDecimal(BigDecimal reais) {
+        return reais.setScale(CASAS_DECIMAIS, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+    }
+    
+    /**
+     * Converte um valor decimal calculado em reais para centavos, arredondando meio-para-par.
+     * Não deve ser usado com valores informados pelo usuário, que são rejeitados por deDecimal.
+     */
+    public static long arredondar(BigDecimal reais) {
+        return reais.setScale(CASAS_DECIMAIS, RoundingMode.HALF_EVEN).unscaledValue().longValueExact();
+    }
+    
+    /**
+     * Interpreta um valor em reais no formato "1234.56", com no máximo duas casas decimais
+     */
+    public static long deTexto(String reais) {
+        try {
+            return deDecimal(new BigDecimal(reais.trim()));
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new IllegalArgumentException("Valor monetário inválido: " + reais, e);
+        }
+    }
+    
+    public static BigDecimal emDecimal(long centavos) {
+        return BigDecimal.valueOf(centavos, CASAS_DECIMAIS);
+    }
+    
+    public static long somar(long centavos, long outro) {
+        return Math.addExact(centavos, outro);
+    }
+    
+    public static long subtrair(long centavos, long outro) {
+        return Math.subtractExact(centavos, outro);
+    }
+    
+    public static long multiplicar(long centavos, long quantidade) {
+        return Math.multiplyExact(centavos, quantidade);
+    }
+    
+    /**
+     * Percentual que a parte representa do total, apenas para exibição
+     */
+    public static double percentual(long parte, long total) {
+        return parte * 100.0 / total;
+    }
+    
+    public static String formatar(NumberFormat formato, long centavos) {
+        return formato.format(emDecimal(centavos));
+    }
+}
+
+/**
+ * Validação dos dígitos verificadores de CPF e CNPJ
+ */
+final class ValidadorDocumentos {
+    private static final int[] PESOS_CNPJ = {6, 5, 4, 3, 2, 9, 8, 7, 6, 5, 4, 3, 2};
+    
+    private ValidadorDocumentos() {
+    }
+    
+    /**
+     * Remove a pontuação de um documento formatado (123.456.789-09, 12.345.678/0001-95)
+     */
+    public static String somenteDigitos(String documento) {
+        StringBuilder digitos = new StringBuilder(documento.length());
+        for (int i = 0; i < documento.length(); i++) {
+            char c = documento.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digitos.append(c);
+            } else if (c != '.' && c != '-' && c != '/' && c != ' ') {
+                return documento;
+            }
+        }
+        return digitos.toString();
+    }
+    
+    public static boolean cpfValido(String cpf) {
+        if (!formatoValido(cpf, 11)) {
+            return false;
+        }
+        
+        for (int posicao = 9; posicao <= 10; posicao++) {
+            int soma = 0;
+            for (int i = 0; i < posicao; i++) {
+                soma += (cpf.charAt(i) - '0') * (posicao + 1 - i);
+            }
+            int digito = (soma * 10) % 11 % 10;
+            if (digito != cpf.charAt(posicao) - '0') {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    public static boolean cnpjValido(String cnpj) {
+        if (!formatoValido(cnpj, 14)) {
+            return false;
+        }
+        
+        for (int posicao = 12; posicao <= 13; posicao++) {
+            int soma = 0;
+            // O primeiro dígito usa os pesos a partir do segundo elemento
+            int deslocamento = 13 - posicao;
+            for (int i = 0; i < posicao; i++) {
+                soma += (cnpj.charAt(i) - '0') * PESOS_CNPJ[i + deslocamento];
+            }
+            int resto = soma % 11;
+            int digito = resto < 2 ? 0 : 11 - resto;
+            if (digito != cnpj.charAt(posicao) - '0') {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    // Exige somente dígitos e rejeita sequências repetidas (000.000.000-00 etc.), que passam no cálculo
+    private static boolean formatoValido(String documento, int tamanho) {
+        if (documento == null || documento.length() != tamanho) {
+            return false;
+        }
+        
+        boolean repetido = true;
+        for (int i = 0; i < tamanho; i++) {
+            char c = documento.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+            repetido &= c == documento.charAt(0);
+        }
+        return !repetido;
+    }
+}
+
+/**
+ * Classe que representa um usuário do sistema
+ */
+class Usuario implements Serializable {
+    private String cpf;
+    private String nome;
+    private String email;
+    private TipoUsuario tipo;
+    private String departamento;
+    
+    public Usuario(String cpf, String nome, String email, TipoUsuario tipo, String departamento) {
+        this.cpf = cpf;
+        this.nome = nome;
+        this.email = email;
+        this.tipo = tipo;
+        this.departamento = departamento;
+    }
+    
+    // Getters
+    public String getCpf() { return cpf; }
+    public String getNome() { return nome; }
+    public String getEmail() { return email; }
+    public TipoUsuario getTipo() { return tipo; }
+    public String getDepartamento() { return departamento; }
+}
+
+/**
+ * Classe que representa um fornecedor
+ */
+class Fornecedor implements Serializable {
+    private String cnpj;
+    private String razaoSocial;
+    private String email;
+    private String categoria;
+    
+    public Fornecedor(String cnpj, String razaoSocial, String email, String categoria) {
+        this.cnpj = cnpj;
+        this.razaoSocial = razaoSocial;
+        this.email = email;
+        this.categoria = categoria;
+    }
+    
+    // Getters
+    public String getCnpj() { return cnpj; }
+    public String getRazaoSocial() { return razaoSocial; }
+    public String getEmail() { return email; }
+    public String getCategoria() { return categoria; }
+}
+
+/**
+ * Classe que representa um item a ser adquirido
+ * 
+ * Valores monetários em centavos (ver Dinheiro)
+ */
+class Item implements Serializable {
+    private String nome;
+    private String descricao;
+    private long valorUnitario;
+    private int quantidade;
+    private UnidadeMedida unidade;
+    
+    public Item(String nome, String descricao, long valorUnitario, int quantidade, UnidadeMedida unidade) {
+        this.nome = nome;
+        this.descricao = descricao;
+        this.valorUnitario = valorUnitario;
+        this.quantidade = quantidade;
+        this.unidade = unidade;
+    }
+    
+    // Getters
+    public String getNome() { return nome; }
+    public String getDescricao() { return descricao; }
+    public long getValorUnitario() { return valorUnitario; }
+    public int getQuantidade() { return quantidade; }
+    public UnidadeMedida getUnidade() { return unidade; }
+    
+    // Métodos auxiliares
+    public long getValorTotal() {
+        return Dinheiro.multiplicar(valorUnitario, quantidade);
+    }
+}
+
+/**
+ * Classe que representa um documento do processo
+ * 
+ * O conteúdo fica no ArmazemDocumentos; o documento guarda apenas a referência a ele.
+ */
+class Documento implements Serializable {
+    private String titulo;
+    private ConteudoDocumento conteudo;
+    private Usuario responsavel;
+    private LocalDateTime dataCriacao;
+    
+    public Documento(String titulo, ConteudoDocumento conteudo, Usuario responsavel, LocalDateTime dataCriacao) {
+        this.titulo = titulo;
+        this.conteudo = conteudo;
+        this.responsavel = responsavel;
+        this.dataCriacao = dataCriacao;
+    }
+    
+    // Getters
+    public String getTitulo() { return titulo; }
+    public ConteudoDocumento getConteudo() { return conteudo; }
+    public Usuario getResponsavel() { return responsavel; }
+    public LocalDateTime getDataCriacao() { return dataCriacao; }
+}
+
+/**
+ * Referência ao conteúdo de um documento no ArmazemDocumentos: o hash SHA-256 do conteúdo,
+ * que é também o seu endereço no armazém, e o tamanho em bytes
+ */
+final class ConteudoDocumento implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int TAMANHO_HASH = 64;
+    
+    private final String hash;
+    private final long tamanho;
+    
+    ConteudoDocumento(String hash, long tamanho) {
+        // O hash compõe o caminho do arquivo no armazém
+        if (hash == null || hash.length() != TAMANHO_HASH || !hexadecimal(hash)) {
+            throw new IllegalArgumentException("Hash de conteúdo inválido: " + hash);
+        }
+        if (tamanho < 0) {
+            throw new IllegalArgumentException("Tamanho de conteúdo inválido: " + tamanho);
+        }
+        this.hash = hash;
+        this.tamanho = tamanho;
+    }
+    
+    public String getHash() { return hash; }
+    public long getTamanho() { return tamanho; }
+    
+    private static boolean hexadecimal(String texto) {
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
+
+/**
+ * Classe que representa um processo de aquisição
+ * 
+ * Valores monetários em centavos (ver Dinheiro)
+ */
+class ProcessoAquisicao implements Serializable {
+    private String numero;
+    private String titulo;
+    private String descricao;
+    private Usuario responsavel;
+    private ModalidadeLicitacao modalidade;
+    private LocalDate dataAbertura;
+    private long valorEstimado;
+    private volatile EtapaProcesso etapaAtual;
+    private volatile LocalDate dataEtapa;
+    private List<Item> itens;
+    private List<Documento> documentos;
+    private List<Proposta> propostas;
+    private LivroPropostas livroPropostas;
+    private volatile Proposta propostaVencedora;
+    private volatile Contrato contrato;
+    
+    public ProcessoAquisicao(String numero, String titulo, String descricao, 
+                           Usuario responsavel, ModalidadeLicitacao modalidade, 
+                           LocalDate dataAbertura, long valorEstimado) {
+        this.numero = numero;
+        this.titulo = titulo;
+        this.descricao = descricao;
+        this.responsavel = responsavel;
+        this.modalidade = modalidade;
+        this.dataAbertura = dataAbertura;
+        this.valorEstimado = valorEstimado;
+        this.etapaAtual = EtapaProcesso.ELABORACAO_TERMO_REFERENCIA;
+        this.dataEtapa = dataAbertura;
+        // Listas seguras para leitura concorrente; as alterações são serializadas pelo SistemaAquisicoes
+        this.itens = new CopyOnWriteArrayList<>();
+        this.documentos = new CopyOnWriteArrayList<>();
+        this.propostas = new CopyOnWriteArrayList<>();
+        this.livroPropostas = new LivroPropostas();
+    }
+    
+    // Getters
+    public String getNumero() { return numero; }
+    public String getTitulo() { return titulo; }
+    public String getDescricao() { return descricao; }
+    public Usuario getResponsavel() { return responsavel; }
+    public ModalidadeLicitacao getModalidade() { return modalidade; }
+    public LocalDate getDataAbertura() { return dataAbertura; }
+    public long getValorEstimado() { return valorEstimado; }
+    public EtapaProcesso getEtapaAtual() { return etapaAtual; }
+    public LocalDate getDataEtapa() { return dataEtapa; }
+    public List<Item> getItens() { return itens; }
+    public List<Documento> getDocumentos() { return documentos; }
+    public List<Proposta> getPropostas() { return propostas; }
+    public LivroPropostas getLivroPropostas() { return livroPropostas; }
+    public Proposta getPropostaVencedora() { return propostaVencedora; }
+    public Contrato getContrato() { return contrato; }
+    
+    // Setters
+    public void setEtapaAtual(EtapaProcesso etapaAtual) { this.etapaAtual = etapaAtual; }
+    public void setDataEtapa(LocalDate dataEtapa) { this.dataEtapa = dataEtapa; }
+    public void setPropostaVencedora(Proposta propostaVencedora) { this.propostaVencedora = propostaVencedora; }
+    public void setContrato(Contrato contrato) { this.contrato = contrato; }
+    
+    // Métodos auxiliares
+    public void adicionarItem(Item item) {
+        itens.add(item);
+    }
+    
+    public void adicionarDocumento(Documento documento) {
+        documentos.add(documento);
+    }
+    
+    public void adicionarProposta(Proposta proposta) {
+        propostas.add(proposta);
+        livroPropostas.adicionar(proposta);
+    }
+}
+
+/**
+ * Classe que representa uma proposta de fornecedor
+ * 
+ * Valores monetários em centavos (ver Dinheiro)
+ */
+class Proposta implements Serializable {
+    private Fornecedor fornecedor;
+    private ProcessoAquisicao processo;
+    private LocalDateTime dataEnvio;
+    private long valorTotal;
+    private String descricao;
+    
+    public Proposta(Fornecedor fornecedor, ProcessoAquisicao processo, 
+                  LocalDateTime dataEnvio, long valorTotal, String descricao) {
+        this.fornecedor = fornecedor;
+        this.processo = processo;
+        this.dataEnvio = dataEnvio;
+        this.valorTotal = valorTotal;
+        this.descricao = descricao;
+    }
+    
+    // Getters
+    public Fornecedor getFornecedor() { return fornecedor; }
+    public ProcessoAquisicao getProcesso() { return processo; }
+    public LocalDateTime getDataEnvio() { return dataEnvio; }
+    public long getValorTotal() { return valorTotal; }
+    public String getDescricao() { return descricao; }
+}
+
+/**
+ * Livro de propostas de um processo, mantido em ordem de classificação a cada inserção:
+ * menor valor total primeiro e, em caso de empate, a proposta enviada antes. Propostas com
+ * mesmo valor e mesma data são desempatadas pela ordem de chegada.
+ * 
+ * Baseado em lista de saltos concorrente: inserções simultâneas não usam bloqueio, a menor
+ * proposta é obtida em tempo constante e as N melhores em O(log n + N), sem reordenar a lista.
+ */
+class LivroPropostas implements Serializable {
+    private static final long serialVersionUID = 1L;
+    
+    private final ConcurrentSkipListMap<Classificacao, Proposta> classificacao;
+    private final AtomicLong sequencia;
+    private final AtomicInteger quantidade;
+    
+    public LivroPropostas() {
+        this.classificacao = new ConcurrentSkipListMap<>();
+        this.sequencia = new AtomicLong();
+        this.quantidade = new AtomicInteger();
+    }
+    
+    public void adicionar(Proposta proposta) {
+        classificacao.put(new Classificacao(proposta.getValorTotal(), proposta.getDataEnvio(), sequencia.incrementAndGet()), 
+                          proposta);
+        quantidade.incrementAndGet();
+    }
+    
+    /**
+     * Proposta de menor valor, ou null se nenhuma foi recebida
+     */
+    public Proposta menorProposta() {
+        Map.Entry<Classificacao, Proposta> primeira = classificacao.firstEntry();
+        return primeira != null ? primeira.getValue() : null;
+    }
+    
+    /**
+     * As N propostas melhor classificadas, da menor para a maior
+     */
+    public List<Proposta> melhoresPropostas(int limite) {
+        if (limite < 0) {
+            throw new IllegalArgumentException("Limite não pode ser negativo");
+        }
+        
+        List<Proposta> melhores = new ArrayList<>(Math.min(limite, quantidade.get()));
+        Iterator<Proposta> propostas = classificacao.values().iterator();
+        while (melhores.size() < limite && propostas.hasNext()) {
+            melhores.add(propostas.next());
+        }
+        return melhores;
+    }
+    
+    public int tamanho() {
+        return quantidade.get();
+    }
+    
+    private static final class Classificacao implements Comparable<Classificacao>, Serializable {
+        private static final long serialVersionUID = 1L;
+        
+        private final long valorTotal;
+        private final LocalDateTime dataEnvio;
+        private final long chegada;
+        
+        Classificacao(long valorTotal, LocalDateTime dataEnvio, long chegada) {
+            this.valorTotal = valorTotal;
+            this.dataEnvio = dataEnvio;
+            this.chegada = chegada;
+        }
+        
+        @Override
+        public int compareTo(Classificacao outra) {
+            int comparacao = Long.compare(valorTotal, outra.valorTotal);
+            if (comparacao == 0) {
+                comparacao = dataEnvio.compareTo(outra.dataEnvio);
+            }
+            return comparacao != 0 ? comparacao : Long.compare(chegada, outra.chegada);
+        }
+    }
+}
+
+/**
+ * Lance ofertado por um fornecedor na disputa de um pregão eletrônico.
+ * A sequência é atribuída pela sessão de disputa e define a ordem total dos lances do processo.
+ */
+class Lance implements Serializable {
+    private static final long serialVersionUID = 1L;
+    
+    private final Fornecedor fornecedor;
+    private final long valor;
+    private final LocalDateTime dataEnvio;
+    private final long sequencia;
+    
+    public Lance(Fornecedor fornecedor, long valor, LocalDateTime dataEnvio, long sequencia) {
+        this.fornecedor = fornecedor;
+        this.valor = valor;
+        this.dataEnvio = dataEnvio;
+        this.sequencia = sequencia;
+    }
+    
+    // Getters
+    public Fornecedor getFornecedor() { return fornecedor; }
+    public long getValor() { return valor; }
+    public LocalDateTime getDataEnvio() { return dataEnvio; }
+    public long getSequencia() { return sequencia; }
+}
+
+/**
+ * Classe que representa um contrato
+ * 
+ * Valores monetários em centavos (ver Dinheiro)
+ */
+class Contrato implements Serializable {
+    private String numero;
+    private ProcessoAquisicao processo;
+    private Fornecedor fornecedor;
+    private LocalDate dataInicio;
+    private LocalDate dataFim;
+    private long valor;
+    private Usuario fiscal;
+    private List<EntregaItem> entregas;
+    // Repositórios vinculados pelo sistema e totais derivados dos registros: fora da forma serializada
+    private transient RepositorioRegistros<NotaEmpenho> empenhos;
+    private transient RepositorioRegistros<Liquidacao> liquidacoes;
+    private transient RepositorioRegistros<Pagamento> pagamentos;
+    private transient RazaoContrato razao;
+    private transient IndiceEntregas indiceEntregas;
+    
+    public Contrato(String numero, ProcessoAquisicao processo, Fornecedor fornecedor, 
+                  LocalDate dataInicio, LocalDate dataFim, long valor, Usuario fiscal) {
+        this.numero = numero;
+        this.processo = processo;
+        this.fornecedor = fornecedor;
+        this.dataInicio = dataInicio;
+        this.dataFim = dataFim;
+        this.valor = valor;
+        this.fiscal = fiscal;
+        // Lista segura para leitura concorrente; as alterações são serializadas pelo SistemaAquisicoes
+        this.entregas = new CopyOnWriteArrayList<>();
+        this.razao = new RazaoContrato(numero, valor);
+        this.indiceEntregas = new IndiceEntregas();
+    }
+    
+    // Getters
+    public String getNumero() { return numero; }
+    public ProcessoAquisicao getProcesso() { return processo; }
     public Fornecedor getFornecedor() { return fornecedor; }
+    public LocalDate getDataInicio() { return dataInicio; }
+    public LocalDate getDataFim() { return dataFim; }
+    public long getValor() { return valor; }
+    public Usuario getFiscal() { return fiscal; }
+    public List<NotaEmpenho> getEmpenhos() { return empenhos != null ? empenhos.listar(numero) : List.of(); }
+    public List<EntregaItem> getEntregas() { return entregas; }
+    public List<Liquidacao> getLiquidacoes() { return liquidacoes != null ? liquidacoes.listar(numero) : List.of(); }
+    public List<Pagamento> getPagamentos() { return pagamentos != null ? pagamentos.listar(numero) : List.of(); }
+    public RazaoContrato getRazao() { return razao; }
+    public IndiceEntregas getIndiceEntregas() { return indiceEntregas; }
+    
+    /**
+     * Liga o contrato aos repositórios de registros financeiros do sistema em que foi gerado
+     */
+    void vincularRepositorios(RepositorioRegistros<NotaEmpenho> empenhos, RepositorioRegistros<Liquidacao> liquidacoes, 
+                              RepositorioRegistros<Pagamento> pagamentos) {
+        this.empenhos = empenhos;
+        this.liquidacoes = liquidacoes;
+        this.pagamentos = pagamentos;
+    }
+    
+    // Métodos auxiliares
+    public void adicionarEmpenho(NotaEmpenho empenho) {
+        repositorio(empenhos).adicionar(numero, empenho.getData(), empenho);
+    }
+    
+    public void adicionarEntrega(EntregaItem entrega) {
+        entregas.add(entrega);
+        indiceEntregas.registrar(entrega);
+    }
+    
+    public void adicionarLiquidacao(Liquidacao liquidacao) {
+        repositorio(liquidacoes).adicionar(numero, liquidacao.getData(), liquidacao);
+    }
+    
+    public void adicionarPagamento(Pagamento pagamento) {
+        repositorio(pagamentos).adicionar(numero, pagamento.getData(), pagamento);
+    }
+    
+    private <T> RepositorioRegistros<T> repositorio(RepositorioRegistros<T> repositorio) {
+        if (repositorio == null) {
+            throw new IllegalStateException("Contrato " + numero + " não foi gerado por um sistema de aquisições");
+        }
+        return repositorio;
+    }
+}
+
+/**
+ * Classe que representa uma nota de empenho
+ * 
+ * Valores monetários em centavos (ver Dinheiro)
+ */
+class NotaEmpenho implements Serializable {
+    private String numero;
+    private Contrato contrato;
+    private LocalDate data;
+    private long valor;
+    private Usuario ordenador;
+    
+    public NotaEmpenho(String numero, Contrato contrato, LocalDate data, long valor, Usuario ordenador) {
+        this.numero = numero;
+        this.contrato = contrato;
+        this.data = data;
+        this.valor = valor;
+        this.ordenador = ordenador;
+    }
+    
+    // Getters
+    public String getNumero() { return numero; }
+    public Contrato getContrato() { return contrato; }
+    public LocalDate getData() { return data; }
+    public long getValor() { return valor; }
+    public Usuario getOrdenador() { return ordenador; }
+}
+
+/**
+ * Liquidação de despesa: reconhecimento do valor devido ao fornecedor após a entrega atestada
+ */
+class Liquidacao implements Serializable {
+    private static final long serialVersionUID = 1L;
+    
+    private String numero;
+    private Contrato contrato;
+    private LocalDate data;
+    private long valor;
+    private Usuario ordenador;
+    
+    public Liquidacao(String numero, Contrato contrato, LocalDate data, long valor, Usuario ordenador) {
+        this.numero = numero;
+        this.contrato = contrato;
+        this.data = data;
+        this.valor = valor;
+        this.ordenador = ordenador;
+    }
+    
+    // Getters
+    public String getNumero() { return numero; }
+    public Contrato getContrato() { return contrato; }
+    public LocalDate getData() { return data; }
+    public long getValor() { return valor; }
+    public Usuario getOrdenador() { return ordenador; }
+}
+
+/**
+ * Classe que representa uma entrega de itens
+ */
+class EntregaItem implements Serializable {
+    private Contrato contrato;
+    private LocalDate data;
+    private String descricao;
+    private Usuario responsavel;
+    private List<ItemEntregue> itensEntregues;
+    
+    public EntregaItem(Contrato contrato, LocalDate data, String descricao, Usuario responsavel) {
+        this.contrato = contrato;
+        this.data = data;
+        this.descricao = descricao;
+        this.responsavel = responsavel;
+        this.itensEntregues = new ArrayList<>();
+    }
+    
+    // Getters
+    public Contrato getContrato() { return contrato; }
+    public LocalDate getData() { return data; }
+    public String getDescricao() { return descricao; }
+    public Usuario getResponsavel() { return responsavel; }
+    public List<ItemEntregue> getItensEntregues() { return itensEntregues; }
+    
+    // Métodos auxiliares
+    public void adicionarItemEntregue(Item item, int quantidade) {
+        itensEntregues.add(new ItemEntregue(item, quantidade));
+    }
+}
+
+/**
+ * Classe que representa um item entregue
+ */
+class ItemEntregue implements Serializable {
+    private Item item;
+    private int quantidade;
+    
+    public ItemEntregue(Item item, int quantidade) {
+        this.item = item;
+        this.quantidade = quantidade;
+    }
+    
+    // Getters
+    public Item getItem() { return item; }
+    public int getQuantidade() { return quantidade; }
+}
+
+/**
+ * Índice de entregas de um contrato, com a quantidade e o valor acumulados entregues por item.
+ * 
+ * É atualizado a cada entrega registrada, de modo que o saldo pendente e o excesso de entrega
+ * de um item são obtidos em O(1), sem percorrer as entregas. Os itens são identificados por
+ * referência, como na gravação das entregas. A escrita ocorre sob o bloqueio do contrato e a
+ * leitura é livre de bloqueio.
+ */
+class IndiceEntregas {
+    private final ConcurrentHashMap<Item, TotalEntregue> totais;
+    
+    public IndiceEntregas() {
+        this.totais = new ConcurrentHashMap<>();
+    }
+    
+    void registrar(EntregaItem entrega) {
+        for (ItemEntregue itemEntregue : entrega.getItensEntregues()) {
+            Item item = itemEntregue.getItem();
+            TotalEntregue parcela = new TotalEntregue(itemEntregue.getQuantidade(), 
+                                                      Dinheiro.multiplicar(item.getValorUnitario(), itemEntregue.getQuantidade()));
+            totais.merge(item, parcela, TotalEntregue::somar);
+        }
+    }
+    
+    public long getQuantidadeEntregue(Item item) {
+        TotalEntregue total = totais.get(item);
+        return total == null ? 0 : total.quantidade;
+    }
+    
+    public long getValorEntregue(Item item) {
+        TotalEntregue total = totais.get(item);
+        return total == null ? 0 : total.valor;
+    }
+    
+    public long getQuantidadePendente(Item item) {
+        return Math.max(0, item.getQuantidade() - getQuantidadeEntregue(item));
+    }
+    
+    public long getQuantidadeExcedente(Item item) {
+        return Math.max(0, getQuantidadeEntregue(item) - item.getQuantidade());
+    }
+    
+    public boolean isExcedido(Item item) {
+        return getQuantidadeEntregue(item) > item.getQuantidade();
+    }
+    
+    private static final class TotalEntregue {
+        private final long quantidade;
+        private final long valor;
+        
+        TotalEntregue(long quantidade, long valor) {
+            this.quantidade = quantidade;
+            this.valor = valor;
+        }
+        
+        TotalEntregue somar(TotalEntregue outro) {
+            return new TotalEntregue(quantidade + outro.quantidade, Dinheiro.somar(valor, outro.valor));
+        }
+    }
+}
+
+/**
+ * Classe que representa um pagamento
+ * 
+ * Valores monetários em centavos (ver Dinheiro)
+ */
+class Pagamento implements Serializable {
+    private String numero;
+    private Contrato contrato;
+    private LocalDate data;
+    private long valor;
+    private String descricao;
+    private Usuario ordenador;
+    
+    public Pagamento(String numero, Contrato contrato, LocalDate data, 
+                   long valor, String descricao, Usuario ordenador) {
+        this.numero = numero;
+        this.contrato = contrato;
+        this.data = data;
+        this.valor = valor;
+        this.descricao = descricao;
+        this.ordenador = ordenador;
+    }
+    
+    // Getters
+    public String getNumero() { return numero; }
+    public Contrato getContrato() { return contrato; }
+    public LocalDate getData() { return data; }
+    public long getValor() { return valor; }
+    public String getDescricao() { return descricao; }
+    public Usuario getOrdenador() { return ordenador; }
+}
+
+/**
+ * Razão orçamentário de um contrato, com os totais empenhado, liquidado e pago.
+ * 
+ * Os três totais formam um saldo imutável substituído por compare-and-set. Cada empenho,
+ * liquidação ou pagamento é validado e reservado atomicamente, sem bloqueio, contra a cadeia
+ * valor do contrato >= empenhado >= liquidado >= pago; as consultas de saldo são O(1) e os
+ * três totais lidos são sempre consistentes entre si.
+ */
+class RazaoContrato {
+    private final String numeroContrato;
+    private final AtomicReference<SaldoContrato> saldo;
+    
+    public RazaoContrato(String numeroContrato, long valorContrato) {
+        this.numeroContrato = numeroContrato;
+        this.saldo = new AtomicReference<>(new SaldoContrato(valorContrato, 0, 0, 0));
+    }
+    
+    public SaldoContrato getSaldo() {
+        return saldo.get();
+    }
+    
+    public void empenhar(long valor) {
+        reservar(valor, 0, 0);
+    }
+    
+    public void liquidar(long valor) {
+        reservar(0, valor, 0);
+    }
+    
+    public void pagar(long valor) {
+        reservar(0, 0, valor);
+    }
+    
+    private void reservar(long empenho, long liquidacao, long pagamento) {
+        if (empenho < 0 || liquidacao < 0 || pagamento < 0 || empenho + liquidacao + pagamento == 0) {
+            throw new IllegalArgumentException("Valor deve ser positivo");
+        }
+        
+        SaldoContrato atual;
+        SaldoContrato novo;
+        do {
+            atual = saldo.get();
+            novo = atual.somar(empenho, liquidacao, pagamento);
+            if (novo.getEmpenhado() > novo.getValorContrato()) {
+                throw new IllegalStateException("Empenho excede o saldo a empenhar do contrato " + numeroContrato + 
+                                                " (" + Dinheiro.emDecimal(atual.getAEmpenhar()).toPlainString() + ")");
+            }
+            if (novo.getLiquidado() > novo.getEmpenhado()) {
+                throw new IllegalStateException("Liquidação excede o saldo empenhado a liquidar do contrato " + numeroContrato + 
+                                                " (" + Dinheiro.emDecimal(atual.getALiquidar()).toPlainString() + ")");
+            }
+            if (novo.getPago() > novo.getLiquidado()) {
+                throw new IllegalStateException("Pagamento excede o saldo liquidado a pagar do contrato " + numeroContrato + 
+                                                " (" + Dinheiro.emDecimal(atual.getAPagar()).toPlainString() + ")");
+            }
+        } while (!saldo.compareAndSet(atual, novo));
+    }
+    
+    /**
+     * Desfaz uma reserva cuja gravação falhou
+     */
+    void estornar(long empenho, long liquidacao, long pagamento) {
+        saldo.updateAndGet(atual -> atual.somar(-empenho, -liquidacao, -pagamento));
+    }
+    
+    /**
+     * Soma valores já gravados, sem validação: usado na recuperação, inclusive de
+     * dados registrados antes de o razão existir
+     */
+    void acumular(long empenho, long liquidacao, long pagamento) {
+        saldo.updateAndGet(atual -> atual.somar(empenho, liquidacao, pagamento));
+    }
+}
+
+/**
+ * Totais de um razão de contrato em um instante, em centavos
+ */
+final class SaldoContrato {
+    private final long valorContrato;
+    private final long empenhado;
+    private final long liquidado;
+    private final long pago;
+    
+    SaldoContrato(long valorContrato, long empenhado, long liquidado, long pago) {
+        this.valorContrato = valorContrato;
+        this.empenhado = empenhado;
+        this.liquidado = liquidado;
+        this.pago = pago;
+    }
+    
+    SaldoContrato somar(long empenho, long liquidacao, long pagamento) {
+        return new SaldoContrato(valorContrato, Dinheiro.somar(empenhado, empenho), 
+                                 Dinheiro.somar(liquidado, liquidacao), Dinheiro.somar(pago, pagamento));
+    }
+    
+    public long getValorContrato() { return valorContrato; }
+    public long getEmpenhado() { return empenhado; }
+    public long getLiquidado() { return liquidado; }
+    public long getPago() { return pago; }
+    public long getAEmpenhar() { return valorContrato - empenhado; }
+    public long getALiquidar() { return empenhado - liquidado; }
+    public long getAPagar() { return liquidado - pago; }
+    public long getSaldoContrato() { return valorContrato - pago; }
+}
+
+/**
+ * Classe que representa um log de auditoria
+ */
+class LogAuditoria implements Serializable {
+    private LocalDateTime dataHora;
+    private String tipo;
+    private String descricao;
+    private Usuario usuario;
+    private String numeroProcesso;
+    private String numeroContrato;
+    
+    public LogAuditoria(LocalDateTime dataHora, String tipo, String descricao, Usuario usuario) {
+        this(dataHora, tipo, descricao, usuario, null, null);
+    }
+    
+    public LogAuditoria(LocalDateTime dataHora, String tipo, String descricao, Usuario usuario, 
+                      String numeroProcesso, String numeroContrato) {
+        this.dataHora = dataHora;
+        this.tipo = tipo;
+        this.descricao = descricao;
+        this.usuario = usuario;
+        this.numeroProcesso = numeroProcesso;
+        this.numeroContrato = numeroContrato;
+    }
+    
+    // Getters
+    public LocalDateTime getDataHora() { return dataHora; }
+    public String getTipo() { return tipo; }
+    public String getDescricao() { return descricao; }
+    public Usuario getUsuario() { return usuario; }
+    public String getNumeroProcesso() { return numeroProcesso; }
+    public String getNumeroContrato() { return numeroContrato; }
+    public String getCpfUsuario() { return usuario != null ? usuario.getCpf() : null; }
+}
+
+/**
+ * Visões materializadas do relatório de transparência: processos em andamento, contratos
+ * vigentes e a janela móvel de pagamentos dos últimos 30 dias.
+ * 
+ * As visões são atualizadas pelas operações de escrita do SistemaAquisicoes, de modo que o
+ * relatório custa O(saída) em vez de O(histórico). A expiração de contratos e pagamentos usa
+ * estruturas agrupadas por dia e só processa os dias que saíram da janela.
+ */
+class VistasTransparencia {
+    static final int DIAS_JANELA_PAGAMENTOS = 30;
+    
+    // Referência que mantém as chaves de data em ordem decrescente
+    private static final long DIA_REFERENCIA = LocalDate.of(9999, 12, 31).toEpochDay();
+    
+    private final ConcurrentSkipListMap<Long, ProcessoAquisicao> processosEmAndamento;
+    private final ConcurrentSkipListMap<Long, Contrato> contratosVigentes;
+    private final TreeMap<Long, List<Long>> expiracoesContratos;
+    private final TreeMap<Long, List<Pagamento>> pagamentosPorDia;
+    private final AtomicLong sequenciaContratos;
+    private long totalJanelaPagamentos;
+    
+    public VistasTransparencia() {
+        this.processosEmAndamento = new ConcurrentSkipListMap<>();
+        this.contratosVigentes = new ConcurrentSkipListMap<>();
+        this.expiracoesContratos = new TreeMap<>();
+        this.pagamentosPorDia = new TreeMap<>();
+        this.sequenciaContratos = new AtomicLong();
+    }
+    
+    /**
+     * Inclui ou remove o processo da visão conforme sua etapa atual
+     */
+    public void processoAtualizado(ProcessoAquisicao processo) {
+        // Ordem: data de abertura decrescente e, no mesmo dia, ordem de abertura
+        long chave = chaveDecrescente(processo.getDataAbertura(), SistemaAquisicoes.sequencialDoNumero(processo.getNumero()));
+        EtapaProcesso etapa = processo.getEtapaAtual();
+        
+        if (etapa == EtapaProcesso.CONCLUIDO || etapa == EtapaProcesso.CANCELADO) {
+            processosEmAndamento.remove(chave, processo);
+        } else {
+            processosEmAndamento.put(chave, processo);
+        }
+    }
+    
+    public void contratoGerado(Contrato contrato) {
+        // Ordem: data de início decrescente e, no mesmo dia, ordem de geração
+        long chave = chaveDecrescente(contrato.getDataInicio(), sequenciaContratos.incrementAndGet());
+        contratosVigentes.put(chave, contrato);
+        
+        synchronized (expiracoesContratos) {
+            expiracoesContratos.computeIfAbsent(contrato.getDataFim().toEpochDay(), k -> new ArrayList<>()).add(chave);
+        }
+    }
+    
+    public synchronized void pagamentoRegistrado(Pagamento pagamento) {
+        long inicioJanela = LocalDate.now().minusDays(DIAS_JANELA_PAGAMENTOS).toEpochDay();
+        expirarPagamentos(inicioJanela);
+        
+        long dia = pagamento.getData().toEpochDay();
+        if (dia >= inicioJanela) {
+            pagamentosPorDia.computeIfAbsent(dia, k -> new ArrayList<>()).add(pagamento);
+            totalJanelaPagamentos = Dinheiro.somar(totalJanelaPagamentos, pagamento.getValor());
+        }
+    }
+    
+    /**
+     * Remove das visões os contratos arquivados e os seus pagamentos da janela.
+     * Os processos arquivados já estão concluídos ou cancelados e não fazem parte das visões.
+     */
+    public synchronized void removerContratos(Set<Contrato> arquivados) {
+        contratosVigentes.values().removeIf(arquivados::contains);
+        
+        for (List<Pagamento> doDia : pagamentosPorDia.values()) {
+            Iterator<Pagamento> iterador = doDia.iterator();
+            while (iterador.hasNext()) {
+                Pagamento pagamento = iterador.next();
+                if (arquivados.contains(pagamento.getContrato())) {
+                    totalJanelaPagamentos = Dinheiro.subtrair(totalJanelaPagamentos, pagamento.getValor());
+                    iterador.remove();
+                }
+            }
+        }
+        pagamentosPorDia.values().removeIf(List::isEmpty);
+    }
+    
+    /**
+     * Processos em andamento, do mais recente para o mais antigo
+     */
+    public Collection<ProcessoAquisicao> processosEmAndamento() {
+        return Collections.unmodifiableCollection(processosEmAndamento.values());
+    }
+    
+    /**
+     * Contratos com fim de vigência a partir da data informada, do início mais recente para o mais antigo
+     */
+    public Collection<Contrato> contratosVigentes(LocalDate hoje) {
+        long diaAtual = hoje.toEpochDay();
+        
+        synchronized (expiracoesContratos) {
+            while (!expiracoesContratos.isEmpty() && expiracoesContratos.firstKey() < diaAtual) {
+                for (Long chave : expiracoesContratos.pollFirstEntry().getValue()) {
+                    contratosVigentes.remove(chave);
+                }
+            }
+        }
+        
+        return Collections.unmodifiableCollection(contratosVigentes.values());
+    }
+    
+    /**
+     * Pagamentos dos últimos 30 dias (incluindo datas futuras), do mais recente para o mais antigo
+     */
+    public synchronized PagamentosRecentes pagamentosRecentes(LocalDate hoje) {
+        expirarPagamentos(hoje.minusDays(DIAS_JANELA_PAGAMENTOS).toEpochDay());
+        
+        List<Pagamento> recentes = new ArrayList<>();
+        for (List<Pagamento> doDia : pagamentosPorDia.descendingMap().values()) {
+            recentes.addAll(doDia);
+        }
+        return new PagamentosRecentes(recentes, totalJanelaPagamentos);
+    }
+    
+    // Remove da janela os dias anteriores ao início informado
+    private void expirarPagamentos(long inicioJanela) {
+        while (!pagamentosPorDia.isEmpty() && pagamentosPorDia.firstKey() < inicioJanela) {
+            for (Pagamento pagamento : pagamentosPorDia.pollFirstEntry().getValue()) {
+                totalJanelaPagamentos = Dinheiro.subtrair(totalJanelaPagamentos, pagamento.getValor());
+            }
+        }
+    }
+    
+    private static long chaveDecrescente(LocalDate data, long sequencial) {
+        return ((DIA_REFERENCIA - data.toEpochDay()) << 32) | (sequencial & 0xFFFFFFFFL);
+    }
+    
+    /**
+     * Pagamentos da janela e seu total, obtidos de forma consistente
+     */
+    static class PagamentosRecentes {
+        private final List<Pagamento> pagamentos;
+        private final long total;
+        
+        PagamentosRecentes(List<Pagamento> pagamentos, long total) {
+            this.pagamentos = pagamentos;
+            this.total = total;
+        }
+        
+        public List<Pagamento> getPagamentos() { return pagamentos; }
+        public long getTotal() { return total; }
+    }
+}
+
+/**
+ * Índice ordenado por data para consultas por período em O(log n + k).
+ * 
+ * A chave combina o dia (bits altos) com uma sequência de inserção (bits baixos), de modo
+ * que registros do mesmo dia permaneçam na ordem em que foram indexados.
+ */
+class IndiceTemporal<T> {
+    private final ConcurrentSkipListMap<Long, T> registros;
+    private final AtomicLong sequencia;
+    
+    public IndiceTemporal() {
+        this.registros = new ConcurrentSkipListMap<>();
+        this.sequencia = new AtomicLong();
+    }
+    
+    public void adicionar(LocalDate data, T registro) {
+        registros.put(chave(data.toEpochDay(), sequencia.incrementAndGet()), registro);
+    }
+    
+    /**
+     * Visão somente leitura dos registros entre as datas informadas (inclusive)
+     */
+    public Collection<T> buscarEntre(LocalDate inicio, LocalDate fim) {
+        if (fim.isBefore(inicio)) {
+            throw new IllegalArgumentException("Data final anterior à data inicial");
+        }
+        return Collections.unmodifiableCollection(
+            registros.subMap(chave(inicio.toEpochDay(), 0), true, chave(fim.toEpochDay(), 0xFFFFFFFFL), true).values());
+    }
+    
+    /**
+     * Remove os registros que atendem ao filtro, percorrendo todo o índice
+     */
+    public void removerSe(Predicate<? super T> filtro) {
+        registros.values().removeIf(filtro);
+    }
+    
+    public int tamanho() {
+        return registros.size();
+    }
+    
+    private static long chave(long dia, long sequencial) {
+        return (dia << 32) | (sequencial & 0xFFFFFFFFL);
+    }
+}
+
+/**
+ * Índice de intervalos de datas (árvore AVL aumentada com o maior fim de cada subárvore).
+ * 
+ * Responde "quais intervalos contêm o dia X" e "quais intervalos se sobrepõem ao período"
+ * percorrendo apenas as subárvores que podem conter resultados: O(log n) para localizar o
+ * primeiro resultado e O(log n) por resultado adicional no pior caso.
+ */
+class IndiceIntervalos<T> {
+    private static final class No<T> {
+        final long inicio;
+        final long fim;
+        final long ordem;
+        final T valor;
+        No<T> esquerda;
+        No<T> direita;
+        int altura;
+        long maiorFim;
+        
+        No(long inicio, long fim, long ordem, T valor) {
+            this.inicio = inicio;
+            this.fim = fim;
+            this.ordem = ordem;
+            this.valor = valor;
+            this.altura = 1;
+            this.maiorFim = fim;
+        }
+    }
+    
+    private final ReentrantReadWriteLock bloqueio;
+    private No<T> raiz;
+    private long sequencia;
+    private int tamanho;
+    
+    public IndiceIntervalos() {
+        this.bloqueio = new ReentrantReadWriteLock();
+    }
+    
+    public void adicionar(LocalDate inicio, LocalDate fim, T valor) {
+        if (fim.isBefore(inicio)) {
+            throw new IllegalArgumentException("Fim do intervalo anterior ao início");
+        }
+        
+        bloqueio.writeLock().lock();
+        try {
+            raiz = inserir(raiz, new No<>(inicio.toEpochDay(), fim.toEpochDay(), sequencia++, valor));
+            tamanho++;
+        } finally {
+            bloqueio.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Intervalos que possuem algum dia em comum com o período informado, em ordem de início
+     */
+    public List<T> buscarSobrepostos(LocalDate inicio, LocalDate fim) {
+        if (fim.isBefore(inicio)) {
+            throw new IllegalArgumentException("Data final anterior à data inicial");
+        }
+        
+        List<T> resultado = new ArrayList<>();
+        bloqueio.readLock().lock();
+        try {
+            coletar(raiz, inicio.toEpochDay(), fim.toEpochDay(), resultado);
+        } finally {
+            bloqueio.readLock().unlock();
+        }
+        return resultado;
+    }
+    
+    /**
+     * Remove os intervalos cujo valor atende ao filtro. A árvore é reconstruída balanceada a
+     * partir dos nós restantes, em O(n), o que compensa para remoções em lote.
+     */
+    public void removerSe(Predicate<? super T> filtro) {
+        bloqueio.writeLock().lock();
+        try {
+            List<No<T>> restantes = new ArrayList<>(tamanho);
+            coletarRestantes(raiz, filtro, restantes);
+            raiz = construir(restantes, 0, restantes.size());
+            tamanho = restantes.size();
+        } finally {
+            bloqueio.writeLock().unlock();
+        }
+    }
+    
+    public int tamanho() {
+        bloqueio.readLock().lock();
+        try {
+            return tamanho;
+        } finally {
+            bloqueio.readLock().unlock();
+        }
+    }
+    
+    // Percorre em ordem, preservando a ordem de início e de inserção dos nós mantidos
+    private void coletarRestantes(No<T> no, Predicate<? super T> filtro, List<No<T>> restantes) {
+        if (no == null) {
+            return;
+        }
+        coletarRestantes(no.esquerda, filtro, restantes);
+        if (!filtro.test(no.valor)) {
+            restantes.add(no);
+        }
+        coletarRestantes(no.direita, filtro, restantes);
+    }
+    
+    private No<T> construir(List<No<T>> nos, int inicio, int fim) {
+        if (inicio >= fim) {
+            return null;
+        }
+        int meio = (inicio + fim) >>> 1;
+        No<T> no = nos.get(meio);
+        no.esquerda = construir(nos, inicio, meio);
+        no.direita = construir(nos, meio + 1, fim);
+        atualizar(no);
+        return no;
+    }
+    
+    private void coletar(No<T> no, long inicio, long fim, List<T> resultado) {
+        // Nenhum intervalo desta subárvore termina a partir do início do período
+        if (no == null || no.maiorFim < inicio) {
+            return;
+        }
+        
+        coletar(no.esquerda, inicio, fim, resultado);
+        
+        // Os nós à direita começam depois deste; se este começa após o período, eles também
+        if (no.inicio > fim) {
+            return;
+        }
+        if (no.fim >= inicio) {
+            resultado.add(no.valor);
+        }
+        
+        coletar(no.direita, inicio, fim, resultado);
+    }
+    
+    private No<T> inserir(No<T> no, No<T> novo) {
+        if (no == null) {
+            return novo;
+        }
+        
+        if (novo.inicio < no.inicio || (novo.inicio == no.inicio && novo.ordem < no.ordem)) {
+            no.esquerda = inserir(no.esquerda, novo);
+        } else {
+            no.direita = inserir(no.direita, novo);
+        }
+        
+        atualizar(no);
+        return balancear(no);
+    }
+    
+    private No<T> balancear(No<T> no) {
+        int fator = altura(no.esquerda) - altura(no.direita);
+        
+        if (fator > 1) {
+            if (altura(no.esquerda.esquerda) < altura(no.esquerda.direita)) {
+                no.esquerda = rotacionarEsquerda(no.esquerda);
+            }
+            return rotacionarDireita(no);
+        }
+        if (fator < -1) {
+            if (altura(no.direita.direita) < altura(no.direita.esquerda)) {
+                no.direita = rotacionarDireita(no.direita);
+            }
+            return rotacionarEsquerda(no);
+        }
+        return no;
+    }
+    
+    private No<T> rotacionarDireita(No<T> no) {
+        No<T> novaRaiz = no.esquerda;
+        no.esquerda = novaRaiz.direita;
+        novaRaiz.direita = no;
+        atualizar(no);
+        atualizar(novaRaiz);
+        return novaRaiz;
+    }
+    
+    private No<T> rotacionarEsquerda(No<T> no) {
+        No<T> novaRaiz = no.direita;
+        no.direita = novaRaiz.esquerda;
+        novaRaiz.esquerda = no;
+        atualizar(no);
+        atualizar(novaRaiz);
+        return novaRaiz;
+    }
+    
+    private void atualizar(No<T> no) {
+        no.altura = 1 + Math.max(altura(no.esquerda), altura(no.direita));
+        long maiorFim = no.fim;
+        if (no.esquerda != null) {
+            maiorFim = Math.max(maiorFim, no.esquerda.maiorFim);
+        }
+        if (no.direita != null) {
+            maiorFim = Math.max(maiorFim, no.direita.maiorFim);
+        }
+        no.maiorFim = maiorFim;
+    }
+    
+    private static int altura(No<?> no) {
+        return no == null ? 0 : no.altura;
+    }
+}
+
+/**
+ * Situação da sessão de disputa de lances de um pregão eletrônico
+ */
+enum SituacaoDisputa {
+    ABERTA,                  // Recebendo lances
+    ENCERRAMENTO_ALEATORIO,  // Recebendo lances até um instante sorteado e não divulgado
+    ENCERRADA                // Recebimento de lances encerrado
+}
+
+/**
+ * Recebe as atualizações do melhor lance de uma disputa.
+ * 
+ * As chamadas ocorrem fora das threads dos licitantes, uma de cada vez por observador e em
+ * ordem crescente de sequência. Um observador mais lento que a disputa recebe apenas o estado
+ * mais recente, sem as atualizações intermediárias.
+ */
+interface ObservadorLances {
+    void melhorLanceAtualizado(String numeroProcesso, Lance melhorLance, SituacaoDisputa situacao);
+}
+
+/**
+ * Motor de disputa de lances dos pregões eletrônicos, mantido em memória.
+ * 
+ * Cada processo em disputa tem sua própria sessão, de modo que disputas de processos diferentes
+ * não competem entre si. As atualizações do melhor lance são distribuídas aos observadores em
+ * threads virtuais; o encerramento aleatório é agendado em uma thread própria do motor.
+ */
+class MotorLances implements AutoCloseable {
+    static final Duration TEMPO_MAXIMO_ENCERRAMENTO_PADRAO = Duration.ofMinutes(10);
+    
+    private final ConcurrentHashMap<String, SessaoDisputa> sessoes;
+    private final ExecutorService entregas;
+    private final ScheduledExecutorService agendador;
+    private final SecureRandom sorteio;
+    
+    public MotorLances() {
+        this.sessoes = new ConcurrentHashMap<>();
+        this.entregas = Executors.newVirtualThreadPerTaskExecutor();
+        this.agendador = Executors.newSingleThreadScheduledExecutor(tarefa -> {
+            Thread thread = new Thread(tarefa, "encerramento-disputas");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.sorteio = new SecureRandom();
+    }
+    
+    /**
+     * Abre a disputa do processo tendo como lances iniciais as propostas informadas,
+     * já em ordem de classificação
+     */
+    public SessaoDisputa abrir(String numeroProcesso, List<Proposta> propostas, long decrementoMinimo) {
+        SessaoDisputa sessao = new SessaoDisputa(numeroProcesso, propostas, decrementoMinimo, entregas);
+        if (sessoes.putIfAbsent(numeroProcesso, sessao) != null) {
+            throw new IllegalStateException("Já existe disputa de lances para o processo " + numeroProcesso);
+        }
+        return sessao;
+    }
+    
+    public SessaoDisputa buscar(String numeroProcesso) {
+        return sessoes.get(numeroProcesso);
+    }
+    
+    public void remover(String numeroProcesso) {
+        sessoes.remove(numeroProcesso);
+    }
+    
+    /**
+     * Inicia o encerramento aleatório: a disputa termina em um instante sorteado entre agora
+     * e o tempo máximo, desconhecido pelos licitantes
+     */
+    public void iniciarEncerramento(SessaoDisputa sessao, Duration tempoMaximo) {
+        if (tempoMaximo.isNegative()) {
+            throw new IllegalArgumentException("Tempo máximo de encerramento não pode ser negativo");
+        }
+        
+        long prazoNanos = sorteio.nextLong(tempoMaximo.toNanos() + 1);
+        sessao.iniciarEncerramento(System.nanoTime() + prazoNanos);
+        agendador.schedule(sessao::encerrarRecebimento, prazoNanos, TimeUnit.NANOSECONDS);
+    }
+    
+    @Override
+    public void close() {
+        agendador.shutdownNow();
+        entregas.shutdownNow();
+    }
+}
+
+/**
+ * Sessão de disputa de lances de um processo.
+ * 
+ * Os lances são sequenciados sob um bloqueio exclusivo da sessão, que protege apenas estruturas
+ * em memória: a classificação dos fornecedores pelo último lance (menor valor e, em empate, o
+ * lance mais antigo) e o histórico completo. Cada lance deve ser inferior ao último lance do
+ * próprio fornecedor em pelo menos o decremento mínimo. A distribuição do melhor lance é apenas
+ * sinalizada sob o bloqueio; os observadores são notificados fora dele.
+ */
+class SessaoDisputa {
+    private static final Comparator<Lance> CLASSIFICACAO = 
+        Comparator.comparingLong(Lance::getValor).thenComparingLong(Lance::getSequencia);
+    
+    private final String numeroProcesso;
+    private final long decrementoMinimo;
+    private final Executor entregas;
+    private final ReentrantLock bloqueio;
+    private final Map<String, Lance> ultimoLancePorFornecedor;
+    private final TreeSet<Lance> classificacao;
+    private final List<Lance> historico;
+    private final long quantidadeLancesIniciais;
+    private final CopyOnWriteArrayList<AssinaturaLances> assinaturas;
+    private final TarefaCoalescente distribuicao;
+    private long sequencia;
+    private long fimEncerramentoNanos;
+    private volatile SituacaoDisputa situacao;
+    private volatile Lance melhorLance;
+    
+    SessaoDisputa(String numeroProcesso, List<Proposta> propostas, long decrementoMinimo, Executor entregas) {
+        if (decrementoMinimo <= 0) {
+            throw new IllegalArgumentException("Decremento mínimo deve ser positivo");
+        }
+        
+        this.numeroProcesso = numeroProcesso;
+        this.decrementoMinimo = decrementoMinimo;
+        this.entregas = entregas;
+        this.bloqueio = new ReentrantLock();
+        this.ultimoLancePorFornecedor = new HashMap<>();
+        this.classificacao = new TreeSet<>(CLASSIFICACAO);
+        this.historico = new ArrayList<>();
+        this.assinaturas = new CopyOnWriteArrayList<>();
+        this.distribuicao = new TarefaCoalescente(this::distribuir, entregas);
+        this.situacao = SituacaoDisputa.ABERTA;
+        
+        // A melhor proposta de cada fornecedor é o seu lance inicial
+        for (Proposta proposta : propostas) {
+            String cnpj = proposta.getFornecedor().getCnpj();
+            if (!ultimoLancePorFornecedor.containsKey(cnpj)) {
+                Lance inicial = new Lance(proposta.getFornecedor(), proposta.getValorTotal(), proposta.getDataEnvio(), ++sequencia);
+                ultimoLancePorFornecedor.put(cnpj, inicial);
+                classificacao.add(inicial);
+                historico.add(inicial);
+            }
+        }
+        if (classificacao.isEmpty()) {
+            throw new IllegalStateException("Processo " + numeroProcesso + " não possui propostas para a disputa");
+        }
+        this.quantidadeLancesIniciais = sequencia;
+        this.melhorLance = classificacao.first();
+    }
+    
+    public Lance ofertar(Fornecedor fornecedor, long valor) {
+        LocalDateTime dataEnvio = LocalDateTime.now();
+        bloqueio.lock();
+        try {
+            verificarRecebimento();
+            Lance anterior = ultimoLancePorFornecedor.get(fornecedor.getCnpj());
+            if (anterior == null) {
+                throw new IllegalArgumentException("Fornecedor " + fornecedor.getCnpj() + " não participa da disputa do processo " + numeroProcesso);
+            }
+            if (valor <= 0) {
+                throw new IllegalArgumentException("Valor do lance deve ser positivo");
+            }
+            if (valor > anterior.getValor() - decrementoMinimo) {
+                throw new IllegalArgumentException("Lance deve ser inferior ao último lance do fornecedor (" + 
+                                                   Dinheiro.emDecimal(anterior.getValor()).toPlainString() + ") em pelo menos " + 
+                                                   Dinheiro.emDecimal(decrementoMinimo).toPlainString());
+            }
+            
+            Lance lance = new Lance(fornecedor, valor, dataEnvio, ++sequencia);
+            classificacao.remove(anterior);
+            classificacao.add(lance);
+            ultimoLancePorFornecedor.put(fornecedor.getCnpj(), lance);
+            historico.add(lance);
+            
+            if (classificacao.first() == lance) {
+                melhorLance = lance;
+                distribuicao.sinalizar();
+            }
+            return lance;
+        } finally {
+            bloqueio.unlock();
+        }
+    }
+    
+    private void verificarRecebimento() {
+        if (situacao == SituacaoDisputa.ENCERRAMENTO_ALEATORIO && System.nanoTime() - fimEncerramentoNanos >= 0) {
+            encerrarRecebimento();
+        }
+        if (situacao == SituacaoDisputa.ENCERRADA) {
+            throw new IllegalStateException("Disputa de lances do processo " + numeroProcesso + " está encerrada");
+        }
+    }
+    
+    void iniciarEncerramento(long fimNanos) {
+        bloqueio.lock();
+        try {
+            if (situacao != SituacaoDisputa.ABERTA) {
+                throw new IllegalStateException("Encerramento da disputa do processo " + numeroProcesso + " já foi iniciado");
+            }
+            fimEncerramentoNanos = fimNanos;
+            situacao = SituacaoDisputa.ENCERRAMENTO_ALEATORIO;
+        } finally {
+            bloqueio.unlock();
+        }
+        distribuicao.sinalizar();
+    }
+    
+    void encerrarRecebimento() {
+        bloqueio.lock();
+        try {
+            if (situacao == SituacaoDisputa.ENCERRADA) {
+                return;
+            }
+            situacao = SituacaoDisputa.ENCERRADA;
+        } finally {
+            bloqueio.unlock();
+        }
+        distribuicao.sinalizar();
+    }
+    
+    /**
+     * Passa a notificar o observador, começando pelo estado atual da disputa
+     */
+    public AssinaturaLances assinar(ObservadorLances observador) {
+        AssinaturaLances assinatura = new AssinaturaLances(this, observador, entregas);
+        assinaturas.add(assinatura);
+        assinatura.sinalizar();
+        return assinatura;
+    }
+    
+    void cancelar(AssinaturaLances assinatura) {
+        assinaturas.remove(assinatura);
+    }
+    
+    private void distribuir() {
+        for (AssinaturaLances assinatura : assinaturas) {
+            assinatura.sinalizar();
+        }
+    }
+    
+    /**
+     * Último lance de cada fornecedor, em ordem de classificação
+     */
+    public List<Lance> classificacao() {
+        bloqueio.lock();
+        try {
+            return new ArrayList<>(classificacao);
+        } finally {
+            bloqueio.unlock();
+        }
+    }
+    
+    /**
+     * Lances ofertados durante a disputa (sem os lances iniciais), em ordem de sequência
+     */
+    public List<Lance> lancesOfertados() {
+        bloqueio.lock();
+        try {
+            return new ArrayList<>(historico.subList((int) quantidadeLancesIniciais, historico.size()));
+        } finally {
+            bloqueio.unlock();
+        }
+    }
+    
+    /**
+     * Indica se o lance foi ofertado durante a disputa, e não trazido da proposta inicial
+     */
+    public boolean ofertadoNaDisputa(Lance lance) {
+        return lance.getSequencia() > quantidadeLancesIniciais;
+    }
+    
+    public String getNumeroProcesso() { return numeroProcesso; }
+    public long getDecrementoMinimo() { return decrementoMinimo; }
+    public SituacaoDisputa getSituacao() { return situacao; }
+    public Lance getMelhorLance() { return melhorLance; }
+}
+
+/**
+ * Assinatura de um observador nas atualizações de uma disputa, cancelada com close()
+ */
+class AssinaturaLances implements AutoCloseable {
+    private final SessaoDisputa sessao;
+    private final ObservadorLances observador;
+    private final TarefaCoalescente entrega;
+    private long ultimaSequencia;
+    private SituacaoDisputa ultimaSituacao;
+    private volatile boolean cancelada;
+    
+    AssinaturaLances(SessaoDisputa sessao, ObservadorLances observador, Executor entregas) {
+        this.sessao = sessao;
+        this.observador = observador;
+        this.entrega = new TarefaCoalescente(this::entregar, entregas);
+    }
+    
+    void sinalizar() {
+        entrega.sinalizar();
+    }
+    
+    // Executado por uma única thread de cada vez: lê o estado mais recente da sessão
+    private void entregar() {
+        if (cancelada) {
+            return;
+        }
+        
+        SituacaoDisputa situacao = sessao.getSituacao();
+        Lance melhor = sessao.getMelhorLance();
+        if (melhor.getSequencia() == ultimaSequencia && situacao == ultimaSituacao) {
+            return;
+        }
+        ultimaSequencia = melhor.getSequencia();
+        ultimaSituacao = situacao;
+        
+        try {
+            observador.melhorLanceAtualizado(sessao.getNumeroProcesso(), melhor, situacao);
+        } catch (RuntimeException e) {
+            // Um observador com falha deixa de receber atualizações sem afetar os demais
+            close();
+        }
+    }
+    
+    public boolean isCancelada() {
+        return cancelada;
+    }
+    
+    @Override
+    public void close() {
+        cancelada = true;
+        sessao.cancelar(this);
+    }
+}
+
+/**
+ * Execução agrupada de uma tarefa: sinais recebidos enquanto a tarefa está agendada ou em
+ * execução resultam em no máximo uma nova execução, nunca em execuções simultâneas
+ */
+final class TarefaCoalescente {
+    private final Runnable tarefa;
+    private final Executor executor;
+    private final AtomicInteger sinais;
+    
+    TarefaCoalescente(Runnable tarefa, Executor executor) {
+        this.tarefa = tarefa;
+        this.executor = executor;
+        this.sinais = new AtomicInteger();
+    }
+    
+    void sinalizar() {
+        if (sinais.getAndIncrement() == 0) {
+            try {
+                executor.execute(this::executar);
+            } catch (RejectedExecutionException e) {
+                // Executor encerrado junto com o motor de lances
+                sinais.set(0);
+            }
+        }
+    }
+    
+    private void executar() {
+        int atendidos;
+        do {
+            atendidos = sinais.get();
+            tarefa.run();
+        } while (sinais.addAndGet(-atendidos) != 0);
+    }
+}
+
+/**
+ * Leitura de arquivos CSV em blocos com validação paralela.
+ * 
+ * O arquivo é lido sequencialmente; cada bloco de linhas é convertido e validado em paralelo
+ * (ForkJoinPool comum) enquanto o bloco anterior é entregue ao gravador, que recebe os lotes
+ * na ordem do arquivo. No máximo dois blocos ficam em memória. Campos podem estar entre aspas
+ * duplas (com "" representando aspas), mas não podem conter quebras de linha.
+ */
+class ImportadorCsv<T> {
+    static final char SEPARADOR = ';';
+    
+    /**
+     * Converte os campos de uma linha em um registro, lançando IllegalArgumentException se forem inválidos.
+     * Executado em paralelo: não deve alterar estado compartilhado.
+     */
+    interface Conversor<T> {
+        T converter(String[] campos);
+    }
+    
+    /**
+     * Recebe cada lote com as linhas válidas, sequencialmente e na ordem do arquivo
+     */
+    interface GravadorLote<T> {
+        void gravar(LoteImportacao<T> lote);
+    }
+    
+    private final String[] colunas;
+    private final int tamanhoLote;
+    private final Conversor<T> conversor;
+    
+    public ImportadorCsv(String[] colunas, int tamanhoLote, Conversor<T> conversor) {
+        if (tamanhoLote <= 0) {
+            throw new IllegalArgumentException("Tamanho do lote deve ser positivo");
+        }
+        
+        this.colunas = colunas;
+        this.tamanhoLote = tamanhoLote;
+        this.conversor = conversor;
+    }
+    
+    public ResultadoImportacao importar(Path arquivo, GravadorLote<T> gravador) throws IOException {
+        ResultadoImportacao resultado = new ResultadoImportacao(arquivo.getFileName().toString());
+        
+        try (BufferedReader leitor = Files.newBufferedReader(arquivo, StandardCharsets.UTF_8)) {
+            validarCabecalho(leitor.readLine());
+            
+            CompletableFuture<LoteImportacao<T>> pendente = null;
+            int numeroLote = 0;
+            long numeroLinha = 1;
+            long[] numeros = new long[tamanhoLote];
+            String[] linhas = new String[tamanhoLote];
+            int quantidade = 0;
+            String linha;
+            
+            while ((linha = leitor.readLine()) != null) {
+                numeroLinha++;
+                if (linha.isBlank()) {
+                    continue;
+                }
+                
+                numeros[quantidade] = numeroLinha;
+                linhas[quantidade++] = linha;
+                if (quantidade == tamanhoLote) {
+                    CompletableFuture<LoteImportacao<T>> proximo = validarAssincrono(++numeroLote, numeros, linhas, quantidade, resultado);
+                    entregar(pendente, gravador);
+                    pendente = proximo;
+                    numeros = new long[tamanhoLote];
+                    linhas = new String[tamanhoLote];
+                    quantidade = 0;
+                }
+            }
+            
+            CompletableFuture<LoteImportacao<T>> ultimo = quantidade > 0 
+                ? validarAssincrono(++numeroLote, numeros, linhas, quantidade, resultado) : null;
+            entregar(pendente, gravador);
+            entregar(ultimo, gravador);
+            resultado.registrarLinhasLidas(numeroLinha - 1);
+        }
+        
+        return resultado;
+    }
+    
+    private CompletableFuture<LoteImportacao<T>> validarAssincrono(int numeroLote, long[] numeros, String[] linhas, 
+                                                         int quantidade, ResultadoImportacao resultado) {
+        return CompletableFuture.supplyAsync(() -> {
+            List<LinhaImportacao<T>> convertidas = IntStream.range(0, quantidade).parallel()
+                .mapToObj(i -> converter(numeros[i], linhas[i]))
+                .collect(Collectors.toList());
+            return new LoteImportacao<>(numeroLote, numeros[0], numeros[quantidade - 1], convertidas, resultado);
+        });
+    }
+    
+    private void entregar(CompletableFuture<LoteImportacao<T>> pendente, GravadorLote<T> gravador) {
+        if (pendente == null) {
+            return;
+        }
+        
+        LoteImportacao<T> lote;
+        try {
+            lote = pendente.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        lote.separarInvalidas();
+        gravador.gravar(lote);
+    }
+    
+    private LinhaImportacao<T> converter(long numero, String linha) {
+        try {
+            String[] campos = dividir(linha);
+            if (campos.length != colunas.length) {
+                throw new IllegalArgumentException("Esperadas " + colunas.length + " colunas, encontradas " + campos.length);
+            }
+            return new LinhaImportacao<>(numero, conversor.converter(campos), null);
+        } catch (IllegalArgumentException | DateTimeException | ArithmeticException e) {
+            return new LinhaImportacao<>(numero, null, e.getMessage());
+        }
+    }
+    
+    private void validarCabecalho(String cabecalho) {
+        if (cabecalho == null) {
+            throw new IllegalArgumentException("Arquivo de importação vazio");
+        }
+        // Ignora a marca de ordem de bytes gravada por algumas planilhas
+        if (!cabecalho.isEmpty() && cabecalho.charAt(0) == '\uFEFF') {
+            cabecalho = cabecalho.substring(1);
+        }
+        
+        String[] campos = dividir(cabecalho);
+        boolean valido = campos.length == colunas.length;
+        for (int i = 0; valido && i < campos.length; i++) {
+            valido = campos[i].equalsIgnoreCase(colunas[i]);
+        }
+        if (!valido) {
+            throw new IllegalArgumentException("Cabeçalho inválido; esperado: " + String.join(String.valueOf(SEPARADOR), colunas));
+        }
+    }
+    
+    static String[] dividir(String linha) {
+        List<String> campos = new ArrayList<>();
+        StringBuilder campo = new StringBuilder();
+        boolean entreAspas = false;
+        
+        for (int i = 0; i < linha.length(); i++) {
+            char c = linha.charAt(i);
+            if (entreAspas) {
+                if (c != '"') {
+                    campo.append(c);
+                } else if (i + 1 < linha.length() && linha.charAt(i + 1) == '"') {
+                    campo.append('"');
+                    i++;
+                } else {
+                    entreAspas = false;
+                }
+            } else if (c == '"') {
+                entreAspas = true;
+            } else if (c == SEPARADOR) {
+                campos.add(campo.toString().trim());
+                campo.setLength(0);
+            } else {
+                campo.append(c);
+            }
+        }
+        
+        if (entreAspas) {
+            throw new IllegalArgumentException("Aspas não fechadas");
+        }
+        campos.add(campo.toString().trim());
+        return campos.toArray(new String[0]);
+    }
+
+}
+
+
+/**
+ * Linha de importação convertida: contém o registro ou a mensagem de erro da validação
+ */
+final class LinhaImportacao<T> {
+    private final long numero;
+    private final T registro;
+    private final String erro;
+    
+    LinhaImportacao(long numero, T registro, String erro) {
+        this.numero = numero;
+        this.registro = registro;
+        this.erro = erro;
+    }
+    
+    public long getNumero() { return numero; }
+    public T getRegistro() { return registro; }
+    String getErro() { return erro; }
+}
+
+/**
+ * Lote de importação entregue ao gravador com as linhas válidas; as rejeições são acumuladas no resultado
+ */
+final class LoteImportacao<T> {
+    private final int numero;
+    private final long primeiraLinha;
+    private final long ultimaLinha;
+    private final ResultadoImportacao resultado;
+    private List<LinhaImportacao<T>> linhas;
+    private int rejeitadas;
+    private int aceitas;
+    
+    LoteImportacao(int numero, long primeiraLinha, long ultimaLinha, List<LinhaImportacao<T>> linhas, ResultadoImportacao resultado) {
+        this.numero = numero;
+        this.primeiraLinha = primeiraLinha;
+        this.ultimaLinha = ultimaLinha;
+        this.linhas = linhas;
+        this.resultado = resultado;
+    }
+    
+    // Registra as rejeições da validação paralela, mantendo no lote apenas as linhas válidas
+    void separarInvalidas() {
+        List<LinhaImportacao<T>> validas = new ArrayList<>(linhas.size());
+        for (LinhaImportacao<T> linha : linhas) {
+            if (linha.getErro() == null) {
+                validas.add(linha);
+            } else {
+                rejeitar(linha, linha.getErro());
+            }
+        }
+        linhas = validas;
+    }
+    
+    public List<LinhaImportacao<T>> getLinhas() { return linhas; }
+    
+    public void rejeitar(LinhaImportacao<T> linha, String motivo) {
+        rejeitadas++;
+        resultado.registrarRejeicao(linha.getNumero(), motivo);
+    }
+    
+    public void confirmar(int quantidade) {
+        aceitas = quantidade;
+        resultado.registrarLote(quantidade);
+    }
+    
+    /**
+     * Descrição do lote para a entrada de auditoria
+     */
+    public String resumo(String descricaoAceitos) {
+        return "Lote " + numero + " de " + resultado.getArquivo() + " (linhas " + primeiraLinha + " a " + ultimaLinha + "): " 
+               + aceitas + " " + descricaoAceitos + ", " + rejeitadas + " rejeitados";
+    }
+}
+
+/**
+ * Resultado de uma importação em lote
+ */
+class ResultadoImportacao {
+    private final String arquivo;
+    private final TreeMap<Long, String> rejeicoes;
+    private long linhasLidas;
+    private long registrosImportados;
+    private int lotesGravados;
+    
+    public ResultadoImportacao(String arquivo) {
+        this.arquivo = arquivo;
+        this.rejeicoes = new TreeMap<>();
+    }
+    
+    void registrarRejeicao(long linha, String motivo) {
+        rejeicoes.put(linha, motivo);
+    }
+    
+    void registrarLote(int importados) {
+        registrosImportados += importados;
+        lotesGravados++;
+    }
+    
+    void registrarLinhasLidas(long linhas) {
+        linhasLidas = linhas;
+    }
+    
+    // Getters
+    public String getArquivo() { return arquivo; }
+    public long getLinhasLidas() { return linhasLidas; }
+    public long getRegistrosImportados() { return registrosImportados; }
+    public int getLotesGravados() { return lotesGravados; }
+    
+    /**
+     * Rejeições em ordem de linha, no formato "Linha N: motivo"
+     */
+    public List<String> getRejeicoes() {
+        List<String> mensagens = new ArrayList<>(rejeicoes.size());
+        for (Map.Entry<Long, String> rejeicao : rejeicoes.entrySet()) {
+            mensagens.add("Linha " + rejeicao.getKey() + ": " + rejeicao.getValue());
+        }
+        return mensagens;
+    }
+}
+
+/**
+ * Conjunto de bloqueios em listras (lock striping) associados a chaves textuais.
+ * 
+ * Cada bloqueio adquire também a parte compartilhada do bloqueio de estado, de modo que
+ * a geração de snapshot (parte exclusiva) aguarde as operações em andamento.
+ */
+class ListrasBloqueio {
+    private final Bloqueio[] listras;
+    private final int mascara;
+    
+    public ListrasBloqueio(ReentrantReadWriteLock bloqueioEstado, int quantidade) {
+        if (Integer.bitCount(quantidade) != 1) {
+            throw new IllegalArgumentException("Quantidade de listras deve ser potência de dois: " + quantidade);
+        }
+        
+        this.listras = new Bloqueio[quantidade];
+        this.mascara = quantidade - 1;
+        for (int i = 0; i < quantidade; i++) {
+            listras[i] = new Bloqueio(bloqueioEstado.readLock());
+        }
+    }
+    
+    /**
+     * Executa a ação com a listra da chave bloqueada
+     */
+    public void executar(String chave, Runnable acao) {
+        executar(chave, () -> {
+            acao.run();
+            return null;
+        });
+    }
+    
+    public <T> T executar(String chave, Supplier<T> acao) {
+        Bloqueio bloqueio = bloquear(chave);
+        try {
+            return acao.get();
+        } finally {
+            bloqueio.liberar();
+        }
+    }
+    
+    /**
+     * Executa a ação com as listras de todas as chaves informadas bloqueadas
+     */
+    public void executar(Collection<String> chaves, Runnable acao) {
+        executar(chaves, () -> {
+            acao.run();
+            return null;
+        });
+    }
+    
+    public <T> T executar(Collection<String> chaves, Supplier<T> acao) {
+        BloqueioMultiplo bloqueio = bloquear(chaves);
+        try {
+            return acao.get();
+        } finally {
+            bloqueio.liberar();
+        }
+    }
+    
+    private Bloqueio bloquear(String chave) {
+        Bloqueio bloqueio = listras[indice(chave)];
+        bloqueio.adquirir();
+        return bloqueio;
+    }
+    
+    /**
+     * Bloqueia as listras de todas as chaves informadas, sempre em ordem crescente de
+     * índice para que bloqueios múltiplos concorrentes não entrem em impasse
+     */
+    private BloqueioMultiplo bloquear(Collection<String> chaves) {
+        BitSet indices = new BitSet(listras.length);
+        for (String chave : chaves) {
+            indices.set(indice(chave));
+        }
+        
+        Bloqueio[] adquiridos = new Bloqueio[indices.cardinality()];
+        int quantidade = 0;
+        try {
+            for (int i = indices.nextSetBit(0); i >= 0; i = indices.nextSetBit(i + 1)) {
+                listras[i].adquirir();
+                adquiridos[quantidade++] = listras[i];
+            }
+        } catch (RuntimeException | Error e) {
+            new BloqueioMultiplo(adquiridos, quantidade).liberar();
+            throw e;
+        }
+        return new BloqueioMultiplo(adquiridos, quantidade);
+    }
+    
+    private int indice(String chave) {
+        int hash = chave.hashCode();
+        return (hash ^ (hash >>> 16)) & mascara;
+    }
+    
+    /**
+     * Bloqueio de uma listra
+     */
+    private static final class Bloqueio {
+        private final Lock compartilhado;
+        private final ReentrantLock listra;
+        
+        private Bloqueio(Lock compartilhado) {
+            this.compartilhado = compartilhado;
+            this.listra = new ReentrantLock();
+        }
+        
+        private void adquirir() {
+            compartilhado.lock();
+            try {
+                listra.lock();
+            } catch (RuntimeException | Error e) {
+                compartilhado.unlock();
+                throw e;
+            }
+        }
+        
+        void liberar() {
+            listra.unlock();
+            compartilhado.unlock();
+        }
+    }
+    
+    /**
+     * Conjunto de listras bloqueadas em conjunto, liberadas em ordem inversa
+     */
+    private static final class BloqueioMultiplo {
+        private final Bloqueio[] bloqueios;
+        private final int quantidade;
+        
+        private BloqueioMultiplo(Bloqueio[] bloqueios, int quantidade) {
+            this.bloqueios = bloqueios;
+            this.quantidade = quantidade;
+        }
+        
+        void liberar() {
+            for (int i = quantidade - 1; i >= 0; i--) {
+                bloqueios[i].liberar();
+            }
+        }
+    }
+}
+
+/**
+ * Enumeração das operações gravadas no log de persistência (write-ahead log).
+ * Os códigos fazem parte do formato em disco e não devem ser alterados.
+ */
+enum OperacaoPersistida {
+    CADASTRO_USUARIO(1),
+    CADASTRO_FORNECEDOR(2),
+    INICIO_PROCESSO(3),
+    ADICAO_ITEM(4),
+    ADICAO_DOCUMENTO(5),
+    AVANCO_ETAPA(6),
+    REGISTRO_PROPOSTA(7),
+    SELECAO_PROPOSTA(8),
+    GERACAO_CONTRATO(9),
+    REGISTRO_EMPENHO(10),
+    REGISTRO_ENTREGA(11),
+    REGISTRO_PAGAMENTO(12),
+    CADASTRO_FORNECEDORES_LOTE(13),
+    ADICAO_ITENS_LOTE(14),
+    REGISTRO_PROPOSTAS_LOTE(15),
+    REGISTRO_LIQUIDACAO(16),
+    AVANCO_ETAPAS_LOTE(17);
+    
+    private static final OperacaoPersistida[] POR_CODIGO = new OperacaoPersistida[18];
+    static {
+        for (OperacaoPersistida operacao : values()) {
+            POR_CODIGO[operacao.codigo] = operacao;
+        }
+    }
+    
+    private final int codigo;
+    
+    OperacaoPersistida(int codigo) {
+        this.codigo = codigo;
+    }
+    
+    public int getCodigo() { return codigo; }
+    
+    public static OperacaoPersistida porCodigo(int codigo) throws IOException {
+        if (codigo <= 0 || codigo >= POR_CODIGO.length || POR_CODIGO[codigo] == null) {
+            throw new IOException("Código de operação desconhecido no log de persistência: " + codigo);
+        }
+        return POR_CODIGO[codigo];
+    }
+}
+
+/**
+ * Enumeração das políticas de sincronização do log de persistência com o disco
+ */
+enum PoliticaSincronizacao {
+    A_CADA_OPERACAO,      // fsync após cada operação; nenhuma operação confirmada é perdida
+    SISTEMA_OPERACIONAL   // grava no cache do sistema operacional; fsync somente em snapshots e no fechamento
+}
+
+/**
+ * Onde os registros financeiros dos contratos (empenhos, liquidações e pagamentos) são mantidos
+ */
+enum TipoArmazenamento {
+    MEMORIA,  // objetos no heap
+    DISCO     // armazenamento chave-valor em disco local, com cache de páginas e memória limitada
+}
+
+/**
+ * Escreve dados de uma operação ou do snapshot no formato binário de persistência
+ */
+interface EscritorDados {
+    void escrever(DataOutputStream saida) throws IOException;
+}
+
+/**
+ * Lê o conteúdo de um snapshot no formato binário de persistência
+ */
+interface LeitorDados {
+    void ler(DataInputStream entrada) throws IOException;
+}
+
+/**
+ * Reaplica uma operação lida do log de persistência durante a recuperação
+ */
+interface AplicadorOperacao {
+    void aplicar(OperacaoPersistida operacao, DataInputStream entrada) throws IOException;
+}
+
+/**
+ * Registro de persistência que referencia um usuário, fornecedor, processo ou contrato
+ * inexistente. Na reaplicação do log o registro é ignorado e informado em
+ * MotorPersistencia.getRegistrosIgnorados, sem impedir a recuperação dos demais.
+ */
+class ReferenciaInexistente extends IOException {
+    private static final long serialVersionUID = 1L;
+    
+    public ReferenciaInexistente(String mensagem) {
+        super(mensagem);
+    }
+}
+
+/**
+ * Motor de persistência com snapshot compacto e log de operações (write-ahead log).
+ * 
+ * Cada geração N é composta por snapshot-N.bin (estado completo até o início da geração)
+ * e wal-N.log (operações posteriores). Um registro do log tem o formato
+ * [tamanho:int][crc32:int][operacao:byte][dados]; registros incompletos ou corrompidos
+ * no fim do arquivo são descartados na recuperação.
+ */
+class MotorPersistencia implements AutoCloseable {
+    static final int LIMITE_REGISTROS_WAL_PADRAO = 100_000;
+    private static final int MAGICO_SNAPSHOT = 0x41515350;
+    private static final int VERSAO_FORMATO = 6;
+    private static final int TAMANHO_MAXIMO_REGISTRO = 256 * 1024 * 1024;
+    private static final int TAMANHO_BUFFER_ARQUIVO = 1 << 16;
+    
+    /**
+     * Buffer reutilizado entre registros, expondo o array interno para evitar cópias
+     */
+    private static class BufferRegistro extends ByteArrayOutputStream {
+        BufferRegistro() { super(512); }
+        byte[] dados() { return buf; }
+    }
+    
+    private final Path diretorio;
+    private final PoliticaSincronizacao politica;
+    private final int limiteRegistrosWal;
+    private final BufferRegistro buffer;
+    private final DataOutputStream saidaBuffer;
+    private final ByteBuffer cabecalho;
+    private final CRC32 crc;
+    private final ReentrantLock bloqueioSincronizacao;
+    private FileChannel canalWal;
+    private long geracao;
+    private long registrosWal;
+    private long bytesGravados;
+    private volatile long bytesSincronizados;
+    private long registrosReaplicados;
+    private final List<String> registrosIgnorados;
+    private Duration tempoRecuperacao;
+    
+    public MotorPersistencia(Path diretorio, PoliticaSincronizacao politica, int limiteRegistrosWal) throws IOException {
+        if (limiteRegistrosWal <= 0) {
+            throw new IllegalArgumentException("Limite de registros do log deve ser positivo");
+        }
+        
+        this.diretorio = diretorio;
+        this.politica = politica;
+        this.limiteRegistrosWal = limiteRegistrosWal;
+        this.buffer = new BufferRegistro();
+        this.saidaBuffer = new DataOutputStream(buffer);
+        this.cabecalho = ByteBuffer.allocate(8);
+        this.crc = new CRC32();
+        this.bloqueioSincronizacao = new ReentrantLock();
+        this.registrosIgnorados = new ArrayList<>();
+        this.tempoRecuperacao = Duration.ZERO;
+        
+        Files.createDirectories(diretorio);
+    }
+    
+    /**
+     * Restaura o último snapshot e reaplica o log de operações posterior a ele.
+     * O tempo total de recuperação fica disponível em getTempoRecuperacao().
+     */
+    public synchronized void recuperar(LeitorDados leitorSnapshot, AplicadorOperacao aplicador) throws IOException {
+        long inicio = System.nanoTime();
+        
+        geracao = localizarUltimaGeracao();
+        Path snapshot = arquivoSnapshot(geracao);
+        if (Files.exists(snapshot)) {
+            lerSnapshot(snapshot, leitorSnapshot);
+        }
+        
+        Path wal = arquivoWal(geracao);
+        if (Files.exists(wal)) {
+            registrosReaplicados = reaplicarWal(wal, aplicador);
+        }
+        registrosWal = registrosReaplicados + registrosIgnorados.size();
+        
+        canalWal = FileChannel.open(wal, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        canalWal.position(canalWal.size());
+        removerGeracoesAnteriores(geracao);
+        
+        tempoRecuperacao = Duration.ofNanos(System.nanoTime() - inicio);
+    }
+    
+    /**
+     * Grava a operação no log e retorna a posição do fim do registro, a ser informada a
+     * aguardarDurabilidade antes de confirmar a operação ao chamador
+     */
+    public long registrar(OperacaoPersistida operacao, EscritorDados escritor) throws IOException {
+        long fimRegistro;
+        
+        synchronized (this) {
+            buffer.reset();
+            saidaBuffer.writeByte(operacao.getCodigo());
+            escritor.escrever(saidaBuffer);
+            saidaBuffer.flush();
+            
+            int tamanho = buffer.size();
+            if (tamanho > TAMANHO_MAXIMO_REGISTRO) {
+                throw new IOException("Operação excede o tamanho máximo de registro do log: " + tamanho + " bytes");
+            }
+            
+            crc.reset();
+            crc.update(buffer.dados(), 0, tamanho);
+            cabecalho.clear();
+            cabecalho.putInt(tamanho).putInt((int) crc.getValue()).flip();
+            
+            ByteBuffer[] partes = { cabecalho, ByteBuffer.wrap(buffer.dados(), 0, tamanho) };
+            while (partes[1].hasRemaining()) {
+                canalWal.write(partes);
+            }
+            
+            registrosWal++;
+            bytesGravados += 8 + tamanho;
+            fimRegistro = bytesGravados;
+        }
+        
+        return fimRegistro;
+    }
+    
+    /**
+     * Conforme a política, aguarda até que o log esteja sincronizado com o disco até a posição
+     * informada. Um único fsync atende a todas as operações gravadas até o momento.
+     */
+    public void aguardarDurabilidade(long fimRegistro) throws IOException {
+        if (politica == PoliticaSincronizacao.A_CADA_OPERACAO) {
+            aguardarSincronizacao(fimRegistro);
+        }
+    }
+    
+    // Usa um Lock em vez de monitor: threads virtuais aguardando o fsync liberam sua thread portadora
+    private void aguardarSincronizacao(long fimRegistro) throws IOException {
+        bloqueioSincronizacao.lock();
+        try {
+            if (bytesSincronizados >= fimRegistro) {
+                return;
+            }
+            
+            long alvo;
+            FileChannel canal;
+            synchronized (this) {
+                alvo = bytesGravados;
+                canal = canalWal;
+            }
+            try {
+                canal.force(false);
+            } catch (ClosedChannelException e) {
+                // Um snapshot rotacionou o log e já sincronizou o arquivo anterior
+                if (bytesSincronizados < fimRegistro) {
+                    throw e;
+                }
+                return;
+            }
+            if (alvo > bytesSincronizados) {
+                bytesSincronizados = alvo;
+            }
+        } finally {
+            bloqueioSincronizacao.unlock();
+        }
+    }
+    
+    public synchronized boolean snapshotPendente() {
+        return registrosWal >= limiteRegistrosWal;
+    }
+    
+    /**
+     * Grava o snapshot da próxima geração em arquivo temporário, publica-o com uma
+     * renomeação atômica e passa a registrar as operações em um novo log
+     */
+    public synchronized void gravarSnapshot(EscritorDados escritor) throws IOException {
+        long novaGeracao = geracao + 1;
+        Path destino = arquivoSnapshot(novaGeracao);
+        Path temporario = diretorio.resolve(destino.getFileName() + ".tmp");
+        
+        try (FileChannel canal = FileChannel.open(temporario, StandardOpenOption.CREATE, 
+                                                  StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            CheckedOutputStream verificado = new CheckedOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(canal), TAMANHO_BUFFER_ARQUIVO), new CRC32());
+            DataOutputStream saida = new DataOutputStream(verificado);
+            
+            saida.writeInt(MAGICO_SNAPSHOT);
+            saida.writeInt(VERSAO_FORMATO);
+            saida.writeLong(novaGeracao);
+            escritor.escrever(saida);
+            saida.flush();
+            saida.writeLong(verificado.getChecksum().getValue());
+            saida.flush();
+            canal.force(true);
+        }
+        Files.move(temporario, destino, StandardCopyOption.ATOMIC_MOVE);
+        sincronizarDiretorio();
+        
+        FileChannel novoWal = FileChannel.open(arquivoWal(novaGeracao), StandardOpenOption.CREATE, 
+                                               StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        canalWal.force(false);
+        bytesSincronizados = bytesGravados;
+        canalWal.close();
+        canalWal = novoWal;
+        geracao = novaGeracao;
+        registrosWal = 0;
+        
+        removerGeracoesAnteriores(novaGeracao);
+    }
+    
+    public synchronized Duration getTempoRecuperacao() { return tempoRecuperacao; }
+    public synchronized long getRegistrosReaplicados() { return registrosReaplicados; }
+    public synchronized List<String> getRegistrosIgnorados() { return List.copyOf(registrosIgnorados); }
+    public synchronized long getGeracao() { return geracao; }
+    
+    @Override
+    public synchronized void close() throws IOException {
+        if (canalWal != null && canalWal.isOpen()) {
+            canalWal.force(true);
+            canalWal.close();
+        }
+    }
+    
+    private void lerSnapshot(Path arquivo, LeitorDados leitor) throws IOException {
+        try (CheckedInputStream verificado = new CheckedInputStream(
+                 new BufferedInputStream(Files.newInputStream(arquivo), TAMANHO_BUFFER_ARQUIVO), new CRC32())) {
+            DataInputStream entrada = new DataInputStream(verificado);
+            
+            if (entrada.readInt() != MAGICO_SNAPSHOT) {
+                throw new IOException("Arquivo não é um snapshot do sistema de aquisições: " + arquivo);
+            }
+            int versao = entrada.readInt();
+            if (versao != VERSAO_FORMATO) {
+                throw new IOException("Versão de snapshot não suportada: " + versao);
+            }
+            if (entrada.readLong() != geracao) {
+                throw new IOException("Geração do snapshot não corresponde ao nome do arquivo: " + arquivo);
+            }
+            
+            leitor.ler(entrada);
+            
+            long crcCalculado = verificado.getChecksum().getValue();
+            if (entrada.readLong() != crcCalculado) {
+                throw new IOException("Snapshot corrompido (CRC inválido): " + arquivo);
+            }
+        }
+    }
+    
+    private long reaplicarWal(Path arquivo, AplicadorOperacao aplicador) throws IOException {
+        long posicaoValida = 0;
+        long registros = 0;
+        
+        try (DataInputStream entrada = new DataInputStream(
+                 new BufferedInputStream(Files.newInputStream(arquivo), TAMANHO_BUFFER_ARQUIVO))) {
+            byte[] dados = new byte[512];
+            
+            while (true) {
+                int tamanho;
+                int crcEsperado;
+                try {
+                    tamanho = entrada.readInt();
+                    crcEsperado = entrada.readInt();
+                    if (tamanho <= 0 || tamanho > TAMANHO_MAXIMO_REGISTRO) {
+                        break;
+                    }
+                    if (dados.length < tamanho) {
+                        dados = new byte[Math.max(tamanho, dados.length * 2)];
+                    }
+                    entrada.readFully(dados, 0, tamanho);
+                } catch (EOFException e) {
+                    break;
+                }
+                
+                crc.reset();
+                crc.update(dados, 0, tamanho);
+                if ((int) crc.getValue() != crcEsperado) {
+                    break;
+                }
+                
+                OperacaoPersistida operacao = OperacaoPersistida.porCodigo(dados[0]);
+                try {
+                    aplicador.aplicar(operacao, new DataInputStream(new ByteArrayInputStream(dados, 1, tamanho - 1)));
+                    registros++;
+                } catch (ReferenciaInexistente e) {
+                    // O aplicador lê todas as referências antes de alterar o estado: o registro é ignorado por inteiro
+                    registrosIgnorados.add(operacao + " na posição " + posicaoValida + ": " + e.getMessage());
+                }
+                posicaoValida += 8 + tamanho;
+            }
+        }
+        
+        // Descartar o registro final incompleto para que novas gravações comecem em posição íntegra
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.WRITE)) {
+            if (canal.size() > posicaoValida) {
+                canal.truncate(posicaoValida);
+            }
+        }
+        
+        return registros;
+    }
+    
+    private long localizarUltimaGeracao() throws IOException {
+        long ultima = 0;
+        try (var listagem = Files.newDirectoryStream(diretorio, "snapshot-*.bin")) {
+            for (Path arquivo : listagem) {
+                String nome = arquivo.getFileName().toString();
+                ultima = Math.max(ultima, Long.parseLong(nome.substring("snapshot-".length(), nome.length() - ".bin".length())));
+            }
+        }
+        return ultima;
+    }
+    
+    private void removerGeracoesAnteriores(long geracaoAtual) throws IOException {
+        for (long anterior = geracaoAtual - 1; anterior >= 0; anterior--) {
+            boolean removido = Files.deleteIfExists(arquivoSnapshot(anterior));
+            removido |= Files.deleteIfExists(arquivoWal(anterior));
+            if (!removido) {
+                break;
+            }
+        }
+    }
+    
+    private void sincronizarDiretorio() {
+        // Nem todos os sistemas de arquivos permitem sincronizar diretórios; a renomeação já é atômica
+        try (FileChannel canal = FileChannel.open(diretorio, StandardOpenOption.READ)) {
+            canal.force(true);
+        } catch (IOException e) {
+            // Ignorado
+        }
+    }
+    
+    private Path arquivoSnapshot(long geracao) {
+        return diretorio.resolve(String.format("snapshot-%012d.bin", geracao));
+    }
+    
+    private Path arquivoWal(long geracao) {
+        return diretorio.resolve(String.format("wal-%012d.log", geracao));
+    }
+}
+
+/**
+ * Codificação binária das entidades para o snapshot e o log de persistência.
+ * 
+ * Usuários e fornecedores cadastrados são referenciados por CPF/CNPJ, processos e
+ * contratos pelo número, e itens/propostas pela posição dentro do processo. Dessa forma
+ * o grafo cíclico Proposta → ProcessoAquisicao → Contrato é gravado sem repetições.
+ */
+class CodecAquisicoes {
+    private static final int REFERENCIA_NULA = 0;
+    private static final int REFERENCIA_CADASTRADA = 1;
+    private static final int REFERENCIA_EMBUTIDA = 2;
+    
+    private final Map<String, Usuario> usuariosPorCpf;
+    private final Map<String, Fornecedor> fornecedoresPorCnpj;
+    private final Map<String, ProcessoAquisicao> processosPorNumero;
+    private final Map<String, Contrato> contratosPorNumero;
+    
+    public CodecAquisicoes(Map<String, Usuario> usuariosPorCpf, Map<String, Fornecedor> fornecedoresPorCnpj,
+                         Map<String, ProcessoAquisicao> processosPorNumero, Map<String, Contrato> contratosPorNumero) {
+        this.usuariosPorCpf = usuariosPorCpf;
+        this.fornecedoresPorCnpj = fornecedoresPorCnpj;
+        this.processosPorNumero = processosPorNumero;
+        this.contratosPorNumero = contratosPorNumero;
+    }
+    
+    // Usuários e fornecedores
+    public void escreverUsuario(DataOutputStream saida, Usuario usuario) throws IOException {
+        escreverTexto(saida, usuario.getCpf());
+        escreverTexto(saida, usuario.getNome());
+        escreverTexto(saida, usuario.getEmail());
+        saida.writeByte(usuario.getTipo().ordinal());
+        escreverTexto(saida, usuario.getDepartamento());
+    }
+    
+    public Usuario lerUsuario(DataInputStream entrada) throws IOException {
+        return new Usuario(lerTexto(entrada), lerTexto(entrada), lerTexto(entrada), 
+                          TipoUsuario.values()[entrada.readUnsignedByte()], lerTexto(entrada));
+    }
+    
+    public void escreverFornecedor(DataOutputStream saida, Fornecedor fornecedor) throws IOException {
+        escreverTexto(saida, fornecedor.getCnpj());
+        escreverTexto(saida, fornecedor.getRazaoSocial());
+        escreverTexto(saida, fornecedor.getEmail());
+        escreverTexto(saida, fornecedor.getCategoria());
+    }
+    
+    public Fornecedor lerFornecedor(DataInputStream entrada) throws IOException {
+        return new Fornecedor(lerTexto(entrada), lerTexto(entrada), lerTexto(entrada), lerTexto(entrada));
+    }
+    
+    // Processos e seus componentes
+    public void escreverProcesso(DataOutputStream saida, ProcessoAquisicao processo) throws IOException {
+        escreverTexto(saida, processo.getNumero());
+        escreverTexto(saida, processo.getTitulo());
+        escreverTexto(saida, processo.getDescricao());
+        escreverReferenciaUsuario(saida, processo.getResponsavel());
+        saida.writeByte(processo.getModalidade().ordinal());
+        escreverData(saida, processo.getDataAbertura());
+        saida.writeLong(processo.getValorEstimado());
+    }
+    
+    public ProcessoAquisicao lerProcesso(DataInputStream entrada) throws IOException {
+        return new ProcessoAquisicao(lerTexto(entrada), lerTexto(entrada), lerTexto(entrada), 
+                                    lerReferenciaUsuario(entrada), 
+                                    ModalidadeLicitacao.values()[entrada.readUnsignedByte()],
+                                    lerData(entrada), entrada.readLong());
+    }
+    
+    public void escreverProcessoCompleto(DataOutputStream saida, ProcessoAquisicao processo) throws IOException {
+        escreverProcesso(saida, processo);
+        saida.writeByte(processo.getEtapaAtual().ordinal());
+        escreverData(saida, processo.getDataEtapa());
+        
+        saida.writeInt(processo.getItens().size());
+        for (Item item : processo.getItens()) {
+            escreverItem(saida, item);
+        }
+        
+        saida.writeInt(processo.getDocumentos().size());
+        for (Documento documento : processo.getDocumentos()) {
+            escreverDocumento(saida, documento);
+        }
+        
+        saida.writeInt(processo.getPropostas().size());
+        for (Proposta proposta : processo.getPropostas()) {
+            escreverProposta(saida, proposta);
+        }
+        
+        saida.writeInt(indicePorIdentidade(processo.getPropostas(), processo.getPropostaVencedora()));
+    }
+    
+    public ProcessoAquisicao lerProcessoCompleto(DataInputStream entrada) throws IOException {
+        ProcessoAquisicao processo = lerProcesso(entrada);
+        processo.setEtapaAtual(EtapaProcesso.values()[entrada.readUnsignedByte()]);
+        processo.setDataEtapa(lerData(entrada));
+        
+        int quantidade = entrada.readInt();
+        for (int i = 0; i < quantidade; i++) {
+            processo.adicionarItem(lerItem(entrada));
+        }
+        
+        quantidade = entrada.readInt();
+        for (int i = 0; i < quantidade; i++) {
+            processo.adicionarDocumento(lerDocumento(entrada));
+        }
+        
+        quantidade = entrada.readInt();
+        for (int i = 0; i < quantidade; i++) {
+            processo.adicionarProposta(lerProposta(entrada, processo));
+        }
+        
+        int indiceVencedora = entrada.readInt();
+        if (indiceVencedora >= 0) {
+            processo.setPropostaVencedora(processo.getPropostas().get(indiceVencedora));
+        }
+        
+        return processo;
+    }
+    
+    public ProcessoAquisicao lerReferenciaProcesso(DataInputStream entrada) throws IOException {
+        String numero = lerTexto(entrada);
+        ProcessoAquisicao processo = processosPorNumero.get(numero);
+        if (processo == null) {
+            throw new ReferenciaInexistente("Registro de persistência referencia processo inexistente: " + numero);
+        }
+        return processo;
+    }
+    
+    public void escreverItem(DataOutputStream saida, Item item) throws IOException {
+        escreverTexto(saida, item.getNome());
+        escreverTexto(saida, item.getDescricao());
+        saida.writeLong(item.getValorUnitario());
+        saida.writeInt(item.getQuantidade());
+        saida.writeByte(item.getUnidade().ordinal());
+    }
+    
+    public Item lerItem(DataInputStream entrada) throws IOException {
+        return new Item(lerTexto(entrada), lerTexto(entrada), entrada.readLong(), entrada.readInt(), 
+                       UnidadeMedida.values()[entrada.readUnsignedByte()]);
+    }
+    
+    public void escreverDocumento(DataOutputStream saida, Documento documento) throws IOException {
+        escreverTexto(saida, documento.getTitulo());
+        escreverTexto(saida, documento.getConteudo().getHash());
+        saida.writeLong(documento.getConteudo().getTamanho());
+        escreverReferenciaUsuario(saida, documento.getResponsavel());
+        escreverDataHora(saida, documento.getDataCriacao());
+    }
+    
+    public Documento lerDocumento(DataInputStream entrada) throws IOException {
+        String titulo = lerTexto(entrada);
+        ConteudoDocumento conteudo = new ConteudoDocumento(lerTexto(entrada), entrada.readLong());
+        return new Documento(titulo, conteudo, lerReferenciaUsuario(entrada), lerDataHora(entrada));
+    }
+    
+    public void escreverProposta(DataOutputStream saida, Proposta proposta) throws IOException {
+        escreverReferenciaFornecedor(saida, proposta.getFornecedor());
+        escreverDataHora(saida, proposta.getDataEnvio());
+        saida.writeLong(proposta.getValorTotal());
+        escreverTexto(saida, proposta.getDescricao());
+    }
+    
+    public Proposta lerProposta(DataInputStream entrada, ProcessoAquisicao processo) throws IOException {
+        return new Proposta(lerReferenciaFornecedor(entrada), processo, lerDataHora(entrada), 
+                           entrada.readLong(), lerTexto(entrada));
+    }
+    
+    // Contratos e execução financeira
+    public void escreverContrato(DataOutputStream saida, Contrato contrato) throws IOException {
+        escreverTexto(saida, contrato.getProcesso().getNumero());
+        escreverTexto(saida, contrato.getNumero());
+        escreverReferenciaFornecedor(saida, contrato.getFornecedor());
+        escreverData(saida, contrato.getDataInicio());
+        escreverData(saida, contrato.getDataFim());
+        saida.writeLong(contrato.getValor());
+        escreverReferenciaUsuario(saida, contrato.getFiscal());
+    }
+    
+    public Contrato lerContrato(DataInputStream entrada) throws IOException {
+        ProcessoAquisicao processo = lerReferenciaProcesso(entrada);
+        return new Contrato(lerTexto(entrada), processo, lerReferenciaFornecedor(entrada), 
+                           lerData(entrada), lerData(entrada), entrada.readLong(), lerReferenciaUsuario(entrada));
+    }
+    
+    public Contrato lerReferenciaContrato(DataInputStream entrada) throws IOException {
+        String numero = lerTexto(entrada);
+        Contrato contrato = contratosPorNumero.get(numero);
+        if (contrato == null) {
+            throw new ReferenciaInexistente("Registro de persistência referencia contrato inexistente: " + numero);
+        }
+        return contrato;
+    }
+    
+    public void escreverEmpenho(DataOutputStream saida, NotaEmpenho empenho) throws IOException {
+        escreverTexto(saida, empenho.getContrato().getNumero());
+        escreverTexto(saida, empenho.getNumero());
+        escreverData(saida, empenho.getData());
+        saida.writeLong(empenho.getValor());
+        escreverReferenciaUsuario(saida, empenho.getOrdenador());
+    }
+    
+    public NotaEmpenho lerEmpenho(DataInputStream entrada) throws IOException {
+        Contrato contrato = lerReferenciaContrato(entrada);
+        return new NotaEmpenho(lerTexto(entrada), contrato, lerData(entrada), entrada.readLong(), 
+                              lerReferenciaUsuario(entrada));
+    }
+    
+    public void escreverLiquidacao(DataOutputStream saida, Liquidacao liquidacao) throws IOException {
+        escreverTexto(saida, liquidacao.getContrato().getNumero());
+        escreverTexto(saida, liquidacao.getNumero());
+        escreverData(saida, liquidacao.getData());
+        saida.writeLong(liquidacao.getValor());
+        escreverReferenciaUsuario(saida, liquidacao.getOrdenador());
+    }
+    
+    public Liquidacao lerLiquidacao(DataInputStream entrada) throws IOException {
+        Contrato contrato = lerReferenciaContrato(entrada);
+        return new Liquidacao(lerTexto(entrada), contrato, lerData(entrada), entrada.readLong(), 
+                              lerReferenciaUsuario(entrada));
+    }
+    
+    public void escreverEntrega(DataOutputStream saida, EntregaItem entrega, List<Item> itensProcesso) throws IOException {
+        escreverData(saida, entrega.getData());
+        escreverTexto(saida, entrega.getDescricao());
+        escreverReferenciaUsuario(saida, entrega.getResponsavel());
+        
+        saida.writeInt(entrega.getItensEntregues().size());
+        for (ItemEntregue itemEntregue : entrega.getItensEntregues()) {
+            saida.writeInt(indicePorIdentidade(itensProcesso, itemEntregue.getItem()));
+            saida.writeInt(itemEntregue.getQuantidade());
+        }
+    }
+    
+    public EntregaItem lerEntrega(DataInputStream entrada, Contrato contrato) throws IOException {
+        EntregaItem entrega = new EntregaItem(contrato, lerData(entrada), lerTexto(entrada), lerReferenciaUsuario(entrada));
+        
+        List<Item> itensProcesso = contrato.getProcesso().getItens();
+        int quantidade = entrada.readInt();
+        for (int i = 0; i < quantidade; i++) {
+            Item item = itensProcesso.get(entrada.readInt());
+            entrega.adicionarItemEntregue(item, entrada.readInt());
+        }
+        
+        return entrega;
+    }
+    
+    public void escreverPagamento(DataOutputStream saida, Pagamento pagamento) throws IOException {
+        escreverTexto(saida, pagamento.getContrato().getNumero());
+        escreverTexto(saida, pagamento.getNumero());
+        escreverData(saida, pagamento.getData());
+        saida.writeLong(pagamento.getValor());
+        escreverTexto(saida, pagamento.getDescricao());
+        escreverReferenciaUsuario(saida, pagamento.getOrdenador());
+    }
+    
+    public Pagamento lerPagamento(DataInputStream entrada) throws IOException {
+        Contrato contrato = lerReferenciaContrato(entrada);
+        return new Pagamento(lerTexto(entrada), contrato, lerData(entrada), entrada.readLong(), 
+                            lerTexto(entrada), lerReferenciaUsuario(entrada));
+    }
+    
+    // Referências: entidades cadastradas pela chave, as demais embutidas no registro
+    private void escreverReferenciaUsuario(DataOutputStream saida, Usuario usuario) throws IOException {
+        if (usuario == null) {
+            saida.writeByte(REFERENCIA_NULA);
+        } else if (usuariosPorCpf.get(usuario.getCpf()) == usuario) {
+            saida.writeByte(REFERENCIA_CADASTRADA);
+            escreverTexto(saida, usuario.getCpf());
+        } else {
+            saida.writeByte(REFERENCIA_EMBUTIDA);
+            escreverUsuario(saida, usuario);
+        }
+    }
+    
+    private Usuario lerReferenciaUsuario(DataInputStream entrada) throws IOException {
+        switch (entrada.readUnsignedByte()) {
+            case REFERENCIA_NULA:
+                return null;
+            case REFERENCIA_CADASTRADA:
+                String cpf = lerTexto(entrada);
+                Usuario usuario = usuariosPorCpf.get(cpf);
+                if (usuario == null) {
+                    throw new ReferenciaInexistente("Registro de persistência referencia usuário inexistente: " + cpf);
+                }
+                return usuario;
+            case REFERENCIA_EMBUTIDA:
+                return lerUsuario(entrada);
+            default:
+                throw new IOException("Tipo de referência de usuário inválido");
+        }
+    }
+    
+    private void escreverReferenciaFornecedor(DataOutputStream saida, Fornecedor fornecedor) throws IOException {
+        if (fornecedor == null) {
+            saida.writeByte(REFERENCIA_NULA);
+        } else if (fornecedoresPorCnpj.get(fornecedor.getCnpj()) == fornecedor) {
+            saida.writeByte(REFERENCIA_CADASTRADA);
+            escreverTexto(saida, fornecedor.getCnpj());
+        } else {
+            saida.writeByte(REFERENCIA_EMBUTIDA);
+            escreverFornecedor(saida, fornecedor);
+        }
+    }
+    
+    private Fornecedor lerReferenciaFornecedor(DataInputStream entrada) throws IOException {
+        switch (entrada.readUnsignedByte()) {
+            case REFERENCIA_NULA:
+                return null;
+            case REFERENCIA_CADASTRADA:
+                String cnpj = lerTexto(entrada);
+                Fornecedor fornecedor = fornecedoresPorCnpj.get(cnpj);
+                if (fornecedor == null) {
+                    throw new ReferenciaInexistente("Registro de persistência referencia fornecedor inexistente: " + cnpj);
+                }
+                return fornecedor;
+            case REFERENCIA_EMBUTIDA:
+                return lerFornecedor(entrada);
+            default:
+                throw new IOException("Tipo de referência de fornecedor inválido");
+        }
+    }
+    
+    // Tipos básicos
+    public static void escreverTexto(DataOutputStream saida, String texto) throws IOException {
+        if (texto == null) {
+            saida.writeInt(-1);
+            return;
+        }
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        saida.writeInt(bytes.length);
+        saida.write(bytes);
+    }
+    
+    public static String lerTexto(DataInputStream entrada) throws IOException {
+        int tamanho = entrada.readInt();
+        if (tamanho < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[tamanho];
+        entrada.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    public static void escreverData(DataOutputStream saida, LocalDate data) throws IOException {
+        saida.writeInt((int) data.toEpochDay());
+    }
+    
+    public static LocalDate lerData(DataInputStream entrada) throws IOException {
+        return LocalDate.ofEpochDay(entrada.readInt());
+    }
+    
+    private static void escreverDataHora(DataOutputStream saida, LocalDateTime dataHora) throws IOException {
+        saida.writeInt((int) dataHora.toLocalDate().toEpochDay());
+        saida.writeLong(dataHora.toLocalTime().toNanoOfDay());
+    }
+    
+    private static LocalDateTime lerDataHora(DataInputStream entrada) throws IOException {
+        LocalDate data = LocalDate.ofEpochDay(entrada.readInt());
+        return LocalDateTime.of(data, LocalTime.ofNanoOfDay(entrada.readLong()));
+    }
+    
+    // Busca por identidade, pois as entidades do domínio não redefinem equals
+    public static <T> int indicePorIdentidade(List<T> lista, T elemento) {
+        if (elemento == null) {
+            return -1;
+        }
+        for (int i = 0; i < lista.size(); i++) {
+            if (lista.get(i) == elemento) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
+
+/**
+ * Lista de posições do journal de auditoria armazenadas em um long[] crescente,
+ * evitando um objeto por entrada nos índices de logs
+ */
+class ListaPosicoes {
+    static final ListaPosicoes VAZIA = new ListaPosicoes(0);
+    
+    private long[] posicoes;
+    private int tamanho;
+    
+    public ListaPosicoes() {
+        this(8);
+    }
+    
+    private ListaPosicoes(int capacidadeInicial) {
+        this.posicoes = new long[capacidadeInicial];
+    }
+    
+    public synchronized void adicionar(long posicao) {
+        if (tamanho == posicoes.length) {
+            posicoes = Arrays.copyOf(posicoes, Math.max(8, tamanho * 2));
+        }
+        posicoes[tamanho++] = posicao;
+    }
+    
+    public synchronized long get(int indice) {
+        if (indice >= tamanho) {
+            throw new IndexOutOfBoundsException("Índice " + indice + " fora da lista de tamanho " + tamanho);
+        }
+        return posicoes[indice];
+    }
+    
+    public synchronized int tamanho() { return tamanho; }
+}
+
+/**
+ * Journal de auditoria append-only, segmentado e gravado através de arquivos mapeados em memória.
+ * 
+ * Cada registro possui um cabeçalho fixo seguido dos textos codificados em UTF-8:
+ * [tamanho:int][instante:long][tipo:u16][processo:u16][contrato:u16][cpf:u16][descricao:int]
+ * 
+ * O tamanho do registro é gravado por último; um registro interrompido por uma queda
+ * fica com tamanho zero e é tratado como o fim do journal na reabertura. A posição de um
+ * registro é codificada como (segmento << 32 | deslocamento). Um registro maior que o
+ * segmento padrão ocupa sozinho um segmento do seu tamanho.
+ */
+class JournalAuditoria implements AutoCloseable {
+    static final int TAMANHO_SEGMENTO_PADRAO = 64 * 1024 * 1024;
+    static final int TAMANHO_CABECALHO = 24;
+    private static final int TAMANHO_MAXIMO_CAMPO = 0xFFFF;
+    
+    /**
+     * Recebe as referências de cada registro existente ao reabrir o journal
+     */
+    interface IndexadorRegistro {
+        void indexar(long posicao, String numeroProcesso, String numeroContrato, String cpfUsuario);
+    }
+    
+    private final Path diretorio;
+    private final int tamanhoSegmento;
+    private final List<MappedByteBuffer> segmentos;
+    private MappedByteBuffer segmentoAtual;
+    private int posicaoEscrita;
+    // Início do trecho ainda não sincronizado com o disco
+    private int segmentoPendente;
+    private int posicaoPendente;
+    
+    public JournalAuditoria(Path diretorio, int tamanhoSegmento, IndexadorRegistro indexador) throws IOException {
+        if (tamanhoSegmento < TAMANHO_CABECALHO * 2) {
+            throw new IllegalArgumentException("Tamanho de segmento inválido: " + tamanhoSegmento);
+        }
+        
+        this.diretorio = diretorio;
+        this.tamanhoSegmento = tamanhoSegmento;
+        this.segmentos = new CopyOnWriteArrayList<>();
+        
+        Files.createDirectories(diretorio);
+        recuperar(indexador);
+    }
+    
+    /**
+     * Acrescenta um registro ao journal com o instante atual e retorna sua posição
+     */
+    public long registrar(String tipo, String descricao, String cpfUsuario, 
+                          String numeroProcesso, String numeroContrato) {
+        return registrar(System.currentTimeMillis(), tipo, descricao, cpfUsuario, numeroProcesso, numeroContrato);
+    }
+    
+    /**
+     * Acrescenta um registro ao journal com o instante informado (milissegundos desde a época) e
+     * retorna sua posição. Os textos são codificados diretamente no segmento mapeado, sem cópias
+     * intermediárias no heap.
+     */
+    public synchronized long registrar(long instante, String tipo, String descricao, String cpfUsuario, 
+                                       String numeroProcesso, String numeroContrato) {
+        int bytesTipo = tamanhoCampo(tipo, "tipo");
+        int bytesProcesso = tamanhoCampo(numeroProcesso, "processo");
+        int bytesContrato = tamanhoCampo(numeroContrato, "contrato");
+        int bytesCpf = tamanhoCampo(cpfUsuario, "cpf");
+        int bytesDescricao = tamanhoUtf8(descricao);
+        
+        long tamanhoRegistro = (long) TAMANHO_CABECALHO + bytesTipo + bytesProcesso + bytesContrato + bytesCpf + bytesDescricao;
+        if (tamanhoRegistro > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Registro de auditoria excede o tamanho máximo de segmento: " + tamanhoRegistro + " bytes");
+        }
+        
+        if (posicaoEscrita + tamanhoRegistro > segmentoAtual.capacity() - 4) {
+            abrirNovoSegmento(Math.max(tamanhoSegmento, (int) tamanhoRegistro + 4));
+        }
+        
+        MappedByteBuffer segmento = segmentoAtual;
+        int inicio = posicaoEscrita;
+        segmento.putLong(inicio + 4, instante);
+        segmento.putShort(inicio + 12, (short) bytesTipo);
+        segmento.putShort(inicio + 14, (short) bytesProcesso);
+        segmento.putShort(inicio + 16, (short) bytesContrato);
+        segmento.putShort(inicio + 18, (short) bytesCpf);
+        segmento.putInt(inicio + 20, bytesDescricao);
+        
+        int cursor = inicio + TAMANHO_CABECALHO;
+        cursor = escreverUtf8(segmento, cursor, tipo);
+        cursor = escreverUtf8(segmento, cursor, numeroProcesso);
+        cursor = escreverUtf8(segmento, cursor, numeroContrato);
+        cursor = escreverUtf8(segmento, cursor, cpfUsuario);
+        cursor = escreverUtf8(segmento, cursor, descricao);
+        
+        // Publicar o registro somente após o conteúdo completo estar gravado
+        segmento.putInt(inicio, (int) tamanhoRegistro);
+        posicaoEscrita = cursor;
+        
+        return ((long) (segmentos.size() - 1) << 32) | inicio;
+    }
+    
+    /**
+     * Lê o registro na posição informada, resolvendo o usuário pelo CPF gravado.
+     * A leitura não bloqueia as gravações: posições só são publicadas após o registro estar completo.
+     */
+    public LogAuditoria ler(long posicao, Function<String, Usuario> resolvedorUsuario) {
+        MappedByteBuffer segmento = segmentos.get((int) (posicao >>> 32));
+        int inicio = (int) posicao;
+        
+        if (segmento.getInt(inicio) <= 0) {
+            throw new IllegalArgumentException("Posição não contém registro de auditoria: " + posicao);
+        }
+        
+        long instante = segmento.getLong(inicio + 4);
+        int bytesTipo = Short.toUnsignedInt(segmento.getShort(inicio + 12));
+        int bytesProcesso = Short.toUnsignedInt(segmento.getShort(inicio + 14));
+        int bytesContrato = Short.toUnsignedInt(segmento.getShort(inicio + 16));
+        int bytesCpf = Short.toUnsignedInt(segmento.getShort(inicio + 18));
+        int bytesDescricao = segmento.getInt(inicio + 20);
+        
+        int cursor = inicio + TAMANHO_CABECALHO;
+        String tipo = lerUtf8(segmento, cursor, bytesTipo);
+        cursor += bytesTipo;
+        String numeroProcesso = lerUtf8(segmento, cursor, bytesProcesso);
+        cursor += bytesProcesso;
+        String numeroContrato = lerUtf8(segmento, cursor, bytesContrato);
+        cursor += bytesContrato;
+        String cpfUsuario = lerUtf8(segmento, cursor, bytesCpf);
+        cursor += bytesCpf;
+        String descricao = lerUtf8(segmento, cursor, bytesDescricao);
+        
+        Usuario usuario = cpfUsuario != null ? resolvedorUsuario.apply(cpfUsuario) : null;
+        LocalDateTime dataHora = LocalDateTime.ofInstant(Instant.ofEpochMilli(instante), ZoneId.systemDefault());
+        
+        return new LogAuditoria(dataHora, tipo != null ? tipo : "", descricao != null ? descricao : "", 
+                               usuario, numeroProcesso, numeroContrato);
+    }
+    
+    /**
+     * Força a gravação em disco dos registros acrescentados desde a última sincronização
+     */
+    public synchronized void sincronizar() {
+        int ultimo = segmentos.size() - 1;
+        for (int i = segmentoPendente; i <= ultimo; i++) {
+            MappedByteBuffer segmento = segmentos.get(i);
+            int inicio = i == segmentoPendente ? posicaoPendente : 0;
+            int fim = i == ultimo ? posicaoEscrita : segmento.capacity();
+            if (fim > inicio) {
+                segmento.force(inicio, fim - inicio);
+            }
+        }
+        segmentoPendente = ultimo;
+        posicaoPendente = posicaoEscrita;
+    }
+    
+    /**
+     * Verifica, antes que a operação seja persistida, se o valor cabe em um campo de
+     * referência (processo, contrato ou CPF) do registro de auditoria
+     */
+    static void verificarCampo(String valor, String nomeCampo) {
+        tamanhoCampo(valor, nomeCampo);
+    }
+    
+    @Override
+    public synchronized void close() throws IOException {
+        sincronizar();
+    }
+    
+    // Percorre os segmentos existentes para reconstruir os índices e localizar o fim do journal
+    private void recuperar(IndexadorRegistro indexador) throws IOException {
+        List<Path> arquivos = new ArrayList<>();
+        try (var listagem = Files.newDirectoryStream(diretorio, "auditoria-*.seg")) {
+            listagem.forEach(arquivos::add);
+        }
+        Collections.sort(arquivos);
+        
+        if (arquivos.isEmpty()) {
+            abrirNovoSegmento();
+            return;
+        }
+        
+        for (int i = 0; i < arquivos.size(); i++) {
+            segmentos.add(mapear(arquivos.get(i), tamanhoSegmento));
+        }
+        
+        for (int i = 0; i < segmentos.size(); i++) {
+            MappedByteBuffer segmento = segmentos.get(i);
+            int cursor = 0;
+            int tamanhoRegistro;
+            
+            while (cursor + TAMANHO_CABECALHO <= segmento.capacity() - 4 && (tamanhoRegistro = segmento.getInt(cursor)) > 0) {
+                int bytesTipo = Short.toUnsignedInt(segmento.getShort(cursor + 12));
+                int bytesProcesso = Short.toUnsignedInt(segmento.getShort(cursor + 14));
+                int bytesContrato = Short.toUnsignedInt(segmento.getShort(cursor + 16));
+                int bytesCpf = Short.toUnsignedInt(segmento.getShort(cursor + 18));
+                
+                int campo = cursor + TAMANHO_CABECALHO + bytesTipo;
+                String numeroProcesso = lerUtf8(segmento, campo, bytesProcesso);
+                campo += bytesProcesso;
+                String numeroContrato = lerUtf8(segmento, campo, bytesContrato);
+                campo += bytesContrato;
+                String cpfUsuario = lerUtf8(segmento, campo, bytesCpf);
+                
+                indexador.indexar(((long) i << 32) | cursor, numeroProcesso, numeroContrato, cpfUsuario);
+                cursor += tamanhoRegistro;
+            }
+            
+            posicaoEscrita = cursor;
+        }
+        
+        segmentoAtual = segmentos.get(segmentos.size() - 1);
+        segmentoPendente = segmentos.size() - 1;
+        posicaoPendente = posicaoEscrita;
+    }
+    
+    private void abrirNovoSegmento() {
+        abrirNovoSegmento(tamanhoSegmento);
+    }
+    
+    private void abrirNovoSegmento(int tamanho) {
+        if (segmentoAtual != null && posicaoEscrita + 4 <= segmentoAtual.capacity()) {
+            segmentoAtual.putInt(posicaoEscrita, 0);
+        }
+        
+        Path arquivo = diretorio.resolve(String.format("auditoria-%06d.seg", segmentos.size()));
+        try {
+            segmentoAtual = mapear(arquivo, tamanho);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Não foi possível criar segmento do journal de auditoria: " + arquivo, e);
+        }
+        segmentos.add(segmentoAtual);
+        posicaoEscrita = 0;
+    }
+    
+    // Um segmento existente é mapeado com o seu tamanho, que pode exceder o padrão
+    private MappedByteBuffer mapear(Path arquivo, int tamanho) throws IOException {
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.CREATE, 
+                                                  StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // O mapeamento permanece válido após o fechamento do canal
+            return canal.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(tamanho, canal.size()));
+        }
+    }
+    
+    private static int tamanhoCampo(String valor, String nomeCampo) {
+        int bytes = tamanhoUtf8(valor);
+        if (bytes > TAMANHO_MAXIMO_CAMPO) {
+            throw new IllegalArgumentException("Campo " + nomeCampo + " excede o tamanho máximo do journal de auditoria");
+        }
+        return bytes;
+    }
+    
+    // Calcula o tamanho em UTF-8 sem alocar o array de bytes
+    private static int tamanhoUtf8(String valor) {
+        if (valor == null) {
+            return 0;
+        }
+        
+        int bytes = 0;
+        for (int i = 0; i < valor.length(); i++) {
+            char c = valor.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < valor.length() && Character.isLowSurrogate(valor.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                bytes += 1;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+    
+    // Codifica o texto em UTF-8 diretamente no segmento; surrogates isolados viram '?'
+    private static int escreverUtf8(MappedByteBuffer segmento, int posicao, String valor) {
+        if (valor == null) {
+            return posicao;
+        }
+        
+        for (int i = 0; i < valor.length(); i++) {
+            char c = valor.charAt(i);
+            if (c < 0x80) {
+                segmento.put(posicao++, (byte) c);
+            } else if (c < 0x800) {
+                segmento.put(posicao++, (byte) (0xC0 | (c >> 6)));
+                segmento.put(posicao++, (byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < valor.length() && Character.isLowSurrogate(valor.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, valor.charAt(++i));
+                segmento.put(posicao++, (byte) (0xF0 | (codePoint >> 18)));
+                segmento.put(posicao++, (byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                segmento.put(posicao++, (byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                segmento.put(posicao++, (byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                segmento.put(posicao++, (byte) '?');
+            } else {
+                segmento.put(posicao++, (byte) (0xE0 | (c >> 12)));
+                segmento.put(posicao++, (byte) (0x80 | ((c >> 6) & 0x3F)));
+                segmento.put(posicao++, (byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        return posicao;
+    }
+    
+    // Campos vazios representam referências ausentes
+    private static String lerUtf8(MappedByteBuffer segmento, int posicao, int bytes) {
+        if (bytes == 0) {
+            return null;
+        }
+        
+        byte[] dados = new byte[bytes];
+        segmento.get(posicao, dados);
+        return new String(dados, StandardCharsets.UTF_8);
+    }
+}
+
+/**
+ * Codifica um registro para o armazenamento em disco
+ */
+interface EscritorRegistro<T> {
+    void escrever(DataOutputStream saida, T registro) throws IOException;
+}
+
+/**
+ * Decodifica um registro lido do armazenamento em disco
+ */
+interface LeitorRegistro<T> {
+    T ler(DataInputStream entrada) throws IOException;
+}
+
+/**
+ * Repositório de registros de um tipo, agrupados por uma chave (o número do contrato) e
+ * indexados pela data do registro.
+ * 
+ * É a interface de armazenamento dos registros financeiros dos contratos: RepositorioMemoria
+ * mantém os objetos no heap e RepositorioDisco os grava no armazenamento chave-valor em disco,
+ * decodificando-os a cada consulta.
+ */
+interface RepositorioRegistros<T> extends Iterable<T> {
+    void adicionar(String grupo, LocalDate data, T registro);
+    
+    /**
+     * Registros do grupo, na ordem em que foram adicionados
+     */
+    List<T> listar(String grupo);
+    
+    /**
+     * Registros com data entre as datas informadas (inclusive), em ordem de data
+     */
+    Collection<T> listarEntre(LocalDate inicio, LocalDate fim);
+    
+    /**
+     * Remove todos os registros dos grupos informados
+     */
+    void remover(Set<String> grupos);
+    
+    long tamanho();
+}
+
+/**
+ * Repositório de registros mantidos no heap
+ */
+class RepositorioMemoria<T> implements RepositorioRegistros<T> {
+    private final Queue<T> registros;
+    private final Map<String, List<T>> porGrupo;
+    private final IndiceTemporal<T> porData;
+    private final AtomicLong quantidade;
+    
+    public RepositorioMemoria() {
+        this.registros = new ConcurrentLinkedQueue<>();
+        this.porGrupo = new ConcurrentHashMap<>();
+        this.porData = new IndiceTemporal<>();
+        this.quantidade = new AtomicLong();
+    }
+    
+    @Override
+    public void adicionar(String grupo, LocalDate data, T registro) {
+        // Listas seguras para leitura concorrente; as alterações de cada grupo são serializadas pelo SistemaAquisicoes
+        porGrupo.computeIfAbsent(grupo, chave -> new CopyOnWriteArrayList<>()).add(registro);
+        porData.adicionar(data, registro);
+        registros.add(registro);
+        quantidade.incrementAndGet();
+    }
+    
+    @Override
+    public List<T> listar(String grupo) {
+        List<T> lista = porGrupo.get(grupo);
+        return lista != null ? Collections.unmodifiableList(lista) : List.of();
+    }
+    
+    @Override
+    public Collection<T> listarEntre(LocalDate inicio, LocalDate fim) {
+        return porData.buscarEntre(inicio, fim);
+    }
+    
+    @Override
+    public void remover(Set<String> grupos) {
+        Set<T> removidos = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (String grupo : grupos) {
+            List<T> lista = porGrupo.remove(grupo);
+            if (lista != null) {
+                removidos.addAll(lista);
+            }
+        }
+        if (removidos.isEmpty()) {
+            return;
+        }
+        
+        registros.removeIf(removidos::contains);
+        porData.removerSe(removidos::contains);
+        quantidade.addAndGet(-removidos.size());
+    }
+    
+    @Override
+    public long tamanho() {
+        return quantidade.get();
+    }
+    
+    @Override
+    public Iterator<T> iterator() {
+        return Collections.unmodifiableCollection(registros).iterator();
+    }
+}
+
+/**
+ * Repositório de registros gravados no armazenamento chave-valor em disco.
+ * 
+ * Cada registro é gravado duas vezes, sob [prefixo][1][grupo][0][sequência] e sob
+ * [prefixo][2][dia][sequência], para que as consultas por grupo e por período sejam
+ * varreduras de um intervalo contíguo de chaves; no índice por grupo o valor é precedido
+ * pelo dia e no índice por data, pelo grupo, o que permite remover as duas chaves a partir
+ * de qualquer um deles. Os contadores não estão no armazenamento: acompanham o ponto de
+ * controle do snapshot (escreverContadores e lerContadores).
+ */
+class RepositorioDisco<T> implements RepositorioRegistros<T> {
+    private static final byte POR_GRUPO = 1;
+    private static final byte POR_DATA = 2;
+    
+    private final ArmazenamentoLsm armazenamento;
+    private final byte prefixo;
+    private final EscritorRegistro<T> escritor;
+    private final LeitorRegistro<T> leitor;
+    private final AtomicLong sequencia;
+    private final AtomicLong quantidade;
+    
+    public RepositorioDisco(ArmazenamentoLsm armazenamento, byte prefixo,
+                            EscritorRegistro<T> escritor, LeitorRegistro<T> leitor) {
+        this.armazenamento = armazenamento;
+        this.prefixo = prefixo;
+        this.escritor = escritor;
+        this.leitor = leitor;
+        this.sequencia = new AtomicLong();
+        this.quantidade = new AtomicLong();
+    }
+    
+    @Override
+    public void adicionar(String grupo, LocalDate data, T registro) {
+        byte[] grupoCodificado = codificarGrupo(grupo);
+        byte[] valor = codificar(registro);
+        long dia = data.toEpochDay();
+        long sequenciaRegistro = sequencia.incrementAndGet();
+        
+        armazenamento.gravar(chaveGrupo(grupoCodificado, sequenciaRegistro), 
+                             ByteBuffer.allocate(8 + valor.length).putLong(dia).put(valor).array());
+        armazenamento.gravar(chaveData(dia, sequenciaRegistro), 
+                             ByteBuffer.allocate(grupoCodificado.length + 1 + valor.length)
+                                 .put(grupoCodificado).put((byte) 0).put(valor).array());
+        quantidade.incrementAndGet();
+    }
+    
+    @Override
+    public List<T> listar(String grupo) {
+        Iterator<Map.Entry<byte[], byte[]>> entradas = percorrerGrupo(codificarGrupo(grupo));
+        List<T> registros = new ArrayList<>();
+        while (entradas.hasNext()) {
+            registros.add(decodificar(entradas.next().getValue(), 8));
+        }
+        return Collections.unmodifiableList(registros);
+    }
+    
+    @Override
+    public Collection<T> listarEntre(LocalDate inicio, LocalDate fim) {
+        if (fim.isBefore(inicio)) {
+            throw new IllegalArgumentException("Data final anterior à data inicial");
+        }
+        Iterator<Map.Entry<byte[], byte[]>> entradas = 
+            armazenamento.percorrer(chaveData(inicio.toEpochDay(), 0), chaveData(fim.toEpochDay() + 1, 0));
+        List<T> registros = new ArrayList<>();
+        while (entradas.hasNext()) {
+            byte[] valor = entradas.next().getValue();
+            registros.add(decodificar(valor, fimGrupo(valor) + 1));
+        }
+        return Collections.unmodifiableList(registros);
+    }
+    
+    @Override
+    public void remover(Set<String> grupos) {
+        for (String grupo : grupos) {
+            // A chave é [prefixo][1][grupo][0][sequência:8] e o valor começa pelo dia
+            List<Map.Entry<byte[], byte[]>> entradas = new ArrayList<>();
+            percorrerGrupo(codificarGrupo(grupo)).forEachRemaining(entradas::add);
+            for (Map.Entry<byte[], byte[]> entrada : entradas) {
+                byte[] chave = entrada.getKey();
+                long sequenciaRegistro = ByteBuffer.wrap(chave, chave.length - 8, 8).getLong();
+                armazenamento.remover(chave);
+                armazenamento.remover(chaveData(ByteBuffer.wrap(entrada.getValue()).getLong(), sequenciaRegistro));
+            }
+            quantidade.addAndGet(-entradas.size());
+        }
+    }
+    
+    @Override
+    public long tamanho() {
+        return quantidade.get();
+    }
+    
+    /**
+     * Grava os contadores do repositório junto ao ponto de controle do armazenamento
+     */
+    void escreverContadores(DataOutputStream saida) throws IOException {
+        saida.writeLong(sequencia.get());
+        saida.writeLong(quantidade.get());
+    }
+    
+    /**
+     * Restaura os contadores gravados por escreverContadores, antes de qualquer inclusão
+     */
+    void lerContadores(DataInputStream entrada) throws IOException {
+        sequencia.set(entrada.readLong());
+        quantidade.set(entrada.readLong());
+    }
+    
+    /**
+     * Percorre todos os registros agrupados, decodificando-os sob demanda
+     */
+    @Override
+    public Iterator<T> iterator() {
+        Iterator<Map.Entry<byte[], byte[]>> entradas = armazenamento.percorrer(
+            new byte[] {prefixo, POR_GRUPO}, new byte[] {prefixo, POR_DATA});
+        return new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                return entradas.hasNext();
+            }
+            
+            @Override
+            public T next() {
+                return decodificar(entradas.next().getValue(), 8);
+            }
+        };
+    }
+    
+    private Iterator<Map.Entry<byte[], byte[]>> percorrerGrupo(byte[] grupoCodificado) {
+        byte[] inicio = ByteBuffer.allocate(grupoCodificado.length + 3)
+            .put(prefixo).put(POR_GRUPO).put(grupoCodificado).put((byte) 0).array();
+        byte[] fim = inicio.clone();
+        fim[fim.length - 1] = 1;
+        return armazenamento.percorrer(inicio, fim);
+    }
+    
+    private byte[] chaveGrupo(byte[] grupoCodificado, long sequencia) {
+        return ByteBuffer.allocate(grupoCodificado.length + 11)
+            .put(prefixo).put(POR_GRUPO).put(grupoCodificado).put((byte) 0).putLong(sequencia).array();
+    }
+    
+    private byte[] chaveData(long dia, long sequencia) {
+        // O bit de sinal invertido mantém a ordem dos dias na comparação sem sinal
+        return ByteBuffer.allocate(18).put(prefixo).put(POR_DATA)
+            .putLong(dia ^ Long.MIN_VALUE).putLong(sequencia).array();
+    }
+    
+    private static byte[] codificarGrupo(String grupo) {
+        if (grupo.indexOf('\0') >= 0) {
+            throw new IllegalArgumentException("Grupo de registros não pode conter o caractere nulo");
+        }
+        return grupo.getBytes(StandardCharsets.UTF_8);
+    }
+    
+    // Posição do separador nulo que encerra o grupo no valor do índice por data
+    private static int fimGrupo(byte[] valor) {
+        int posicao = 0;
+        while (valor[posicao] != 0) {
+            posicao++;
+        }
+        return posicao;
+    }
+    
+    private byte[] codificar(T registro) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream saida = new DataOutputStream(bytes)) {
+            escritor.escrever(saida, registro);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao codificar registro", e);
+        }
+        return bytes.toByteArray();
+    }
+    
+    private T decodificar(byte[] valor, int inicio) {
+        try {
+            return leitor.ler(new DataInputStream(new ByteArrayInputStream(valor, inicio, valor.length - inicio)));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao decodificar registro", e);
+        }
+    }
+}
+
+/**
+ * Armazenamento chave-valor ordenado e embutido, em disco local, organizado como uma árvore LSM.
+ * 
+ * As gravações vão para uma tabela ordenada em memória (memtable). Ao atingir o limite ela é
+ * congelada e descarregada em segundo plano para um arquivo de tabela ordenada, dividido em
+ * páginas de TAMANHO_PAGINA bytes cujo índice esparso (a primeira chave de cada página) fica
+ * no heap. As tabelas são compactadas por níveis: FATOR_COMPACTACAO tabelas de um nível são
+ * intercaladas em uma única tabela do nível seguinte, o que mantém O(log n) tabelas. Leituras
+ * e varreduras consultam a memtable, as memtables congeladas e as tabelas, da mais recente para
+ * a mais antiga (a gravação mais recente de uma chave prevalece), lendo as páginas através de
+ * um cache LRU limitado em bytes.
+ * 
+ * A memória usada fica limitada à memtable, às congeladas aguardando descarga (no máximo
+ * LIMITE_CONGELADAS; as gravações esperam se a descarga estiver atrasada), ao cache de páginas
+ * e aos índices esparsos. As remoções gravam uma marca (valor vazio) que oculta as versões
+ * anteriores e é descartada quando a compactação alcança a tabela mais antiga.
+ * 
+ * As tabelas são duráveis, mas a memtable não: o snapshot do MotorPersistencia grava um ponto
+ * de controle (escreverPontoControle) com a lista das tabelas após descarregar a memtable, e a
+ * recuperação reabre essas tabelas (restaurar) e reaplica o log posterior. O arquivo de uma
+ * tabela referenciada pelo último snapshot só é apagado depois que um snapshot mais novo,
+ * confirmado por confirmarPontoControle, deixa de referenciá-la.
+ */
+class ArmazenamentoLsm implements AutoCloseable {
+    static final int LIMITE_MEMTABLE_PADRAO = 8 * 1024 * 1024;
+    static final long TAMANHO_CACHE_PADRAO = 64L * 1024 * 1024;
+    static final int TAMANHO_PAGINA = 4096;
+    private static final int FATOR_COMPACTACAO = 4;
+    private static final int LIMITE_CONGELADAS = 2;
+    // Estimativa do custo dos nós da memtable por entrada, além das chaves e valores
+    private static final int SOBRECARGA_ENTRADA = 64;
+    private static final Comparator<byte[]> ORDEM = Arrays::compareUnsigned;
+    private static final byte[] REMOCAO = new byte[0];
+    
+    private static final class Memtable {
+        final ConcurrentSkipListMap<byte[], byte[]> entradas = new ConcurrentSkipListMap<>(ORDEM);
+        final AtomicLong bytes = new AtomicLong();
+    }
+    
+    /**
+     * Composição imutável do armazenamento; as listas vão da mais recente para a mais antiga
+     */
+    private static final class Estado {
+        final Memtable memtable;
+        final List<Memtable> congeladas;
+        final List<TabelaOrdenada> tabelas;
+        
+        Estado(Memtable memtable, List<Memtable> congeladas, List<TabelaOrdenada> tabelas) {
+            this.memtable = memtable;
+            this.congeladas = congeladas;
+            this.tabelas = tabelas;
+        }
+    }
+    
+    private final Path diretorio;
+    private final int limiteMemtable;
+    private final CachePaginas cache;
+    // As gravações compartilham o bloqueio; a troca da memtable o obtém com exclusividade
+    private final ReentrantReadWriteLock bloqueioMemtable;
+    // Serializa as trocas de estado entre as gravações e a thread de descarga
+    private final ReentrantLock bloqueioEstado;
+    private final Condition descargaConcluida;
+    private final ExecutorService descarregador;
+    private final AtomicInteger sequenciaTabelas;
+    // Tabelas encontradas na abertura, ainda não restauradas nem apagadas
+    private final Set<Integer> tabelasExistentes;
+    // Protegidas: referenciadas pelo último ponto de controle confirmado ou por um ainda não confirmado.
+    // Descartadas: já fechadas, com o arquivo mantido enquanto protegido. Alteradas sob bloqueioEstado.
+    private final Set<Integer> protegidas;
+    private final Set<Integer> protegidasPendentes;
+    private final Set<Integer> ultimoPontoControle;
+    private final Map<Integer, Path> descartadas;
+    private volatile Estado estado;
+    private volatile IOException falha;
+    private volatile boolean fechado;
+    
+    public ArmazenamentoLsm(Path diretorio, int limiteMemtable, long tamanhoCache) throws IOException {
+        if (limiteMemtable <= 0 || tamanhoCache <= 0) {
+            throw new IllegalArgumentException("Limites do armazenamento devem ser positivos");
+        }
+        
+        this.diretorio = diretorio;
+        this.limiteMemtable = limiteMemtable;
+        this.cache = new CachePaginas(tamanhoCache);
+        this.bloqueioMemtable = new ReentrantReadWriteLock();
+        this.bloqueioEstado = new ReentrantLock();
+        this.descargaConcluida = bloqueioEstado.newCondition();
+        this.descarregador = Executors.newSingleThreadExecutor(tarefa -> {
+            Thread thread = new Thread(tarefa, "descarga-armazenamento");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.sequenciaTabelas = new AtomicInteger();
+        this.tabelasExistentes = new HashSet<>();
+        this.protegidas = new HashSet<>();
+        this.protegidasPendentes = new HashSet<>();
+        this.ultimoPontoControle = new HashSet<>();
+        this.descartadas = new HashMap<>();
+        this.estado = new Estado(new Memtable(), List.of(), List.of());
+        
+        Files.createDirectories(diretorio);
+        // As novas tabelas recebem identificadores posteriores aos dos arquivos existentes
+        try (var listagem = Files.newDirectoryStream(diretorio, "tabela-*.sst")) {
+            for (Path arquivo : listagem) {
+                String nome = arquivo.getFileName().toString();
+                int id = Integer.parseInt(nome.substring("tabela-".length(), nome.length() - ".sst".length()));
+                tabelasExistentes.add(id);
+                sequenciaTabelas.accumulateAndGet(id, Math::max);
+            }
+        }
+    }
+    
+    /**
+     * Grava o valor da chave; valores vazios são reservados às marcas de remoção
+     */
+    public void gravar(byte[] chave, byte[] valor) {
+        if (valor.length == 0) {
+            throw new IllegalArgumentException("Valor vazio é reservado às remoções");
+        }
+        gravarEntrada(chave, valor);
+    }
+    
+    /**
+     * Remove a chave, gravando uma marca que oculta as versões anteriores
+     */
+    public void remover(byte[] chave) {
+        gravarEntrada(chave, REMOCAO);
+    }
+    
+    private void gravarEntrada(byte[] chave, byte[] valor) {
+        verificarFalha();
+        
+        Memtable memtable;
+        long bytes;
+        bloqueioMemtable.readLock().lock();
+        try {
+            memtable = estado.memtable;
+            memtable.entradas.put(chave, valor);
+            bytes = memtable.bytes.addAndGet(chave.length + valor.length + SOBRECARGA_ENTRADA);
+        } finally {
+            bloqueioMemtable.readLock().unlock();
+        }
+        
+        if (bytes >= limiteMemtable) {
+            congelar(memtable);
+        }
+    }
+    
+    /**
+     * Valor mais recente gravado para a chave, ou null
+     */
+    public byte[] ler(byte[] chave) {
+        Estado atual = fixarEstado();
+        try {
+            byte[] valor = atual.memtable.entradas.get(chave);
+            for (int i = 0; valor == null && i < atual.congeladas.size(); i++) {
+                valor = atual.congeladas.get(i).entradas.get(chave);
+            }
+            for (int i = 0; valor == null && i < atual.tabelas.size(); i++) {
+                valor = atual.tabelas.get(i).ler(chave, cache);
+            }
+            return valor != null && valor.length > 0 ? valor : null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao ler o armazenamento em " + diretorio, e);
+        } finally {
+            liberar(atual);
+        }
+    }
+    
+    /**
+     * Entradas com chave no intervalo [inicio, fim), em ordem crescente de chave.
+     * 
+     * As tabelas lidas ficam fixadas até o iterador chegar ao fim; um iterador abandonado
+     * antes disso só as libera no fechamento do armazenamento.
+     */
+    public Iterator<Map.Entry<byte[], byte[]>> percorrer(byte[] inicio, byte[] fim) {
+        Estado atual = fixarEstado();
+        List<Iterator<Map.Entry<byte[], byte[]>>> fontes = new ArrayList<>();
+        fontes.add(atual.memtable.entradas.subMap(inicio, fim).entrySet().iterator());
+        for (Memtable congelada : atual.congeladas) {
+            fontes.add(congelada.entradas.subMap(inicio, fim).entrySet().iterator());
+        }
+        for (TabelaOrdenada tabela : atual.tabelas) {
+            fontes.add(tabela.percorrer(inicio, cache));
+        }
+        Iterator<Map.Entry<byte[], byte[]>> intercalacao = new SemRemocoes(new Intercalacao(fontes, fim));
+        
+        return new Iterator<Map.Entry<byte[], byte[]>>() {
+            private boolean liberado;
+            
+            @Override
+            public boolean hasNext() {
+                if (liberado) {
+                    return false;
+                }
+                boolean existe;
+                try {
+                    existe = intercalacao.hasNext();
+                } catch (RuntimeException e) {
+                    liberar();
+                    throw e;
+                }
+                if (!existe) {
+                    liberar();
+                }
+                return existe;
+            }
+            
+            @Override
+            public Map.Entry<byte[], byte[]> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return intercalacao.next();
+            }
+            
+            private void liberar() {
+                liberado = true;
+                ArmazenamentoLsm.this.liberar(atual);
+            }
+        };
+    }
+    
+    public int getQuantidadeTabelas() {
+        return estado.tabelas.size();
+    }
+    
+    /**
+     * Descarrega a memtable, aguarda as descargas e compactações em andamento e grava a lista das
+     * tabelas resultantes, que ficam protegidas até que um ponto de controle posterior seja
+     * confirmado. Deve ser chamado sem gravações concorrentes, durante a gravação do snapshot.
+     */
+    public void escreverPontoControle(DataOutputStream saida) throws IOException {
+        verificarFalha();
+        Memtable memtable = estado.memtable;
+        if (!memtable.entradas.isEmpty()) {
+            congelar(memtable);
+        }
+        // A thread de descarga executa as tarefas em ordem: esta termina depois das descargas pendentes
+        CompletableFuture.runAsync(() -> { }, descarregador).join();
+        verificarFalha();
+        sincronizarDiretorio();
+        
+        List<TabelaOrdenada> tabelas;
+        bloqueioEstado.lock();
+        try {
+            tabelas = estado.tabelas;
+            ultimoPontoControle.clear();
+            for (TabelaOrdenada tabela : tabelas) {
+                ultimoPontoControle.add(tabela.id);
+                protegidasPendentes.add(tabela.id);
+            }
+        } finally {
+            bloqueioEstado.unlock();
+        }
+        
+        saida.writeInt(tabelas.size());
+        for (TabelaOrdenada tabela : tabelas) {
+            saida.writeInt(tabela.id);
+            saida.writeInt(tabela.nivel);
+        }
+    }
+    
+    /**
+     * Registra que o snapshot com o último ponto de controle foi publicado: as tabelas que só os
+     * pontos de controle anteriores referenciavam e que já foram substituídas são apagadas
+     */
+    public void confirmarPontoControle() {
+        List<Path> apagar = new ArrayList<>();
+        bloqueioEstado.lock();
+        try {
+            protegidas.clear();
+            protegidas.addAll(ultimoPontoControle);
+            protegidasPendentes.clear();
+            for (Iterator<Map.Entry<Integer, Path>> entradas = descartadas.entrySet().iterator(); entradas.hasNext(); ) {
+                Map.Entry<Integer, Path> descartada = entradas.next();
+                if (!protegidas.contains(descartada.getKey())) {
+                    apagar.add(descartada.getValue());
+                    entradas.remove();
+                }
+            }
+        } finally {
+            bloqueioEstado.unlock();
+        }
+        for (Path arquivo : apagar) {
+            apagarArquivo(arquivo);
+        }
+    }
+    
+    /**
+     * Reabre as tabelas de um ponto de controle gravado por escreverPontoControle, antes de
+     * qualquer gravação
+     */
+    public void restaurar(DataInputStream entrada) throws IOException {
+        int quantidade = entrada.readInt();
+        List<TabelaOrdenada> tabelas = new ArrayList<>(quantidade);
+        try {
+            for (int i = 0; i < quantidade; i++) {
+                int id = entrada.readInt();
+                int nivel = entrada.readInt();
+                if (!tabelasExistentes.contains(id)) {
+                    throw new IOException("Tabela do ponto de controle ausente: " + arquivoTabela(id));
+                }
+                tabelas.add(TabelaOrdenada.abrir(arquivoTabela(id), id, nivel));
+            }
+        } catch (IOException | RuntimeException e) {
+            for (TabelaOrdenada tabela : tabelas) {
+                tabela.fechar();
+            }
+            throw e;
+        }
+        
+        bloqueioEstado.lock();
+        try {
+            Estado atual = estado;
+            estado = new Estado(atual.memtable, atual.congeladas, List.copyOf(tabelas));
+            for (TabelaOrdenada tabela : tabelas) {
+                protegidas.add(tabela.id);
+                ultimoPontoControle.add(tabela.id);
+                tabelasExistentes.remove(tabela.id);
+            }
+        } finally {
+            bloqueioEstado.unlock();
+        }
+    }
+    
+    /**
+     * Apaga as tabelas encontradas na abertura que o ponto de controle restaurado não referencia:
+     * descargas e compactações posteriores ao snapshot, cujo conteúdo a reaplicação do log refaz
+     */
+    public void removerTabelasNaoRestauradas() throws IOException {
+        for (int id : tabelasExistentes) {
+            Files.deleteIfExists(arquivoTabela(id));
+        }
+        tabelasExistentes.clear();
+    }
+    
+    /**
+     * Fecha os arquivos sem apagá-los; o conteúdo da memtable é descartado
+     */
+    @Override
+    public void close() throws IOException {
+        fechado = true;
+        descarregador.shutdown();
+        boolean interrompido = false;
+        while (!descarregador.isTerminated()) {
+            try {
+                descarregador.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                interrompido = true;
+            }
+        }
+        
+        for (TabelaOrdenada tabela : estado.tabelas) {
+            tabela.fechar();
+        }
+        estado = new Estado(new Memtable(), List.of(), List.of());
+        
+        if (interrompido) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void congelar(Memtable cheia) {
+        bloqueioEstado.lock();
+        try {
+            // Contrapressão: com a descarga atrasada, as gravações aguardam em vez de acumular memtables
+            while (estado.congeladas.size() >= LIMITE_CONGELADAS && falha == null && !fechado) {
+                descargaConcluida.awaitUninterruptibly();
+            }
+            verificarFalha();
+            if (estado.memtable != cheia || fechado) {
+                return;
+            }
+            
+            bloqueioMemtable.writeLock().lock();
+            try {
+                Estado atual = estado;
+                estado = new Estado(new Memtable(), comPrimeiro(cheia, atual.congeladas), atual.tabelas);
+            } finally {
+                bloqueioMemtable.writeLock().unlock();
+            }
+        } finally {
+            bloqueioEstado.unlock();
+        }
+        
+        descarregador.execute(() -> descarregar(cheia));
+    }
+    
+    // Executado somente pela thread de descarga, que é a única a alterar a lista de tabelas
+    private void descarregar(Memtable congelada) {
+        try {
+            int id = sequenciaTabelas.incrementAndGet();
+            TabelaOrdenada tabela = TabelaOrdenada.gravar(arquivoTabela(id), id, 0, congelada.entradas.entrySet().iterator());
+            bloqueioEstado.lock();
+            try {
+                Estado atual = estado;
+                List<Memtable> congeladas = new ArrayList<>(atual.congeladas);
+                congeladas.remove(congelada);
+                estado = new Estado(atual.memtable, List.copyOf(congeladas), comPrimeiro(tabela, atual.tabelas));
+                descargaConcluida.signalAll();
+            } finally {
+                bloqueioEstado.unlock();
+            }
+            
+            compactar();
+        } catch (IOException | UncheckedIOException e) {
+            bloqueioEstado.lock();
+            try {
+                falha = e instanceof UncheckedIOException ? ((UncheckedIOException) e).getCause() : (IOException) e;
+                descargaConcluida.signalAll();
+            } finally {
+                bloqueioEstado.unlock();
+            }
+        }
+    }
+    
+    // Intercala FATOR_COMPACTACAO tabelas de um mesmo nível, que são sempre contíguas na ordem de idade.
+    // Quando o grupo inclui a tabela mais antiga, as marcas de remoção não ocultam mais nada e são descartadas.
+    private void compactar() throws IOException {
+        while (!fechado) {
+            List<TabelaOrdenada> tabelas = estado.tabelas;
+            int inicio = -1;
+            for (int i = 0; i + FATOR_COMPACTACAO <= tabelas.size() && inicio < 0; i++) {
+                if (tabelas.get(i).nivel == tabelas.get(i + FATOR_COMPACTACAO - 1).nivel) {
+                    inicio = i;
+                }
+            }
+            if (inicio < 0) {
+                return;
+            }
+            
+            List<TabelaOrdenada> grupo = List.copyOf(tabelas.subList(inicio, inicio + FATOR_COMPACTACAO));
+            List<Iterator<Map.Entry<byte[], byte[]>>> fontes = new ArrayList<>();
+            for (TabelaOrdenada tabela : grupo) {
+                fontes.add(tabela.percorrer(new byte[0], cache));
+            }
+            Iterator<Map.Entry<byte[], byte[]>> entradas = new Intercalacao(fontes, null);
+            if (inicio + FATOR_COMPACTACAO == tabelas.size()) {
+                entradas = new SemRemocoes(entradas);
+            }
+            int id = sequenciaTabelas.incrementAndGet();
+            TabelaOrdenada compactada = TabelaOrdenada.gravar(arquivoTabela(id), id, grupo.get(0).nivel + 1, entradas);
+            
+            bloqueioEstado.lock();
+            try {
+                Estado atual = estado;
+                List<TabelaOrdenada> novas = new ArrayList<>(atual.tabelas.subList(0, inicio));
+                novas.add(compactada);
+                novas.addAll(atual.tabelas.subList(inicio + FATOR_COMPACTACAO, atual.tabelas.size()));
+                estado = new Estado(atual.memtable, atual.congeladas, List.copyOf(novas));
+            } finally {
+                bloqueioEstado.unlock();
+            }
+            
+            // As tabelas substituídas são fechadas quando a última leitura em andamento as liberar
+            for (TabelaOrdenada tabela : grupo) {
+                liberar(tabela);
+            }
+        }
+    }
+    
+    // Fixa as tabelas do estado atual para que não sejam fechadas durante a leitura
+    private Estado fixarEstado() {
+        while (true) {
+            Estado atual = estado;
+            int fixadas = 0;
+            while (fixadas < atual.tabelas.size() && atual.tabelas.get(fixadas).adquirir()) {
+                fixadas++;
+            }
+            if (fixadas == atual.tabelas.size()) {
+                return atual;
+            }
+            
+            // Uma compactação substituiu o estado durante a fixação
+            for (int i = 0; i < fixadas; i++) {
+                liberar(atual.tabelas.get(i));
+            }
+        }
+    }
+    
+    private void liberar(Estado fixado) {
+        for (TabelaOrdenada tabela : fixado.tabelas) {
+            liberar(tabela);
+        }
+    }
+    
+    private void liberar(TabelaOrdenada tabela) {
+        if (tabela.liberar()) {
+            descartar(tabela);
+        }
+    }
+    
+    // Chamado quando a última referência à tabela é liberada e o arquivo já está fechado
+    private void descartar(TabelaOrdenada tabela) {
+        bloqueioEstado.lock();
+        try {
+            if (protegidas.contains(tabela.id) || protegidasPendentes.contains(tabela.id)) {
+                descartadas.put(tabela.id, tabela.arquivo);
+                return;
+            }
+        } finally {
+            bloqueioEstado.unlock();
+        }
+        apagarArquivo(tabela.arquivo);
+    }
+    
+    private Path arquivoTabela(int id) {
+        return diretorio.resolve(String.format("tabela-%08d.sst", id));
+    }
+    
+    private static void apagarArquivo(Path arquivo) {
+        try {
+            Files.deleteIfExists(arquivo);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao remover a tabela " + arquivo, e);
+        }
+    }
+    
+    private void sincronizarDiretorio() {
+        // Nem todos os sistemas de arquivos permitem sincronizar diretórios
+        try (FileChannel canal = FileChannel.open(diretorio, StandardOpenOption.READ)) {
+            canal.force(true);
+        } catch (IOException e) {
+            // Ignorado
+        }
+    }
+    
+    private void verificarFalha() {
+        if (falha != null) {
+            throw new UncheckedIOException("Falha na descarga do armazenamento em " + diretorio, falha);
+        }
+        if (fechado) {
+            throw new IllegalStateException("Armazenamento fechado");
+        }
+    }
+    
+    private static <E> List<E> comPrimeiro(E primeiro, List<E> demais) {
+        List<E> lista = new ArrayList<>(demais.size() + 1);
+        lista.add(primeiro);
+        lista.addAll(demais);
+        return List.copyOf(lista);
+    }
+    
+    /**
+     * Página decodificada de uma tabela: [quantidade:int] seguida de [tamanho:int][chave][tamanho:int][valor]
+     */
+    private static final class Pagina {
+        final byte[] dados;
+        final int[] deslocamentos;
+        
+        Pagina(byte[] dados) {
+            this.dados = dados;
+            ByteBuffer leitura = ByteBuffer.wrap(dados);
+            this.deslocamentos = new int[leitura.getInt(0)];
+            int cursor = 4;
+            for (int i = 0; i < deslocamentos.length; i++) {
+                deslocamentos[i] = cursor;
+                cursor += 4 + leitura.getInt(cursor);
+                cursor += 4 + leitura.getInt(cursor);
+            }
+        }
+        
+        int quantidade() {
+            return deslocamentos.length;
+        }
+        
+        int comparar(int indice, byte[] chave) {
+            int inicio = deslocamentos[indice] + 4;
+            return Arrays.compareUnsigned(dados, inicio, inicio + tamanhoChave(indice), chave, 0, chave.length);
+        }
+        
+        // Índice da primeira entrada com chave maior ou igual à informada
+        int localizar(byte[] chave) {
+            int baixo = 0;
+            int alto = deslocamentos.length;
+            while (baixo < alto) {
+                int meio = (baixo + alto) >>> 1;
+                if (comparar(meio, chave) < 0) {
+                    baixo = meio + 1;
+                } else {
+                    alto = meio;
+                }
+            }
+            return baixo;
+        }
+        
+        byte[] chave(int indice) {
+            int inicio = deslocamentos[indice] + 4;
+            return Arrays.copyOfRange(dados, inicio, inicio + tamanhoChave(indice));
+        }
+        
+        byte[] valor(int indice) {
+            int inicio = deslocamentos[indice] + 8 + tamanhoChave(indice);
+            return Arrays.copyOfRange(dados, inicio, inicio + ByteBuffer.wrap(dados).getInt(inicio - 4));
+        }
+        
+        private int tamanhoChave(int indice) {
+            return ByteBuffer.wrap(dados).getInt(deslocamentos[indice]);
+        }
+    }
+    
+    /**
+     * Arquivo imutável de entradas ordenadas, com o índice esparso das páginas no heap.
+     * O arquivo é fechado e apagado quando a última referência (do armazenamento ou de
+     * uma leitura em andamento) é liberada.
+     */
+    /**
+     * Arquivo imutável de páginas ordenadas seguido do índice das páginas:
+     * [posição, tamanho, primeira chave]*, quantidade de páginas, início do índice e MAGICO
+     */
+    private static final class TabelaOrdenada {
+        private static final int MAGICO = 0x4C534D31;
+        private static final int TAMANHO_RODAPE = 4 + 8 + 4;
+        
+        final int id;
+        final int nivel;
+        private final Path arquivo;
+        private final FileChannel canal;
+        private final byte[][] primeirasChaves;
+        private final long[] posicoes;
+        private final int[] tamanhos;
+        private final AtomicInteger referencias;
+        
+        private TabelaOrdenada(int id, int nivel, Path arquivo, byte[][] primeirasChaves,
+                               long[] posicoes, int[] tamanhos) throws IOException {
+            this.id = id;
+            this.nivel = nivel;
+            this.arquivo = arquivo;
+            this.canal = FileChannel.open(arquivo, StandardOpenOption.READ);
+            this.primeirasChaves = primeirasChaves;
+            this.posicoes = posicoes;
+            this.tamanhos = tamanhos;
+            this.referencias = new AtomicInteger(1);
+        }
+        
+        static TabelaOrdenada gravar(Path arquivo, int id, int nivel,
+                                     Iterator<Map.Entry<byte[], byte[]>> entradas) throws IOException {
+            List<byte[]> primeirasChaves = new ArrayList<>();
+            List<Long> posicoes = new ArrayList<>();
+            List<Integer> tamanhos = new ArrayList<>();
+            
+            ByteArrayOutputStream pagina = new ByteArrayOutputStream(TAMANHO_PAGINA);
+            DataOutputStream escritaPagina = new DataOutputStream(pagina);
+            int quantidade = 0;
+            long posicao = 0;
+            
+            try (FileChannel canalEscrita = FileChannel.open(arquivo, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                DataOutputStream saida = new DataOutputStream(new BufferedOutputStream(
+                        Channels.newOutputStream(canalEscrita), 64 * 1024));
+                while (entradas.hasNext()) {
+                    Map.Entry<byte[], byte[]> entrada = entradas.next();
+                    byte[] chave = entrada.getKey();
+                    byte[] valor = entrada.getValue();
+                    
+                    // Uma entrada maior que a página ocupa sozinha uma página maior
+                    if (quantidade > 0 && 4 + pagina.size() + 8 + chave.length + valor.length > TAMANHO_PAGINA) {
+                        tamanhos.add(gravarPagina(saida, quantidade, pagina));
+                        posicao += tamanhos.get(tamanhos.size() - 1);
+                        quantidade = 0;
+                    }
+                    if (quantidade == 0) {
+                        primeirasChaves.add(chave);
+                        posicoes.add(posicao);
+                    }
+                    
+                    escritaPagina.writeInt(chave.length);
+                    escritaPagina.write(chave);
+                    escritaPagina.writeInt(valor.length);
+                    escritaPagina.write(valor);
+                    quantidade++;
+                }
+                if (quantidade > 0) {
+                    tamanhos.add(gravarPagina(saida, quantidade, pagina));
+                    posicao += tamanhos.get(tamanhos.size() - 1);
+                }
+                
+                for (int i = 0; i < primeirasChaves.size(); i++) {
+                    saida.writeLong(posicoes.get(i));
+                    saida.writeInt(tamanhos.get(i));
+                    saida.writeInt(primeirasChaves.get(i).length);
+                    saida.write(primeirasChaves.get(i));
+                }
+                saida.writeInt(primeirasChaves.size());
+                saida.writeLong(posicao);
+                saida.writeInt(MAGICO);
+                saida.flush();
+                canalEscrita.force(true);
+            }
+            
+            return new TabelaOrdenada(id, nivel, arquivo, primeirasChaves.toArray(new byte[0][]),
+                                      posicoes.stream().mapToLong(Long::longValue).toArray(),
+                                      tamanhos.stream().mapToInt(Integer::intValue).toArray());
+        }
+        
+        /**
+         * Reabre uma tabela gravada anteriormente, carregando o índice das páginas do rodapé
+         */
+        static TabelaOrdenada abrir(Path arquivo, int id, int nivel) throws IOException {
+            long tamanhoArquivo = Files.size(arquivo);
+            if (tamanhoArquivo < TAMANHO_RODAPE) {
+                throw new IOException("Tabela truncada: " + arquivo);
+            }
+            
+            try (FileChannel canalLeitura = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+                ByteBuffer rodape = ByteBuffer.allocate(TAMANHO_RODAPE);
+                lerCompleto(canalLeitura, rodape, tamanhoArquivo - TAMANHO_RODAPE, arquivo);
+                rodape.flip();
+                int quantidadePaginas = rodape.getInt();
+                long inicioIndice = rodape.getLong();
+                if (rodape.getInt() != MAGICO || quantidadePaginas < 0
+                        || inicioIndice < 0 || inicioIndice > tamanhoArquivo - TAMANHO_RODAPE) {
+                    throw new IOException("Rodapé inválido na tabela " + arquivo);
+                }
+                
+                ByteBuffer indice = ByteBuffer.allocate(Math.toIntExact(tamanhoArquivo - TAMANHO_RODAPE - inicioIndice));
+                lerCompleto(canalLeitura, indice, inicioIndice, arquivo);
+                DataInputStream entrada = new DataInputStream(new ByteArrayInputStream(indice.array()));
+                byte[][] primeirasChaves = new byte[quantidadePaginas][];
+                long[] posicoes = new long[quantidadePaginas];
+                int[] tamanhos = new int[quantidadePaginas];
+                for (int i = 0; i < quantidadePaginas; i++) {
+                    posicoes[i] = entrada.readLong();
+                    tamanhos[i] = entrada.readInt();
+                    primeirasChaves[i] = entrada.readNBytes(entrada.readInt());
+                }
+                return new TabelaOrdenada(id, nivel, arquivo, primeirasChaves, posicoes, tamanhos);
+            }
+        }
+        
+        private static void lerCompleto(FileChannel canal, ByteBuffer dados, long posicao, Path arquivo) throws IOException {
+            while (dados.hasRemaining()) {
+                if (canal.read(dados, posicao + dados.position()) < 0) {
+                    throw new EOFException("Fim inesperado da tabela " + arquivo);
+                }
+            }
+        }
+        
+        private static int gravarPagina(DataOutputStream saida, int quantidade, ByteArrayOutputStream pagina) throws IOException {
+            saida.writeInt(quantidade);
+            pagina.writeTo(saida);
+            int tamanho = 4 + pagina.size();
+            pagina.reset();
+            return tamanho;
+        }
+        
+        byte[] ler(byte[] chave, CachePaginas cache) throws IOException {
+            int indicePagina = paginaDe(chave);
+            if (indicePagina < 0) {
+                return null;
+            }
+            Pagina pagina = pagina(indicePagina, cache);
+            int indice = pagina.localizar(chave);
+            return indice < pagina.quantidade() && pagina.comparar(indice, chave) == 0 ? pagina.valor(indice) : null;
+        }
+        
+        /**
+         * Entradas a partir da chave informada, lendo as páginas sob demanda
+         */
+        Iterator<Map.Entry<byte[], byte[]>> percorrer(byte[] inicio, CachePaginas cache) {
+            return new Iterator<Map.Entry<byte[], byte[]>>() {
+                private int indicePagina = Math.max(0, paginaDe(inicio));
+                private Pagina pagina;
+                private int indice;
+                
+                @Override
+                public boolean hasNext() {
+                    try {
+                        if (pagina == null && indicePagina < posicoes.length) {
+                            pagina = pagina(indicePagina, cache);
+                            indice = pagina.localizar(inicio);
+                        }
+                        while (pagina != null && indice >= pagina.quantidade()) {
+                            indicePagina++;
+                            pagina = indicePagina < posicoes.length ? pagina(indicePagina, cache) : null;
+                            indice = 0;
+                        }
+                        return pagina != null;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Falha ao ler a tabela " + arquivo, e);
+                    }
+                }
+                
+                @Override
+                public Map.Entry<byte[], byte[]> next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    Map.Entry<byte[], byte[]> entrada = Map.entry(pagina.chave(indice), pagina.valor(indice));
+                    indice++;
+                    return entrada;
+                }
+            };
+        }
+        
+        // Última página cuja primeira chave é menor ou igual à informada, ou -1
+        private int paginaDe(byte[] chave) {
+            int baixo = 0;
+            int alto = primeirasChaves.length - 1;
+            int encontrada = -1;
+            while (baixo <= alto) {
+                int meio = (baixo + alto) >>> 1;
+                if (ORDEM.compare(primeirasChaves[meio], chave) <= 0) {
+                    encontrada = meio;
+                    baixo = meio + 1;
+                } else {
+                    alto = meio - 1;
+                }
+            }
+            return encontrada;
+        }
+        
+        private Pagina pagina(int indice, CachePaginas cache) throws IOException {
+            long chaveCache = ((long) id << 32) | indice;
+            Pagina pagina = cache.buscar(chaveCache);
+            if (pagina == null) {
+                ByteBuffer dados = ByteBuffer.allocate(tamanhos[indice]);
+                lerCompleto(canal, dados, posicoes[indice], arquivo);
+                pagina = new Pagina(dados.array());
+                cache.guardar(chaveCache, pagina);
+            }
+            return pagina;
+        }
+        
+        boolean adquirir() {
+            int atual;
+            do {
+                atual = referencias.get();
+                if (atual == 0) {
+                    return false;
+                }
+            } while (!referencias.compareAndSet(atual, atual + 1));
+            return true;
+        }
+        
+        /**
+         * Libera uma referência; retorna verdadeiro se era a última e o arquivo foi fechado
+         */
+        boolean liberar() {
+            if (referencias.decrementAndGet() == 0) {
+                fechar();
+                return true;
+            }
+            return false;
+        }
+        
+        void fechar() {
+            try {
+                canal.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Falha ao fechar a tabela " + arquivo, e);
+            }
+        }
+    }
+    
+    /**
+     * Intercalação de fontes ordenadas, da mais recente para a mais antiga; entre chaves
+     * iguais prevalece a da fonte mais recente. Para na primeira chave maior ou igual a fim.
+     */
+    private static final class Intercalacao implements Iterator<Map.Entry<byte[], byte[]>> {
+        private static final class Cabeca {
+            final Iterator<Map.Entry<byte[], byte[]>> fonte;
+            final int idade;
+            Map.Entry<byte[], byte[]> entrada;
+            
+            Cabeca(Iterator<Map.Entry<byte[], byte[]>> fonte, int idade) {
+                this.fonte = fonte;
+                this.idade = idade;
+            }
+        }
+        
+        private final PriorityQueue<Cabeca> cabecas;
+        private final byte[] fim;
+        
+        Intercalacao(List<Iterator<Map.Entry<byte[], byte[]>>> fontes, byte[] fim) {
+            this.cabecas = new PriorityQueue<>(Math.max(1, fontes.size()), (a, b) -> {
+                int comparacao = ORDEM.compare(a.entrada.getKey(), b.entrada.getKey());
+                return comparacao != 0 ? comparacao : Integer.compare(a.idade, b.idade);
+            });
+            this.fim = fim;
+            for (int i = 0; i < fontes.size(); i++) {
+                avancar(new Cabeca(fontes.get(i), i));
+            }
+        }
+        
+        @Override
+        public boolean hasNext() {
+            return !cabecas.isEmpty() && (fim == null || ORDEM.compare(cabecas.peek().entrada.getKey(), fim) < 0);
+        }
+        
+        @Override
+        public Map.Entry<byte[], byte[]> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Cabeca menor = cabecas.poll();
+            Map.Entry<byte[], byte[]> entrada = menor.entrada;
+            // Descarta as versões mais antigas da mesma chave
+            while (!cabecas.isEmpty() && ORDEM.compare(cabecas.peek().entrada.getKey(), entrada.getKey()) == 0) {
+                avancar(cabecas.poll());
+            }
+            avancar(menor);
+            return entrada;
+        }
+        
+        private void avancar(Cabeca cabeca) {
+            if (cabeca.fonte.hasNext()) {
+                cabeca.entrada = cabeca.fonte.next();
+                cabecas.add(cabeca);
+            }
+        }
+    }
+    
+    /**
+     * Omite as marcas de remoção de uma intercalação
+     */
+    private static final class SemRemocoes implements Iterator<Map.Entry<byte[], byte[]>> {
+        private final Iterator<Map.Entry<byte[], byte[]>> origem;
+        private Map.Entry<byte[], byte[]> proxima;
+        
+        SemRemocoes(Iterator<Map.Entry<byte[], byte[]>> origem) {
+            this.origem = origem;
+        }
+        
+        @Override
+        public boolean hasNext() {
+            while (proxima == null && origem.hasNext()) {
+                Map.Entry<byte[], byte[]> entrada = origem.next();
+                if (entrada.getValue().length > 0) {
+                    proxima = entrada;
+                }
+            }
+            return proxima != null;
+        }
+        
+        @Override
+        public Map.Entry<byte[], byte[]> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<byte[], byte[]> entrada = proxima;
+            proxima = null;
+            return entrada;
+        }
+    }
+    
+    /**
+     * Cache LRU de páginas, limitado pelo total de bytes e dividido em segmentos
+     * para reduzir a disputa entre leituras concorrentes
+     */
+    private static final class CachePaginas {
+        private static final int SEGMENTOS = 16;
+        
+        private final LinkedHashMap<Long, Pagina>[] paginas;
+        private final long[] bytes;
+        private final long capacidadeSegmento;
+        
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        CachePaginas(long capacidade) {
+            this.paginas = new LinkedHashMap[SEGMENTOS];
+            for (int i = 0; i < SEGMENTOS; i++) {
+                paginas[i] = new LinkedHashMap<>(16, 0.75f, true);
+            }
+            this.bytes = new long[SEGMENTOS];
+            this.capacidadeSegmento = Math.max(1, capacidade / SEGMENTOS);
+        }
+        
+        Pagina buscar(long chave) {
+            int segmento = segmento(chave);
+            synchronized (paginas[segmento]) {
+                return paginas[segmento].get(chave);
+            }
+        }
+        
+        void guardar(long chave, Pagina pagina) {
+            int segmento = segmento(chave);
+            LinkedHashMap<Long, Pagina> mapa = paginas[segmento];
+            synchronized (mapa) {
+                Pagina anterior = mapa.put(chave, pagina);
+                bytes[segmento] += pagina.dados.length - (anterior != null ? anterior.dados.length : 0);
+                Iterator<Pagina> maisAntigas = mapa.values().iterator();
+                while (bytes[segmento] > capacidadeSegmento && mapa.size() > 1) {
+                    bytes[segmento] -= maisAntigas.next().dados.length;
+                    maisAntigas.remove();
+                }
+            }
+        }
+        
+        private static int segmento(long chave) {
+            return (int) ((chave ^ (chave >>> 32)) * 0x9E3779B9L >>> 28) & (SEGMENTOS - 1);
+        }
+    }
+}
+
+/**
+ * Totais dos processos arquivados de um agrupamento (modalidade, fornecedor ou ano)
+ * 
+ * Valores monetários em centavos (ver Dinheiro)
+ */
+final class TotaisArquivo {
+    private final long processos;
+    private final long cancelados;
+    private final long valorEstimado;
+    private final long valorContratado;
+    private final long valorPago;
+    
+    TotaisArquivo(long processos, long cancelados, long valorEstimado, long valorContratado, long valorPago) {
+        this.processos = processos;
+        this.cancelados = cancelados;
+        this.valorEstimado = valorEstimado;
+        this.valorContratado = valorContratado;
+        this.valorPago = valorPago;
+    }
+    
+    TotaisArquivo somar(TotaisArquivo outros) {
+        return new TotaisArquivo(processos + outros.processos, cancelados + outros.cancelados, 
+                                 Dinheiro.somar(valorEstimado, outros.valorEstimado), 
+                                 Dinheiro.somar(valorContratado, outros.valorContratado), 
+                                 Dinheiro.somar(valorPago, outros.valorPago));
+    }
+    
+    // Getters
+    public long getProcessos() { return processos; }
+    public long getCancelados() { return cancelados; }
+    public long getValorEstimado() { return valorEstimado; }
+    public long getValorContratado() { return valorContratado; }
+    public long getValorPago() { return valorPago; }
+}
+
+/**
+ * Arquivo dos processos concluídos ou cancelados, em segmentos imutáveis com layout colunar.
+ * 
+ * Cada arquivamento grava um segmento com uma linha por processo, em ordem de abertura. As
+ * colunas são codificadas e comprimidas (Deflate) separadamente: modalidade, etapa final e
+ * CNPJ do fornecedor contratado por dicionário; data de abertura, valor estimado, valor
+ * contratado e valor pago pela diferença em relação à linha anterior (varint em zigue-zague);
+ * números de processo e de contrato pelo prefixo compartilhado com o número anterior. Os
+ * totais por modalidade, fornecedor e ano descomprimem apenas as colunas de que precisam
+ * para arrays primitivos, sem recriar os objetos do domínio.
+ * 
+ * O processo completo (itens, documentos, propostas, contrato, entregas e registros
+ * financeiros) é gravado em blocos comprimidos de LINHAS_POR_BLOCO processos, lidos somente
+ * quando um processo arquivado é consultado. No heap ficam o cabeçalho de cada segmento e os hashes de 64 bits
+ * dos números arquivados, que respondem se um número pode estar no arquivo; a confirmação
+ * lê a coluna do segmento.
+ * 
+ * O segmento é gravado em arquivo temporário, sincronizado e publicado com uma renomeação
+ * atômica. Segmentos temporários encontrados na abertura são descartados.
+ */
+class ArquivoProcessos {
+    private static final int MAGICO_SEGMENTO = 0x41514152;
+    private static final int VERSAO_SEGMENTO = 3;
+    private static final int TAMANHO_BUFFER_ARQUIVO = 1 << 16;
+    static final int LINHAS_POR_BLOCO = 64;
+    
+    // Colunas de um segmento, na ordem do diretório de colunas do cabeçalho
+    private static final int COLUNA_NUMERO = 0;
+    private static final int COLUNA_CONTRATO = 1;
+    private static final int COLUNA_MODALIDADE = 2;
+    private static final int COLUNA_ETAPA = 3;
+    private static final int COLUNA_FORNECEDOR = 4;
+    private static final int COLUNA_ABERTURA = 5;
+    private static final int COLUNA_VALOR_ESTIMADO = 6;
+    private static final int COLUNA_VALOR_CONTRATADO = 7;
+    private static final int COLUNA_VALOR_PAGO = 8;
+    private static final int COLUNA_DETALHES = 9;
+    private static final int QUANTIDADE_COLUNAS = 10;
+    
+    // [mágico][versão][linhas][maior sequencial] e, por coluna, [posição:8][comprimido:4][original:4]
+    private static final int TAMANHO_CABECALHO = 16 + QUANTIDADE_COLUNAS * 16;
+    
+    private final Path diretorio;
+    private final Map<String, Usuario> usuariosPorCpf;
+    private final Map<String, Fornecedor> fornecedoresPorCnpj;
+    private final CodecAquisicoes codec;
+    private final List<Segmento> segmentos;
+    private int ultimoSegmento;
+    
+    public ArquivoProcessos(Path diretorio, Map<String, Usuario> usuariosPorCpf, 
+                            Map<String, Fornecedor> fornecedoresPorCnpj) throws IOException {
+        this.diretorio = diretorio;
+        this.usuariosPorCpf = usuariosPorCpf;
+        this.fornecedoresPorCnpj = fornecedoresPorCnpj;
+        // Na gravação os processos e contratos são referenciados apenas pelo número
+        this.codec = new CodecAquisicoes(usuariosPorCpf, fornecedoresPorCnpj, Map.of(), Map.of());
+        this.segmentos = new CopyOnWriteArrayList<>();
+        
+        Files.createDirectories(diretorio);
+        try (var listagem = Files.newDirectoryStream(diretorio, "segmento-*.tmp")) {
+            for (Path arquivo : listagem) {
+                Files.delete(arquivo);
+            }
+        }
+        
+        List<Path> arquivos = new ArrayList<>();
+        try (var listagem = Files.newDirectoryStream(diretorio, "segmento-*.arq")) {
+            for (Path arquivo : listagem) {
+                arquivos.add(arquivo);
+            }
+        }
+        Collections.sort(arquivos);
+        for (Path arquivo : arquivos) {
+            String nome = arquivo.getFileName().toString();
+            ultimoSegmento = Math.max(ultimoSegmento, 
+                                      Integer.parseInt(nome.substring("segmento-".length(), nome.length() - ".arq".length())));
+            segmentos.add(Segmento.abrir(arquivo));
+        }
+    }
+    
+    /**
+     * Grava os processos em um novo segmento e o publica, retornando o nome do segmento.
+     * Os processos não podem ser alterados durante a gravação.
+     */
+    public synchronized String arquivar(List<ProcessoAquisicao> processos) throws IOException {
+        List<ProcessoAquisicao> ordenados = new ArrayList<>(processos);
+        ordenados.sort(Comparator.comparing(ProcessoAquisicao::getDataAbertura)
+            .thenComparingInt(processo -> SistemaAquisicoes.sequencialDoNumero(processo.getNumero())));
+        
+        int linhas = ordenados.size();
+        String[] numeros = new String[linhas];
+        String[] contratos = new String[linhas];
+        String[] modalidades = new String[linhas];
+        String[] etapas = new String[linhas];
+        String[] fornecedores = new String[linhas];
+        long[] aberturas = new long[linhas];
+        long[] valoresEstimados = new long[linhas];
+        long[] valoresContratados = new long[linhas];
+        long[] valoresPagos = new long[linhas];
+        long[] blocos = new long[(linhas + LINHAS_POR_BLOCO - 1) / LINHAS_POR_BLOCO + 1];
+        int maiorSequencial = 0;
+        
+        String nome = String.format("segmento-%06d", ultimoSegmento + 1);
+        Path temporario = diretorio.resolve(nome + ".tmp");
+        Path destino = diretorio.resolve(nome + ".arq");
+        Deflater deflater = new Deflater();
+        try (FileChannel canal = FileChannel.open(temporario, StandardOpenOption.CREATE, 
+                                                  StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // Os blocos de detalhe e as colunas seguem o espaço reservado ao cabeçalho, gravado por último
+            canal.position(TAMANHO_CABECALHO);
+            OutputStream saida = new BufferedOutputStream(Channels.newOutputStream(canal), TAMANHO_BUFFER_ARQUIVO);
+            long posicao = TAMANHO_CABECALHO;
+            ByteArrayOutputStream bloco = new ByteArrayOutputStream(LINHAS_POR_BLOCO * 1024);
+            DataOutputStream saidaBloco = new DataOutputStream(bloco);
+            
+            for (int i = 0; i < linhas; i++) {
+                ProcessoAquisicao processo = ordenados.get(i);
+                Contrato contrato = processo.getContrato();
+                numeros[i] = processo.getNumero();
+                modalidades[i] = processo.getModalidade().name();
+                etapas[i] = processo.getEtapaAtual().name();
+                aberturas[i] = processo.getDataAbertura().toEpochDay();
+                valoresEstimados[i] = processo.getValorEstimado();
+                if (contrato != null) {
+                    contratos[i] = contrato.getNumero();
+                    fornecedores[i] = contrato.getFornecedor().getCnpj();
+                    valoresContratados[i] = contrato.getValor();
+                    valoresPagos[i] = contrato.getRazao().getSaldo().getPago();
+                }
+                maiorSequencial = Math.max(maiorSequencial, SistemaAquisicoes.sequencialDoNumero(processo.getNumero()));
+                
+                // Comprimir cada processo isoladamente custaria uma reinicialização do Deflater por linha
+                escreverDetalhes(saidaBloco, processo);
+                if ((i + 1) % LINHAS_POR_BLOCO == 0 || i + 1 == linhas) {
+                    saidaBloco.flush();
+                    byte[] comprimido = comprimir(deflater, bloco.toByteArray(), 0, bloco.size());
+                    ByteBuffer tamanhoOriginal = ByteBuffer.allocate(4).putInt(bloco.size());
+                    saida.write(tamanhoOriginal.array());
+                    saida.write(comprimido);
+                    blocos[i / LINHAS_POR_BLOCO] = posicao;
+                    posicao += 4 + comprimido.length;
+                    bloco.reset();
+                }
+            }
+            blocos[blocos.length - 1] = posicao;
+            
+            byte[][] colunas = new byte[QUANTIDADE_COLUNAS][];
+            colunas[COLUNA_NUMERO] = codificarTextos(numeros);
+            colunas[COLUNA_CONTRATO] = codificarTextos(contratos);
+            colunas[COLUNA_MODALIDADE] = codificarDicionario(modalidades);
+            colunas[COLUNA_ETAPA] = codificarDicionario(etapas);
+            colunas[COLUNA_FORNECEDOR] = codificarDicionario(fornecedores);
+            colunas[COLUNA_ABERTURA] = codificarDiferencas(aberturas);
+            colunas[COLUNA_VALOR_ESTIMADO] = codificarDiferencas(valoresEstimados);
+            colunas[COLUNA_VALOR_CONTRATADO] = codificarDiferencas(valoresContratados);
+            colunas[COLUNA_VALOR_PAGO] = codificarDiferencas(valoresPagos);
+            colunas[COLUNA_DETALHES] = codificarDiferencas(blocos);
+            
+            ByteBuffer cabecalho = ByteBuffer.allocate(TAMANHO_CABECALHO)
+                .putInt(MAGICO_SEGMENTO).putInt(VERSAO_SEGMENTO).putInt(linhas).putInt(maiorSequencial);
+            for (byte[] coluna : colunas) {
+                byte[] comprimida = comprimir(deflater, coluna, 0, coluna.length);
+                saida.write(comprimida);
+                cabecalho.putLong(posicao).putInt(comprimida.length).putInt(coluna.length);
+                posicao += comprimida.length;
+            }
+            saida.flush();
+            canal.write(cabecalho.flip(), 0);
+            canal.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporario);
+            throw e;
+        } finally {
+            deflater.end();
+        }
+        
+        Files.move(temporario, destino, StandardCopyOption.ATOMIC_MOVE);
+        sincronizarDiretorio();
+        ultimoSegmento++;
+        segmentos.add(Segmento.abrir(destino));
+        return destino.getFileName().toString();
+    }
+    
+    /**
+     * Processo arquivado com o número informado, recriado a partir do arquivo com seu contrato
+     * e registros, ou null. O objeto retornado é independente do sistema e não pode ser alterado por ele.
+     */
+    public ProcessoAquisicao buscarProcesso(String numero) {
+        try {
+            for (Segmento segmento : segmentos) {
+                int linha = segmento.localizar(COLUNA_NUMERO, numero);
+                if (linha >= 0) {
+                    int indice = linha / LINHAS_POR_BLOCO;
+                    long[] blocos = decodificarDiferencas(segmento.coluna(COLUNA_DETALHES), 
+                                                          (segmento.linhas + LINHAS_POR_BLOCO - 1) / LINHAS_POR_BLOCO + 1);
+                    byte[] bloco = segmento.ler(blocos[indice], (int) (blocos[indice + 1] - blocos[indice]));
+                    return lerDetalhes(bloco, linha % LINHAS_POR_BLOCO);
+                }
+            }
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao ler o arquivo de processos", e);
+        }
+    }
+    
+    public boolean contemProcesso(String numero) {
+        return localizar(COLUNA_NUMERO, numero);
+    }
+    
+    public boolean contemContrato(String numero) {
+        return localizar(COLUNA_CONTRATO, numero);
+    }
+    
+    /**
+     * Executa a ação para o número de cada processo arquivado
+     */
+    public void percorrerNumeros(Consumer<String> acao) {
+        try {
+            for (Segmento segmento : segmentos) {
+                for (String numero : decodificarTextos(segmento.coluna(COLUNA_NUMERO), segmento.linhas)) {
+                    acao.accept(numero);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao ler o arquivo de processos", e);
+        }
+    }
+    
+    /**
+     * Executa a ação para cada processo arquivado, recriado como em buscarProcesso. Cada bloco
+     * de detalhes é descomprimido uma única vez.
+     */
+    public void percorrerProcessos(Consumer<ProcessoAquisicao> acao) {
+        try {
+            for (Segmento segmento : segmentos) {
+                int quantidadeBlocos = (segmento.linhas + LINHAS_POR_BLOCO - 1) / LINHAS_POR_BLOCO;
+                long[] blocos = decodificarDiferencas(segmento.coluna(COLUNA_DETALHES), quantidadeBlocos + 1);
+                for (int indice = 0; indice < quantidadeBlocos; indice++) {
+                    DataInputStream entrada = abrirBloco(segmento.ler(blocos[indice], (int) (blocos[indice + 1] - blocos[indice])));
+                    int linhasBloco = Math.min(LINHAS_POR_BLOCO, segmento.linhas - indice * LINHAS_POR_BLOCO);
+                    for (int linha = 0; linha < linhasBloco; linha++) {
+                        acao.accept(lerProcessoDetalhado(entrada));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao ler o arquivo de processos", e);
+        }
+    }
+    
+    public Map<ModalidadeLicitacao, TotaisArquivo> totaisPorModalidade() {
+        Map<ModalidadeLicitacao, TotaisArquivo> totais = new EnumMap<>(ModalidadeLicitacao.class);
+        try {
+            for (Segmento segmento : segmentos) {
+                Dicionario modalidades = decodificarDicionario(segmento.coluna(COLUNA_MODALIDADE), segmento.linhas);
+                TotaisArquivo[] parciais = agregar(segmento, modalidades.codigos, modalidades.valores.length + 1);
+                for (int codigo = 1; codigo < parciais.length; codigo++) {
+                    if (parciais[codigo] != null) {
+                        totais.merge(ModalidadeLicitacao.valueOf(modalidades.valores[codigo - 1]), parciais[codigo], 
+                                     TotaisArquivo::somar);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao ler o arquivo de processos", e);
+        }
+        return totais;
+    }
+    
+    /**
+     * Totais por CNPJ do fornecedor contratado; processos sem contrato não são incluídos
+     */
+    public Map<String, TotaisArquivo> totaisPorFornecedor() {
+        Map<String, TotaisArquivo> totais = new TreeMap<>();
+        try {
+            for (Segmento segmento : segmentos) {
+                Dicionario fornecedores = decodificarDicionario(segmento.coluna(COLUNA_FORNECEDOR), segmento.linhas);
+                TotaisArquivo[] parciais = agregar(segmento, fornecedores.codigos, fornecedores.valores.length + 1);
+                for (int codigo = 1; codigo < parciais.length; codigo++) {
+                    if (parciais[codigo] != null) {
+                        totais.merge(fornecedores.valores[codigo - 1], parciais[codigo], TotaisArquivo::somar);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao ler o arquivo de processos", e);
+        }
+        return totais;
+    }
+    
+    /**
+     * Totais por ano de abertura do processo
+     */
+    public Map<Integer, TotaisArquivo> totaisPorAno() {
+        Map<Integer, TotaisArquivo> totais = new TreeMap<>();
+        try {
+            for (Segmento segmento : segmentos) {
+                if (segmento.linhas == 0) {
+                    continue;
+                }
+                // As linhas estão em ordem de abertura: o ano só é recalculado ao cruzar o fim do ano corrente
+                long[] aberturas = decodificarDiferencas(segmento.coluna(COLUNA_ABERTURA), segmento.linhas);
+                int primeiroAno = LocalDate.ofEpochDay(aberturas[0]).getYear();
+                int ano = primeiroAno;
+                long inicioProximoAno = LocalDate.of(ano + 1, 1, 1).toEpochDay();
+                int[] codigos = new int[segmento.linhas];
+                for (int i = 0; i < codigos.length; i++) {
+                    if (aberturas[i] >= inicioProximoAno) {
+                        ano = LocalDate.ofEpochDay(aberturas[i]).getYear();
+                        inicioProximoAno = LocalDate.of(ano + 1, 1, 1).toEpochDay();
+                    }
+                    codigos[i] = ano - primeiroAno;
+                }
+                
+                TotaisArquivo[] parciais = agregar(segmento, codigos, ano - primeiroAno + 1);
+                for (int codigo = 0; codigo < parciais.length; codigo++) {
+                    if (parciais[codigo] != null) {
+                        totais.merge(primeiroAno + codigo, parciais[codigo], TotaisArquivo::somar);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao ler o arquivo de processos", e);
+        }
+        return totais;
+    }
+    
+    public long getQuantidadeProcessos() {
+        long quantidade = 0;
+        for (Segmento segmento : segmentos) {
+            quantidade += segmento.linhas;
+        }
+        return quantidade;
+    }
+    
+    public int getQuantidadeSegmentos() {
+        return segmentos.size();
+    }
+    
+    /**
+     * Maior sequencial entre os números dos processos arquivados
+     */
+    public int getMaiorSequencial() {
+        int maior = 0;
+        for (Segmento segmento : segmentos) {
+            maior = Math.max(maior, segmento.maiorSequencial);
+        }
+        return maior;
+    }
+    
+    private boolean localizar(int coluna, String numero) {
+        try {
+            for (Segmento segmento : segmentos) {
+                if (segmento.localizar(coluna, numero) >= 0) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao ler o arquivo de processos", e);
+        }
+    }
+    
+    // Soma as colunas de valores por código do agrupamento, em arrays primitivos
+    private static TotaisArquivo[] agregar(Segmento segmento, int[] codigos, int quantidadeCodigos) throws IOException {
+        Dicionario etapas = decodificarDicionario(segmento.coluna(COLUNA_ETAPA), segmento.linhas);
+        int codigoCancelado = Arrays.asList(etapas.valores).indexOf(EtapaProcesso.CANCELADO.name()) + 1;
+        long[] valoresEstimados = decodificarDiferencas(segmento.coluna(COLUNA_VALOR_ESTIMADO), segmento.linhas);
+        long[] valoresContratados = decodificarDiferencas(segmento.coluna(COLUNA_VALOR_CONTRATADO), segmento.linhas);
+        long[] valoresPagos = decodificarDiferencas(segmento.coluna(COLUNA_VALOR_PAGO), segmento.linhas);
+        
+        long[] processos = new long[quantidadeCodigos];
+        long[] cancelados = new long[quantidadeCodigos];
+        long[] estimados = new long[quantidadeCodigos];
+        long[] contratados = new long[quantidadeCodigos];
+        long[] pagos = new long[quantidadeCodigos];
+        for (int i = 0; i < codigos.length; i++) {
+            int codigo = codigos[i];
+            processos[codigo]++;
+            if (etapas.codigos[i] == codigoCancelado) {
+                cancelados[codigo]++;
+            }
+            estimados[codigo] = Dinheiro.somar(estimados[codigo], valoresEstimados[i]);
+            contratados[codigo] = Dinheiro.somar(contratados[codigo], valoresContratados[i]);
+            pagos[codigo] = Dinheiro.somar(pagos[codigo], valoresPagos[i]);
+        }
+        
+        TotaisArquivo[] totais = new TotaisArquivo[quantidadeCodigos];
+        for (int codigo = 0; codigo < quantidadeCodigos; codigo++) {
+            if (processos[codigo] > 0) {
+                totais[codigo] = new TotaisArquivo(processos[codigo], cancelados[codigo], estimados[codigo], 
+                                                   contratados[codigo], pagos[codigo]);
+            }
+        }
+        return totais;
+    }
+    
+    // Bloco de detalhe: [tamanho original:4] e, comprimidos, o processo completo de cada linha
+    // seguido de seu contrato, entregas e registros financeiros
+    private void escreverDetalhes(DataOutputStream saida, ProcessoAquisicao processo) throws IOException {
+        codec.escreverProcessoCompleto(saida, processo);
+        
+        Contrato contrato = processo.getContrato();
+        saida.writeBoolean(contrato != null);
+        if (contrato != null) {
+            codec.escreverContrato(saida, contrato);
+            List<Item> itensProcesso = processo.getItens();
+            saida.writeInt(contrato.getEntregas().size());
+            for (EntregaItem entrega : contrato.getEntregas()) {
+                codec.escreverEntrega(saida, entrega, itensProcesso);
+            }
+            List<NotaEmpenho> empenhos = contrato.getEmpenhos();
+            saida.writeInt(empenhos.size());
+            for (NotaEmpenho empenho : empenhos) {
+                codec.escreverEmpenho(saida, empenho);
+            }
+            List<Liquidacao> liquidacoes = contrato.getLiquidacoes();
+            saida.writeInt(liquidacoes.size());
+            for (Liquidacao liquidacao : liquidacoes) {
+                codec.escreverLiquidacao(saida, liquidacao);
+            }
+            List<Pagamento> pagamentos = contrato.getPagamentos();
+            saida.writeInt(pagamentos.size());
+            for (Pagamento pagamento : pagamentos) {
+                codec.escreverPagamento(saida, pagamento);
+            }
+        }
+    }
+    
+    // Os processos anteriores do bloco são decodificados e descartados até a linha desejada
+    private ProcessoAquisicao lerDetalhes(byte[] bloco, int linha) throws IOException {
+        DataInputStream entrada = abrirBloco(bloco);
+        for (int i = 0; i < linha; i++) {
+            lerProcessoDetalhado(entrada);
+        }
+        return lerProcessoDetalhado(entrada);
+    }
+    
+    private DataInputStream abrirBloco(byte[] bloco) throws IOException {
+        int tamanhoOriginal = ByteBuffer.wrap(bloco).getInt();
+        byte[] dados = descomprimir(bloco, 4, bloco.length - 4, tamanhoOriginal);
+        return new DataInputStream(new ByteArrayInputStream(dados));
+    }
+    
+    private ProcessoAquisicao lerProcessoDetalhado(DataInputStream entrada) throws IOException {
+        // Um codec próprio resolve as referências ao processo e ao contrato recriados
+        Map<String, ProcessoAquisicao> processos = new HashMap<>();
+        Map<String, Contrato> contratos = new HashMap<>();
+        CodecAquisicoes leitor = new CodecAquisicoes(usuariosPorCpf, fornecedoresPorCnpj, processos, contratos);
+        
+        ProcessoAquisicao processo = leitor.lerProcessoCompleto(entrada);
+        processos.put(processo.getNumero(), processo);
+        if (entrada.readBoolean()) {
+            Contrato contrato = leitor.lerContrato(entrada);
+            contratos.put(contrato.getNumero(), contrato);
+            contrato.vincularRepositorios(new RepositorioMemoria<>(), new RepositorioMemoria<>(), new RepositorioMemoria<>());
+            processo.setContrato(contrato);
+            
+            for (int i = entrada.readInt(); i > 0; i--) {
+                contrato.adicionarEntrega(leitor.lerEntrega(entrada, contrato));
+            }
+            long empenhado = 0;
+            for (int i = entrada.readInt(); i > 0; i--) {
+                NotaEmpenho empenho = leitor.lerEmpenho(entrada);
+                contrato.adicionarEmpenho(empenho);
+                empenhado = Dinheiro.somar(empenhado, empenho.getValor());
+            }
+            long liquidado = 0;
+            for (int i = entrada.readInt(); i > 0; i--) {
+                Liquidacao liquidacao = leitor.lerLiquidacao(entrada);
+                contrato.adicionarLiquidacao(liquidacao);
+                liquidado = Dinheiro.somar(liquidado, liquidacao.getValor());
+            }
+            long pago = 0;
+            for (int i = entrada.readInt(); i > 0; i--) {
+                Pagamento pagamento = leitor.lerPagamento(entrada);
+                contrato.adicionarPagamento(pagamento);
+                pago = Dinheiro.somar(pago, pagamento.getValor());
+            }
+            contrato.getRazao().acumular(empenhado, liquidado, pago);
+        }
+        return processo;
+    }
+    
+    // Codificações das colunas
+    
+    // Por linha: [tamanho + 1, ou 0 se nulo][bytes compartilhados com o anterior][bytes restantes]
+    private static byte[] codificarTextos(String[] textos) {
+        ByteArrayOutputStream saida = new ByteArrayOutputStream(textos.length * 8);
+        byte[] anterior = new byte[0];
+        for (String texto : textos) {
+            if (texto == null) {
+                escreverVarint(saida, 0);
+                continue;
+            }
+            byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+            int comum = 0;
+            int limite = Math.min(bytes.length, anterior.length);
+            while (comum < limite && bytes[comum] == anterior[comum]) {
+                comum++;
+            }
+            escreverVarint(saida, bytes.length + 1);
+            escreverVarint(saida, comum);
+            saida.write(bytes, comum, bytes.length - comum);
+            anterior = bytes;
+        }
+        return saida.toByteArray();
+    }
+    
+    private static String[] decodificarTextos(byte[] dados, int linhas) {
+        Cursor cursor = new Cursor(dados);
+        String[] textos = new String[linhas];
+        byte[] anterior = new byte[0];
+        for (int i = 0; i < linhas; i++) {
+            int tamanho = (int) cursor.varint() - 1;
+            if (tamanho < 0) {
+                continue;
+            }
+            int comum = (int) cursor.varint();
+            byte[] bytes = Arrays.copyOf(anterior, tamanho);
+            System.arraycopy(dados, cursor.posicao, bytes, comum, tamanho - comum);
+            cursor.posicao += tamanho - comum;
+            textos[i] = new String(bytes, StandardCharsets.UTF_8);
+            anterior = bytes;
+        }
+        return textos;
+    }
+    
+    // [entradas][texto de cada entrada] e, por linha, o código da entrada (0 para nulo, i + 1 para a entrada i)
+    private static byte[] codificarDicionario(String[] valores) {
+        Map<String, Integer> codigos = new LinkedHashMap<>();
+        for (String valor : valores) {
+            if (valor != null) {
+                codigos.putIfAbsent(valor, codigos.size() + 1);
+            }
+        }
+        
+        ByteArrayOutputStream saida = new ByteArrayOutputStream(valores.length + codigos.size() * 16);
+        escreverVarint(saida, codigos.size());
+        for (String valor : codigos.keySet()) {
+            byte[] bytes = valor.getBytes(StandardCharsets.UTF_8);
+            escreverVarint(saida, bytes.length);
+            saida.write(bytes, 0, bytes.length);
+        }
+        for (String valor : valores) {
+            escreverVarint(saida, valor != null ? codigos.get(valor) : 0);
+        }
+        return saida.toByteArray();
+    }
+    
+    private static Dicionario decodificarDicionario(byte[] dados, int linhas) {
+        Cursor cursor = new Cursor(dados);
+        String[] valores = new String[(int) cursor.varint()];
+        for (int i = 0; i < valores.length; i++) {
+            int tamanho = (int) cursor.varint();
+            valores[i] = new String(dados, cursor.posicao, tamanho, StandardCharsets.UTF_8);
+            cursor.posicao += tamanho;
+        }
+        int[] codigos = new int[linhas];
+        for (int i = 0; i < linhas; i++) {
+            codigos[i] = (int) cursor.varint();
+        }
+        return new Dicionario(valores, codigos);
+    }
+    
+    // Por linha, a diferença para a linha anterior em zigue-zague, de modo que diferenças negativas pequenas ocupem poucos bytes
+    private static byte[] codificarDiferencas(long[] valores) {
+        ByteArrayOutputStream saida = new ByteArrayOutputStream(valores.length * 2);
+        long anterior = 0;
+        for (long valor : valores) {
+            long diferenca = valor - anterior;
+            escreverVarint(saida, (diferenca << 1) ^ (diferenca >> 63));
+            anterior = valor;
+        }
+        return saida.toByteArray();
+    }
+    
+    private static long[] decodificarDiferencas(byte[] dados, int linhas) {
+        Cursor cursor = new Cursor(dados);
+        long[] valores = new long[linhas];
+        long anterior = 0;
+        for (int i = 0; i < linhas; i++) {
+            long codificado = cursor.varint();
+            anterior += (codificado >>> 1) ^ -(codificado & 1);
+            valores[i] = anterior;
+        }
+        return valores;
+    }
+    
+    // Inteiro sem sinal em grupos de 7 bits, do menos para o mais significativo
+    private static void escreverVarint(ByteArrayOutputStream saida, long valor) {
+        while ((valor & ~0x7FL) != 0) {
+            saida.write((int) ((valor & 0x7F) | 0x80));
+            valor >>>= 7;
+        }
+        saida.write((int) valor);
+    }
+    
+    // O Deflater é reutilizado entre os blocos de um segmento: sua inicialização nativa custa mais que comprimir um bloco pequeno
+    private static byte[] comprimir(Deflater deflater, byte[] dados, int inicio, int tamanho) {
+        deflater.reset();
+        deflater.setInput(dados, inicio, tamanho);
+        deflater.finish();
+        ByteArrayOutputStream saida = new ByteArrayOutputStream(Math.max(64, tamanho / 4));
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            saida.write(buffer, 0, deflater.deflate(buffer));
+        }
+        return saida.toByteArray();
+    }
+    
+    private static byte[] descomprimir(byte[] dados, int inicio, int tamanho, int tamanhoOriginal) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(dados, inicio, tamanho);
+            byte[] resultado = new byte[tamanhoOriginal];
+            int lidos = 0;
+            while (lidos < tamanhoOriginal) {
+                int quantidade = inflater.inflate(resultado, lidos, tamanhoOriginal - lidos);
+                if (quantidade == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException("Bloco comprimido do arquivo de processos truncado");
+                }
+                lidos += quantidade;
+            }
+            return resultado;
+        } catch (DataFormatException e) {
+            throw new IOException("Bloco comprimido do arquivo de processos inválido", e);
+        } finally {
+            inflater.end();
+        }
+    }
+    
+    private void sincronizarDiretorio() {
+        // Nem todos os sistemas de arquivos permitem sincronizar diretórios; a renomeação já é atômica
+        try (FileChannel canal = FileChannel.open(diretorio, StandardOpenOption.READ)) {
+            canal.force(true);
+        } catch (IOException e) {
+            // Ignorado
+        }
+    }
+    
+    // FNV-1a de 64 bits do número, distinguindo a coluna de origem
+    private static long hash(int coluna, String numero) {
+        long hash = 0xCBF29CE484222325L;
+        hash = (hash ^ coluna) * 0x100000001B3L;
+        for (int i = 0; i < numero.length(); i++) {
+            hash = (hash ^ numero.charAt(i)) * 0x100000001B3L;
+        }
+        return hash;
+    }
+    
+    /**
+     * Segmento publicado: cabeçalho, diretório de colunas e hashes ordenados dos números de
+     * processo e de contrato. As colunas são lidas do arquivo a cada consulta.
+     */
+    private static final class Segmento {
+        final Path arquivo;
+        final int linhas;
+        final int maiorSequencial;
+        final long[] posicoes;
+        final int[] tamanhos;
+        final int[] tamanhosOriginais;
+        final long[] hashes;
+        
+        private Segmento(Path arquivo, ByteBuffer cabecalho) throws IOException {
+            if (cabecalho.getInt() != MAGICO_SEGMENTO || cabecalho.getInt() != VERSAO_SEGMENTO) {
+                throw new IOException("Segmento do arquivo de processos inválido: " + arquivo);
+            }
+            this.arquivo = arquivo;
+            this.linhas = cabecalho.getInt();
+            this.maiorSequencial = cabecalho.getInt();
+            this.posicoes = new long[QUANTIDADE_COLUNAS];
+            this.tamanhos = new int[QUANTIDADE_COLUNAS];
+            this.tamanhosOriginais = new int[QUANTIDADE_COLUNAS];
+            for (int coluna = 0; coluna < QUANTIDADE_COLUNAS; coluna++) {
+                posicoes[coluna] = cabecalho.getLong();
+                tamanhos[coluna] = cabecalho.getInt();
+                tamanhosOriginais[coluna] = cabecalho.getInt();
+            }
+            
+            String[] numeros = decodificarTextos(coluna(COLUNA_NUMERO), linhas);
+            String[] contratos = decodificarTextos(coluna(COLUNA_CONTRATO), linhas);
+            long[] hashes = new long[linhas * 2];
+            int quantidade = 0;
+            for (int i = 0; i < linhas; i++) {
+                hashes[quantidade++] = hash(COLUNA_NUMERO, numeros[i]);
+                if (contratos[i] != null) {
+                    hashes[quantidade++] = hash(COLUNA_CONTRATO, contratos[i]);
+                }
+            }
+            this.hashes = Arrays.copyOf(hashes, quantidade);
+            Arrays.sort(this.hashes);
+        }
+        
+        static Segmento abrir(Path arquivo) throws IOException {
+            try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+                return new Segmento(arquivo, ler(canal, 0, TAMANHO_CABECALHO));
+            }
+        }
+        
+        /**
+         * Linha do número na coluna de números de processo ou de contrato, ou -1
+         */
+        int localizar(int coluna, String numero) throws IOException {
+            if (Arrays.binarySearch(hashes, hash(coluna, numero)) < 0) {
+                return -1;
+            }
+            String[] numeros = decodificarTextos(coluna(coluna), linhas);
+            for (int i = 0; i < numeros.length; i++) {
+                if (numero.equals(numeros[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        
+        byte[] coluna(int coluna) throws IOException {
+            return descomprimir(ler(posicoes[coluna], tamanhos[coluna]), 0, tamanhos[coluna], tamanhosOriginais[coluna]);
+        }
+        
+        byte[] ler(long posicao, int tamanho) throws IOException {
+            try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+                return ler(canal, posicao, tamanho).array();
+            }
+        }
+        
+        private static ByteBuffer ler(FileChannel canal, long posicao, int tamanho) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(tamanho);
+            while (buffer.hasRemaining()) {
+                if (canal.read(buffer, posicao + buffer.position()) < 0) {
+                    throw new EOFException("Segmento do arquivo de processos truncado");
+                }
+            }
+            return buffer.flip();
+        }
+    }
+    
+    /**
+     * Coluna codificada por dicionário: os valores distintos e o código de cada linha
+     */
+    private static final class Dicionario {
+        final String[] valores;
+        final int[] codigos;
+        
+        Dicionario(String[] valores, int[] codigos) {
+            this.valores = valores;
+            this.codigos = codigos;
+        }
+    }
+    
+    /**
+     * Posição de leitura em uma coluna descomprimida
+     */
+    private static final class Cursor {
+        final byte[] dados;
+        int posicao;
+        
+        Cursor(byte[] dados) {
+            this.dados = dados;
+        }
+        
+        long varint() {
+            long valor = 0;
+            int deslocamento = 0;
+            byte b;
+            do {
+                b = dados[posicao++];
+                valor |= (long) (b & 0x7F) << deslocamento;
+                deslocamento += 7;
+            } while (b < 0);
+            return valor;
+        }
+    }
+}
+
+/**
+ * Armazém do conteúdo dos documentos, endereçado pelo hash SHA-256 do conteúdo.
+ * 
+ * Cada conteúdo é gravado uma única vez em {diretório}/{dois primeiros dígitos do hash}/{hash};
+ * documentos com o mesmo conteúdo compartilham o arquivo. O conteúdo é gravado em um arquivo
+ * temporário enquanto é lido e publicado com uma renomeação atômica antes que a operação que o
+ * referencia seja registrada no log de persistência; temporários encontrados na abertura são
+ * descartados. Conteúdos que deixam de ser referenciados permanecem no armazém.
+ * 
+ * A leitura não copia o conteúdo para o heap: mapear retorna um buffer somente leitura mapeado
+ * do arquivo e transferir envia o arquivo ao destino com FileChannel.transferTo.
+ */
+class ArmazemDocumentos {
+    private static final int TAMANHO_BUFFER_ARQUIVO = 1 << 16;
+    private static final String ALGORITMO_HASH = "SHA-256";
+    
+    private final Path diretorio;
+    private final Path temporarios;
+    private final PoliticaSincronizacao politicaSincronizacao;
+    
+    public ArmazemDocumentos(Path diretorio, PoliticaSincronizacao politicaSincronizacao) throws IOException {
+        this.diretorio = diretorio;
+        this.temporarios = diretorio.resolve("tmp");
+        this.politicaSincronizacao = politicaSincronizacao;
+        
+        Files.createDirectories(temporarios);
+        try (var listagem = Files.newDirectoryStream(temporarios)) {
+            for (Path arquivo : listagem) {
+                Files.delete(arquivo);
+            }
+        }
+    }
+    
+    /**
+     * Grava o conteúdo lido da entrada, calculando o hash durante a cópia, e retorna a sua referência.
+     * Se o armazém já contém o mesmo conteúdo, o temporário é descartado e o arquivo existente é reutilizado.
+     */
+    public ConteudoDocumento armazenar(InputStream entrada, long tamanhoMaximo) throws IOException {
+        MessageDigest resumo = novoResumo();
+        Path temporario = Files.createTempFile(temporarios, "conteudo-", ".tmp");
+        try {
+            long tamanho = 0;
+            try (FileChannel canal = FileChannel.open(temporario, StandardOpenOption.WRITE)) {
+                byte[] buffer = new byte[TAMANHO_BUFFER_ARQUIVO];
+                ByteBuffer bloco = ByteBuffer.wrap(buffer);
+                int lidos;
+                while ((lidos = entrada.read(buffer)) >= 0) {
+                    tamanho += lidos;
+                    if (tamanho > tamanhoMaximo) {
+                        throw new IllegalArgumentException("Conteúdo do documento excede " + tamanhoMaximo + " bytes");
+                    }
+                    resumo.update(buffer, 0, lidos);
+                    bloco.clear().limit(lidos);
+                    while (bloco.hasRemaining()) {
+                        canal.write(bloco);
+                    }
+                }
+                if (politicaSincronizacao == PoliticaSincronizacao.A_CADA_OPERACAO) {
+                    canal.force(true);
+                }
+            }
+            
+            ConteudoDocumento conteudo = new ConteudoDocumento(HexFormat.of().formatHex(resumo.digest()), tamanho);
+            Path arquivo = arquivo(conteudo);
+            if (!Files.exists(arquivo)) {
+                // Uma gravação concorrente do mesmo conteúdo substitui o arquivo por outro idêntico
+                Files.createDirectories(arquivo.getParent());
+                Files.move(temporario, arquivo, StandardCopyOption.ATOMIC_MOVE);
+                if (politicaSincronizacao == PoliticaSincronizacao.A_CADA_OPERACAO) {
+                    sincronizarDiretorio(arquivo.getParent());
+                }
+            }
+            return conteudo;
+        } finally {
+            Files.deleteIfExists(temporario);
+        }
+    }
+    
+    public boolean contem(ConteudoDocumento conteudo) {
+        Path arquivo = arquivo(conteudo);
+        try {
+            return Files.size(arquivo) == conteudo.getTamanho();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * Mapeia o conteúdo em memória, somente leitura; o mapeamento continua válido após o retorno
+     * e é liberado quando o buffer deixa de ser referenciado
+     */
+    public ByteBuffer mapear(ConteudoDocumento conteudo) throws IOException {
+        try (FileChannel canal = FileChannel.open(arquivo(conteudo), StandardOpenOption.READ)) {
+            return canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+        }
+    }
+    
+    /**
+     * Envia o conteúdo ao destino sem passar por buffers do heap, retornando a quantidade de bytes enviados
+     */
+    public long transferir(ConteudoDocumento conteudo, WritableByteChannel destino) throws IOException {
+        try (FileChannel canal = FileChannel.open(arquivo(conteudo), StandardOpenOption.READ)) {
+            long tamanho = canal.size();
+            long enviados = 0;
+            while (enviados < tamanho) {
+                enviados += canal.transferTo(enviados, tamanho - enviados, destino);
+            }
+            return enviados;
+        }
+    }
+    
+    private Path arquivo(ConteudoDocumento conteudo) {
+        String hash = conteudo.getHash();
+        return diretorio.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+    
+    private static MessageDigest novoResumo() {
+        try {
+            return MessageDigest.getInstance(ALGORITMO_HASH);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Algoritmo " + ALGORITMO_HASH + " não disponível", e);
+        }
+    }
+    
+    private static void sincronizarDiretorio(Path diretorio) {
+        // Nem todos os sistemas de arquivos permitem sincronizar diretórios; a renomeação já é atômica
+        try (FileChannel canal = FileChannel.open(diretorio, StandardOpenOption.READ)) {
+            canal.force(true);
+        } catch (IOException e) {
+            // Ignorado
+        }
+    }
+}
+
+/**
+ * Tipos de registro localizados pela busca textual
+ */
+enum TipoResultadoBusca {
+    PROCESSO,    // título e descrição do processo
+    ITEM,        // nome e descrição de um item do processo
+    DOCUMENTO,   // título e conteúdo (quando é texto UTF-8) de um documento do processo
+    FORNECEDOR   // razão social do fornecedor
+}
+
+/**
+ * Registro encontrado pela busca textual, com a relevância calculada para a consulta.
+ * A chave é o número do processo ou o CNPJ do fornecedor; a posição é o índice do item ou
+ * do documento no processo (-1 para processos e fornecedores).
+ */
+final class ResultadoBusca {
+    private final TipoResultadoBusca tipo;
+    private final String chave;
+    private final int posicao;
+    private final String descricao;
+    private final double relevancia;
+    
+    ResultadoBusca(TipoResultadoBusca tipo, String chave, int posicao, String descricao, double relevancia) {
+        this.tipo = tipo;
+        this.chave = chave;
+        this.posicao = posicao;
+        this.descricao = descricao;
+        this.relevancia = relevancia;
+    }
+    
+    public TipoResultadoBusca getTipo() { return tipo; }
+    public String getChave() { return chave; }
+    public int getPosicao() { return posicao; }
+    public String getDescricao() { return descricao; }
+    public double getRelevancia() { return relevancia; }
+}
+
+/**
+ * Reduz um texto em português aos termos do índice textual.
+ * 
+ * Os termos são as sequências de letras e dígitos do texto, em minúsculas e sem acentos
+ * ("Licitação" e "licitacao" produzem o mesmo termo). Palavras muito frequentes (artigos,
+ * preposições, conjunções) são descartadas e as demais são reduzidas a um radical por um
+ * stemmer leve: o plural é removido ("notebooks", "fornecedores", "licitações", "itens") e, em
+ * seguida, a vogal temática final ("jurídico" e "jurídica"). Termos com dígitos ("i7", "16gb")
+ * são mantidos como estão.
+ * 
+ * O texto pode ser entregue em partes; um termo interrompido no fim de uma parte continua na
+ * seguinte até o próximo separador.
+ */
+final class AnalisadorTextual {
+    private static final int TAMANHO_MAXIMO_TERMO = 64;
+    private static final Set<String> PALAVRAS_VAZIAS = Set.of(
+        "a", "o", "as", "os", "um", "uma", "uns", "umas", "de", "da", "do", "das", "dos",
+        "em", "na", "no", "nas", "nos", "ao", "aos", "e", "ou", "para", "por", "pela", "pelo",
+        "pelas", "pelos", "com", "sem", "que", "se", "sob", "sobre", "entre");
+    
+    private final StringBuilder termo;
+    private final Map<String, int[]> frequencias;
+    private int quantidadeTermos;
+    
+    AnalisadorTextual() {
+        this.termo = new StringBuilder();
+        this.frequencias = new HashMap<>();
+    }
+    
+    /**
+     * Analisa o texto; campos distintos devem ser entregues em chamadas distintas, seguidas de encerrarCampo
+     */
+    public void adicionar(CharSequence texto) {
+        if (texto == null) {
+            return;
+        }
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (termo.length() < TAMANHO_MAXIMO_TERMO) {
+                    termo.append(semAcento(Character.toLowerCase(c)));
+                }
+            } else {
+                encerrarCampo();
+            }
+        }
+    }
+    
+    /**
+     * Analisa o conteúdo UTF-8 do buffer em partes, sem copiá-lo inteiro para o heap.
+     * Retorna false, sem alterar os termos já analisados, se o conteúdo não for texto UTF-8.
+     */
+    public boolean adicionarUtf8(ByteBuffer conteudo) {
+        CharsetDecoder decodificador = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+        AnalisadorTextual parcial = new AnalisadorTextual();
+        CharBuffer parte = CharBuffer.allocate(8192);
+        
+        CoderResult resultado;
+        do {
+            resultado = decodificador.decode(conteudo, parte, true);
+            if (resultado.isError()) {
+                return false;
+            }
+            parte.flip();
+            parcial.adicionar(parte);
+            parte.clear();
+        } while (resultado.isOverflow());
+        decodificador.flush(parte);
+        parte.flip();
+        parcial.adicionar(parte);
+        parcial.encerrarCampo();
+        
+        for (Map.Entry<String, int[]> entrada : parcial.frequencias.entrySet()) {
+            frequencias.computeIfAbsent(entrada.getKey(), chave -> new int[1])[0] += entrada.getValue()[0];
+        }
+        quantidadeTermos += parcial.quantidadeTermos;
+        return true;
+    }
+    
+    public void encerrarCampo() {
+        if (termo.length() == 0) {
+            return;
+        }
+        String palavra = termo.toString();
+        termo.setLength(0);
+        if (!PALAVRAS_VAZIAS.contains(palavra)) {
+            frequencias.computeIfAbsent(radical(palavra), chave -> new int[1])[0]++;
+            quantidadeTermos++;
+        }
+    }
+    
+    /**
+     * Frequência de cada termo no texto analisado
+     */
+    public Map<String, int[]> getFrequencias() {
+        encerrarCampo();
+        return frequencias;
+    }
+    
+    public int getQuantidadeTermos() {
+        encerrarCampo();
+        return quantidadeTermos;
+    }
+    
+    /**
+     * Termos distintos de uma consulta
+     */
+    public static List<String> termosConsulta(String consulta) {
+        AnalisadorTextual analisador = new AnalisadorTextual();
+        analisador.adicionar(consulta);
+        return new ArrayList<>(analisador.getFrequencias().keySet());
+    }
+    
+    static String radical(String palavra) {
+        if (palavra.length() <= 3 || contemDigito(palavra)) {
+            return palavra;
+        }
+        
+        String singular = singular(palavra);
+        char ultima = singular.charAt(singular.length() - 1);
+        if (singular.length() > 3 && (ultima == 'a' || ultima == 'e' || ultima == 'o')) {
+            return singular.substring(0, singular.length() - 1);
+        }
+        return singular;
+    }
+    
+    // Remoção do plural; as regras mais específicas vêm primeiro
+    private static String singular(String palavra) {
+        if (palavra.endsWith("oes") || palavra.endsWith("aes")) {
+            return palavra.substring(0, palavra.length() - 3) + "ao";
+        }
+        if (palavra.endsWith("ais") || palavra.endsWith("eis") || palavra.endsWith("ois")) {
+            return palavra.substring(0, palavra.length() - 2) + "l";
+        }
+        if (palavra.endsWith("res") || palavra.endsWith("zes") || palavra.endsWith("les")) {
+            return palavra.substring(0, palavra.length() - 2);
+        }
+        if (palavra.endsWith("ns")) {
+            return palavra.substring(0, palavra.length() - 2) + "m";
+        }
+        if (palavra.endsWith("s") && !palavra.endsWith("ss") && !palavra.endsWith("is") && !palavra.endsWith("us")) {
+            return palavra.substring(0, palavra.length() - 1);
+        }
+        return palavra;
+    }
+    
+    private static boolean contemDigito(String palavra) {
+        for (int i = 0; i < palavra.length(); i++) {
+            if (Character.isDigit(palavra.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static char semAcento(char c) {
+        switch (c) {
+            case 'á': case 'à': case 'â': case 'ã': case 'ä': return 'a';
+            case 'é': case 'è': case 'ê': case 'ë': return 'e';
+            case 'í': case 'ì': case 'î': case 'ï': return 'i';
+            case 'ó': case 'ò': case 'ô': case 'õ': case 'ö': return 'o';
+            case 'ú': case 'ù': case 'û': case 'ü': return 'u';
+            case 'ç': return 'c';
+            case 'ñ': return 'n';
+            default: return c;
+        }
+    }
+}
+
+/**
+ * Índice invertido dos textos de processos, itens, documentos e fornecedores.
+ * 
+ * Cada registro indexado recebe um identificador sequencial; seus atributos ficam em arrays
+ * paralelos e, para cada termo, a lista de postagens guarda os identificadores (em ordem
+ * crescente) e a frequência do termo em cada registro. Uma consulta exige todos os termos:
+ * percorre a lista do termo mais raro e procura cada candidato nas demais por busca binária,
+ * avançando a partir da última posição encontrada, de modo que o custo depende do termo mais
+ * seletivo e não do tamanho do índice. Os candidatos são ordenados por BM25 e apenas os
+ * melhores são mantidos.
+ * 
+ * O índice é atualizado pelos métodos de inclusão do SistemaAquisicoes e reconstruído a partir
+ * do estado na inicialização. Processos arquivados são retirados do índice.
+ */
+class IndiceTextual {
+    // Parâmetros usuais do BM25: saturação da frequência e normalização pelo tamanho do registro
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int CAPACIDADE_INICIAL = 1024;
+    
+    private final ReentrantReadWriteLock bloqueio;
+    private final Map<String, Postagens> postagens;
+    private TipoResultadoBusca[] tipos;
+    private String[] chaves;
+    private int[] posicoes;
+    private String[] descricoes;
+    private int[] comprimentos;
+    private int quantidade;
+    private int ativos;
+    private long somaComprimentos;
+    
+    public IndiceTextual() {
+        this.bloqueio = new ReentrantReadWriteLock();
+        this.postagens = new HashMap<>();
+        this.tipos = new TipoResultadoBusca[CAPACIDADE_INICIAL];
+        this.chaves = new String[CAPACIDADE_INICIAL];
+        this.posicoes = new int[CAPACIDADE_INICIAL];
+        this.descricoes = new String[CAPACIDADE_INICIAL];
+        this.comprimentos = new int[CAPACIDADE_INICIAL];
+    }
+    
+    /**
+     * Indexa um registro já analisado. A descrição é a exibida nos resultados.
+     */
+    public void indexar(TipoResultadoBusca tipo, String chave, int posicao, String descricao, AnalisadorTextual analise) {
+        Map<String, int[]> frequencias = analise.getFrequencias();
+        int comprimento = analise.getQuantidadeTermos();
+        
+        bloqueio.writeLock().lock();
+        try {
+            if (quantidade == tipos.length) {
+                int capacidade = quantidade * 2;
+                tipos = Arrays.copyOf(tipos, capacidade);
+                chaves = Arrays.copyOf(chaves, capacidade);
+                posicoes = Arrays.copyOf(posicoes, capacidade);
+                descricoes = Arrays.copyOf(descricoes, capacidade);
+                comprimentos = Arrays.copyOf(comprimentos, capacidade);
+            }
+            int registro = quantidade++;
+            tipos[registro] = tipo;
+            chaves[registro] = chave;
+            posicoes[registro] = posicao;
+            descricoes[registro] = descricao;
+            comprimentos[registro] = comprimento;
+            ativos++;
+            somaComprimentos += comprimento;
+            
+            for (Map.Entry<String, int[]> entrada : frequencias.entrySet()) {
+                postagens.computeIfAbsent(entrada.getKey(), termo -> new Postagens()).adicionar(registro, entrada.getValue()[0]);
+            }
+        } finally {
+            bloqueio.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Retira do índice os processos informados, com seus itens e documentos
+     */
+    public void removerProcessos(Set<String> numeros) {
+        bloqueio.writeLock().lock();
+        try {
+            BitSet removidos = new BitSet(quantidade);
+            for (int registro = 0; registro < quantidade; registro++) {
+                if (tipos[registro] != null && tipos[registro] != TipoResultadoBusca.FORNECEDOR 
+                        && numeros.contains(chaves[registro])) {
+                    removidos.set(registro);
+                    ativos--;
+                    somaComprimentos -= comprimentos[registro];
+                    // O identificador não é reutilizado; só as referências são liberadas
+                    tipos[registro] = null;
+                    chaves[registro] = null;
+                    descricoes[registro] = null;
+                }
+            }
+            if (removidos.isEmpty()) {
+                return;
+            }
+            
+            Iterator<Postagens> listas = postagens.values().iterator();
+            while (listas.hasNext()) {
+                Postagens lista = listas.next();
+                lista.removerSe(removidos);
+                if (lista.tamanho == 0) {
+                    listas.remove();
+                }
+            }
+        } finally {
+            bloqueio.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Registros que contêm todos os termos da consulta, do mais relevante para o menos relevante
+     */
+    public List<ResultadoBusca> buscar(String consulta, int limite) {
+        if (limite <= 0) {
+            throw new IllegalArgumentException("Limite da busca deve ser positivo");
+        }
+        List<String> termos = AnalisadorTextual.termosConsulta(consulta);
+        if (termos.isEmpty()) {
+            return List.of();
+        }
+        
+        bloqueio.readLock().lock();
+        try {
+            Postagens[] listas = new Postagens[termos.size()];
+            for (int i = 0; i < listas.length; i++) {
+                listas[i] = postagens.get(termos.get(i));
+                if (listas[i] == null) {
+                    return List.of();
+                }
+            }
+            Arrays.sort(listas, Comparator.comparingInt(lista -> lista.tamanho));
+            
+            double[] idf = new double[listas.length];
+            for (int i = 0; i < listas.length; i++) {
+                idf[i] = Math.log(1 + (ativos - listas[i].tamanho + 0.5) / (listas[i].tamanho + 0.5));
+            }
+            double comprimentoMedio = (double) somaComprimentos / Math.max(1, ativos);
+            
+            // Melhores registros em ordem decrescente de relevância (inserção ordenada; o limite é pequeno)
+            int capacidade = Math.min(limite, listas[0].tamanho);
+            int[] melhores = new int[capacidade];
+            double[] relevancias = new double[capacidade];
+            int encontrados = 0;
+            int[] cursores = new int[listas.length];
+            
+            candidatos:
+            for (int i = 0; i < listas[0].tamanho; i++) {
+                int registro = listas[0].registros[i];
+                double relevancia = 0;
+                for (int t = 1; t < listas.length; t++) {
+                    int posicao = listas[t].localizar(registro, cursores[t]);
+                    if (posicao == listas[t].tamanho) {
+                        break candidatos;
+                    }
+                    cursores[t] = posicao;
+                    if (listas[t].registros[posicao] != registro) {
+                        continue candidatos;
+                    }
+                }
+                double normalizacao = K1 * (1 - B + B * comprimentos[registro] / comprimentoMedio);
+                for (int t = 0; t < listas.length; t++) {
+                    int frequencia = listas[t].frequencias[t == 0 ? i : cursores[t]];
+                    relevancia += idf[t] * frequencia * (K1 + 1) / (frequencia + normalizacao);
+                }
+                
+                if (encontrados == capacidade && relevancia <= relevancias[capacidade - 1]) {
+                    continue;
+                }
+                int posicao = encontrados < capacidade ? encontrados++ : capacidade - 1;
+                while (posicao > 0 && relevancias[posicao - 1] < relevancia) {
+                    melhores[posicao] = melhores[posicao - 1];
+                    relevancias[posicao] = relevancias[posicao - 1];
+                    posicao--;
+                }
+                melhores[posicao] = registro;
+                relevancias[posicao] = relevancia;
+            }
+            
+            List<ResultadoBusca> resultados = new ArrayList<>(encontrados);
+            for (int i = 0; i < encontrados; i++) {
+                int registro = melhores[i];
+                resultados.add(new ResultadoBusca(tipos[registro], chaves[registro], posicoes[registro], 
+                                                  descricoes[registro], relevancias[i]));
+            }
+            return resultados;
+        } finally {
+            bloqueio.readLock().unlock();
+        }
+    }
+    
+    public int getQuantidadeRegistros() {
+        bloqueio.readLock().lock();
+        try {
+            return ativos;
+        } finally {
+            bloqueio.readLock().unlock();
+        }
+    }
+    
+    public int getQuantidadeTermos() {
+        bloqueio.readLock().lock();
+        try {
+            return postagens.size();
+        } finally {
+            bloqueio.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Registros que contêm um termo, em ordem crescente, com a frequência do termo em cada um
+     */
+    private static final class Postagens {
+        // A maior parte dos termos aparece em poucos registros
+        private int[] registros = new int[1];
+        private int[] frequencias = new int[1];
+        private int tamanho;
+        
+        void adicionar(int registro, int frequencia) {
+            if (tamanho == registros.length) {
+                registros = Arrays.copyOf(registros, tamanho * 2);
+                frequencias = Arrays.copyOf(frequencias, tamanho * 2);
+            }
+            registros[tamanho] = registro;
+            frequencias[tamanho] = frequencia;
+            tamanho++;
+        }
+        
+        /**
+         * Primeira posição, a partir de inicio, com registro maior ou igual ao informado (ou o
+         * tamanho da lista). Avança em saltos que dobram e refina por busca binária, de modo que
+         * candidatos próximos custam poucas comparações.
+         */
+        int localizar(int registro, int inicio) {
+            // Listas de tamanho parecido avançam poucas posições por candidato
+            int fimLinear = Math.min(tamanho, inicio + 8);
+            for (int posicao = inicio; posicao < fimLinear; posicao++) {
+                if (registros[posicao] >= registro) {
+                    return posicao;
+                }
+            }
+            if (fimLinear == tamanho) {
+                return tamanho;
+            }
+            
+            int anterior = inicio;
+            int salto = 1;
+            int limite = inicio;
+            while (limite < tamanho && registros[limite] < registro) {
+                anterior = limite + 1;
+                limite = inicio + salto;
+                salto <<= 1;
+            }
+            int posicao = Arrays.binarySearch(registros, anterior, Math.min(limite + 1, tamanho), registro);
+            return posicao >= 0 ? posicao : -posicao - 1;
+        }
+        
+        void removerSe(BitSet removidos) {
+            int mantidos = 0;
+            for (int i = 0; i < tamanho; i++) {
+                if (!removidos.get(registros[i])) {
+                    registros[mantidos] = registros[i];
+                    frequencias[mantidos] = frequencias[i];
+                    mantidos++;
+                }
+            }
+            tamanho = mantidos;
+        }
+    }
+}
+
+/**
+ * Dimensões de agrupamento das análises de pagamentos
+ */
+enum DimensaoAnalitica {
+    MODALIDADE,             // modalidade de licitação do processo
+    CATEGORIA_FORNECEDOR,   // categoria do fornecedor contratado
+    DEPARTAMENTO,           // departamento do responsável pelo processo (a unidade demandante)
+    MES                     // mês do pagamento
+}
+
+/**
+ * Totais de um grupo de pagamentos: quantidade, soma, mínimo, máximo e os percentis pedidos
+ * (valores em centavos; o percentil é o valor de posição ceil(p * quantidade) na ordem crescente)
+ */
+final class GrupoAnalitico {
+    private final String chave;
+    private final long quantidade;
+    private final long soma;
+    private final long minimo;
+    private final long maximo;
+    private final double[] fracoes;
+    private final long[] percentis;
+    
+    GrupoAnalitico(String chave, long quantidade, long soma, long minimo, long maximo, double[] fracoes, long[] percentis) {
+        this.chave = chave;
+        this.quantidade = quantidade;
+        this.soma = soma;
+        this.minimo = minimo;
+        this.maximo = maximo;
+        this.fracoes = fracoes;
+        this.percentis = percentis;
+    }
+    
+    public String getChave() { return chave; }
+    public long getQuantidade() { return quantidade; }
+    public long getSoma() { return soma; }
+    public long getMinimo() { return minimo; }
+    public long getMaximo() { return maximo; }
+    
+    /**
+     * Percentil calculado para a fração informada, que deve ser uma das frações pedidas na agregação
+     */
+    public long getPercentil(double fracao) {
+        for (int i = 0; i < fracoes.length; i++) {
+            if (fracoes[i] == fracao) {
+                return percentis[i];
+            }
+        }
+        throw new IllegalArgumentException("Percentil não calculado nesta agregação: " + fracao);
+    }
+}
+
+/**
+ * Cópia colunar e imutável dos pagamentos para análises de gasto.
+ * 
+ * Cada pagamento é uma linha; as colunas são arrays primitivos paralelos com o valor em
+ * centavos, o mês (meses desde o ano 0) e os códigos da modalidade, da categoria do fornecedor
+ * e do departamento, com os nomes em dicionários. Sem objetos por linha, uma agregação
+ * percorre apenas os arrays de que precisa.
+ * 
+ * As agregações dividem as linhas em blocos de TAMANHO_BLOCO processados em paralelo por um
+ * ForkJoinPool: cada bloco acumula quantidade, soma, mínimo e máximo por grupo em arrays
+ * próprios, que são somados ao final. Para os percentis, as contagens por bloco definem onde
+ * cada bloco copia os valores de cada grupo em um único array (também em paralelo) e os
+ * percentis de cada grupo são obtidos por seleção (quickselect), sem ordenar o grupo inteiro.
+ * A seleção é paralela entre grupos; um grupo muito maior que os demais limita o ganho.
+ */
+class SnapshotAnalitico {
+    static final int TAMANHO_BLOCO = 1 << 16;
+    private static final ModalidadeLicitacao[] MODALIDADES = ModalidadeLicitacao.values();
+    
+    private final int linhas;
+    private final long[] valores;
+    private final int[] meses;
+    private final byte[] modalidades;
+    private final int[] categorias;
+    private final int[] departamentos;
+    private final String[] nomesCategorias;
+    private final String[] nomesDepartamentos;
+    private final int menorMes;
+    private final int maiorMes;
+    private final Instant dataGeracao;
+    
+    /**
+     * Os arrays passam a pertencer ao snapshot e não podem mais ser alterados
+     */
+    SnapshotAnalitico(int linhas, long[] valores, int[] meses, byte[] modalidades, int[] categorias, 
+                      String[] nomesCategorias, int[] departamentos, String[] nomesDepartamentos) {
+        this.linhas = linhas;
+        this.valores = valores;
+        this.meses = meses;
+        this.modalidades = modalidades;
+        this.categorias = categorias;
+        this.departamentos = departamentos;
+        this.nomesCategorias = nomesCategorias;
+        this.nomesDepartamentos = nomesDepartamentos;
+        this.dataGeracao = Instant.now();
+        
+        int menor = Integer.MAX_VALUE;
+        int maior = Integer.MIN_VALUE;
+        for (int i = 0; i < linhas; i++) {
+            menor = Math.min(menor, meses[i]);
+            maior = Math.max(maior, meses[i]);
+        }
+        this.menorMes = linhas > 0 ? menor : 0;
+        this.maiorMes = linhas > 0 ? maior : -1;
+    }
+    
+    static int mes(LocalDate data) {
+        return data.getYear() * 12 + data.getMonthValue() - 1;
+    }
+    
+    public int getQuantidadeLinhas() { return linhas; }
+    public Instant getDataGeracao() { return dataGeracao; }
+    
+    public List<GrupoAnalitico> agregar(DimensaoAnalitica dimensao, double... percentis) {
+        return agregar(ForkJoinPool.commonPool(), dimensao, null, null, percentis);
+    }
+    
+    /**
+     * Agrupa os pagamentos dos meses entre inicio e fim (inclusive; null para sem limite) pela
+     * dimensão informada, com os percentis pedidos (frações entre 0 e 1). Os grupos sem
+     * pagamentos são omitidos; a ordem é a da modalidade, a cronológica ou a alfabética.
+     */
+    public List<GrupoAnalitico> agregar(ForkJoinPool executor, DimensaoAnalitica dimensao, 
+                                        YearMonth inicio, YearMonth fim, double... percentis) {
+        for (double fracao : percentis) {
+            if (!(fracao > 0 && fracao <= 1)) {
+                throw new IllegalArgumentException("Percentil deve estar entre 0 (exclusive) e 1: " + fracao);
+            }
+        }
+        int mesInicial = inicio != null ? inicio.getYear() * 12 + inicio.getMonthValue() - 1 : Integer.MIN_VALUE;
+        int mesFinal = fim != null ? fim.getYear() * 12 + fim.getMonthValue() - 1 : Integer.MAX_VALUE;
+        Agregacao agregacao = new Agregacao(dimensao, mesInicial, mesFinal);
+        
+        executor.invoke(new Blocos(agregacao, 0, agregacao.quantidadeBlocos));
+        
+        int grupos = agregacao.quantidadeGrupos;
+        long[] quantidades = new long[grupos];
+        long[] somas = new long[grupos];
+        long[] minimos = new long[grupos];
+        long[] maximos = new long[grupos];
+        Arrays.fill(minimos, Long.MAX_VALUE);
+        Arrays.fill(maximos, Long.MIN_VALUE);
+        for (int bloco = 0; bloco < agregacao.quantidadeBlocos; bloco++) {
+            for (int grupo = 0; grupo < grupos; grupo++) {
+                quantidades[grupo] += agregacao.quantidades[bloco][grupo];
+                somas[grupo] = Dinheiro.somar(somas[grupo], agregacao.somas[bloco][grupo]);
+                minimos[grupo] = Math.min(minimos[grupo], agregacao.minimos[bloco][grupo]);
+                maximos[grupo] = Math.max(maximos[grupo], agregacao.maximos[bloco][grupo]);
+            }
+        }
+        
+        long[][] valoresPercentis = percentis.length > 0 ? calcularPercentis(executor, agregacao, quantidades, percentis) : null;
+        
+        List<GrupoAnalitico> resultado = new ArrayList<>();
+        for (int grupo = 0; grupo < grupos; grupo++) {
+            if (quantidades[grupo] > 0) {
+                resultado.add(new GrupoAnalitico(agregacao.nomeGrupo(grupo), quantidades[grupo], somas[grupo], 
+                                                 minimos[grupo], maximos[grupo], percentis.clone(), 
+                                                 valoresPercentis != null ? valoresPercentis[grupo] : new long[0]));
+            }
+        }
+        if (dimensao == DimensaoAnalitica.CATEGORIA_FORNECEDOR || dimensao == DimensaoAnalitica.DEPARTAMENTO) {
+            resultado.sort(Comparator.comparing(GrupoAnalitico::getChave));
+        }
+        return resultado;
+    }
+    
+    private long[][] calcularPercentis(ForkJoinPool executor, Agregacao agregacao, long[] quantidades, double[] percentis) {
+        int grupos = agregacao.quantidadeGrupos;
+        // Início de cada grupo no array de valores e, dentro dele, o início de cada bloco
+        int[] iniciosGrupos = new int[grupos + 1];
+        for (int grupo = 0; grupo < grupos; grupo++) {
+            iniciosGrupos[grupo + 1] = iniciosGrupos[grupo] + (int) quantidades[grupo];
+        }
+        int[][] destinos = new int[agregacao.quantidadeBlocos][grupos];
+        for (int grupo = 0; grupo < grupos; grupo++) {
+            int posicao = iniciosGrupos[grupo];
+            for (int bloco = 0; bloco < agregacao.quantidadeBlocos; bloco++) {
+                destinos[bloco][grupo] = posicao;
+                posicao += (int) agregacao.quantidades[bloco][grupo];
+            }
+        }
+        
+        long[] agrupados = new long[iniciosGrupos[grupos]];
+        agregacao.destinos = destinos;
+        agregacao.agrupados = agrupados;
+        executor.invoke(new Blocos(agregacao, 0, agregacao.quantidadeBlocos));
+        
+        long[][] resultado = new long[grupos][percentis.length];
+        List<Selecao> selecoes = new ArrayList<>();
+        for (int grupo = 0; grupo < grupos; grupo++) {
+            if (quantidades[grupo] > 0) {
+                selecoes.add(new Selecao(agrupados, iniciosGrupos[grupo], iniciosGrupos[grupo + 1], percentis, resultado[grupo]));
+            }
+        }
+        executor.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(selecoes);
+            }
+        });
+        return resultado;
+    }
+    
+    /**
+     * Estado de uma agregação: a coluna do grupo escolhida, o filtro de meses e os acumuladores
+     * de cada bloco. Na segunda passagem, destinos e agrupados recebem os valores por grupo.
+     */
+    private final class Agregacao {
+        final DimensaoAnalitica dimensao;
+        final int mesInicial;
+        final int mesFinal;
+        final int quantidadeGrupos;
+        final int quantidadeBlocos;
+        final long[][] quantidades;
+        final long[][] somas;
+        final long[][] minimos;
+        final long[][] maximos;
+        // Coluna com o código do grupo de cada linha (a modalidade tem coluna própria, de bytes)
+        final byte[] codigosModalidade;
+        final int[] codigos;
+        final int deslocamento;
+        int[][] destinos;
+        long[] agrupados;
+        
+        Agregacao(DimensaoAnalitica dimensao, int mesInicial, int mesFinal) {
+            this.dimensao = dimensao;
+            this.mesInicial = mesInicial;
+            this.mesFinal = mesFinal;
+            this.codigosModalidade = dimensao == DimensaoAnalitica.MODALIDADE ? modalidades : null;
+            this.deslocamento = dimensao == DimensaoAnalitica.MES ? menorMes : 0;
+            switch (dimensao) {
+                case MODALIDADE:
+                    this.quantidadeGrupos = MODALIDADES.length;
+                    this.codigos = null;
+                    break;
+                case CATEGORIA_FORNECEDOR:
+                    this.quantidadeGrupos = nomesCategorias.length;
+                    this.codigos = categorias;
+                    break;
+                case DEPARTAMENTO:
+                    this.quantidadeGrupos = nomesDepartamentos.length;
+                    this.codigos = departamentos;
+                    break;
+                default:
+                    this.quantidadeGrupos = maiorMes - menorMes + 1;
+                    this.codigos = meses;
+                    break;
+            }
+            this.quantidadeBlocos = (linhas + TAMANHO_BLOCO - 1) / TAMANHO_BLOCO;
+            this.quantidades = new long[quantidadeBlocos][quantidadeGrupos];
+            this.somas = new long[quantidadeBlocos][quantidadeGrupos];
+            this.minimos = new long[quantidadeBlocos][quantidadeGrupos];
+            this.maximos = new long[quantidadeBlocos][quantidadeGrupos];
+        }
+        
+        String nomeGrupo(int grupo) {
+            switch (dimensao) {
+                case MODALIDADE: return MODALIDADES[grupo].name();
+                case CATEGORIA_FORNECEDOR: return nomesCategorias[grupo];
+                case DEPARTAMENTO: return nomesDepartamentos[grupo];
+                default: return YearMonth.of((menorMes + grupo) / 12, (menorMes + grupo) % 12 + 1).toString();
+            }
+        }
+        
+        int grupo(int linha) {
+            return codigosModalidade != null ? codigosModalidade[linha] : codigos[linha] - deslocamento;
+        }
+        
+        void processar(int bloco) {
+            int inicio = bloco * TAMANHO_BLOCO;
+            int fim = Math.min(linhas, inicio + TAMANHO_BLOCO);
+            boolean filtrarMes = mesInicial > menorMes || mesFinal < maiorMes;
+            
+            if (agrupados != null) {
+                int[] posicoes = destinos[bloco].clone();
+                for (int linha = inicio; linha < fim; linha++) {
+                    if (!filtrarMes || (meses[linha] >= mesInicial && meses[linha] <= mesFinal)) {
+                        agrupados[posicoes[grupo(linha)]++] = valores[linha];
+                    }
+                }
+                return;
+            }
+            
+            long[] quantidadesBloco = quantidades[bloco];
+            long[] somasBloco = somas[bloco];
+            long[] minimosBloco = minimos[bloco];
+            long[] maximosBloco = maximos[bloco];
+            Arrays.fill(minimosBloco, Long.MAX_VALUE);
+            Arrays.fill(maximosBloco, Long.MIN_VALUE);
+            for (int linha = inicio; linha < fim; linha++) {
+                if (filtrarMes && (meses[linha] < mesInicial || meses[linha] > mesFinal)) {
+                    continue;
+                }
+                int grupo = grupo(linha);
+                long valor = valores[linha];
+                quantidadesBloco[grupo]++;
+                somasBloco[grupo] = Dinheiro.somar(somasBloco[grupo], valor);
+                minimosBloco[grupo] = Math.min(minimosBloco[grupo], valor);
+                maximosBloco[grupo] = Math.max(maximosBloco[grupo], valor);
+            }
+        }
+    }
+    
+    /**
+     * Processa um intervalo de blocos, dividindo-o ao meio até restar um bloco
+     */
+    private static final class Blocos extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        
+        private final transient Agregacao agregacao;
+        private final int inicio;
+        private final int fim;
+        
+        Blocos(Agregacao agregacao, int inicio, int fim) {
+            this.agregacao = agregacao;
+            this.inicio = inicio;
+            this.fim = fim;
+        }
+        
+        @Override
+        protected void compute() {
+            if (fim - inicio <= 1) {
+                if (fim > inicio) {
+                    agregacao.processar(inicio);
+                }
+                return;
+            }
+            int meio = (inicio + fim) >>> 1;
+            invokeAll(new Blocos(agregacao, inicio, meio), new Blocos(agregacao, meio, fim));
+        }
+    }
+    
+    /**
+     * Percentis de um grupo por seleção: cada posição pedida é colocada no lugar que ocuparia no
+     * grupo ordenado, e as seleções seguintes só percorrem o trecho à direita dela
+     */
+    private static final class Selecao extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        
+        private final long[] dados;
+        private final int inicio;
+        private final int fim;
+        private final double[] percentis;
+        private final long[] resultado;
+        
+        Selecao(long[] dados, int inicio, int fim, double[] percentis, long[] resultado) {
+            this.dados = dados;
+            this.inicio = inicio;
+            this.fim = fim;
+            this.percentis = percentis;
+            this.resultado = resultado;
+        }
+        
+        @Override
+        protected void compute() {
+            int quantidade = fim - inicio;
+            Integer[] ordem = new Integer[percentis.length];
+            for (int p = 0; p < ordem.length; p++) {
+                ordem[p] = p;
+            }
+            Arrays.sort(ordem, Comparator.comparingDouble(p -> percentis[p]));
+            
+            int esquerda = inicio;
+            for (int p : ordem) {
+                int posicao = inicio + (int) Math.max(0, Math.min(quantidade - 1, (long) Math.ceil(percentis[p] * quantidade) - 1));
+                selecionar(esquerda, fim - 1, posicao);
+                resultado[p] = dados[posicao];
+                esquerda = posicao;
+            }
+        }
+        
+        // Quickselect com pivô pela mediana de três e partição de Hoare
+        private void selecionar(int esquerda, int direita, int posicao) {
+            while (esquerda < direita) {
+                int meio = (esquerda + direita) >>> 1;
+                long pivo = mediana(dados[esquerda], dados[meio], dados[direita]);
+                int i = esquerda;
+                int j = direita;
+                while (i <= j) {
+                    while (dados[i] < pivo) {
+                        i++;
+                    }
+                    while (dados[j] > pivo) {
+                        j--;
+                    }
+                    if (i <= j) {
+                        long troca = dados[i];
+                        dados[i] = dados[j];
+                        dados[j] = troca;
+                        i++;
+                        j--;
+                    }
+                }
+                if (posicao <= j) {
+                    direita = j;
+                } else if (posicao >= i) {
+                    esquerda = i;
+                } else {
+                    return;
+                }
+            }
+        }
+        
+        private static long mediana(long a, long b, long c) {
+            return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+        }
+    }
+}
+
+/**
+ * Origem de um preço registrado na pesquisa de preços
+ */
+enum OrigemPreco {
+    PROPOSTA,   // proposta recebida em um processo, inclusive o último lance de um pregão
+    CONTRATO    // valor contratado
+}
+
+/**
+ * Esboço de quantis com erro relativo limitado, para valores em centavos.
+ * 
+ * Cada valor positivo é contado na faixa ceil(log(valor) / log(GAMA)); o valor devolvido para
+ * uma faixa difere de qualquer valor contado nela em no máximo ERRO_RELATIVO. As contagens
+ * ficam em um array que cobre apenas as faixas entre a menor e a maior observadas: preços de um
+ * mesmo item costumam caber em poucas centenas de faixas e nenhum esboço passa de
+ * cerca de 2.200, qualquer que seja a quantidade de valores. Esboços se combinam somando as
+ * contagens, o que permite guardar um esboço por ano e combiná-los na consulta.
+ * 
+ * Não é thread-safe; o IndicePrecos serializa o acesso.
+ */
+final class EsbocoQuantis {
+    static final double ERRO_RELATIVO = 0.01;
+    private static final double GAMA = (1 + ERRO_RELATIVO) / (1 - ERRO_RELATIVO);
+    private static final double LOG_GAMA = Math.log(GAMA);
+    
+    private long[] contagens;
+    private int primeiraFaixa;
+    private long zeros;
+    private long quantidade;
+    private long soma;
+    private long minimo;
+    private long maximo;
+    
+    EsbocoQuantis() {
+        this.contagens = new long[0];
+        this.minimo = Long.MAX_VALUE;
+        this.maximo = Long.MIN_VALUE;
+    }
+    
+    public void adicionar(long centavos) {
+        if (centavos < 0) {
+            throw new IllegalArgumentException("Preço não pode ser negativo: " + centavos);
+        }
+        if (centavos == 0) {
+            zeros++;
+        } else {
+            int faixa = faixa(centavos);
+            reservar(faixa, faixa);
+            contagens[faixa - primeiraFaixa]++;
+        }
+        acumular(1, centavos, centavos, centavos);
+    }
+    
+    public void combinar(EsbocoQuantis outro) {
+        if (outro.quantidade == 0) {
+            return;
+        }
+        if (outro.contagens.length > 0) {
+            reservar(outro.primeiraFaixa, outro.primeiraFaixa + outro.contagens.length - 1);
+            int deslocamento = outro.primeiraFaixa - primeiraFaixa;
+            for (int i = 0; i < outro.contagens.length; i++) {
+                contagens[deslocamento + i] += outro.contagens[i];
+            }
+        }
+        zeros += outro.zeros;
+        acumular(outro.quantidade, outro.soma, outro.minimo, outro.maximo);
+    }
+    
+    /**
+     * Valor aproximado de posição ceil(fracao * quantidade) na ordem crescente, limitado ao
+     * mínimo e ao máximo observados (que são exatos)
+     */
+    public long quantil(double fracao) {
+        if (!(fracao > 0 && fracao <= 1)) {
+            throw new IllegalArgumentException("Fração deve estar entre 0 (exclusive) e 1: " + fracao);
+        }
+        if (quantidade == 0) {
+            throw new IllegalStateException("Nenhum preço registrado");
+        }
+        long posicao = Math.max(1, (long) Math.ceil(fracao * quantidade));
+        long acumulado = zeros;
+        if (acumulado >= posicao) {
+            return 0;
+        }
+        for (int i = 0; i < contagens.length; i++) {
+            acumulado += contagens[i];
+            if (acumulado >= posicao) {
+                long estimado = Math.round(2 * Math.pow(GAMA, primeiraFaixa + i) / (GAMA + 1));
+                return Math.max(minimo, Math.min(maximo, estimado));
+            }
+        }
+        return maximo;
+    }
+    
+    public long getQuantidade() { return quantidade; }
+    public long getSoma() { return soma; }
+    public long getMinimo() { return minimo; }
+    public long getMaximo() { return maximo; }
+    
+    public int getQuantidadeFaixas() {
+        return contagens.length;
+    }
+    
+    public EsbocoQuantis copiar() {
+        EsbocoQuantis copia = new EsbocoQuantis();
+        copia.combinar(this);
+        return copia;
+    }
+    
+    private void acumular(long quantidade, long soma, long minimo, long maximo) {
+        this.quantidade += quantidade;
+        this.soma = Dinheiro.somar(this.soma, soma);
+        this.minimo = Math.min(this.minimo, minimo);
+        this.maximo = Math.max(this.maximo, maximo);
+    }
+    
+    // Amplia o array de contagens para cobrir as faixas de inicio a fim
+    private void reservar(int inicio, int fim) {
+        if (contagens.length == 0) {
+            contagens = new long[fim - inicio + 1];
+            primeiraFaixa = inicio;
+            return;
+        }
+        int ultimaFaixa = primeiraFaixa + contagens.length - 1;
+        if (inicio >= primeiraFaixa && fim <= ultimaFaixa) {
+            return;
+        }
+        int novaPrimeira = Math.min(inicio, primeiraFaixa);
+        long[] ampliado = new long[Math.max(fim, ultimaFaixa) - novaPrimeira + 1];
+        System.arraycopy(contagens, 0, ampliado, primeiraFaixa - novaPrimeira, contagens.length);
+        contagens = ampliado;
+        primeiraFaixa = novaPrimeira;
+    }
+    
+    private static int faixa(long centavos) {
+        return (int) Math.ceil(Math.log(centavos) / LOG_GAMA);
+    }
+}
+
+/**
+ * Resultado de uma pesquisa de preços: estatísticas dos preços unitários (em centavos) de uma
+ * origem no período consultado. Mínimo, máximo, média e quantidade são exatos; mediana e
+ * quantis vêm do EsbocoQuantis, com erro relativo de até EsbocoQuantis.ERRO_RELATIVO.
+ */
+final class ReferenciaPrecos {
+    private final String descricao;
+    private final UnidadeMedida unidade;
+    private final OrigemPreco origem;
+    private final EsbocoQuantis esboco;
+    
+    ReferenciaPrecos(String descricao, UnidadeMedida unidade, OrigemPreco origem, EsbocoQuantis esboco) {
+        this.descricao = descricao;
+        this.unidade = unidade;
+        this.origem = origem;
+        this.esboco = esboco;
+    }
+    
+    /**
+     * Descrição normalizada que identifica o item no índice
+     */
+    public String getDescricao() { return descricao; }
+    public UnidadeMedida getUnidade() { return unidade; }
+    public OrigemPreco getOrigem() { return origem; }
+    public long getQuantidade() { return esboco.getQuantidade(); }
+    public long getMinimo() { return esboco.getMinimo(); }
+    public long getMaximo() { return esboco.getMaximo(); }
+    public long getMedia() { return Math.round((double) esboco.getSoma() / esboco.getQuantidade()); }
+    public long getMediana() { return esboco.quantil(0.5); }
+    
+    public long getQuantil(double fracao) {
+        return esboco.quantil(fracao);
+    }
+}
+
+/**
+ * Histórico de preços unitários para a pesquisa de preços, por descrição normalizada do item
+ * e unidade de medida.
+ * 
+ * A descrição é o nome do item reduzido pelo AnalisadorTextual (sem acentos, palavras vazias e
+ * plural) com os termos em ordem alfabética, de modo que "Cadeiras giratórias" e "Cadeira
+ * Giratória" compartilham o histórico. Cada série guarda, por origem e por ano, um
+ * EsbocoQuantis: registrar um preço custa um logaritmo e um incremento, e uma consulta combina
+ * no máximo um esboço por ano do período, independentemente da quantidade de preços.
+ * 
+ * Propostas e contratos têm valor global; o preço unitário de cada item é obtido rateando
+ * esse valor na proporção do valor estimado do item no processo. Com um único item o rateio
+ * é exato. Os valores estimados dos itens não entram no histórico, pois a pesquisa de preços
+ * é justamente a fonte das estimativas.
+ */
+class IndicePrecos {
+    private final Map<String, Serie> series;
+    
+    IndicePrecos() {
+        this.series = new ConcurrentHashMap<>();
+    }
+    
+    /**
+     * Descrição normalizada usada como chave, ou uma string vazia se a descrição não tiver termos
+     */
+    public static String normalizar(String descricao) {
+        List<String> termos = AnalisadorTextual.termosConsulta(descricao);
+        Collections.sort(termos);
+        return String.join(" ", termos);
+    }
+    
+    /**
+     * Registra o valor global de uma proposta ou contrato rateado entre os itens do processo
+     */
+    public void registrar(ProcessoAquisicao processo, OrigemPreco origem, int ano, long valorTotal) {
+        // Estatística de referência: o rateio em ponto flutuante não precisa ser exato ao centavo
+        double estimado = 0;
+        for (Item item : processo.getItens()) {
+            estimado += (double) item.getValorUnitario() * item.getQuantidade();
+        }
+        if (!(estimado > 0)) {
+            return;
+        }
+        double fator = valorTotal / estimado;
+        for (Item item : processo.getItens()) {
+            if (item.getQuantidade() > 0 && item.getValorUnitario() > 0) {
+                registrar(item.getNome(), item.getUnidade(), origem, ano, Math.round(item.getValorUnitario() * fator));
+            }
+        }
+    }
+    
+    public void registrar(String descricao, UnidadeMedida unidade, OrigemPreco origem, int ano, long valorUnitario) {
+        String normalizada = normalizar(descricao);
+        if (normalizada.isEmpty() || unidade == null) {
+            return;
+        }
+        series.computeIfAbsent(chave(normalizada, unidade), chave -> new Serie()).registrar(origem, ano, valorUnitario);
+    }
+    
+    /**
+     * Estatísticas dos preços da origem registrados de anoInicial a anoFinal (inclusive),
+     * ou null se não houver nenhum
+     */
+    public ReferenciaPrecos consultar(String descricao, UnidadeMedida unidade, OrigemPreco origem, 
+                                      int anoInicial, int anoFinal) {
+        String normalizada = normalizar(descricao);
+        if (normalizada.isEmpty()) {
+            throw new IllegalArgumentException("Descrição sem termos para a pesquisa de preços: " + descricao);
+        }
+        if (anoInicial > anoFinal) {
+            throw new IllegalArgumentException("Ano inicial posterior ao final: " + anoInicial + " > " + anoFinal);
+        }
+        Serie serie = series.get(chave(normalizada, Objects.requireNonNull(unidade, "unidade")));
+        EsbocoQuantis esboco = serie != null ? serie.combinar(origem, anoInicial, anoFinal) : null;
+        return esboco != null ? new ReferenciaPrecos(normalizada, unidade, origem, esboco) : null;
+    }
+    
+    public int getQuantidadeSeries() {
+        return series.size();
+    }
+    
+    private static String chave(String normalizada, UnidadeMedida unidade) {
+        return normalizada + '\u0000' + unidade.name();
+    }
+    
+    // Preços de um item e unidade, por origem e ano
+    private static final class Serie {
+        private final Map<OrigemPreco, TreeMap<Integer, EsbocoQuantis>> esbocos = new EnumMap<>(OrigemPreco.class);
+        
+        synchronized void registrar(OrigemPreco origem, int ano, long valorUnitario) {
+            esbocos.computeIfAbsent(origem, o -> new TreeMap<>())
+                .computeIfAbsent(ano, a -> new EsbocoQuantis())
+                .adicionar(valorUnitario);
+        }
+        
+        synchronized EsbocoQuantis combinar(OrigemPreco origem, int anoInicial, int anoFinal) {
+            TreeMap<Integer, EsbocoQuantis> porAno = esbocos.get(origem);
+            if (porAno == null) {
+                return null;
+            }
+            EsbocoQuantis combinado = null;
+            for (EsbocoQuantis esboco : porAno.subMap(anoInicial, true, anoFinal, true).values()) {
+                if (combinado == null) {
+                    combinado = esboco.copiar();
+                } else {
+                    combinado.combinar(esboco);
+                }
+            }
+            return combinado;
+        }
+    }
+}
+
+/**
+ * Tipos de alerta de prazo
+ */
+enum TipoAlertaPrazo {
+    VENCIMENTO_CONTRATO,   // o fim da vigência do contrato se aproxima
+    PRAZO_ETAPA            // o prazo da etapa atual do processo vence ou venceu
+}
+
+/**
+ * Alerta emitido pela agenda de prazos
+ */
+final class AlertaPrazo {
+    private static final DateTimeFormatter FORMATO_DATA = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+    
+    private final TipoAlertaPrazo tipo;
+    private final String numero;
+    private final LocalDate data;
+    private final LocalDate dataLimite;
+    private final EtapaProcesso etapa;
+    
+    AlertaPrazo(TipoAlertaPrazo tipo, String numero, LocalDate data, LocalDate dataLimite, EtapaProcesso etapa) {
+        this.tipo = tipo;
+        this.numero = numero;
+        this.data = data;
+        this.dataLimite = dataLimite;
+        this.etapa = etapa;
+    }
+    
+    public TipoAlertaPrazo getTipo() { return tipo; }
+    
+    /**
+     * Número do contrato (VENCIMENTO_CONTRATO) ou do processo (PRAZO_ETAPA)
+     */
+    public String getNumero() { return numero; }
+    
+    /**
+     * Dia para o qual o alerta foi agendado
+     */
+    public LocalDate getData() { return data; }
+    
+    /**
+     * Fim da vigência do contrato ou último dia do prazo da etapa
+     */
+    public LocalDate getDataLimite() { return dataLimite; }
+    
+    /**
+     * Etapa cujo prazo é alertado, ou null para vencimento de contrato
+     */
+    public EtapaProcesso getEtapa() { return etapa; }
+    
+    public long getDiasRestantes() {
+        return dataLimite.toEpochDay() - data.toEpochDay();
+    }
+    
+    public String getDescricao() {
+        long dias = getDiasRestantes();
+        if (tipo == TipoAlertaPrazo.VENCIMENTO_CONTRATO) {
+            return "Vigência do contrato " + numero + " termina em " + dias + (dias == 1 ? " dia" : " dias") + 
+                   " (" + dataLimite.format(FORMATO_DATA) + ")";
+        }
+        String prazo = "Prazo da etapa " + etapa + " do processo " + numero;
+        if (dias < 0) {
+            return prazo + " venceu em " + dataLimite.format(FORMATO_DATA);
+        }
+        return dias == 0 ? prazo + " vence hoje" : prazo + " vence em " + dataLimite.format(FORMATO_DATA);
+    }
+}
+
+/**
+ * Recebe os alertas de prazo do sistema (e-mail, fila de mensagens, painel).
+ * 
+ * As chamadas ocorrem na thread de verificação de prazos, uma de cada vez e em ordem de data;
+ * um destino lento atrasa os demais. Exceções lançadas pelo destino não interrompem a entrega
+ * aos demais: são contadas em SistemaAquisicoes.getFalhasDestinosAlertas.
+ */
+interface DestinoAlertas {
+    void alertar(AlertaPrazo alerta);
+}
+
+/**
+ * Agenda de alertas de prazo com resolução de um dia, em roda de temporização hierárquica.
+ * 
+ * São três níveis de 64 posições: o primeiro cobre os próximos 64 dias, um dia por posição; o
+ * segundo, blocos de 64 dias; o terceiro, blocos de 4.096 dias. Agendar é O(1). Avançar um dia
+ * dispara apenas a posição do dia e, a cada 64 e 4.096 dias, redistribui uma única posição do
+ * nível acima, sem percorrer os demais alertas pendentes. Datas além de 64³ dias (cerca de
+ * 700 anos) ficam em uma lista de transbordo revista a cada 4.096 dias, e datas já alcançadas
+ * são entregues na verificação seguinte.
+ * 
+ * Os alertas ficam em arrays primitivos paralelos, encadeados por índice, com cerca de 20 bytes
+ * por alerta além da referência ao número (compartilhada com o contrato ou processo). As
+ * posições liberadas são reaproveitadas e os arrays crescem até a capacidade máxima
+ * informada; com a agenda cheia, novos alertas são descartados e contados em getDescartados.
+ * Não há cancelamento: quem consome os alertas descarta os que deixaram de valer.
+ */
+class AgendaPrazos {
+    static final int CAPACIDADE_MAXIMA_PADRAO = 1 << 23;
+    private static final int CAPACIDADE_INICIAL = 1024;
+    private static final int BITS_NIVEL = 6;
+    private static final int POSICOES = 1 << BITS_NIVEL;
+    private static final int NIVEIS = 3;
+    private static final int PENDENTES = NIVEIS * POSICOES;
+    private static final int TRANSBORDO = PENDENTES + 1;
+    private static final int NENHUM = -1;
+    private static final TipoAlertaPrazo[] TIPOS = TipoAlertaPrazo.values();
+    private static final EtapaProcesso[] ETAPAS = EtapaProcesso.values();
+    
+    private final int capacidadeMaxima;
+    private final int[] cabecas;
+    private int[] dias;
+    private int[] limites;
+    private int[] proximos;
+    private byte[] tipos;
+    private byte[] etapas;
+    private String[] numeros;
+    private int usados;
+    private int livre;
+    private int quantidade;
+    private long descartados;
+    private int diaAtual;
+    
+    /**
+     * Cria a agenda considerando já verificados os dias até ultimoDiaVerificado, inclusive
+     */
+    AgendaPrazos(LocalDate ultimoDiaVerificado, int capacidadeMaxima) {
+        if (capacidadeMaxima <= 0) {
+            throw new IllegalArgumentException("Capacidade da agenda deve ser positiva");
+        }
+        this.capacidadeMaxima = capacidadeMaxima;
+        this.cabecas = new int[TRANSBORDO + 1];
+        Arrays.fill(cabecas, NENHUM);
+        int capacidade = Math.min(CAPACIDADE_INICIAL, capacidadeMaxima);
+        this.dias = new int[capacidade];
+        this.limites = new int[capacidade];
+        this.proximos = new int[capacidade];
+        this.tipos = new byte[capacidade];
+        this.etapas = new byte[capacidade];
+        this.numeros = new String[capacidade];
+        this.livre = NENHUM;
+        this.diaAtual = Math.toIntExact(ultimoDiaVerificado.toEpochDay());
+    }
+    
+    /**
+     * Agenda o alerta para o dia informado; retorna false se a agenda estiver cheia
+     * 
+     * @param etapa etapa do prazo, ou null para vencimento de contrato
+     */
+    public synchronized boolean agendar(LocalDate data, TipoAlertaPrazo tipo, String numero, 
+                                        LocalDate dataLimite, EtapaProcesso etapa) {
+        int alerta = alocar();
+        if (alerta == NENHUM) {
+            descartados++;
+            return false;
+        }
+        dias[alerta] = Math.toIntExact(data.toEpochDay());
+        limites[alerta] = Math.toIntExact(dataLimite.toEpochDay());
+        tipos[alerta] = (byte) tipo.ordinal();
+        etapas[alerta] = (byte) (etapa != null ? etapa.ordinal() : -1);
+        numeros[alerta] = numero;
+        quantidade++;
+        inserir(alerta);
+        return true;
+    }
+    
+    /**
+     * Avança a agenda até o dia informado, inclusive, e retorna os alertas vencidos em ordem de data
+     */
+    public synchronized List<AlertaPrazo> avancar(LocalDate hoje) {
+        List<AlertaPrazo> vencidos = new ArrayList<>();
+        coletar(PENDENTES, vencidos);
+        int alvo = Math.toIntExact(hoje.toEpochDay());
+        while (diaAtual < alvo) {
+            diaAtual++;
+            // Os níveis superiores descem antes que a posição do dia seja disparada
+            if ((diaAtual & (POSICOES * POSICOES - 1)) == 0) {
+                redistribuir(TRANSBORDO);
+                redistribuir(2 * POSICOES + ((diaAtual >> 2 * BITS_NIVEL) & (POSICOES - 1)));
+            }
+            if ((diaAtual & (POSICOES - 1)) == 0) {
+                redistribuir(POSICOES + ((diaAtual >> BITS_NIVEL) & (POSICOES - 1)));
+                // Alertas do próprio dia que desceram de um nível superior ficam entre os pendentes
+                coletar(PENDENTES, vencidos);
+            }
+            coletar(diaAtual & (POSICOES - 1), vencidos);
+        }
+        return vencidos;
+    }
+    
+    /**
+     * Último dia já verificado
+     */
+    public synchronized LocalDate getDiaAtual() {
+        return LocalDate.ofEpochDay(diaAtual);
+    }
+    
+    public synchronized int getQuantidade() {
+        return quantidade;
+    }
+    
+    public synchronized long getDescartados() {
+        return descartados;
+    }
+    
+    private void inserir(int alerta) {
+        int distancia = dias[alerta] - diaAtual;
+        int posicao;
+        if (distancia <= 0) {
+            posicao = PENDENTES;
+        } else if (distancia < POSICOES) {
+            posicao = dias[alerta] & (POSICOES - 1);
+        } else if (distancia < POSICOES * POSICOES) {
+            posicao = POSICOES + ((dias[alerta] >> BITS_NIVEL) & (POSICOES - 1));
+        } else if (distancia < POSICOES * POSICOES * POSICOES) {
+            posicao = 2 * POSICOES + ((dias[alerta] >> 2 * BITS_NIVEL) & (POSICOES - 1));
+        } else {
+            posicao = TRANSBORDO;
+        }
+        proximos[alerta] = cabecas[posicao];
+        cabecas[posicao] = alerta;
+    }
+    
+    private void redistribuir(int posicao) {
+        int alerta = cabecas[posicao];
+        cabecas[posicao] = NENHUM;
+        while (alerta != NENHUM) {
+            int proximo = proximos[alerta];
+            inserir(alerta);
+            alerta = proximo;
+        }
+    }
+    
+    private void coletar(int posicao, List<AlertaPrazo> vencidos) {
+        int alerta = cabecas[posicao];
+        cabecas[posicao] = NENHUM;
+        while (alerta != NENHUM) {
+            vencidos.add(new AlertaPrazo(TIPOS[tipos[alerta]], numeros[alerta], LocalDate.ofEpochDay(dias[alerta]), 
+                                         LocalDate.ofEpochDay(limites[alerta]), 
+                                         etapas[alerta] >= 0 ? ETAPAS[etapas[alerta]] : null));
+            int proximo = proximos[alerta];
+            liberar(alerta);
+            alerta = proximo;
+        }
+    }
+    
+    private int alocar() {
+        if (livre != NENHUM) {
+            int alerta = livre;
+            livre = proximos[alerta];
+            return alerta;
+        }
+        if (usados == dias.length) {
+            if (dias.length == capacidadeMaxima) {
+                return NENHUM;
+            }
+            int capacidade = (int) Math.min((long) dias.length * 2, capacidadeMaxima);
+            dias = Arrays.copyOf(dias, capacidade);
+            limites = Arrays.copyOf(limites, capacidade);
+            proximos = Arrays.copyOf(proximos, capacidade);
+            tipos = Arrays.copyOf(tipos, capacidade);
+            etapas = Arrays.copyOf(etapas, capacidade);
+            numeros = Arrays.copyOf(numeros, capacidade);
+        }
+        return usados++;
+    }
+    
+    private void liberar(int alerta) {
+        numeros[alerta] = null;
+        proximos[alerta] = livre;
+        livre = alerta;
+        quantidade--;
+    }
+}
+
+/**
+ * Máquina de estados das etapas do processo de aquisição.
+ * 
+ * As transições permitidas e as etapas que cada tipo de usuário pode registrar são declaradas
+ * em EnumMaps e convertidas, na criação, em tabelas de bits indexadas pelo ordinal: uma palavra
+ * long por etapa de origem e uma por tipo de usuário, com um bit por etapa de destino. Verificar
+ * um avanço é um AND entre as duas palavras e o bit do destino, sem alocação e sem percorrer
+ * coleções.
+ * 
+ * Na tabela padrão, uma etapa de preparação ou de seleção avança para qualquer etapa posterior
+ * até a contratação (a modalidade pode dispensar etapas, como o edital na contratação direta);
+ * a contratação avança para a execução do contrato ou para a conclusão, e a execução para a
+ * conclusão. Qualquer etapa que não seja final pode ser cancelada; concluído e cancelado são finais.
+ */
+final class MaquinaEtapas {
+    private static final EtapaProcesso[] ETAPAS = EtapaProcesso.values();
+    
+    private final long[] transicoes;
+    private final long[] permissoes;
+    
+    MaquinaEtapas(Map<EtapaProcesso, ? extends Set<EtapaProcesso>> transicoes, 
+                  Map<TipoUsuario, ? extends Set<EtapaProcesso>> permissoes) {
+        if (ETAPAS.length > Long.SIZE) {
+            throw new IllegalStateException("Etapas demais para a tabela de bits: " + ETAPAS.length);
+        }
+        this.transicoes = new long[ETAPAS.length];
+        for (Map.Entry<EtapaProcesso, ? extends Set<EtapaProcesso>> entrada : transicoes.entrySet()) {
+            this.transicoes[entrada.getKey().ordinal()] = bits(entrada.getValue());
+        }
+        this.permissoes = new long[TipoUsuario.values().length];
+        for (Map.Entry<TipoUsuario, ? extends Set<EtapaProcesso>> entrada : permissoes.entrySet()) {
+            this.permissoes[entrada.getKey().ordinal()] = bits(entrada.getValue());
+        }
+    }
+    
+    /**
+     * Tabelas padrão; as permissões por tipo de usuário são as do fluxo de aquisições da Fundação
+     */
+    static MaquinaEtapas padrao() {
+        Map<EtapaProcesso, EnumSet<EtapaProcesso>> transicoes = new EnumMap<>(EtapaProcesso.class);
+        for (EtapaProcesso etapa : EnumSet.range(EtapaProcesso.ELABORACAO_TERMO_REFERENCIA, EtapaProcesso.HOMOLOGACAO)) {
+            EnumSet<EtapaProcesso> destinos = EnumSet.range(etapa, EtapaProcesso.CONTRATACAO);
+            destinos.remove(etapa);
+            destinos.add(EtapaProcesso.CANCELADO);
+            transicoes.put(etapa, destinos);
+        }
+        transicoes.put(EtapaProcesso.CONTRATACAO, 
+                       EnumSet.of(EtapaProcesso.EXECUCAO_CONTRATO, EtapaProcesso.CONCLUIDO, EtapaProcesso.CANCELADO));
+        transicoes.put(EtapaProcesso.EXECUCAO_CONTRATO, EnumSet.of(EtapaProcesso.CONCLUIDO, EtapaProcesso.CANCELADO));
+        
+        Map<TipoUsuario, EnumSet<EtapaProcesso>> permissoes = new EnumMap<>(TipoUsuario.class);
+        permissoes.put(TipoUsuario.GESTOR, EnumSet.of(
+            EtapaProcesso.ELABORACAO_TERMO_REFERENCIA, EtapaProcesso.PESQUISA_PRECOS, EtapaProcesso.ELABORACAO_EDITAL, 
+            EtapaProcesso.PUBLICACAO_EDITAL, EtapaProcesso.RECEBIMENTO_PROPOSTAS, EtapaProcesso.ANALISE_PROPOSTAS, 
+            EtapaProcesso.CONCLUIDO, EtapaProcesso.CANCELADO));
+        permissoes.put(TipoUsuario.ORDENADOR_DESPESA, EnumSet.of(
+            EtapaProcesso.HOMOLOGACAO, EtapaProcesso.CONTRATACAO, EtapaProcesso.CONCLUIDO, EtapaProcesso.CANCELADO));
+        permissoes.put(TipoUsuario.FISCAL_CONTRATO, EnumSet.of(EtapaProcesso.EXECUCAO_CONTRATO));
+        return new MaquinaEtapas(transicoes, permissoes);
+    }
+    
+    /**
+     * Se o usuário do tipo informado pode levar um processo da etapa atual para a nova etapa
+     */
+    public boolean permite(TipoUsuario tipo, EtapaProcesso atual, EtapaProcesso nova) {
+        return ((transicoes[atual.ordinal()] & permissoes[tipo.ordinal()]) >>> nova.ordinal() & 1L) != 0;
+    }
+    
+    public boolean permiteTransicao(EtapaProcesso atual, EtapaProcesso nova) {
+        return (transicoes[atual.ordinal()] >>> nova.ordinal() & 1L) != 0;
+    }
+    
+    /**
+     * Se o tipo de usuário pode registrar a etapa, vindo de qualquer etapa
+     */
+    public boolean permiteUsuario(TipoUsuario tipo, EtapaProcesso nova) {
+        return (permissoes[tipo.ordinal()] >>> nova.ordinal() & 1L) != 0;
+    }
+    
+    public boolean etapaFinal(EtapaProcesso etapa) {
+        return transicoes[etapa.ordinal()] == 0;
+    }
+    
+    /**
+     * Etapas para as quais o usuário do tipo informado pode levar um processo na etapa atual
+     */
+    public Set<EtapaProcesso> proximasEtapas(TipoUsuario tipo, EtapaProcesso atual) {
+        Set<EtapaProcesso> etapas = EnumSet.noneOf(EtapaProcesso.class);
+        for (long bits = transicoes[atual.ordinal()] & permissoes[tipo.ordinal()]; bits != 0; bits &= bits - 1) {
+            etapas.add(ETAPAS[Long.numberOfTrailingZeros(bits)]);
+        }
+        return etapas;
+    }
+    
+    private static long bits(Set<EtapaProcesso> etapas) {
+        long bits = 0;
+        for (EtapaProcesso etapa : etapas) {
+            bits |= 1L << etapa.ordinal();
+        }
+        return bits;
+    }
+}
+
+/**
+ * Evento de domínio publicado pelo SistemaAquisicoes no BarramentoEventos a cada alteração de
+ * estado, depois de gravada no log de persistência e aplicada.
+ * 
+ * O evento guarda apenas referências e valores já calculados pela operação; o tipo e a descrição
+ * do registro de auditoria são montados sob demanda pelo assinante, fora da thread da requisição.
+ */
+abstract class EventoDominio {
+    // NumberFormat não é thread-safe; cada thread de assinante usa sua própria instância
+    private static final ThreadLocal<NumberFormat> FORMATO_MOEDA = 
+        ThreadLocal.withInitial(() -> NumberFormat.getCurrencyInstance(Locale.forLanguageTag("pt-BR")));
+    
+    private final long instante;
+    private final Usuario usuario;
+    
+    protected EventoDominio(Usuario usuario) {
+        this.instante = System.currentTimeMillis();
+        this.usuario = usuario;
+    }
+    
+    /**
+     * Momento da operação, em milissegundos desde a época
+     */
+    public long getInstante() { return instante; }
+    
+    /**
+     * Usuário responsável pela operação, ou null
+     */
+    public Usuario getUsuario() { return usuario; }
+    
+    public String getNumeroProcesso() { return null; }
+    public String getNumeroContrato() { return null; }
+    
+    /**
+     * Tipo do registro de auditoria do evento
+     */
+    public abstract String getTipo();
+    
+    /**
+     * Descrição do registro de auditoria do evento
+     */
+    public abstract String getDescricao();
+    
+    protected static String formatarValor(long centavos) {
+        return Dinheiro.formatar(FORMATO_MOEDA.get(), centavos);
+    }
+}
+
+/**
+ * Evento que se refere a um processo de aquisição
+ */
+abstract class EventoProcesso extends EventoDominio {
+    private final ProcessoAquisicao processo;
+    
+    protected EventoProcesso(ProcessoAquisicao processo, Usuario usuario) {
+        super(usuario);
+        this.processo = processo;
+    }
+    
     public ProcessoAquisicao getProcesso() { return processo; }
-    public LocalDateTime getDataEnvio() { return dataEnvio; }
-    public double getValorTotal() { return valorTotal; }
-    public String getDescricao() { return descricao; }
+    
+    @Override
+    public String getNumeroProcesso() { return processo.getNumero(); }
+}
+
+/**
+ * Evento que se refere a um contrato e, por meio dele, ao seu processo
+ */
+abstract class EventoContrato extends EventoDominio {
+    private final Contrato contrato;
+    
+    protected EventoContrato(Contrato contrato, Usuario usuario) {
+        super(usuario);
+        this.contrato = contrato;
+    }
+    
+    public Contrato getContrato() { return contrato; }
+    
+    @Override
+    public String getNumeroProcesso() { return contrato.getProcesso().getNumero(); }
+    
+    @Override
+    public String getNumeroContrato() { return contrato.getNumero(); }
+}
+
+final class UsuarioCadastrado extends EventoDominio {
+    UsuarioCadastrado(Usuario usuario) {
+        super(usuario);
+    }
+    
+    @Override
+    public String getTipo() { return "Cadastro de Usuário"; }
+    
+    @Override
+    public String getDescricao() { return "Usuário cadastrado: " + getUsuario().getNome(); }
+}
+
+final class FornecedorCadastrado extends EventoDominio {
+    private final Fornecedor fornecedor;
+    
+    FornecedorCadastrado(Fornecedor fornecedor) {
+        super(null);
+        this.fornecedor = fornecedor;
+    }
+    
+    public Fornecedor getFornecedor() { return fornecedor; }
+    
+    @Override
+    public String getTipo() { return "Cadastro de Fornecedor"; }
+    
+    @Override
+    public String getDescricao() { return "Fornecedor cadastrado: " + fornecedor.getRazaoSocial(); }
+}
+
+/**
+ * Fornecedores aceitos em um lote de importação; o resumo do lote é o registro de auditoria
+ */
+final class FornecedoresImportados extends EventoDominio {
+    private final List<Fornecedor> fornecedores;
+    private final String resumo;
+    
+    FornecedoresImportados(List<Fornecedor> fornecedores, String resumo, Usuario responsavel) {
+        super(responsavel);
+        this.fornecedores = fornecedores;
+        this.resumo = resumo;
+    }
+    
+    public List<Fornecedor> getFornecedores() { return fornecedores; }
+    
+    @Override
+    public String getTipo() { return "Importação de Fornecedores"; }
+    
+    @Override
+    public String getDescricao() { return resumo; }
+}
+
+final class ProcessoIniciado extends EventoProcesso {
+    private final EtapaProcesso etapa;
+    private final LocalDate dataEtapa;
+    
+    ProcessoIniciado(ProcessoAquisicao processo, Usuario responsavel) {
+        super(processo, responsavel);
+        this.etapa = processo.getEtapaAtual();
+        this.dataEtapa = processo.getDataEtapa();
+    }
+    
+    public EtapaProcesso getEtapa() { return etapa; }
+    public LocalDate getDataEtapa() { return dataEtapa; }
+    
+    @Override
+    public String getTipo() { return "Início de Processo"; }
+    
+    @Override
+    public String getDescricao() { return "Processo iniciado: " + getNumeroProcesso(); }
+}
+
+final class ItemAdicionado extends EventoProcesso {
+    private final int posicao;
+    private final Item item;
+    
+    ItemAdicionado(ProcessoAquisicao processo, int posicao, Item item) {
+        super(processo, null);
+        this.posicao = posicao;
+        this.item = item;
+    }
+    
+    /**
+     * Posição do item na lista de itens do processo
+     */
+    public int getPosicao() { return posicao; }
+    public Item getItem() { return item; }
+    
+    @Override
+    public String getTipo() { return "Adição de Item"; }
+    
+    @Override
+    public String getDescricao() { return "Item adicionado ao processo " + getNumeroProcesso() + ": " + item.getDescricao(); }
+}
+
+/**
+ * Itens aceitos em um lote de importação, que pode abranger vários processos. O registro de
+ * auditoria é vinculado ao processo somente quando o lote trata de um único processo.
+ */
+final class ItensImportados extends EventoDominio {
+    private final List<ItemAdicionado> itens;
+    private final String resumo;
+    private final String numeroProcesso;
+    
+    ItensImportados(List<ItemAdicionado> itens, String resumo, Usuario responsavel, String numeroProcesso) {
+        super(responsavel);
+        this.itens = itens;
+        this.resumo = resumo;
+        this.numeroProcesso = numeroProcesso;
+    }
+    
+    public List<ItemAdicionado> getItens() { return itens; }
+    
+    @Override
+    public String getNumeroProcesso() { return numeroProcesso; }
+    
+    @Override
+    public String getTipo() { return "Importação de Itens"; }
+    
+    @Override
+    public String getDescricao() { return resumo; }
+}
+
+final class DocumentoAdicionado extends EventoProcesso {
+    private final int posicao;
+    private final Documento documento;
+    
+    DocumentoAdicionado(ProcessoAquisicao processo, int posicao, Documento documento) {
+        super(processo, documento.getResponsavel());
+        this.posicao = posicao;
+        this.documento = documento;
+    }
+    
+    /**
+     * Posição do documento na lista de documentos do processo
+     */
+    public int getPosicao() { return posicao; }
+    public Documento getDocumento() { return documento; }
+    
+    @Override
+    public String getTipo() { return "Adição de Documento"; }
+    
+    @Override
+    public String getDescricao() { return "Documento adicionado ao processo " + getNumeroProcesso() + ": " + documento.getTitulo(); }
+}
+
+final class EtapaAvancada extends EventoProcesso {
+    private final EtapaProcesso anterior;
+    private final EtapaProcesso etapa;
+    private final LocalDate data;
+    private final boolean emLote;
+    
+    EtapaAvancada(ProcessoAquisicao processo, EtapaProcesso anterior, EtapaProcesso etapa, LocalDate data, 
+                  Usuario responsavel, boolean emLote) {
+        super(processo, responsavel);
+        this.anterior = anterior;
+        this.etapa = etapa;
+        this.data = data;
+        this.emLote = emLote;
+    }
+    
+    public EtapaProcesso getAnterior() { return anterior; }
+    public EtapaProcesso getEtapa() { return etapa; }
+    
+    /**
+     * Data de entrada na nova etapa, a partir da qual corre o seu prazo
+     */
+    public LocalDate getData() { return data; }
+    
+    @Override
+    public String getTipo() { return "Avanço de Etapa"; }
+    
+    @Override
+    public String getDescricao() {
+        return "Processo " + getNumeroProcesso() + " avançou de " + anterior + " para " + etapa + (emLote ? " (lote)" : "");
+    }
+}
+
+final class PropostaRegistrada extends EventoProcesso {
+    private final Proposta proposta;
+    
+    PropostaRegistrada(Proposta proposta) {
+        super(proposta.getProcesso(), null);
+        this.proposta = proposta;
+    }
+    
+    public Proposta getProposta() { return proposta; }
+    
+    @Override
+    public String getTipo() { return "Registro de Proposta"; }
+    
+    @Override
+    public String getDescricao() {
+        return "Proposta registrada para o processo " + getNumeroProcesso() + " do fornecedor " + 
+               proposta.getFornecedor().getRazaoSocial();
+    }
+}
+
+/**
+ * Propostas aceitas em um lote de importação
+ */
+final class PropostasImportadas extends EventoDominio {
+    private final List<Proposta> propostas;
+    private final String resumo;
+    private final String numeroProcesso;
+    
+    PropostasImportadas(List<Proposta> propostas, String resumo, Usuario responsavel, String numeroProcesso) {
+        super(responsavel);
+        this.propostas = propostas;
+        this.resumo = resumo;
+        this.numeroProcesso = numeroProcesso;
+    }
+    
+    public List<Proposta> getPropostas() { return propostas; }
+    
+    @Override
+    public String getNumeroProcesso() { return numeroProcesso; }
+    
+    @Override
+    public String getTipo() { return "Importação de Propostas"; }
+    
+    @Override
+    public String getDescricao() { return resumo; }
+}
+
+final class PropostaSelecionada extends EventoProcesso {
+    private final Proposta proposta;
+    
+    PropostaSelecionada(Proposta proposta, Usuario responsavel) {
+        super(proposta.getProcesso(), responsavel);
+        this.proposta = proposta;
+    }
+    
+    public Proposta getProposta() { return proposta; }
+    
+    @Override
+    public String getTipo() { return "Seleção de Proposta"; }
+    
+    @Override
+    public String getDescricao() {
+        return "Proposta do fornecedor " + proposta.getFornecedor().getRazaoSocial() + " selecionada como vencedora";
+    }
+}
+
+final class DisputaAberta extends EventoProcesso {
+    private final int participantes;
+    private final long decrementoMinimo;
+    
+    DisputaAberta(ProcessoAquisicao processo, int participantes, long decrementoMinimo, Usuario responsavel) {
+        super(processo, responsavel);
+        this.participantes = participantes;
+        this.decrementoMinimo = decrementoMinimo;
+    }
+    
+    public int getParticipantes() { return participantes; }
+    public long getDecrementoMinimo() { return decrementoMinimo; }
+    
+    @Override
+    public String getTipo() { return "Abertura de Disputa"; }
+    
+    @Override
+    public String getDescricao() {
+        return "Disputa de lances aberta para o processo " + getNumeroProcesso() + " com " + participantes + 
+               " participantes e decremento mínimo de " + formatarValor(decrementoMinimo);
+    }
+}
+
+final class EncerramentoDisputaIniciado extends EventoProcesso {
+    EncerramentoDisputaIniciado(ProcessoAquisicao processo, Usuario responsavel) {
+        super(processo, responsavel);
+    }
+    
+    @Override
+    public String getTipo() { return "Encerramento de Disputa"; }
+    
+    @Override
+    public String getDescricao() { return "Iniciado o encerramento aleatório da disputa do processo " + getNumeroProcesso(); }
 }
 
 /**
- * Classe que representa um contrato
+ * Conclusão da disputa de lances, com as propostas registradas a partir do último lance de cada fornecedor
  */
-class Contrato implements Serializable {
-    private String numero;
-    private ProcessoAquisicao processo;
-    private Fornecedor fornecedor;
-    private LocalDate dataInicio;
-    private LocalDate dataFim;
-    private double valor;
-    private Usuario fiscal;
-    private List<NotaEmpenho> empenhos;
-    private List<EntregaItem> entregas;
-    private List<Pagamento> pagamentos;
+final class DisputaConcluida extends EventoProcesso {
+    private final List<Proposta> propostas;
+    private final int lances;
+    private final Lance melhor;
     
-    public Contrato(String numero, ProcessoAquisicao processo, Fornecedor fornecedor, 
-                  LocalDate dataInicio, LocalDate dataFim, double valor, Usuario fiscal) {
-        this.numero = numero;
-        this.processo = processo;
-        this.fornecedor = fornecedor;
-        this.dataInicio = dataInicio;
-        this.dataFim = dataFim;
-        this.valor = valor;
-        this.fiscal = fiscal;
-        this.empenhos = new ArrayList<>();
-        this.entregas = new ArrayList<>();
-        this.pagamentos = new ArrayList<>();
+    DisputaConcluida(ProcessoAquisicao processo, List<Proposta> propostas, int lances, Lance melhor, Usuario responsavel) {
+        super(processo, responsavel);
+        this.propostas = propostas;
+        this.lances = lances;
+        this.melhor = melhor;
     }
     
-    // Getters
-    public String getNumero() { return numero; }
-    public ProcessoAquisicao getProcesso() { return processo; }
-    public Fornecedor getFornecedor() { return fornecedor; }
-    public LocalDate getDataInicio() { return dataInicio; }
-    public LocalDate getDataFim() { return dataFim; }
-    public double getValor() { return valor; }
-    public Usuario getFiscal() { return fiscal; }
-    public List<NotaEmpenho> getEmpenhos() { return empenhos; }
-    public List<EntregaItem> getEntregas() { return entregas; }
-    public List<Pagamento> getPagamentos() { return pagamentos; }
+    public List<Proposta> getPropostas() { return propostas; }
+    public int getLances() { return lances; }
+    public Lance getMelhor() { return melhor; }
     
-    // Métodos auxiliares
-    public void adicionarEmpenho(NotaEmpenho empenho) {
-        empenhos.add(empenho);
+    @Override
+    public String getTipo() { return "Conclusão de Disputa"; }
+    
+    @Override
+    public String getDescricao() {
+        return "Disputa do processo " + getNumeroProcesso() + " concluída com " + lances + " lances; melhor lance de " + 
+               melhor.getFornecedor().getRazaoSocial() + " (" + formatarValor(melhor.getValor()) + ")";
+    }
+}
+
+final class ContratoGerado extends EventoContrato {
+    ContratoGerado(Contrato contrato) {
+        super(contrato, contrato.getFiscal());
     }
     
-    public void adicionarEntrega(EntregaItem entrega) {
-        entregas.add(entrega);
+    @Override
+    public String getTipo() { return "Geração de Contrato"; }
+    
+    @Override
+    public String getDescricao() { return "Contrato " + getNumeroContrato() + " gerado para o processo " + getNumeroProcesso(); }
+}
+
+final class EmpenhoRegistrado extends EventoContrato {
+    private final NotaEmpenho empenho;
+    
+    EmpenhoRegistrado(NotaEmpenho empenho) {
+        super(empenho.getContrato(), empenho.getOrdenador());
+        this.empenho = empenho;
     }
     
-    public void adicionarPagamento(Pagamento pagamento) {
-        pagamentos.add(pagamento);
+    public NotaEmpenho getEmpenho() { return empenho; }
+    
+    @Override
+    public String getTipo() { return "Registro de Empenho"; }
+    
+    @Override
+    public String getDescricao() { return "Nota de Empenho " + empenho.getNumero() + " registrada para o contrato " + getNumeroContrato(); }
+}
+
+final class EntregaRegistrada extends EventoContrato {
+    private final EntregaItem entrega;
+    
+    EntregaRegistrada(Contrato contrato, EntregaItem entrega) {
+        super(contrato, entrega.getResponsavel());
+        this.entrega = entrega;
     }
+    
+    public EntregaItem getEntrega() { return entrega; }
+    
+    @Override
+    public String getTipo() { return "Registro de Entrega"; }
+    
+    @Override
+    public String getDescricao() { return "Entrega registrada para o contrato " + getNumeroContrato() + ": " + entrega.getDescricao(); }
 }
 
 /**
- * Classe que representa uma nota de empenho
+ * Item cuja quantidade entregue no contrato passou da contratada. A entrega é aceita, mas sinalizada.
  */
-class NotaEmpenho implements Serializable {
-    private String numero;
-    private Contrato contrato;
-    private LocalDate data;
-    private double valor;
-    private Usuario ordenador;
+final class EntregaAcimaContratado extends EventoContrato {
+    private final Item item;
+    private final long quantidadeEntregue;
     
-    public NotaEmpenho(String numero, Contrato contrato, LocalDate data, double valor, Usuario ordenador) {
-        this.numero = numero;
-        this.contrato = contrato;
-        this.data = data;
-        this.valor = valor;
-        this.ordenador = ordenador;
+    EntregaAcimaContratado(Contrato contrato, EntregaItem entrega, Item item, long quantidadeEntregue) {
+        super(contrato, entrega.getResponsavel());
+        this.item = item;
+        this.quantidadeEntregue = quantidadeEntregue;
     }
     
-    // Getters
-    public String getNumero() { return numero; }
-    public Contrato getContrato() { return contrato; }
-    public LocalDate getData() { return data; }
-    public double getValor() { return valor; }
-    public Usuario getOrdenador() { return ordenador; }
+    public Item getItem() { return item; }
+    public long getQuantidadeEntregue() { return quantidadeEntregue; }
+    
+    @Override
+    public String getTipo() { return "Entrega Acima do Contratado"; }
+    
+    @Override
+    public String getDescricao() {
+        return "Item " + item.getNome() + " do contrato " + getNumeroContrato() + " entregue " + quantidadeEntregue + 
+               " de " + item.getQuantidade() + " " + item.getUnidade().name();
+    }
 }
 
-/**
- * Classe que representa uma entrega de itens
- */
-class EntregaItem implements Serializable {
-    private Contrato contrato;
-    private LocalDate data;
-    private String descricao;
-    private Usuario responsavel;
-    private List<ItemEntregue> itensEntregues;
+final class LiquidacaoRegistrada extends EventoContrato {
+    private final Liquidacao liquidacao;
     
-    public EntregaItem(Contrato contrato, LocalDate data, String descricao, Usuario responsavel) {
-        this.contrato = contrato;
-        this.data = data;
-        this.descricao = descricao;
-        this.responsavel = responsavel;
-        this.itensEntregues = new ArrayList<>();
+    LiquidacaoRegistrada(Liquidacao liquidacao) {
+        super(liquidacao.getContrato(), liquidacao.getOrdenador());
+        this.liquidacao = liquidacao;
     }
     
-    // Getters
-    public Contrato getContrato() { return contrato; }
-    public LocalDate getData() { return data; }
-    public String getDescricao() { return descricao; }
-    public Usuario getResponsavel() { return responsavel; }
-    public List<ItemEntregue> getItensEntregues() { return itensEntregues; }
+    public Liquidacao getLiquidacao() { return liquidacao; }
     
-    // Métodos auxiliares
-    public void adicionarItemEntregue(Item item, int quantidade) {
-        itensEntregues.add(new ItemEntregue(item, quantidade));
+    @Override
+    public String getTipo() { return "Registro de Liquidação"; }
+    
+    @Override
+    public String getDescricao() { return "Liquidação " + liquidacao.getNumero() + " registrada para o contrato " + getNumeroContrato(); }
+}
+
+final class PagamentoRegistrado extends EventoContrato {
+    private final Pagamento pagamento;
+    
+    PagamentoRegistrado(Pagamento pagamento) {
+        super(pagamento.getContrato(), pagamento.getOrdenador());
+        this.pagamento = pagamento;
     }
+    
+    public Pagamento getPagamento() { return pagamento; }
+    
+    @Override
+    public String getTipo() { return "Registro de Pagamento"; }
+    
+    @Override
+    public String getDescricao() { return "Pagamento " + pagamento.getNumero() + " registrado para o contrato " + getNumeroContrato(); }
 }
 
-/**
- * Classe que representa um item entregue
- */
-class ItemEntregue implements Serializable {
-    private Item item;
-    private int quantidade;
+final class AlertaPrazoEmitido extends EventoDominio {
+    private final AlertaPrazo alerta;
+    private final String numeroProcesso;
     
-    public ItemEntregue(Item item, int quantidade) {
-        this.item = item;
+    AlertaPrazoEmitido(AlertaPrazo alerta, String numeroProcesso) {
+        super(null);
+        this.alerta = alerta;
+        this.numeroProcesso = numeroProcesso;
+    }
+    
+    public AlertaPrazo getAlerta() { return alerta; }
+    
+    @Override
+    public String getNumeroProcesso() { return numeroProcesso; }
+    
+    @Override
+    public String getNumeroContrato() {
+        return alerta.getTipo() == TipoAlertaPrazo.VENCIMENTO_CONTRATO ? alerta.getNumero() : null;
+    }
+    
+    @Override
+    public String getTipo() { return "Alerta de Prazo"; }
+    
+    @Override
+    public String getDescricao() { return alerta.getDescricao(); }
+}
+
+final class ProcessosArquivados extends EventoDominio {
+    private final int quantidade;
+    private final String segmento;
+    
+    ProcessosArquivados(int quantidade, String segmento, Usuario responsavel) {
+        super(responsavel);
         this.quantidade = quantidade;
+        this.segmento = segmento;
     }
     
-    // Getters
-    public Item getItem() { return item; }
     public int getQuantidade() { return quantidade; }
+    public String getSegmento() { return segmento; }
+    
+    @Override
+    public String getTipo() { return "Arquivamento de Processos"; }
+    
+    @Override
+    public String getDescricao() { return quantidade + " processos concluídos ou cancelados arquivados no segmento " + segmento; }
 }
 
 /**
- * Classe que representa um pagamento
+ * Recebe os eventos de domínio de uma assinatura, em lotes e na ordem de publicação
  */
-class Pagamento implements Serializable {
-    private String numero;
-    private Contrato contrato;
-    private LocalDate data;
-    private double valor;
-    private String descricao;
-    private Usuario ordenador;
+interface AssinanteEventos {
+    /**
+     * Chamado sempre pela thread da assinatura. A lista só é válida durante a chamada.
+     * O assinante não deve executar operações de escrita no SistemaAquisicoes: com o anel cheio,
+     * a publicação do evento dessa escrita aguardaria o próprio assinante.
+     */
+    void receber(List<EventoDominio> lote);
+}
+
+/**
+ * Barramento de eventos de domínio em memória, sobre um anel de capacidade fixa (potência de 2).
+ * 
+ * O publicador reserva uma sequência com um incremento atômico, grava o evento na posição da
+ * sequência no anel e só então marca a posição com a sequência, o que publica o evento. Cada
+ * assinatura tem uma thread e sua própria sequência consumida: coleta os eventos publicados em
+ * seguida a ela, sem lacunas e até TAMANHO_MAXIMO_LOTE, e os entrega de uma vez ao assinante.
+ * 
+ * Uma posição só é reutilizada depois que todas as assinaturas consumiram o evento anterior dela:
+ * com o anel cheio o publicador aguarda a assinatura mais lenta (contrapressão), em vez de
+ * descartar eventos ou acumulá-los sem limite. Assinaturas sem eventos dormem e são acordadas
+ * pelo publicador; a espera é limitada a ESPERA_MAXIMA_NANOS para não depender de um único sinal.
+ */
+class BarramentoEventos implements AutoCloseable {
+    static final int CAPACIDADE_PADRAO = 1 << 16;
+    static final int TAMANHO_MAXIMO_LOTE = 1024;
+    static final long ESPERA_MAXIMA_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    static final long ESPERA_CURTA_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
     
-    public Pagamento(String numero, Contrato contrato, LocalDate data, 
-                   double valor, String descricao, Usuario ordenador) {
-        this.numero = numero;
-        this.contrato = contrato;
-        this.data = data;
-        this.valor = valor;
-        this.descricao = descricao;
-        this.ordenador = ordenador;
+    private final EventoDominio[] anel;
+    private final AtomicLongArray publicados;
+    private final int mascara;
+    private final AtomicLong proximaSequencia;
+    private final List<AssinaturaEventos> assinaturas;
+    private final LongAdder esperasPublicacao;
+    // Limite inferior da menor sequência consumida; recalculado apenas quando o anel parece cheio
+    private volatile long menorConsumida;
+    private volatile boolean encerrado;
+    
+    BarramentoEventos(int capacidade) {
+        if (capacidade < 2 || Integer.bitCount(capacidade) != 1) {
+            throw new IllegalArgumentException("Capacidade do anel deve ser potência de 2: " + capacidade);
+        }
+        this.anel = new EventoDominio[capacidade];
+        this.publicados = new AtomicLongArray(capacidade);
+        for (int i = 0; i < capacidade; i++) {
+            publicados.set(i, -1);
+        }
+        this.mascara = capacidade - 1;
+        this.proximaSequencia = new AtomicLong();
+        this.assinaturas = new CopyOnWriteArrayList<>();
+        this.esperasPublicacao = new LongAdder();
+        this.menorConsumida = -1;
     }
     
-    // Getters
-    public String getNumero() { return numero; }
-    public Contrato getContrato() { return contrato; }
-    public LocalDate getData() { return data; }
-    public double getValor() { return valor; }
-    public String getDescricao() { return descricao; }
-    public Usuario getOrdenador() { return ordenador; }
+    /**
+     * Inicia uma assinatura que recebe os eventos publicados a partir de agora
+     */
+    public AssinaturaEventos assinar(String nome, AssinanteEventos assinante) {
+        Objects.requireNonNull(assinante, "assinante");
+        if (encerrado) {
+            throw new IllegalStateException("Barramento de eventos encerrado");
+        }
+        AssinaturaEventos assinatura;
+        // Sob o mesmo monitor do cálculo da menor sequência consumida: um publicador que não vê a
+        // nova assinatura reservou sua sequência antes dela e não sobrescreve nada que ela vá ler
+        synchronized (assinaturas) {
+            assinatura = new AssinaturaEventos(this, nome, assinante, proximaSequencia.get() - 1);
+            assinaturas.add(assinatura);
+        }
+        assinatura.iniciar();
+        return assinatura;
+    }
+    
+    /**
+     * Publica o evento e retorna sua sequência. Com o anel cheio, aguarda até que todas as
+     * assinaturas tenham consumido o evento que ocupa a posição.
+     */
+    public long publicar(EventoDominio evento) {
+        Objects.requireNonNull(evento, "evento");
+        if (encerrado) {
+            throw new IllegalStateException("Barramento de eventos encerrado");
+        }
+        
+        long sequencia = proximaSequencia.getAndIncrement();
+        long anterior = sequencia - anel.length;
+        if (anterior > menorConsumida) {
+            aguardarConsumo(anterior);
+        }
+        
+        int indice = (int) sequencia & mascara;
+        anel[indice] = evento;
+        publicados.set(indice, sequencia);
+        for (AssinaturaEventos assinatura : assinaturas) {
+            assinatura.sinalizar();
+        }
+        return sequencia;
+    }
+    
+    /**
+     * Última sequência reservada por um publicador, publicada ou não
+     */
+    public long getUltimaSequencia() {
+        return proximaSequencia.get() - 1;
+    }
+    
+    /**
+     * Quantas publicações encontraram o anel cheio e aguardaram as assinaturas
+     */
+    public long getEsperasPublicacao() {
+        return esperasPublicacao.sum();
+    }
+    
+    public int getCapacidade() {
+        return anel.length;
+    }
+    
+    boolean isEncerrado() {
+        return encerrado;
+    }
+    
+    /**
+     * Acrescenta ao lote os eventos publicados em seguida à sequência consumida, em ordem e sem
+     * lacunas, e retorna a sequência do último evento incluído
+     */
+    long coletar(long consumida, List<EventoDominio> lote) {
+        long sequencia = consumida + 1;
+        while (lote.size() < TAMANHO_MAXIMO_LOTE) {
+            int indice = (int) sequencia & mascara;
+            if (publicados.get(indice) != sequencia) {
+                break;
+            }
+            lote.add(anel[indice]);
+            sequencia++;
+        }
+        return sequencia - 1;
+    }
+    
+    boolean publicado(long sequencia) {
+        return publicados.get((int) sequencia & mascara) == sequencia;
+    }
+    
+    void remover(AssinaturaEventos assinatura) {
+        synchronized (assinaturas) {
+            assinaturas.remove(assinatura);
+        }
+    }
+    
+    private void aguardarConsumo(long sequencia) {
+        long menor = menorSequenciaConsumida();
+        if (menor < sequencia) {
+            esperasPublicacao.increment();
+            do {
+                for (AssinaturaEventos assinatura : assinaturas) {
+                    assinatura.sinalizar();
+                }
+                LockSupport.parkNanos(this, ESPERA_CURTA_NANOS);
+                menor = menorSequenciaConsumida();
+            } while (menor < sequencia);
+        }
+        // Publicadores concorrentes podem gravar valores fora de ordem; qualquer um deles é um limite inferior válido
+        menorConsumida = menor;
+    }
+    
+    private long menorSequenciaConsumida() {
+        synchronized (assinaturas) {
+            long menor = proximaSequencia.get() - 1;
+            for (AssinaturaEventos assinatura : assinaturas) {
+                menor = Math.min(menor, assinatura.getConsumida());
+            }
+            return menor;
+        }
+    }
+    
+    /**
+     * Recusa novas publicações e aguarda que cada assinatura entregue os eventos já publicados
+     */
+    @Override
+    public void close() {
+        encerrado = true;
+        for (AssinaturaEventos assinatura : assinaturas) {
+            assinatura.encerrar();
+        }
+    }
 }
 
 /**
- * Classe que representa um log de auditoria
+ * Assinatura de um BarramentoEventos: a thread que entrega os eventos ao assinante.
+ * Uma falha do assinante em um lote é contada e não interrompe a entrega dos lotes seguintes;
+ * as faixas de sequências dos lotes com falha mais recentes são retidas para confirmar().
  */
-class LogAuditoria implements Serializable {
-    private LocalDateTime dataHora;
-    private String tipo;
-    private String descricao;
-    private Usuario usuario;
+class AssinaturaEventos implements AutoCloseable {
+    private static final int LOTES_COM_FALHA_RETIDOS = 1024;
     
-    public LogAuditoria(LocalDateTime dataHora, String tipo, String descricao, Usuario usuario) {
-        this.dataHora = dataHora;
-        this.tipo = tipo;
-        this.descricao = descricao;
-        this.usuario = usuario;
+    private final BarramentoEventos barramento;
+    private final String nome;
+    private final AssinanteEventos assinante;
+    private final Thread thread;
+    private final AtomicLong falhas;
+    // Lotes com falha pela última sequência do lote
+    private final ConcurrentSkipListMap<Long, LoteComFalha> lotesComFalha;
+    private final Queue<Thread> aguardandoEntrega;
+    private volatile long consumida;
+    private volatile boolean aguardando;
+    private volatile boolean cancelada;
+    
+    AssinaturaEventos(BarramentoEventos barramento, String nome, AssinanteEventos assinante, long consumida) {
+        this.barramento = barramento;
+        this.nome = nome;
+        this.assinante = assinante;
+        this.consumida = consumida;
+        this.falhas = new AtomicLong();
+        this.lotesComFalha = new ConcurrentSkipListMap<>();
+        this.aguardandoEntrega = new ConcurrentLinkedQueue<>();
+        this.thread = new Thread(this::entregar, "eventos-" + nome);
+        thread.setDaemon(true);
     }
     
-    // Getters
-    public LocalDateTime getDataHora() { return dataHora; }
-    public String getTipo() { return tipo; }
-    public String getDescricao() { return descricao; }
-    public Usuario getUsuario() { return usuario; }
+    void iniciar() {
+        thread.start();
+    }
+    
+    long getConsumida() {
+        return consumida;
+    }
+    
+    // Chamado pelo publicador a cada evento: o custo, sem assinatura dormindo, é uma leitura volátil
+    void sinalizar() {
+        if (aguardando) {
+            LockSupport.unpark(thread);
+        }
+    }
+    
+    private void entregar() {
+        List<EventoDominio> lote = new ArrayList<>(BarramentoEventos.TAMANHO_MAXIMO_LOTE);
+        while (!cancelada) {
+            long ultima = barramento.coletar(consumida, lote);
+            if (lote.isEmpty()) {
+                if (barramento.isEncerrado() && consumida >= barramento.getUltimaSequencia()) {
+                    return;
+                }
+                aguardando = true;
+                // Verificar de novo após sinalizar a espera: um evento publicado antes disso não acordaria a thread
+                if (!barramento.publicado(consumida + 1) && !barramento.isEncerrado()) {
+                    LockSupport.parkNanos(this, BarramentoEventos.ESPERA_MAXIMA_NANOS);
+                }
+                aguardando = false;
+                continue;
+            }
+            
+            try {
+                assinante.receber(lote);
+            } catch (RuntimeException e) {
+                falhas.incrementAndGet();
+                // Registrada antes de publicar a sequência consumida, que é o que confirmar() aguarda
+                lotesComFalha.put(ultima, new LoteComFalha(consumida + 1, e));
+                if (lotesComFalha.size() > LOTES_COM_FALHA_RETIDOS) {
+                    lotesComFalha.pollFirstEntry();
+                }
+            }
+            lote.clear();
+            consumida = ultima;
+            // Quem aguarda se registra antes de conferir a sequência consumida: não perde este sinal
+            for (Thread aguardando : aguardandoEntrega) {
+                LockSupport.unpark(aguardando);
+            }
+        }
+    }
+    
+    /**
+     * Aguarda até que o assinante tenha recebido todos os eventos publicados antes da chamada,
+     * de modo que uma visão mantida por ele reflita as operações já concluídas pelo chamador
+     */
+    public void aguardar() {
+        aguardar(barramento.getUltimaSequencia());
+    }
+    
+    /**
+     * Aguarda até que o assinante tenha recebido o evento da sequência informada (retornada por
+     * BarramentoEventos.publicar). A thread é acordada pela assinatura ao fim de cada lote.
+     */
+    public void aguardar(long sequencia) {
+        if (consumida >= sequencia || Thread.currentThread() == thread) {
+            return;
+        }
+        Thread atual = Thread.currentThread();
+        aguardandoEntrega.add(atual);
+        try {
+            while (consumida < sequencia) {
+                if (cancelada || !thread.isAlive()) {
+                    throw new IllegalStateException("Assinatura de eventos encerrada: " + nome);
+                }
+                LockSupport.parkNanos(this, BarramentoEventos.ESPERA_MAXIMA_NANOS);
+            }
+        } finally {
+            aguardandoEntrega.remove(atual);
+        }
+    }
+    
+    /**
+     * Aguarda como aguardar(sequencia) e lança IllegalStateException se o assinante falhou no lote
+     * que continha o evento. A falha é atribuída ao lote inteiro, pois o assinante recebe os eventos em
+     * conjunto; apenas os LOTES_COM_FALHA_RETIDOS lotes com falha mais recentes são verificados.
+     */
+    public void confirmar(long sequencia) {
+        aguardar(sequencia);
+        Map.Entry<Long, LoteComFalha> lote = lotesComFalha.ceilingEntry(sequencia);
+        if (lote != null && lote.getValue().inicio <= sequencia) {
+            throw new IllegalStateException("Assinante " + nome + " falhou ao receber o evento " + sequencia, 
+                                            lote.getValue().causa);
+        }
+    }
+    
+    public String getNome() {
+        return nome;
+    }
+    
+    /**
+     * Eventos ainda não entregues ao assinante
+     */
+    public long getPendentes() {
+        return Math.max(0, barramento.getUltimaSequencia() - consumida);
+    }
+    
+    /**
+     * Lotes em que o assinante lançou exceção
+     */
+    public long getFalhas() {
+        return falhas.get();
+    }
+    
+    public boolean isCancelada() {
+        return cancelada;
+    }
+    
+    // Entrega os eventos já publicados e encerra a thread
+    void encerrar() {
+        LockSupport.unpark(thread);
+        if (Thread.currentThread() != thread) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    /**
+     * Encerra a assinatura sem entregar os eventos pendentes
+     */
+    @Override
+    public void close() {
+        cancelada = true;
+        barramento.remover(this);
+        LockSupport.unpark(thread);
+    }
+    
+    private static final class LoteComFalha {
+        private final long inicio;
+        private final RuntimeException causa;
+        
+        LoteComFalha(long inicio, RuntimeException causa) {
+            this.inicio = inicio;
+            this.causa = causa;
+        }
+    }
 }
 
 // Executar o sistema
@@ -0,0 +1,8 @@
+#!/bin/sh
+# Compila o módulo e executa a suíte JMH sem interface gráfica, com o profiler de alocação (gc).
+# Argumentos adicionais são repassados ao JMH, por exemplo:
+#   ./executar.sh SistemaAquisicoesBenchmark -p escala=10000
+set -e
+cd "$(dirname "$0")"
+mvn -B -q package
+java -Djava.awt.headless=true -jar target/benchmarks.jar -prof gc -rf json -rff target/resultados.json "$@"
@@ -0,0 +1,64 @@
+package br.gov.mp.fundacao.aquisicoes;
+
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Agenda de prazos com milhões de alertas pendentes, espalhados pelos próximos dez anos.
+ * 
+ * Cada avanço de um dia entrega os alertas do dia e reagenda cada um deles para uma data
+ * sorteada nos dez anos seguintes, mantendo constante a quantidade de pendentes. O tempo por
+ * operação inclui, portanto, a entrega e o reagendamento de cerca de pendentes / 3.650 alertas.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class AgendaPrazosBenchmark {
+    private static final int DIAS = 3650;
+    
+    @Param({"1000000", "5000000"})
+    private int pendentes;
+    
+    private AgendaPrazos agenda;
+    private LocalDate hoje;
+    private Random aleatorio;
+    
+    @Setup
+    public void preparar() {
+        aleatorio = new Random(42);
+        hoje = LocalDate.of(2026, 1, 1);
+        agenda = new AgendaPrazos(hoje, pendentes);
+        for (int i = 0; i < pendentes; i++) {
+            LocalDate limite = hoje.plusDays(1 + aleatorio.nextInt(DIAS));
+            agenda.agendar(limite, TipoAlertaPrazo.VENCIMENTO_CONTRATO, "CT-" + i, limite, null);
+        }
+    }
+    
+    @Benchmark
+    public int avancarDia() {
+        hoje = hoje.plusDays(1);
+        int entregues = 0;
+        for (AlertaPrazo alerta : agenda.avancar(hoje)) {
+            LocalDate limite = hoje.plusDays(1 + aleatorio.nextInt(DIAS));
+            agenda.agendar(limite, alerta.getTipo(), alerta.getNumero(), limite, null);
+            entregues++;
+        }
+        return entregues;
+    }
+}
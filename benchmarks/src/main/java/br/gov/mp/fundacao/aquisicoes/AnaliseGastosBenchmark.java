@@ -0,0 +1,102 @@
+package br.gov.mp.fundacao.aquisicoes;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Agregações do SnapshotAnalitico sobre 10 milhões de pagamentos sintéticos, com 1 a 8 threads.
+ * 
+ * As colunas são geradas diretamente, sem passar pelo SistemaAquisicoes: 40 categorias de
+ * fornecedor, 12 departamentos e seis anos de pagamentos. A razão entre os tempos com 1 e com
+ * N threads mede a escalabilidade da agregação; execute em uma máquina com pelo menos 8 núcleos.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class AnaliseGastosBenchmark {
+    private static final int CATEGORIAS = 40;
+    private static final int DEPARTAMENTOS = 12;
+    private static final int MESES = 72;
+    
+    @Param({"10000000"})
+    private int pagamentos;
+    
+    @Param({"1", "2", "4", "8"})
+    private int paralelismo;
+    
+    // Nome de uma DimensaoAnalitica, que não é visível para o código gerado pelo JMH
+    @Param({"MODALIDADE", "CATEGORIA_FORNECEDOR", "MES"})
+    private String dimensao;
+    
+    private SnapshotAnalitico snapshot;
+    private ForkJoinPool executor;
+    private DimensaoAnalitica dimensaoAnalitica;
+    
+    @Setup
+    public void preparar() {
+        Random aleatorio = new Random(42);
+        long[] valores = new long[pagamentos];
+        int[] meses = new int[pagamentos];
+        byte[] modalidades = new byte[pagamentos];
+        int[] categorias = new int[pagamentos];
+        int[] departamentos = new int[pagamentos];
+        int primeiroMes = SnapshotAnalitico.mes(LocalDate.now().minusMonths(MESES - 1));
+        int quantidadeModalidades = ModalidadeLicitacao.values().length;
+        
+        for (int i = 0; i < pagamentos; i++) {
+            valores[i] = Dinheiro.reais(1 + aleatorio.nextInt(100_000));
+            meses[i] = primeiroMes + aleatorio.nextInt(MESES);
+            modalidades[i] = (byte) aleatorio.nextInt(quantidadeModalidades);
+            categorias[i] = aleatorio.nextInt(CATEGORIAS);
+            departamentos[i] = aleatorio.nextInt(DEPARTAMENTOS);
+        }
+        
+        String[] nomesCategorias = new String[CATEGORIAS];
+        for (int i = 0; i < CATEGORIAS; i++) {
+            nomesCategorias[i] = "Categoria " + i;
+        }
+        String[] nomesDepartamentos = new String[DEPARTAMENTOS];
+        for (int i = 0; i < DEPARTAMENTOS; i++) {
+            nomesDepartamentos[i] = "Departamento " + i;
+        }
+        
+        snapshot = new SnapshotAnalitico(pagamentos, valores, meses, modalidades, categorias, nomesCategorias, 
+                                         departamentos, nomesDepartamentos);
+        executor = new ForkJoinPool(paralelismo);
+        dimensaoAnalitica = DimensaoAnalitica.valueOf(dimensao);
+    }
+    
+    @TearDown
+    public void encerrar() {
+        executor.shutdown();
+    }
+    
+    @Benchmark
+    public List<GrupoAnalitico> somar() {
+        return snapshot.agregar(executor, dimensaoAnalitica, null, null);
+    }
+    
+    @Benchmark
+    public List<GrupoAnalitico> somarComPercentis() {
+        return snapshot.agregar(executor, dimensaoAnalitica, null, null, 0.5, 0.9, 0.99);
+    }
+}
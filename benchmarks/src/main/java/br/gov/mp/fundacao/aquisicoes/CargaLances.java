@@ -0,0 +1,186 @@
+package br.gov.mp.fundacao.aquisicoes;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+
+/**
+ * Teste de carga da disputa de lances de um pregão eletrônico.
+ *
+ * Abre a disputa de um processo com F fornecedores e dispara L licitantes simultâneos (threads
+ * virtuais) ofertando lances decrescentes por S segundos, com O observadores acompanhando o
+ * melhor lance. Ao final inicia o encerramento aleatório, conclui a disputa e informa a vazão,
+ * a latência dos lances (percentis) e o atraso dos observadores em relação ao último lance.
+ *
+ * Uso: java -cp target/benchmarks.jar br.gov.mp.fundacao.aquisicoes.CargaLances
+ *          [fornecedores=500] [licitantes=64] [segundos=10] [observadores=1000]
+ */
+public final class CargaLances {
+    private static final long VALOR_INICIAL = Dinheiro.reais(10_000_000);
+    private static final long DECREMENTO_MINIMO = 1;
+    
+    public static void main(String[] args) throws Exception {
+        int quantidadeFornecedores = argumento(args, 0, 500);
+        int licitantes = argumento(args, 1, 64);
+        int segundos = argumento(args, 2, 10);
+        int quantidadeObservadores = argumento(args, 3, 1000);
+        
+        Path diretorio = Files.createTempDirectory("aquisicoes-carga-");
+        try (SistemaAquisicoes sistema = new SistemaAquisicoes(diretorio, PoliticaSincronizacao.SISTEMA_OPERACIONAL)) {
+            Usuario pregoeiro = new Usuario("10987654321", "Pregoeiro", "pregoeiro@fundacao.mp.gov.br",
+                                            TipoUsuario.GESTOR, "Departamento de Compras");
+            sistema.cadastrarUsuario(pregoeiro);
+            ProcessoAquisicao processo = sistema.iniciarProcessoAquisicao(
+                "Pregão de carga", "Disputa de lances sintética", pregoeiro,
+                ModalidadeLicitacao.PREGAO_ELETRONICO, LocalDate.now(), VALOR_INICIAL);
+            
+            Fornecedor[] fornecedores = new Fornecedor[quantidadeFornecedores];
+            AtomicLongArray ultimosLances = new AtomicLongArray(quantidadeFornecedores);
+            for (int i = 0; i < fornecedores.length; i++) {
+                fornecedores[i] = new Fornecedor(DadosSinteticos.gerarCnpj(i), "Licitante " + i,
+                                                 "licitante" + i + "@fornecedor.com.br", "Carga");
+                sistema.cadastrarFornecedor(fornecedores[i]);
+                sistema.registrarProposta(processo, new Proposta(fornecedores[i], processo, LocalDateTime.now(),
+                                                                 VALOR_INICIAL, "Proposta inicial"));
+                ultimosLances.set(i, VALOR_INICIAL);
+            }
+            for (EtapaProcesso etapa : new EtapaProcesso[] {EtapaProcesso.PESQUISA_PRECOS, EtapaProcesso.ELABORACAO_EDITAL,
+                                                            EtapaProcesso.PUBLICACAO_EDITAL, EtapaProcesso.RECEBIMENTO_PROPOSTAS}) {
+                sistema.avancarEtapaProcesso(processo, etapa, pregoeiro);
+            }
+            sistema.abrirDisputaLances(processo, DECREMENTO_MINIMO, pregoeiro);
+            
+            AtomicLong notificacoes = new AtomicLong();
+            long[] ultimaSequenciaVista = new long[quantidadeObservadores];
+            CountDownLatch encerramentos = new CountDownLatch(quantidadeObservadores);
+            for (int i = 0; i < quantidadeObservadores; i++) {
+                int observador = i;
+                sistema.acompanharDisputa(processo, (numero, melhor, situacao) -> {
+                    notificacoes.incrementAndGet();
+                    ultimaSequenciaVista[observador] = melhor.getSequencia();
+                    if (situacao == SituacaoDisputa.ENCERRADA) {
+                        encerramentos.countDown();
+                    }
+                });
+            }
+            
+            System.out.printf("Disputa com %d fornecedores, %d licitantes e %d observadores por %d s%n",
+                              quantidadeFornecedores, licitantes, quantidadeObservadores, segundos);
+            
+            AtomicLong rejeitados = new AtomicLong();
+            long fim = System.nanoTime() + TimeUnit.SECONDS.toNanos(segundos);
+            List<Future<long[]>> resultados = new ArrayList<>();
+            long inicio = System.nanoTime();
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < licitantes; i++) {
+                    resultados.add(executor.submit(() -> ofertar(sistema, processo, fornecedores, ultimosLances,
+                                                                 rejeitados, fim)));
+                }
+            }
+            double duracao = (System.nanoTime() - inicio) / 1e9;
+            
+            long[] latencias = Stream.of(resultados.toArray(new Future<?>[0]))
+                .flatMapToLong(resultado -> Arrays.stream(obter(resultado)))
+                .sorted()
+                .toArray();
+            SessaoDisputa sessao = sistema.buscarDisputa(processo);
+            long sequenciaFinal = sessao.getMelhorLance().getSequencia();
+            
+            System.out.printf("Lances aceitos: %d (%.0f/s); rejeitados por decremento: %d%n",
+                              latencias.length, latencias.length / duracao, rejeitados.get());
+            System.out.printf("Latência do lance (µs): p50=%.1f p99=%.1f p99,9=%.1f máx=%.1f%n",
+                              percentil(latencias, 0.50), percentil(latencias, 0.99),
+                              percentil(latencias, 0.999), percentil(latencias, 1.0));
+            
+            sistema.iniciarEncerramentoDisputa(processo, Duration.ofSeconds(1), pregoeiro);
+            if (!encerramentos.await(30, TimeUnit.SECONDS)) {
+                System.out.println("Atenção: nem todos os observadores receberam o encerramento");
+            }
+            long atrasados = Arrays.stream(ultimaSequenciaVista).filter(sequencia -> sequencia < sequenciaFinal).count();
+            System.out.printf("Notificações entregues: %d (%.1f por observador); observadores sem o último melhor lance: %d%n",
+                              notificacoes.get(), (double) notificacoes.get() / Math.max(1, quantidadeObservadores), atrasados);
+            
+            List<Lance> classificacao = sistema.concluirDisputaLances(processo, pregoeiro);
+            System.out.printf("Vencedor: %s com %s (%d propostas registradas)%n",
+                              classificacao.get(0).getFornecedor().getRazaoSocial(),
+                              Dinheiro.emDecimal(classificacao.get(0).getValor()).toPlainString(),
+                              processo.getPropostas().size());
+        } finally {
+            apagar(diretorio);
+        }
+    }
+    
+    // Retorna a latência, em nanossegundos, de cada lance aceito
+    private static long[] ofertar(SistemaAquisicoes sistema, ProcessoAquisicao processo, Fornecedor[] fornecedores,
+                                  AtomicLongArray ultimosLances, AtomicLong rejeitados, long fim) {
+        ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+        long[] latencias = new long[1024];
+        int aceitos = 0;
+        
+        while (System.nanoTime() < fim) {
+            int indice = aleatorio.nextInt(fornecedores.length);
+            long valor = ultimosLances.get(indice) - DECREMENTO_MINIMO - aleatorio.nextInt(100);
+            long antes = System.nanoTime();
+            try {
+                sistema.registrarLance(processo, fornecedores[indice], valor);
+            } catch (IllegalArgumentException e) {
+                // Outro licitante ofertou pelo mesmo fornecedor antes
+                rejeitados.incrementAndGet();
+                continue;
+            }
+            long latencia = System.nanoTime() - antes;
+            ultimosLances.accumulateAndGet(indice, valor, Math::min);
+            
+            if (aceitos == latencias.length) {
+                latencias = Arrays.copyOf(latencias, aceitos * 2);
+            }
+            latencias[aceitos++] = latencia;
+        }
+        return Arrays.copyOf(latencias, aceitos);
+    }
+    
+    private static double percentil(long[] ordenados, double fracao) {
+        if (ordenados.length == 0) {
+            return 0;
+        }
+        int indice = (int) Math.min(ordenados.length - 1, Math.ceil(fracao * ordenados.length) - 1);
+        return ordenados[Math.max(0, indice)] / 1e3;
+    }
+    
+    private static long[] obter(Future<?> resultado) {
+        try {
+            return (long[]) resultado.get();
+        } catch (Exception e) {
+            throw new IllegalStateException("Licitante falhou", e);
+        }
+    }
+    
+    private static int argumento(String[] args, int posicao, int padrao) {
+        return args.length > posicao ? Integer.parseInt(args[posicao]) : padrao;
+    }
+    
+    private static void apagar(Path diretorio) {
+        try (Stream<Path> arquivos = Files.walk(diretorio)) {
+            arquivos.sorted(Comparator.reverseOrder()).forEach(arquivo -> arquivo.toFile().delete());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
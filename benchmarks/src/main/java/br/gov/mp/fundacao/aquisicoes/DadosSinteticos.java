@@ -0,0 +1,182 @@
+package br.gov.mp.fundacao.aquisicoes;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Gerador de massa de dados sintética para os benchmarks.
+ * 
+ * Para uma escala N são criados N fornecedores, N processos (um item cada) e N pagamentos.
+ * Um em cada PROCESSOS_POR_CONTRATO processos percorre o ciclo completo até o contrato, com o
+ * valor integralmente empenhado e liquidado, e os pagamentos são distribuídos entre esses
+ * contratos com datas nos últimos 60 dias, de modo que parte deles caia na janela do relatório
+ * de transparência. Os pagamentos consomem no máximo metade do valor de cada contrato, deixando
+ * saldo a pagar para os benchmarks de escrita.
+ * 
+ * Os dados são persistidos em um diretório temporário com sincronização delegada ao
+ * sistema operacional, para que a geração de escalas grandes não seja dominada por fsync.
+ */
+final class DadosSinteticos implements AutoCloseable {
+    static final int PROCESSOS_POR_CONTRATO = 10;
+    
+    final Path diretorio;
+    final SistemaAquisicoes sistema;
+    final Usuario gestor;
+    final Usuario fiscal;
+    final Usuario ordenador;
+    final Fornecedor[] fornecedores;
+    final ProcessoAquisicao[] processos;
+    final Contrato[] contratos;
+    
+    private DadosSinteticos(Path diretorio, int escala, TipoArmazenamento armazenamento) {
+        this.diretorio = diretorio;
+        this.sistema = new SistemaAquisicoes(diretorio, PoliticaSincronizacao.SISTEMA_OPERACIONAL, armazenamento);
+        this.gestor = new Usuario("10987654321", "Gestor Sintético", "gestor@fundacao.mp.gov.br", 
+                                  TipoUsuario.GESTOR, "Departamento de Compras");
+        this.fiscal = new Usuario("12345678901", "Fiscal Sintético", "fiscal@fundacao.mp.gov.br", 
+                                  TipoUsuario.FISCAL_CONTRATO, "Departamento Jurídico");
+        this.ordenador = new Usuario("98765432101", "Ordenador Sintético", "ordenador@fundacao.mp.gov.br", 
+                                     TipoUsuario.ORDENADOR_DESPESA, "Diretoria Executiva");
+        this.fornecedores = new Fornecedor[escala];
+        this.processos = new ProcessoAquisicao[escala];
+        this.contratos = new Contrato[Math.max(1, escala / PROCESSOS_POR_CONTRATO)];
+    }
+    
+    /**
+     * Cria um sistema novo em um diretório temporário e o popula na escala informada
+     */
+    static DadosSinteticos gerar(int escala, long semente) {
+        return gerar(escala, semente, TipoArmazenamento.MEMORIA);
+    }
+    
+    /**
+     * Como gerar(escala, semente), com os registros financeiros no armazenamento informado
+     */
+    static DadosSinteticos gerar(int escala, long semente, TipoArmazenamento armazenamento) {
+        if (escala < 1) {
+            throw new IllegalArgumentException("Escala deve ser positiva");
+        }
+        
+        DadosSinteticos dados;
+        try {
+            dados = new DadosSinteticos(Files.createTempDirectory("aquisicoes-bench-"), escala, armazenamento);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            dados.popular(new Random(semente));
+        } catch (RuntimeException e) {
+            // Não deixar o diretório temporário para trás quando a geração falha
+            dados.close();
+            throw e;
+        }
+        return dados;
+    }
+    
+    private void popular(Random aleatorio) {
+        sistema.cadastrarUsuario(gestor);
+        sistema.cadastrarUsuario(fiscal);
+        sistema.cadastrarUsuario(ordenador);
+        
+        for (int i = 0; i < fornecedores.length; i++) {
+            fornecedores[i] = new Fornecedor(gerarCnpj(i), "Fornecedor Sintético " + i, 
+                                             "contato" + i + "@fornecedor.com.br", "Categoria " + (i % 20));
+            sistema.cadastrarFornecedor(fornecedores[i]);
+        }
+        
+        LocalDate hoje = LocalDate.now();
+        ModalidadeLicitacao[] modalidades = ModalidadeLicitacao.values();
+        UnidadeMedida[] unidades = UnidadeMedida.values();
+        int contratosGerados = 0;
+        
+        for (int i = 0; i < processos.length; i++) {
+            long valorUnitario = Dinheiro.reais(10 + aleatorio.nextInt(10_000));
+            int quantidade = 1 + aleatorio.nextInt(100);
+            
+            ProcessoAquisicao processo = sistema.iniciarProcessoAquisicao(
+                "Processo Sintético " + i, "Aquisição sintética número " + i, gestor,
+                modalidades[i % modalidades.length], hoje.minusDays(aleatorio.nextInt(365)),
+                Dinheiro.multiplicar(valorUnitario, quantidade));
+            sistema.adicionarItemAoProcesso(processo, new Item("Item " + i, "Item sintético " + i, 
+                                                               valorUnitario, quantidade, unidades[i % unidades.length]));
+            processos[i] = processo;
+            
+            if (i % PROCESSOS_POR_CONTRATO == 0 && contratosGerados < contratos.length) {
+                contratos[contratosGerados++] = contratar(processo, aleatorio, hoje);
+            }
+        }
+        
+        for (int i = 0; i < processos.length; i++) {
+            Contrato contrato = contratos[i % contratos.length];
+            long limite = contrato.getValor() / (2 * PROCESSOS_POR_CONTRATO);
+            sistema.registrarPagamento(contrato, "PG-" + i, hoje.minusDays(aleatorio.nextInt(60)), 
+                                       Math.min(Dinheiro.reais(1 + aleatorio.nextInt(1_000)), limite), 
+                                       "Pagamento sintético " + i, ordenador);
+        }
+    }
+    
+    private Contrato contratar(ProcessoAquisicao processo, Random aleatorio, LocalDate hoje) {
+        Fornecedor fornecedor = fornecedores[aleatorio.nextInt(fornecedores.length)];
+        long valor = processo.getValorEstimado() - processo.getValorEstimado() / 10;
+        Proposta proposta = new Proposta(fornecedor, processo, LocalDateTime.now(), valor, "Proposta sintética");
+        
+        sistema.registrarProposta(processo, proposta);
+        sistema.selecionarPropostaVencedora(processo, proposta, gestor);
+        sistema.avancarEtapaProcesso(processo, EtapaProcesso.HOMOLOGACAO, ordenador);
+        sistema.avancarEtapaProcesso(processo, EtapaProcesso.CONTRATACAO, ordenador);
+        
+        LocalDate inicio = hoje.minusDays(aleatorio.nextInt(180));
+        Contrato contrato = sistema.gerarContrato(processo, "CT-" + processo.getNumero(), 
+                                                  inicio, inicio.plusMonths(12), valor, fiscal);
+        sistema.registrarEmpenho(contrato, "NE-" + processo.getNumero(), inicio, valor, ordenador);
+        sistema.registrarLiquidacao(contrato, "NL-" + processo.getNumero(), inicio, valor, ordenador);
+        return contrato;
+    }
+    
+    /**
+     * CNPJ válido (com dígitos verificadores) derivado do sequencial informado
+     */
+    static String gerarCnpj(int sequencial) {
+        int[] digitos = new int[14];
+        String base = String.format("%08d0001", sequencial);
+        for (int i = 0; i < 12; i++) {
+            digitos[i] = base.charAt(i) - '0';
+        }
+        digitos[12] = digitoVerificador(digitos, 12);
+        digitos[13] = digitoVerificador(digitos, 13);
+        
+        StringBuilder cnpj = new StringBuilder(14);
+        for (int digito : digitos) {
+            cnpj.append(digito);
+        }
+        return cnpj.toString();
+    }
+    
+    private static int digitoVerificador(int[] digitos, int quantidade) {
+        int soma = 0;
+        int peso = quantidade - 7;
+        for (int i = 0; i < quantidade; i++) {
+            soma += digitos[i] * peso;
+            peso = peso == 2 ? 9 : peso - 1;
+        }
+        int resto = soma % 11;
+        return resto < 2 ? 0 : 11 - resto;
+    }
+    
+    @Override
+    public void close() {
+        sistema.close();
+        try (Stream<Path> arquivos = Files.walk(diretorio)) {
+            arquivos.sorted(Comparator.reverseOrder()).forEach(arquivo -> arquivo.toFile().delete());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package br.gov.mp.fundacao.aquisicoes;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compara a soma e a comparação de valores monetários representados como double,
+ * BigDecimal e long em centavos (Dinheiro).
+ * 
+ * Execute com -prof gc para observar a alocação por operação de cada representação.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DinheiroBenchmark {
+    @Param({"10000", "100000"})
+    private int quantidade;
+    
+    private double[] valoresDouble;
+    private BigDecimal[] valoresDecimal;
+    private long[] valoresCentavos;
+    
+    @Setup
+    public void preparar() {
+        Random aleatorio = new Random(42);
+        valoresDouble = new double[quantidade];
+        valoresDecimal = new BigDecimal[quantidade];
+        valoresCentavos = new long[quantidade];
+        
+        for (int i = 0; i < quantidade; i++) {
+            long centavos = 1 + aleatorio.nextInt(10_000_000);
+            valoresCentavos[i] = centavos;
+            valoresDecimal[i] = Dinheiro.emDecimal(centavos);
+            valoresDouble[i] = centavos / 100.0;
+        }
+    }
+    
+    @Benchmark
+    public double somarDouble() {
+        double total = 0;
+        for (double valor : valoresDouble) {
+            total += valor;
+        }
+        return total;
+    }
+    
+    @Benchmark
+    public BigDecimal somarBigDecimal() {
+        BigDecimal total = BigDecimal.ZERO;
+        for (BigDecimal valor : valoresDecimal) {
+            total = total.add(valor);
+        }
+        return total;
+    }
+    
+    @Benchmark
+    public long somarCentavos() {
+        long total = 0;
+        for (long valor : valoresCentavos) {
+            total = Dinheiro.somar(total, valor);
+        }
+        return total;
+    }
+    
+    @Benchmark
+    public int compararDouble() {
+        int maiores = 0;
+        for (int i = 1; i < valoresDouble.length; i++) {
+            if (Double.compare(valoresDouble[i], valoresDouble[i - 1]) > 0) {
+                maiores++;
+            }
+        }
+        return maiores;
+    }
+    
+    @Benchmark
+    public int compararBigDecimal() {
+        int maiores = 0;
+        for (int i = 1; i < valoresDecimal.length; i++) {
+            if (valoresDecimal[i].compareTo(valoresDecimal[i - 1]) > 0) {
+                maiores++;
+            }
+        }
+        return maiores;
+    }
+    
+    @Benchmark
+    public int compararCentavos() {
+        int maiores = 0;
+        for (int i = 1; i < valoresCentavos.length; i++) {
+            if (Long.compare(valoresCentavos[i], valoresCentavos[i - 1]) > 0) {
+                maiores++;
+            }
+        }
+        return maiores;
+    }
+}
@@ -0,0 +1,115 @@
+package br.gov.mp.fundacao.aquisicoes;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Verificação de avanço de etapa: tabelas de bits da MaquinaEtapas contra o switch por tipo de
+ * usuário e a comparação de ordem das etapas que a precederam.
+ * 
+ * Cada invocação verifica 1.024 triplas (tipo de usuário, etapa atual, nova etapa) sorteadas na
+ * preparação, de modo que os desvios do switch não sejam previsíveis.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MaquinaEtapasBenchmark {
+    private static final int VERIFICACOES = 1024;
+    
+    private final MaquinaEtapas maquina = MaquinaEtapas.padrao();
+    private TipoUsuario[] tipos;
+    private EtapaProcesso[] atuais;
+    private EtapaProcesso[] novas;
+    
+    @Setup
+    public void preparar() {
+        Random aleatorio = new Random(42);
+        TipoUsuario[] todosTipos = TipoUsuario.values();
+        EtapaProcesso[] todasEtapas = EtapaProcesso.values();
+        tipos = new TipoUsuario[VERIFICACOES];
+        atuais = new EtapaProcesso[VERIFICACOES];
+        novas = new EtapaProcesso[VERIFICACOES];
+        for (int i = 0; i < VERIFICACOES; i++) {
+            tipos[i] = todosTipos[aleatorio.nextInt(todosTipos.length)];
+            atuais[i] = todasEtapas[aleatorio.nextInt(todasEtapas.length)];
+            novas[i] = todasEtapas[aleatorio.nextInt(todasEtapas.length)];
+        }
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(VERIFICACOES)
+    public int tabela() {
+        int permitidos = 0;
+        for (int i = 0; i < VERIFICACOES; i++) {
+            if (maquina.permite(tipos[i], atuais[i], novas[i])) {
+                permitidos++;
+            }
+        }
+        return permitidos;
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(VERIFICACOES)
+    public int switchPorEtapa() {
+        int permitidos = 0;
+        for (int i = 0; i < VERIFICACOES; i++) {
+            if (permissaoSwitch(tipos[i], novas[i]) && transicaoSwitch(atuais[i], novas[i])) {
+                permitidos++;
+            }
+        }
+        return permitidos;
+    }
+    
+    private static boolean permissaoSwitch(TipoUsuario tipo, EtapaProcesso etapa) {
+        switch (etapa) {
+            case ELABORACAO_TERMO_REFERENCIA:
+            case PESQUISA_PRECOS:
+            case ELABORACAO_EDITAL:
+            case PUBLICACAO_EDITAL:
+            case RECEBIMENTO_PROPOSTAS:
+            case ANALISE_PROPOSTAS:
+                return tipo == TipoUsuario.GESTOR;
+            case HOMOLOGACAO:
+            case CONTRATACAO:
+                return tipo == TipoUsuario.ORDENADOR_DESPESA;
+            case EXECUCAO_CONTRATO:
+                return tipo == TipoUsuario.FISCAL_CONTRATO;
+            case CONCLUIDO:
+            case CANCELADO:
+                return tipo == TipoUsuario.ORDENADOR_DESPESA || tipo == TipoUsuario.GESTOR;
+            default:
+                return false;
+        }
+    }
+    
+    private static boolean transicaoSwitch(EtapaProcesso atual, EtapaProcesso nova) {
+        switch (atual) {
+            case CONCLUIDO:
+            case CANCELADO:
+                return false;
+            case CONTRATACAO:
+                return nova == EtapaProcesso.EXECUCAO_CONTRATO || nova == EtapaProcesso.CONCLUIDO ||
+                       nova == EtapaProcesso.CANCELADO;
+            case EXECUCAO_CONTRATO:
+                return nova == EtapaProcesso.CONCLUIDO || nova == EtapaProcesso.CANCELADO;
+            default:
+                return nova == EtapaProcesso.CANCELADO ||
+                       (nova.compareTo(atual) > 0 && nova.compareTo(EtapaProcesso.CONTRATACAO) <= 0);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package br.gov.mp.fundacao.aquisicoes;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Consulta e registro no IndicePrecos com dez anos de histórico.
+ * 
+ * O índice é preenchido diretamente com 1.000 descrições de item e a quantidade de preços por
+ * descrição e ano do parâmetro, dispersos em torno de um preço de referência de cada item.
+ * A consulta cobre o período inteiro e calcula mediana e quartis.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class PesquisaPrecosBenchmark {
+    private static final int DESCRICOES = 1000;
+    private static final int ANO_FINAL = 2025;
+    private static final int ANOS = 10;
+    
+    @Param({"100", "10000"})
+    private int precosPorAno;
+    
+    private IndicePrecos indice;
+    private String[] descricoes;
+    private long[] referencias;
+    private Random aleatorio;
+    private int cursor;
+    
+    @Setup
+    public void preparar() {
+        aleatorio = new Random(42);
+        indice = new IndicePrecos();
+        descricoes = new String[DESCRICOES];
+        referencias = new long[DESCRICOES];
+        for (int i = 0; i < DESCRICOES; i++) {
+            descricoes[i] = "Material de consumo modelo " + i;
+            referencias[i] = Dinheiro.reais(1 + aleatorio.nextInt(5_000));
+        }
+        
+        for (int ano = ANO_FINAL - ANOS + 1; ano <= ANO_FINAL; ano++) {
+            for (int i = 0; i < DESCRICOES; i++) {
+                for (int j = 0; j < precosPorAno; j++) {
+                    indice.registrar(descricoes[i], UnidadeMedida.UNIDADE, j % 4 == 0 ? OrigemPreco.CONTRATO : OrigemPreco.PROPOSTA, 
+                                     ano, preco(i));
+                }
+            }
+        }
+    }
+    
+    @Benchmark
+    public long pesquisarDecada() {
+        cursor = (cursor + 7) % DESCRICOES;
+        ReferenciaPrecos referencia = indice.consultar(descricoes[cursor], UnidadeMedida.UNIDADE, OrigemPreco.PROPOSTA, 
+                                                       ANO_FINAL - ANOS + 1, ANO_FINAL);
+        return referencia.getMediana() + referencia.getQuantil(0.25) + referencia.getQuantil(0.75);
+    }
+    
+    @Benchmark
+    public void registrarPreco() {
+        cursor = (cursor + 7) % DESCRICOES;
+        indice.registrar(descricoes[cursor], UnidadeMedida.UNIDADE, OrigemPreco.PROPOSTA, ANO_FINAL, preco(cursor));
+    }
+    
+    private long preco(int descricao) {
+        return Math.max(1, Math.round(referencias[descricao] * (1 + 0.2 * aleatorio.nextGaussian())));
+    }
+}
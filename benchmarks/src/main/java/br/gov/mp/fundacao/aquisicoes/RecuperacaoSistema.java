@@ -0,0 +1,100 @@
+package br.gov.mp.fundacao.aquisicoes;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+/**
+ * Medição da recuperação do SistemaAquisicoes após um reinício.
+ *
+ * Gera a massa sintética na escala informada (ver DadosSinteticos), grava um snapshot, registra
+ * C pagamentos de um centavo que ficam apenas no log de operações (a cauda do WAL) e fecha o
+ * sistema. Em seguida reabre o mesmo diretório R vezes, informando a cada abertura o tempo de
+ * recuperação do motor de persistência (snapshot mais log), o tempo total do construtor, as
+ * operações reaplicadas e o heap ocupado depois da abertura.
+ *
+ * Uma medição isolada, e não um benchmark JMH: cada abertura custa segundos e a geração da
+ * massa, minutos. Execute com heap suficiente para a escala, por exemplo -Xmx4g para 1 milhão.
+ *
+ * Uso: java -Xmx4g -cp target/benchmarks.jar br.gov.mp.fundacao.aquisicoes.RecuperacaoSistema
+ *          [escala=1000000] [cauda=50000] [reaberturas=3] [armazenamento=MEMORIA]
+ */
+public final class RecuperacaoSistema {
+    private static final long SALDO_MINIMO_PAGAVEL = Dinheiro.reais(1_000);
+    
+    public static void main(String[] args) throws Exception {
+        int escala = argumento(args, 0, 1_000_000);
+        int cauda = argumento(args, 1, 50_000);
+        int reaberturas = argumento(args, 2, 3);
+        TipoArmazenamento armazenamento = args.length > 3 ? TipoArmazenamento.valueOf(args[3]) : TipoArmazenamento.MEMORIA;
+        // A cauda deve caber em um único log, sem disparar um snapshot automático
+        if (cauda < 0 || cauda >= MotorPersistencia.LIMITE_REGISTROS_WAL_PADRAO) {
+            throw new IllegalArgumentException("Cauda deve ficar entre 0 e " + (MotorPersistencia.LIMITE_REGISTROS_WAL_PADRAO - 1));
+        }
+        
+        long inicio = System.nanoTime();
+        Path diretorio = preparar(escala, cauda, armazenamento);
+        try {
+            System.out.printf("Massa: %d processos e pagamentos + %d pagamentos no log (%s) em %.1f s%n",
+                              escala, cauda, armazenamento, (System.nanoTime() - inicio) / 1e9);
+            System.out.printf("Persistência em disco: %.1f MB%n", tamanho(diretorio.resolve("persistencia")) / 1e6);
+            
+            for (int i = 1; i <= reaberturas; i++) {
+                System.gc();
+                long abertura = System.nanoTime();
+                try (SistemaAquisicoes reaberto = new SistemaAquisicoes(diretorio, PoliticaSincronizacao.SISTEMA_OPERACIONAL, armazenamento)) {
+                    long total = System.nanoTime() - abertura;
+                    Duration recuperacao = reaberto.getTempoRecuperacao();
+                    System.gc();
+                    Runtime runtime = Runtime.getRuntime();
+                    System.out.printf("Reabertura %d: recuperação %d ms (%d operações reaplicadas), construtor %d ms, heap %d MB%n",
+                                      i, recuperacao.toMillis(), reaberto.getOperacoesReaplicadas(), total / 1_000_000,
+                                      (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024));
+                }
+            }
+        } finally {
+            SistemaAquisicoes.apagarDiretorio(diretorio);
+        }
+    }
+    
+    // Gera e fecha o sistema, retornando só o diretório: a massa gerada não pode continuar
+    // alcançável durante as reaberturas, que carregam outra cópia do estado no heap
+    private static Path preparar(int escala, int cauda, TipoArmazenamento armazenamento) {
+        DadosSinteticos dados = DadosSinteticos.gerar(escala, 42, armazenamento);
+        SistemaAquisicoes sistema = dados.sistema;
+        try {
+            sistema.gerarSnapshot();
+            
+            Contrato[] pagaveis = Arrays.stream(dados.contratos)
+                .filter(contrato -> contrato.getRazao().getSaldo().getAPagar() >= SALDO_MINIMO_PAGAVEL)
+                .toArray(Contrato[]::new);
+            LocalDate hoje = LocalDate.now();
+            for (int i = 0; i < cauda; i++) {
+                sistema.registrarPagamento(pagaveis[i % pagaveis.length], "PG-R-" + i, hoje,
+                                           1, "Pagamento da cauda do log", dados.ordenador);
+            }
+        } catch (RuntimeException e) {
+            dados.close();
+            throw e;
+        }
+        sistema.close();
+        return dados.diretorio;
+    }
+    
+    private static long tamanho(Path diretorio) {
+        try (Stream<Path> arquivos = Files.walk(diretorio)) {
+            return arquivos.filter(Files::isRegularFile).mapToLong(arquivo -> arquivo.toFile().length()).sum();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    private static int argumento(String[] args, int posicao, int padrao) {
+        return args.length > posicao ? Integer.parseInt(args[posicao]) : padrao;
+    }
+}
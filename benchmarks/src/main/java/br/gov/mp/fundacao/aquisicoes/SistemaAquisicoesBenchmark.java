@@ -0,0 +1,132 @@
+package br.gov.mp.fundacao.aquisicoes;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Caminhos críticos do SistemaAquisicoes sobre massas sintéticas de 10 mil, 100 mil e 1 milhão
+ * de processos, fornecedores e pagamentos (ver DadosSinteticos).
+ * 
+ * As operações de escrita percorrem os processos e contratos em rodízio, para que as listas
+ * de cada um cresçam devagar ao longo da medição. Os relatórios são escritos em um
+ * OutputStream descartável pelas versões em streaming, medindo apenas a geração.
+ * 
+ * Os pagamentos de benchmark são de um centavo e percorrem só os contratos com pelo menos
+ * SALDO_MINIMO_PAGAVEL a pagar, para que o razão nunca recuse um pagamento durante a medição.
+ * 
+ * Os registros financeiros ficam no heap; para medi-los no armazenamento em disco, use
+ * -p armazenamento=DISCO.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class SistemaAquisicoesBenchmark {
+    private static final long SALDO_MINIMO_PAGAVEL = Dinheiro.reais(1_000);
+    
+    @Param({"10000", "100000", "1000000"})
+    private int escala;
+    
+    // Nome de um TipoArmazenamento, que não é visível para o código gerado pelo JMH
+    @Param({"MEMORIA"})
+    private String armazenamento;
+    
+    private DadosSinteticos dados;
+    private SistemaAquisicoes sistema;
+    private Contrato[] contratosPagaveis;
+    private OutputStream descarte;
+    private LocalDate hoje;
+    private int cursorConsulta;
+    private int cursorProcesso;
+    private int cursorContrato;
+    private long sequenciaPagamento;
+    
+    @Setup
+    public void preparar() {
+        dados = DadosSinteticos.gerar(escala, 42, TipoArmazenamento.valueOf(armazenamento));
+        sistema = dados.sistema;
+        contratosPagaveis = Arrays.stream(dados.contratos)
+            .filter(contrato -> contrato.getRazao().getSaldo().getAPagar() >= SALDO_MINIMO_PAGAVEL)
+            .toArray(Contrato[]::new);
+        descarte = OutputStream.nullOutputStream();
+        hoje = LocalDate.now();
+    }
+    
+    @TearDown
+    public void encerrar() {
+        dados.close();
+    }
+    
+    @Benchmark
+    public Fornecedor buscarFornecedorPorCNPJ() {
+        Fornecedor[] fornecedores = dados.fornecedores;
+        // Passo primo para não percorrer os fornecedores na ordem de cadastro
+        cursorConsulta = (cursorConsulta + 7919) % fornecedores.length;
+        return sistema.buscarFornecedorPorCNPJ(fornecedores[cursorConsulta].getCnpj());
+    }
+    
+    @Benchmark
+    public List<ResultadoBusca> buscarTexto() {
+        // O número é o termo mais seletivo da consulta; "item" e "sintético" aparecem em toda a massa
+        cursorConsulta = (cursorConsulta + 7919) % dados.processos.length;
+        return sistema.buscarTexto("item sintético " + cursorConsulta, 10);
+    }
+    
+    @Benchmark
+    public Proposta registrarProposta() {
+        ProcessoAquisicao processo = dados.processos[proximo(cursorProcesso++, dados.processos.length)];
+        Fornecedor fornecedor = dados.fornecedores[proximo(cursorConsulta++, dados.fornecedores.length)];
+        Proposta proposta = new Proposta(fornecedor, processo, LocalDateTime.now(), 
+                                         processo.getValorEstimado(), "Proposta de benchmark");
+        sistema.registrarProposta(processo, proposta);
+        return proposta;
+    }
+    
+    @Benchmark
+    public Pagamento registrarPagamento() {
+        Contrato contrato = contratosPagaveis[proximo(cursorContrato++, contratosPagaveis.length)];
+        return sistema.registrarPagamento(contrato, "PG-B-" + sequenciaPagamento++, hoje, 
+                                          1, "Pagamento de benchmark", dados.ordenador);
+    }
+    
+    @Benchmark
+    public void gerarRelatorioProcesso() throws IOException {
+        Contrato contrato = dados.contratos[proximo(cursorContrato++, dados.contratos.length)];
+        sistema.gerarRelatorioProcesso(contrato.getProcesso(), descarte);
+    }
+    
+    @Benchmark
+    public void gerarRelatorioAuditoria() throws IOException {
+        ProcessoAquisicao processo = dados.processos[proximo(cursorProcesso++, dados.processos.length)];
+        sistema.gerarRelatorioAuditoria(processo, descarte);
+    }
+    
+    @Benchmark
+    public void gerarRelatorioTransparencia() throws IOException {
+        sistema.gerarRelatorioTransparencia(descarte);
+    }
+    
+    private static int proximo(int cursor, int tamanho) {
+        return Math.floorMod(cursor, tamanho);
+    }
+}